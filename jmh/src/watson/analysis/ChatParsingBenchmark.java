@@ -0,0 +1,110 @@
+package watson.analysis;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import watson.benchmark.Headless;
+
+// ----------------------------------------------------------------------------
+/**
+ * Measures the time taken to parse a corpus of LogBlock, Prism or CoreProtect
+ * chat with the corresponding {@link Analysis}.
+ *
+ * Each line is matched against the analysis' patterns in the order that
+ * {@link Analysis#dispatchMatchedChat(net.minecraft.util.text.ITextComponent)}
+ * tries them and the groups of the first match are extracted. The handlers
+ * themselves are not called, since they queue edits for the client's main
+ * thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChatParsingBenchmark
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Load the corpus and the patterns of the corresponding analysis.
+   */
+  @Setup
+  public void setUp()
+    throws IOException
+  {
+    Analysis analysis;
+    if (corpus.equals("logblock"))
+    {
+      analysis = new LbCoordsAnalysis();
+    }
+    else if (corpus.equals("prism"))
+    {
+      analysis = new PrismAnalysis();
+    }
+    else
+    {
+      analysis = new CoreProtectAnalysis();
+    }
+    _patterns = analysis._handlers.keySet().toArray(new Pattern[0]);
+    _lines = Headless.readCorpus(corpus);
+  } // setUp
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse every line of the corpus.
+   *
+   * @param blackhole consumes the extracted groups.
+   */
+  @Benchmark
+  public void parse(Blackhole blackhole)
+  {
+    for (String line : _lines)
+    {
+      for (Pattern pattern : _patterns)
+      {
+        Matcher m = pattern.matcher(line);
+        if (m.matches())
+        {
+          for (int i = 1; i <= m.groupCount(); ++i)
+          {
+            blackhole.consume(m.group(i));
+          }
+          break;
+        }
+      }
+    }
+  } // parse
+
+  // --------------------------------------------------------------------------
+  /**
+   * The name of the chat corpus, which also selects the analysis.
+   */
+  @Param({"logblock", "prism", "coreprotect"})
+  public String          corpus;
+
+  /**
+   * The patterns of the analysis, in the order they are tried.
+   */
+  protected Pattern[]    _patterns;
+
+  /**
+   * The lines of the corpus.
+   */
+  protected List<String> _lines;
+} // class ChatParsingBenchmark
@@ -0,0 +1,188 @@
+package watson.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.entity.EntityPlayerSP;
+import net.minecraft.client.multiplayer.WorldClient;
+import net.minecraft.world.GameType;
+import net.minecraft.world.World;
+import net.minecraft.world.storage.WorldInfo;
+import sun.misc.Unsafe;
+import watson.db.BlockTypeRegistry;
+
+// ----------------------------------------------------------------------------
+/**
+ * Sets up the parts of Watson that the benchmarks and the replay harness need
+ * without a running Minecraft client, and loads the benchmark resources.
+ */
+public class Headless
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Load the block types from the default "blocks.yml" in the mod's resources,
+   * if that has not already been done.
+   *
+   * @throws IOException if the resource can't be read.
+   */
+  public static synchronized void loadBlockTypes()
+    throws IOException
+  {
+    if (!_blockTypesLoaded)
+    {
+      InputStream in = open(BLOCK_TYPES_RESOURCE);
+      try
+      {
+        if (!BlockTypeRegistry.instance.loadBlockTypes(in))
+        {
+          throw new IOException("no block types in " + BLOCK_TYPES_RESOURCE);
+        }
+      }
+      finally
+      {
+        in.close();
+      }
+      _blockTypesLoaded = true;
+    }
+  } // loadBlockTypes
+
+  // --------------------------------------------------------------------------
+  /**
+   * Install a stand-in for the Minecraft client, so that code that asks it for
+   * the player's dimension or the world's game type works.
+   *
+   * The stand-in is a survival world in the overworld, with no server (so no
+   * journal is kept) and no GUI. The client objects are allocated without
+   * running their constructors, which would need a display, and the few
+   * fields that Watson reads are found by type, so that this does not depend
+   * on the field name mappings.
+   *
+   * @throws ReflectiveOperationException if the client can't be stubbed.
+   */
+  public static synchronized void stubMinecraft()
+    throws ReflectiveOperationException
+  {
+    if (Minecraft.getMinecraft() == null)
+    {
+      Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      Unsafe unsafe = (Unsafe) theUnsafe.get(null);
+
+      WorldInfo info = (WorldInfo) unsafe.allocateInstance(WorldInfo.class);
+      setField(WorldInfo.class, info, GameType.class, GameType.SURVIVAL);
+      WorldClient world = (WorldClient) unsafe.allocateInstance(WorldClient.class);
+      setField(World.class, world, WorldInfo.class, info);
+      EntityPlayerSP player = (EntityPlayerSP) unsafe.allocateInstance(EntityPlayerSP.class);
+
+      Minecraft mc = (Minecraft) unsafe.allocateInstance(Minecraft.class);
+      setField(Minecraft.class, mc, WorldClient.class, world);
+      setField(Minecraft.class, mc, EntityPlayerSP.class, player);
+      setField(Minecraft.class, null, Minecraft.class, mc);
+    }
+  } // stubMinecraft
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the only field of the specified type declared by a class.
+   *
+   * @param owner the class declaring the field.
+   * @param target the object whose field is set, or null for a static field.
+   * @param type the type of the field.
+   * @param value the value.
+   * @throws ReflectiveOperationException if there is not exactly one such
+   *           field.
+   */
+  protected static void setField(Class<?> owner, Object target, Class<?> type, Object value)
+    throws ReflectiveOperationException
+  {
+    Field found = null;
+    for (Field field : owner.getDeclaredFields())
+    {
+      if (field.getType() == type && Modifier.isStatic(field.getModifiers()) == (target == null))
+      {
+        if (found != null)
+        {
+          throw new NoSuchFieldException("more than one " + type.getName() + " field in " + owner.getName());
+        }
+        found = field;
+      }
+    }
+    if (found == null)
+    {
+      throw new NoSuchFieldException("no " + type.getName() + " field in " + owner.getName());
+    }
+    found.setAccessible(true);
+    found.set(target, value);
+  } // setField
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the lines of a chat corpus, as they would appear in chat with the
+   * formatting removed.
+   *
+   * @param name the name of the corpus, e.g. "logblock".
+   * @return the lines of the corpus.
+   * @throws IOException if the corpus can't be read.
+   */
+  public static List<String> readCorpus(String name)
+    throws IOException
+  {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(open(CORPUS_DIRECTORY + name + ".txt"), "UTF-8"));
+    try
+    {
+      ArrayList<String> lines = new ArrayList<String>();
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        lines.add(line);
+      }
+      return lines;
+    }
+    finally
+    {
+      reader.close();
+    }
+  } // readCorpus
+
+  // --------------------------------------------------------------------------
+  /**
+   * Open a resource on the class path.
+   *
+   * @param resource the absolute name of the resource.
+   * @return the stream.
+   * @throws IOException if there is no such resource.
+   */
+  public static InputStream open(String resource)
+    throws IOException
+  {
+    InputStream in = Headless.class.getResourceAsStream(resource);
+    if (in == null)
+    {
+      throw new IOException("missing resource: " + resource);
+    }
+    return in;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The default block types, from the mod's resources.
+   */
+  protected static final String BLOCK_TYPES_RESOURCE = "/watson/blocks.yml";
+
+  /**
+   * The resource directory containing the chat corpora.
+   */
+  protected static final String CORPUS_DIRECTORY     = "/watson/benchmark/";
+
+  /**
+   * True once the block types have been loaded.
+   */
+  protected static boolean      _blockTypesLoaded;
+} // class Headless
@@ -0,0 +1,23 @@
+package watson.benchmark;
+
+import watson.db.BlockEditSet;
+
+// ----------------------------------------------------------------------------
+/**
+ * A {@link BlockEditSet} that can be used without a Minecraft client.
+ *
+ * Edits are always clustered into ore deposits, as they would be in a survival
+ * world.
+ */
+public class HeadlessBlockEditSet extends BlockEditSet
+{
+  // --------------------------------------------------------------------------
+  /**
+   * @see watson.db.BlockEditSet#isGroupingOres()
+   */
+  @Override
+  protected boolean isGroupingOres()
+  {
+    return true;
+  }
+} // class HeadlessBlockEditSet
@@ -0,0 +1,318 @@
+package watson.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import net.minecraft.util.text.ITextComponent;
+import net.minecraft.util.text.TextComponentString;
+import watson.Configuration;
+import watson.Controller;
+import watson.chat.Chat;
+import watson.chat.ChatHighlighter;
+import watson.chat.ChatProcessor;
+import watson.chat.IChatSink;
+import watson.db.BlockEditSet;
+
+// ----------------------------------------------------------------------------
+/**
+ * Replays a captured chat transcript through {@link ChatProcessor} at full
+ * speed, without a Minecraft client, and reports how fast it went.
+ *
+ * The transcript is a text file with one received chat per line; formatting
+ * codes are removed. Every few lines, the per-tick work in
+ * {@link Controller#onTick()} is done, as it would be between chat packets in
+ * the client. Chat that Watson would display or send to the server is counted
+ * and discarded.
+ *
+ * The report covers lines per second, allocation rate, tick time percentiles
+ * and the numbers of edits and ore deposits found. With --save, the resulting
+ * edits are also written to a file in the "/w file save" format, so that the
+ * results of two versions of the parsers can be compared with diff.
+ *
+ * <pre>
+ * ReplayHarness [--lines-per-tick N] [--save FILE] TRANSCRIPT
+ * </pre>
+ */
+public class ReplayHarness
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Main program.
+   *
+   * @param args the command line arguments.
+   */
+  public static void main(String[] args)
+    throws Exception
+  {
+    int linesPerTick = DEFAULT_LINES_PER_TICK;
+    File saveFile = null;
+    File transcript = null;
+    for (int i = 0; i < args.length; ++i)
+    {
+      if (args[i].equals("--lines-per-tick") && i + 1 < args.length)
+      {
+        linesPerTick = Math.max(1, Integer.parseInt(args[++i]));
+      }
+      else if (args[i].equals("--save") && i + 1 < args.length)
+      {
+        saveFile = new File(args[++i]);
+      }
+      else if (transcript == null && !args[i].startsWith("--"))
+      {
+        transcript = new File(args[i]);
+      }
+      else
+      {
+        transcript = null;
+        break;
+      }
+    }
+    if (transcript == null)
+    {
+      System.err.println("usage: ReplayHarness [--lines-per-tick N] [--save FILE] TRANSCRIPT");
+      System.exit(1);
+    }
+
+    ReplayHarness harness = new ReplayHarness(linesPerTick);
+    harness.replay(transcript);
+    harness.report();
+    if (saveFile != null)
+    {
+      int count = Controller.instance.getBlockEditSet().save(saveFile);
+      System.out.printf(Locale.US, "Saved %d edits to %s.%n", count, saveFile);
+    }
+  } // main
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * Sets up Watson as it would be in the client, with the default block types
+   * and chat highlights.
+   *
+   * @param linesPerTick the number of lines of chat received in each tick.
+   */
+  public ReplayHarness(int linesPerTick)
+    throws Exception
+  {
+    _linesPerTick = linesPerTick;
+    Headless.stubMinecraft();
+    Headless.loadBlockTypes();
+    InputStream in = Headless.open("/watson/" + ChatHighlighter.CHAT_HIGHLIGHTS_FILE);
+    try
+    {
+      Chat.getChatHighlighter().loadHighlights(in);
+    }
+    finally
+    {
+      in.close();
+    }
+
+    Chat.setSink(new IChatSink()
+    {
+      @Override
+      public void localChat(ITextComponent chat)
+      {
+        ++_localChats;
+      }
+
+      @Override
+      public void serverChat(String message)
+      {
+        ++_serverChats;
+      }
+    });
+  } // constructor
+
+  // --------------------------------------------------------------------------
+  /**
+   * Replay the specified transcript.
+   *
+   * @param transcript the transcript file.
+   */
+  public void replay(File transcript)
+    throws Exception
+  {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(transcript), "UTF-8"));
+    try
+    {
+      long startAllocated = getAllocatedBytes();
+      long start = System.nanoTime();
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        ITextComponent chat = new TextComponentString(FORMATTING_CODE.matcher(line).replaceAll(""));
+        if (ChatProcessor.instance.onChat(chat))
+        {
+          ++_echoedLines;
+          // As in LiteModWatson.onChat().
+          if (Configuration.instance.useChatHighlights())
+          {
+            Chat.getChatHighlighter().highlight(chat);
+          }
+        }
+        if (++_lines % _linesPerTick == 0)
+        {
+          tick();
+        }
+      }
+
+      // Process whatever the last lines queued.
+      tick();
+      _elapsedNanos = System.nanoTime() - start;
+      _allocatedBytes = (startAllocated < 0) ? -1 : getAllocatedBytes() - startAllocated;
+    }
+    finally
+    {
+      reader.close();
+    }
+  } // replay
+
+  // --------------------------------------------------------------------------
+  /**
+   * Print the results of the replay.
+   */
+  public void report()
+  {
+    double seconds = _elapsedNanos / 1e9;
+    System.out.printf(Locale.US, "Replayed %d lines in %.3f s: %.0f lines/s.%n",
+      _lines, seconds, _lines / seconds);
+    if (_allocatedBytes >= 0)
+    {
+      System.out.printf(Locale.US, "Allocated %.1f MB: %.1f MB/s, %.0f bytes/line.%n",
+        _allocatedBytes / 1e6, _allocatedBytes / 1e6 / seconds, (double) _allocatedBytes / Math.max(1, _lines));
+    }
+    else
+    {
+      System.out.println("Allocation rate is not available in this JVM.");
+    }
+
+    long[] ticks = Arrays.copyOf(_tickNanos, _ticks);
+    Arrays.sort(ticks);
+    System.out.printf(Locale.US, "%d ticks; tick time p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms.%n",
+      _ticks, percentile(ticks, 0.5) / 1e6, percentile(ticks, 0.9) / 1e6,
+      percentile(ticks, 0.99) / 1e6, percentile(ticks, 1.0) / 1e6);
+
+    BlockEditSet edits = Controller.instance.getBlockEditSet();
+    System.out.printf(Locale.US, "%d edits, %d ore deposits, %d annotations.%n",
+      edits.getBlockEditCount(), edits.getOreDB().getOreDepositCount(), edits.getAnnotations().size());
+    System.out.printf(Locale.US, "%d lines echoed; %d local chats and %d server chats sent.%n",
+      _echoedLines, _localChats, _serverChats);
+  } // report
+
+  // --------------------------------------------------------------------------
+  /**
+   * Do the per-tick work and record how long it took.
+   */
+  protected void tick()
+  {
+    long start = System.nanoTime();
+    Controller.instance.onTick();
+    long elapsed = System.nanoTime() - start;
+
+    if (_ticks == _tickNanos.length)
+    {
+      _tickNanos = Arrays.copyOf(_tickNanos, 2 * _ticks);
+    }
+    _tickNanos[_ticks++] = elapsed;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the specified percentile of a sorted array of values.
+   *
+   * @param sorted the values, in ascending order.
+   * @param fraction the percentile, as a fraction in (0,1].
+   * @return the value, or 0 if there are no values.
+   */
+  protected static long percentile(long[] sorted, double fraction)
+  {
+    if (sorted.length == 0)
+    {
+      return 0;
+    }
+    int index = (int) Math.ceil(fraction * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of bytes allocated by the current thread, or -1 if the
+   * JVM can't say.
+   *
+   * @return the number of bytes allocated by the current thread.
+   */
+  protected static long getAllocatedBytes()
+  {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean)
+    {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The default number of lines of chat received in each tick.
+   */
+  protected static final int     DEFAULT_LINES_PER_TICK = 10;
+
+  /**
+   * Matches Minecraft formatting codes.
+   */
+  protected static final Pattern FORMATTING_CODE        = Pattern.compile("\u00A7.");
+
+  /**
+   * The number of lines of chat received in each tick.
+   */
+  protected int                  _linesPerTick;
+
+  /**
+   * The number of lines replayed.
+   */
+  protected int                  _lines;
+
+  /**
+   * The number of lines that would have been shown in the chat GUI.
+   */
+  protected int                  _echoedLines;
+
+  /**
+   * The number of chats Watson displayed locally.
+   */
+  protected int                  _localChats;
+
+  /**
+   * The number of chats Watson sent to the server.
+   */
+  protected int                  _serverChats;
+
+  /**
+   * The duration of each tick, in nanoseconds; the first _ticks are used.
+   */
+  protected long[]               _tickNanos             = new long[1024];
+
+  /**
+   * The number of ticks.
+   */
+  protected int                  _ticks;
+
+  /**
+   * The time taken by the replay, in nanoseconds.
+   */
+  protected long                 _elapsedNanos;
+
+  /**
+   * The number of bytes allocated during the replay, or -1 if not known.
+   */
+  protected long                 _allocatedBytes;
+} // class ReplayHarness
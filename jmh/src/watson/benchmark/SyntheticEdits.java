@@ -0,0 +1,148 @@
+package watson.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import watson.db.BlockEdit;
+import watson.db.BlockType;
+import watson.db.BlockTypeRegistry;
+
+// ----------------------------------------------------------------------------
+/**
+ * Generates reproducible sets of edits that resemble the results of LogBlock
+ * queries about miners.
+ *
+ * Each player digs a meandering tunnel, mostly through stone with the odd ore
+ * block. In ore-only sets, every edit is a diamond ore block and the edits
+ * come in small veins, which exercises the clustering of ore deposits.
+ *
+ * {@link Headless#loadBlockTypes()} must be called first.
+ */
+public class SyntheticEdits
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Generate a set of edits, in time order.
+   *
+   * @param count the number of edits.
+   * @param seed the random number seed; the same seed gives the same edits.
+   * @param oresOnly if true, all edits are diamond ore, in veins.
+   * @return the edits.
+   */
+  public static ArrayList<BlockEdit> generate(int count, long seed, boolean oresOnly)
+  {
+    BlockTypeRegistry types = BlockTypeRegistry.instance;
+    BlockType stone = types.getBlockTypeByIdData(1, 0);
+    BlockType diamond = types.getBlockTypeByIdData(56, 0);
+
+    Random random = new Random(seed);
+    int[][] positions = new int[PLAYERS.length][];
+    for (int i = 0; i < PLAYERS.length; ++i)
+    {
+      positions[i] = randomPosition(random);
+    }
+
+    ArrayList<BlockEdit> edits = new ArrayList<BlockEdit>(count);
+    long time = START_TIME;
+    int[] vein = randomPosition(random);
+    for (int i = 0; i < count; ++i)
+    {
+      // Edit times are whole seconds, as in LogBlock results.
+      time += 1000 * (1 + random.nextInt(5));
+      int player = random.nextInt(PLAYERS.length);
+      if (oresOnly)
+      {
+        if (i % VEIN_SIZE == 0)
+        {
+          vein = randomPosition(random);
+        }
+        edits.add(new BlockEdit(time, PLAYERS[player], false,
+          vein[0] + random.nextInt(3) - 1, vein[1] + random.nextInt(3) - 1, vein[2] + random.nextInt(3) - 1, diamond));
+      }
+      else
+      {
+        int[] pos = positions[player];
+        if (random.nextInt(TUNNEL_LENGTH) == 0)
+        {
+          positions[player] = pos = randomPosition(random);
+        }
+        else
+        {
+          pos[random.nextInt(3)] += random.nextBoolean() ? 1 : -1;
+          pos[1] = Math.max(1, Math.min(MAX_Y, pos[1]));
+        }
+        BlockType type = (random.nextInt(ORE_INTERVAL) == 0) ? randomOre(types, random) : stone;
+        edits.add(new BlockEdit(time, PLAYERS[player], false, pos[0], pos[1], pos[2], type));
+      }
+    } // for
+    return edits;
+  } // generate
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a random position underground.
+   *
+   * @param random the random number generator.
+   * @return the x, y and z coordinates.
+   */
+  protected static int[] randomPosition(Random random)
+  {
+    return new int[] {random.nextInt(2 * SPREAD) - SPREAD, 1 + random.nextInt(MAX_Y),
+                      random.nextInt(2 * SPREAD) - SPREAD};
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a random ore type.
+   *
+   * @param types the block type registry.
+   * @param random the random number generator.
+   * @return the ore type.
+   */
+  protected static BlockType randomOre(BlockTypeRegistry types, Random random)
+  {
+    return types.getBlockTypeByIdData(ORE_IDS[random.nextInt(ORE_IDS.length)], 0);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The players making edits.
+   */
+  protected static final String[] PLAYERS       = {"totemo", "Notch", "jeb_", "Dinnerbone", "GriefBot99",
+                                                  "BuilderBob", "Herobrine", "xXminerXx"};
+
+  /**
+   * The IDs of the ore blocks found in tunnels.
+   */
+  protected static final int[]    ORE_IDS       = {14, 15, 16, 21, 56, 73, 129};
+
+  /**
+   * The time of the first edit: 2018-01-01 00:00:00 UTC.
+   */
+  protected static final long     START_TIME    = 1514764800000L;
+
+  /**
+   * Positions are within this distance of the origin in X and Z.
+   */
+  protected static final int      SPREAD        = 5000;
+
+  /**
+   * The highest Y coordinate of an edit.
+   */
+  protected static final int      MAX_Y         = 64;
+
+  /**
+   * The average number of blocks dug before a player moves somewhere else.
+   */
+  protected static final int      TUNNEL_LENGTH = 500;
+
+  /**
+   * One in this many tunnel blocks is an ore.
+   */
+  protected static final int      ORE_INTERVAL  = 10;
+
+  /**
+   * The number of edits in each ore vein.
+   */
+  protected static final int      VEIN_SIZE     = 6;
+} // class SyntheticEdits
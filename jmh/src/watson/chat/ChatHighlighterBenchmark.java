@@ -0,0 +1,87 @@
+package watson.chat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import watson.benchmark.Headless;
+
+// ----------------------------------------------------------------------------
+/**
+ * Measures the time taken by {@link ChatHighlighter#highlight(String)} to
+ * highlight a corpus of chat with the default highlights.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChatHighlighterBenchmark
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Load the default highlights and the corpus.
+   */
+  @Setup
+  public void setUp()
+    throws IOException
+  {
+    InputStream in = Headless.open("/watson/" + ChatHighlighter.CHAT_HIGHLIGHTS_FILE);
+    try
+    {
+      _highlighter.loadHighlights(in);
+    }
+    finally
+    {
+      in.close();
+    }
+    _lines = Headless.readCorpus(corpus);
+  } // setUp
+
+  // --------------------------------------------------------------------------
+  /**
+   * Highlight every line of the corpus.
+   *
+   * @param blackhole consumes the highlighted text.
+   */
+  @Benchmark
+  public void highlight(Blackhole blackhole)
+  {
+    for (String line : _lines)
+    {
+      blackhole.consume(_highlighter.highlight(line));
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The name of the chat corpus.
+   */
+  @Param({"logblock", "prism", "coreprotect"})
+  public String             corpus;
+
+  /**
+   * The highlighter.
+   */
+  protected ChatHighlighter _highlighter = new ChatHighlighter();
+
+  /**
+   * The lines of the corpus.
+   */
+  protected List<String>    _lines;
+} // class ChatHighlighterBenchmark
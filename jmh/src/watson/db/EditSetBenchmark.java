@@ -0,0 +1,196 @@
+package watson.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import watson.benchmark.Headless;
+import watson.benchmark.HeadlessBlockEditSet;
+import watson.benchmark.SyntheticEdits;
+
+// ----------------------------------------------------------------------------
+/**
+ * Measures saving, loading and searching sets of synthetic edits of various
+ * sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class EditSetBenchmark
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Generate the edits, save them to a file and choose the coordinates to
+   * search for.
+   */
+  @Setup
+  public void setUp()
+    throws Exception
+  {
+    Headless.loadBlockTypes();
+    ArrayList<BlockEdit> edits = SyntheticEdits.generate(size, SEED, false);
+    for (BlockEdit edit : edits)
+    {
+      _edits.addBlockEdit(edit, false);
+    }
+
+    _file = File.createTempFile("watson-edits", ".txt");
+    _saveFile = File.createTempFile("watson-save", ".txt");
+    _edits.save(_file);
+    _loadedEdits.load(_file);
+
+    // The PlayerEditSet holds its own copy of the edits, since adding an edit
+    // to a PlayerEditSet changes the edit.
+    for (BlockEdit edit : SyntheticEdits.generate(size, SEED, false))
+    {
+      _playerEdits.addBlockEdit(edit);
+    }
+
+    // Search for a mixture of edited and unedited blocks.
+    Random random = new Random(SEED);
+    for (int i = 0; i < LOOKUPS; ++i)
+    {
+      BlockEdit edit = edits.get(random.nextInt(edits.size()));
+      _lookups[i][0] = edit.x + ((i % 2 == 0) ? 0 : random.nextInt(100) + 1);
+      _lookups[i][1] = edit.y;
+      _lookups[i][2] = edit.z;
+    }
+  } // setUp
+
+  // --------------------------------------------------------------------------
+  /**
+   * Delete the files.
+   */
+  @TearDown
+  public void tearDown()
+  {
+    _file.delete();
+    _saveFile.delete();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Save all edits to a file.
+   *
+   * @return the number of edits saved.
+   */
+  @Benchmark
+  public int save()
+    throws IOException
+  {
+    return _edits.save(_saveFile);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Load a file into an empty set.
+   *
+   * @return the set.
+   */
+  @Benchmark
+  public BlockEditSet load()
+    throws Exception
+  {
+    BlockEditSet edits = new HeadlessBlockEditSet();
+    edits.load(_file);
+    return edits;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Load a file into a set that already contains all of its edits, so that
+   * every edit is a duplicate.
+   *
+   * @return the number of edits read.
+   */
+  @Benchmark
+  public int loadDuplicates()
+    throws Exception
+  {
+    return _loadedEdits.load(_file);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Find the edits of one player at specific coordinates.
+   *
+   * @param blackhole consumes the edits found.
+   */
+  @Benchmark
+  @OperationsPerInvocation(LOOKUPS)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void findEdit(Blackhole blackhole)
+  {
+    for (int[] coords : _lookups)
+    {
+      blackhole.consume(_playerEdits.findEdit(coords[0], coords[1], coords[2]));
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The number of edits.
+   */
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int                    size;
+
+  /**
+   * The random number seed.
+   */
+  protected static final long   SEED          = 1;
+
+  /**
+   * The number of coordinates searched for in each invocation of findEdit().
+   */
+  protected static final int    LOOKUPS       = 100;
+
+  /**
+   * The edits.
+   */
+  protected BlockEditSet        _edits        = new HeadlessBlockEditSet();
+
+  /**
+   * A set that the saved file has already been loaded into.
+   */
+  protected BlockEditSet        _loadedEdits  = new HeadlessBlockEditSet();
+
+  /**
+   * All edits, as though made by one player.
+   */
+  protected PlayerEditSet       _playerEdits  = new PlayerEditSet("player");
+
+  /**
+   * The file containing the saved edits.
+   */
+  protected File                _file;
+
+  /**
+   * The file that save() writes.
+   */
+  protected File                _saveFile;
+
+  /**
+   * The coordinates searched for by findEdit().
+   */
+  protected int[][]             _lookups      = new int[LOOKUPS][3];
+} // class EditSetBenchmark
@@ -0,0 +1,79 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import watson.benchmark.Headless;
+import watson.benchmark.SyntheticEdits;
+
+// ----------------------------------------------------------------------------
+/**
+ * Measures the clustering of ore edits into deposits by
+ * {@link TypedOreDB#addBlockEdit(BlockEdit)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class OreDBBenchmark
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Generate the ore edits.
+   */
+  @Setup
+  public void setUp()
+    throws Exception
+  {
+    Headless.loadBlockTypes();
+    _edits = SyntheticEdits.generate(size, SEED, true);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add all of the edits to an empty database.
+   *
+   * @return the database.
+   */
+  @Benchmark
+  public TypedOreDB addBlockEdit()
+  {
+    TypedOreDB db = new TypedOreDB(200);
+    for (BlockEdit edit : _edits)
+    {
+      db.addBlockEdit(edit);
+    }
+    return db;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The number of edits.
+   */
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int                     size;
+
+  /**
+   * The random number seed.
+   */
+  protected static final long    SEED = 1;
+
+  /**
+   * The ore edits.
+   */
+  protected ArrayList<BlockEdit> _edits;
+} // class OreDBBenchmark
@@ -0,0 +1,116 @@
+package watson.db;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// ----------------------------------------------------------------------------
+/**
+ * Measures the {@link TimeStamp} conversions done for every line of query
+ * results and every saved edit.
+ *
+ * The inputs are fields, rather than constants, so that the JIT compiler can't
+ * fold the conversions away.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TimeStampBenchmark
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Parse the date of a LogBlock result line.
+   */
+  @Benchmark
+  public int[] parseYMD()
+  {
+    return TimeStamp.parseYMD(_date);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Convert a LogBlock time without a year, which must be inferred.
+   */
+  @Benchmark
+  public long toMillisWithoutYear()
+  {
+    return TimeStamp.toMillis(_month, _day, _hour, _minute, _second);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Convert a time with a year, as in a saved edit file.
+   */
+  @Benchmark
+  public long toMillisWithYear()
+  {
+    return TimeStamp.toMillis(_year, _month, _day, _hour, _minute, _second);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Format a time as in LogBlock query results.
+   */
+  @Benchmark
+  public String formatMonthDayTime()
+  {
+    return TimeStamp.formatMonthDayTime(_millis);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Format a time as a LogBlock query parameter.
+   */
+  @Benchmark
+  public String formatQueryTime()
+  {
+    return TimeStamp.formatQueryTime(_millis);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse a LogBlock query parameter time.
+   */
+  @Benchmark
+  public long parseQueryTime()
+  {
+    return TimeStamp.parseQueryTime(_queryDate, _queryTime);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * A LogBlock result date.
+   */
+  protected String _date      = "03-25";
+
+  /**
+   * A LogBlock query parameter date.
+   */
+  protected String _queryDate = "25.3.2018";
+
+  /**
+   * A LogBlock query parameter time.
+   */
+  protected String _queryTime = "18:37:34";
+
+  /**
+   * Components of a time.
+   */
+  protected int    _year      = 2018, _month = 3, _day = 25, _hour = 18, _minute = 37, _second = 34;
+
+  /**
+   * A time in milliseconds since epoch.
+   */
+  protected long   _millis    = 1522003054000L;
+} // class TimeStampBenchmark
@@ -0,0 +1,464 @@
+package watson;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import net.minecraft.client.Minecraft;
+
+import org.lwjgl.BufferUtils;
+
+import watson.chat.Chat;
+import watson.db.OreDB;
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * Takes a burst of screenshots, either at a fixed interval or one per ore
+ * deposit as "/w tp next" steps through them.
+ *
+ * Only the glReadPixels() call happens in the main thread. Pixels are read into
+ * one of a small ring of reusable direct ByteBuffers and handed to a background
+ * thread to be converted and written out as PNG files. When all buffers are
+ * waiting to be encoded (the disk is slower than the capture rate), the frame
+ * is either dropped or the capture is deferred to a later tick, according to
+ * the burst_drop configuration setting.
+ */
+public class BurstCapture
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Single instance of this class.
+   */
+  public static final BurstCapture instance = new BurstCapture();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Start a burst of screenshots taken at the configured interval.
+   *
+   * @param count the number of screenshots to take.
+   */
+  public void start(int count)
+  {
+    start(count, false);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Start a burst of screenshots, one per ore deposit, teleporting to the next
+   * deposit after each screenshot.
+   *
+   * @param count the number of deposits to visit, or 0 to visit all of the
+   *          deposits.
+   */
+  public void startOre(int count)
+  {
+    OreDB oreDB = Controller.instance.getBlockEditSet().getOreDB();
+    if (oreDB.getOreDepositCount() == 0)
+    {
+      Chat.localError("There are no ore deposits to teleport to.");
+      return;
+    }
+    start(count > 0 ? count : oreDB.getOreDepositCount(), true);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Stop the current burst.
+   *
+   * Screenshots already captured are still written out and the usual summary
+   * is shown when they are done.
+   */
+  public void stop()
+  {
+    if (_active)
+    {
+      _count = _captured + _dropped;
+      Chat.localOutput(String.format(Locale.US,
+        "Stopping screenshot burst after %d frames.", _count));
+    }
+    else
+    {
+      Chat.localError("There is no screenshot burst in progress.");
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if a burst is in progress.
+   *
+   * @return true if a burst is in progress.
+   */
+  public boolean isActive()
+  {
+    return _active;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Capture the next frame of the burst, if it is due, and report the results
+   * when the burst is complete.
+   *
+   * This method must be called from the main thread, once per tick.
+   */
+  public void onTick()
+  {
+    if (!_active)
+    {
+      return;
+    }
+
+    if (_captured + _dropped < _count)
+    {
+      long now = System.currentTimeMillis();
+      if (now >= _nextCaptureTime)
+      {
+        capture(now);
+      }
+    }
+    else if (_encoded.get() + _failed.get() == _captured)
+    {
+      _active = false;
+      showSummary();
+    }
+  } // onTick
+
+  // --------------------------------------------------------------------------
+  /**
+   * Start a burst.
+   *
+   * @param count the number of screenshots to take.
+   * @param oreSteps if true, teleport to the next ore deposit after each
+   *          screenshot.
+   */
+  protected void start(int count, boolean oreSteps)
+  {
+    if (_active)
+    {
+      Chat.localError("A screenshot burst is already in progress.");
+      return;
+    }
+
+    Configuration config = Configuration.instance;
+    Date now = new Date();
+    String player = (String) Controller.instance.getVariables().get("player");
+    _directory = Screenshot.getScreenshotDirectory(player, now);
+    String name = Screenshot.getUniqueFilename(_directory, player, now).getName();
+    _baseName = name.substring(0, name.length() - ".png".length());
+
+    _count = count;
+    _oreSteps = oreSteps;
+    _intervalMillis = (long) (1000 * config.getBurstIntervalSeconds());
+    _dropFrames = config.isBurstDrop();
+    _captured = _dropped = _deferred = 0;
+    _captureNanos = 0;
+    _encoded.set(0);
+    _failed.set(0);
+    _encodeNanos.set(0);
+    allocateBuffers(config.getBurstBuffers());
+    startEncoder();
+
+    _active = true;
+    _startTime = System.currentTimeMillis();
+    Chat.localOutput(String.format(Locale.US,
+      "Taking %d screenshots, %.2f seconds apart%s.", _count, _intervalMillis / 1000.0,
+      (_oreSteps ? ", one per ore deposit" : "")));
+
+    // In ore mode, move to the first deposit and give the chunks time to load
+    // before the first capture.
+    if (_oreSteps)
+    {
+      Controller.instance.getBlockEditSet().getOreDB().tpNext();
+      _nextCaptureTime = _startTime + _intervalMillis;
+    }
+    else
+    {
+      _nextCaptureTime = _startTime;
+    }
+  } // start
+
+  // --------------------------------------------------------------------------
+  /**
+   * Capture one frame into a free buffer and queue it for encoding.
+   *
+   * @param now the current time.
+   */
+  protected void capture(long now)
+  {
+    Minecraft mc = Minecraft.getMinecraft();
+    int width = mc.displayWidth;
+    int height = mc.displayHeight;
+    ByteBuffer buffer = _free.poll();
+    if (buffer == null)
+    {
+      if (!_dropFrames)
+      {
+        // Back-pressure: try again next tick, once the encoder catches up.
+        ++_deferred;
+        return;
+      }
+      ++_dropped;
+    }
+    else
+    {
+      // Buffers are resized lazily if the window has been resized.
+      if (buffer.capacity() < width * height * 4)
+      {
+        buffer = BufferUtils.createByteBuffer(width * height * 4);
+      }
+
+      long start = System.nanoTime();
+      Screenshot.readPixels(buffer, width, height);
+      _captureNanos += System.nanoTime() - start;
+
+      ++_captured;
+      File file = new File(_directory, String.format(Locale.US, "%s-%03d.png", _baseName, _captured));
+      _pending.add(new Frame(buffer, width, height, file));
+    }
+
+    if (_oreSteps && _captured + _dropped < _count)
+    {
+      Controller.instance.getBlockEditSet().getOreDB().tpNext();
+    }
+    _nextCaptureTime = now + _intervalMillis;
+  } // capture
+
+  // --------------------------------------------------------------------------
+  /**
+   * Show the outcome of the burst and the achieved throughput in chat.
+   */
+  protected void showSummary()
+  {
+    double elapsedSeconds = Math.max(0.001, (System.currentTimeMillis() - _startTime) / 1000.0);
+    int encoded = _encoded.get();
+    double captureMillis = (_captured == 0) ? 0.0 : _captureNanos / 1.0e6 / _captured;
+    double encodeMillis = (encoded == 0) ? 0.0 : _encodeNanos.get() / 1.0e6 / encoded;
+    Chat.localOutput(String.format(Locale.US,
+      "Screenshot burst: %d of %d frames saved to %s (%d dropped, %d failed, %d ticks deferred).",
+      encoded, _count, _directory.getName(), _dropped, _failed.get(), _deferred));
+    Chat.localOutput(String.format(Locale.US,
+      "%.2f frames/s over %.1f s; %.1f ms per capture, %.1f ms per PNG encode.",
+      encoded / elapsedSeconds, elapsedSeconds, captureMillis, encodeMillis));
+  } // showSummary
+
+  // --------------------------------------------------------------------------
+  /**
+   * Ensure that the ring contains the specified number of buffers.
+   *
+   * Buffers are only allocated or discarded when the configured count changes;
+   * otherwise, the buffers from the previous burst are reused.
+   *
+   * @param count the number of buffers.
+   */
+  protected void allocateBuffers(int count)
+  {
+    Minecraft mc = Minecraft.getMinecraft();
+    int bytes = mc.displayWidth * mc.displayHeight * 4;
+    if (_free.size() != count)
+    {
+      _free = new ArrayBlockingQueue<ByteBuffer>(count);
+      for (int i = 0; i < count; ++i)
+      {
+        _free.add(BufferUtils.createByteBuffer(bytes));
+      }
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Start the background thread that encodes captured frames, if it is not
+   * already running.
+   */
+  protected void startEncoder()
+  {
+    if (_encoder == null)
+    {
+      _encoder = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for (;;)
+          {
+            Frame frame;
+            try
+            {
+              frame = _pending.take();
+            }
+            catch (InterruptedException ex)
+            {
+              return;
+            }
+
+            long start = System.nanoTime();
+            try
+            {
+              Screenshot.encode(frame.buffer, frame.width, frame.height, frame.file);
+              _encodeNanos.addAndGet(System.nanoTime() - start);
+              _encoded.incrementAndGet();
+            }
+            catch (Exception ex)
+            {
+              Log.exception(Level.SEVERE, "error saving burst screenshot " + frame.file, ex);
+              _failed.incrementAndGet();
+            }
+            finally
+            {
+              // Return the buffer to the ring. If the ring was reallocated
+              // in the meantime, the old buffer is simply discarded.
+              _free.offer(frame.buffer);
+            }
+          }
+        }
+      }, "Watson Screenshot Encoder");
+      _encoder.setDaemon(true);
+      _encoder.start();
+    }
+  } // startEncoder
+
+  // --------------------------------------------------------------------------
+  /**
+   * A captured frame waiting to be encoded.
+   */
+  protected static final class Frame
+  {
+    /**
+     * Constructor.
+     *
+     * @param buffer the RGBA pixels.
+     * @param width the width of the frame.
+     * @param height the height of the frame.
+     * @param file the file to write.
+     */
+    public Frame(ByteBuffer buffer, int width, int height, File file)
+    {
+      this.buffer = buffer;
+      this.width = width;
+      this.height = height;
+      this.file = file;
+    }
+
+    public final ByteBuffer buffer;
+    public final int        width;
+    public final int        height;
+    public final File       file;
+  } // class Frame
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor to enforce singleton pattern.
+   */
+  private BurstCapture()
+  {
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Free buffers that can receive the next captured frame.
+   */
+  protected volatile ArrayBlockingQueue<ByteBuffer> _free         = new ArrayBlockingQueue<ByteBuffer>(1);
+
+  /**
+   * Frames waiting to be encoded. The number of frames is bounded by the number
+   * of buffers in the ring.
+   */
+  protected ArrayBlockingQueue<Frame>               _pending      = new ArrayBlockingQueue<Frame>(MAX_BUFFERS);
+
+  /**
+   * The thread that encodes frames, created on the first burst.
+   */
+  protected Thread                                  _encoder;
+
+  /**
+   * True if a burst is in progress.
+   */
+  protected boolean                                 _active;
+
+  /**
+   * If true, teleport to the next ore deposit after each capture.
+   */
+  protected boolean                                 _oreSteps;
+
+  /**
+   * If true, frames are dropped when no buffer is free; otherwise the capture
+   * is deferred until one is.
+   */
+  protected boolean                                 _dropFrames;
+
+  /**
+   * The directory containing the screenshots of the current burst.
+   */
+  protected File                                    _directory;
+
+  /**
+   * Screenshot filename, without extension, to which the frame number is
+   * appended.
+   */
+  protected String                                  _baseName;
+
+  /**
+   * The number of frames to capture.
+   */
+  protected int                                     _count;
+
+  /**
+   * The number of frames captured.
+   */
+  protected int                                     _captured;
+
+  /**
+   * The number of frames dropped because no buffer was free.
+   */
+  protected int                                     _dropped;
+
+  /**
+   * The number of ticks where a capture was deferred because no buffer was
+   * free.
+   */
+  protected int                                     _deferred;
+
+  /**
+   * Time between captures in milliseconds.
+   */
+  protected long                                    _intervalMillis;
+
+  /**
+   * The time when the burst started.
+   */
+  protected long                                    _startTime;
+
+  /**
+   * The time when the next capture is due.
+   */
+  protected long                                    _nextCaptureTime;
+
+  /**
+   * Total time spent reading pixels in the main thread.
+   */
+  protected long                                    _captureNanos;
+
+  /**
+   * The number of frames successfully written, updated by the encoder.
+   */
+  protected final AtomicInteger                     _encoded      = new AtomicInteger();
+
+  /**
+   * The number of frames that could not be written, updated by the encoder.
+   */
+  protected final AtomicInteger                     _failed       = new AtomicInteger();
+
+  /**
+   * Total time spent encoding and writing frames, updated by the encoder.
+   */
+  protected final AtomicLong                        _encodeNanos  = new AtomicLong();
+
+  /**
+   * Upper limit on the burst_buffers configuration setting.
+   */
+  protected static final int                        MAX_BUFFERS   = 16;
+} // class BurstCapture
@@ -98,6 +98,21 @@ public class Configuration
                                                                                   MouseButton.MOUSE_LEFT.getCode(),
                                                                                   "", false, true, false);
 
+  /**
+   * Key bind to move the cursor to the edit under the crosshair, or the edit
+   * nearest the player.
+   */
+  public final ModifiedKeyBinding   KEYBIND_CURSOR_NEAREST = new ModifiedKeyBinding("Cursor to nearest edit:",
+                                                                                    MouseButton.MOUSE_RIGHT.getCode(),
+                                                                                    "", false, true, false);
+
+  /**
+   * Key bind to teleport to the nearest ore deposit not yet teleported to.
+   */
+  public final ModifiedKeyBinding   KEYBIND_TP_NEAREST   = new ModifiedKeyBinding("TP to nearest unvisited ore:",
+                                                                                  MouseButton.MOUSE_MIDDLE.getCode(),
+                                                                                  "", true, false, false);
+
   // --------------------------------------------------------------------------
   /**
    * Load the configuration file.
@@ -131,6 +146,7 @@ public class Configuration
       _enabled = (Boolean) dom.get("enabled");
       // Avoid outputting a message in the client here:
       Log.setDebug((Boolean) dom.get("debug"));
+      Log.setJson((Boolean) dom.get("log_json"));
       _autoPage = (Boolean) dom.get("auto_page");
       _regionInfoTimeoutSeconds = ((Number) dom.get("region_info_timeout")).doubleValue();
       _vectorsShown = (Boolean) dom.get("vectors_shown");
@@ -139,7 +155,12 @@ public class Configuration
       _groupingOresInCreative = (Boolean) dom.get("group_ores_in_creative");
       _teleportCommand = (String) dom.get("teleport_command");
       _chatTimeoutSeconds = (Double) dom.get("chat_timeout");
+      _chatBurst = Math.max(1, (Integer) dom.get("chat_burst"));
       _maxAutoPages = (Integer) dom.get("max_auto_pages");
+      _autoPageWindow = Math.max(1, (Integer) dom.get("auto_page_window"));
+      _queryCache = (Boolean) dom.get("query_cache");
+      _journalDays = Math.max(0, (Integer) dom.get("journal_days"));
+      _stats = (Boolean) dom.get("stats");
       _preCount = (Integer) dom.get("pre_count");
       _postCount = (Integer) dom.get("post_count");
       _watsonPrefix = (String) dom.get("watson_prefix");
@@ -151,6 +172,11 @@ public class Configuration
       _timeOrderedDeposits = (Boolean) dom.get("time_ordered_deposits");
       _vectorLength = ((Double) dom.get("vector_length")).floatValue();
       _useChatHighlights = ((Boolean) dom.get("chat_highlights"));
+      _burstCount = (Integer) dom.get("burst_count");
+      _burstIntervalSeconds = ((Number) dom.get("burst_interval")).doubleValue();
+      _burstBuffers = Math.max(1, Math.min(BurstCapture.MAX_BUFFERS, (Integer) dom.get("burst_buffers")));
+      _burstDrop = (Boolean) dom.get("burst_drop");
+      _hoverHighlight = (Boolean) dom.get("hover_highlight");
 
       for (Entry<String, ModifiedKeyBinding> entry : getKeyBindingsMap().entrySet())
       {
@@ -180,6 +206,7 @@ public class Configuration
       HashMap<String, Object> dom = new HashMap<String, Object>();
       dom.put("enabled", isEnabled());
       dom.put("debug", isDebug());
+      dom.put("log_json", isLogJson());
       dom.put("auto_page", isAutoPage());
       dom.put("region_info_timeout", getRegionInfoTimeoutSeconds());
       dom.put("vectors_shown", getVectorsShown());
@@ -188,7 +215,12 @@ public class Configuration
       dom.put("group_ores_in_creative", isGroupingOresInCreative());
       dom.put("teleport_command", getTeleportCommand());
       dom.put("chat_timeout", getChatTimeoutSeconds());
+      dom.put("chat_burst", getChatBurst());
       dom.put("max_auto_pages", getMaxAutoPages());
+      dom.put("auto_page_window", getAutoPageWindow());
+      dom.put("query_cache", isQueryCache());
+      dom.put("journal_days", getJournalDays());
+      dom.put("stats", isStats());
       dom.put("pre_count", getPreCount());
       dom.put("post_count", getPostCount());
       dom.put("watson_prefix", getWatsonPrefix());
@@ -200,6 +232,11 @@ public class Configuration
       dom.put("time_ordered_deposits", _timeOrderedDeposits);
       dom.put("vector_length", (double) _vectorLength);
       dom.put("chat_highlights", _useChatHighlights);
+      dom.put("burst_count", _burstCount);
+      dom.put("burst_interval", _burstIntervalSeconds);
+      dom.put("burst_buffers", _burstBuffers);
+      dom.put("burst_drop", _burstDrop);
+      dom.put("hover_highlight", _hoverHighlight);
 
       for (Entry<String, ModifiedKeyBinding> entry : getKeyBindingsMap().entrySet())
       {
@@ -283,6 +320,31 @@ public class Configuration
     return Log.isDebug();
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Enable or disable logging as JSON objects to "log.jsonl", in addition to
+   * the plain text log.
+   *
+   * @param enabled if true, messages are also logged as JSON objects.
+   */
+  public void setLogJson(boolean enabled)
+  {
+    Log.setJson(enabled);
+    Chat.localOutput("JSON logging " + (enabled ? "enabled." : "disabled."));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if messages are also logged as JSON objects.
+   *
+   * @return true if messages are also logged as JSON objects.
+   */
+  public boolean isLogJson()
+  {
+    return Log.isJson();
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Enable or disable automatic paging through "/lb coords" results, up to 3
@@ -512,6 +574,35 @@ public class Configuration
     return _chatTimeoutSeconds;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Set the maximum number of programmatically sent chat messages that can be
+   * sent together, after a quiet period, without waiting for the chat timeout
+   * between them.
+   *
+   * @param burst the number of messages; at least 1.
+   */
+  public void setChatBurst(int burst)
+  {
+    _chatBurst = Math.max(1, burst);
+    Chat.localOutput(String.format(Locale.US,
+                                   "Up to %d chat commands can be sent together.", _chatBurst));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the maximum number of programmatically sent chat messages that can
+   * be sent together.
+   *
+   * @return the maximum number of programmatically sent chat messages that can
+   *         be sent together.
+   */
+  public int getChatBurst()
+  {
+    return _chatBurst;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Set the maximum number of pages of "/lb coords" results that will be
@@ -541,6 +632,119 @@ public class Configuration
     return _maxAutoPages;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Set the number of "/lb page #" requests that can be awaiting results at
+   * once when automatically stepping through "/lb coords" results.
+   *
+   * @param window the number of pages requested ahead; at least 1.
+   */
+  public void setAutoPageWindow(int window)
+  {
+    _autoPageWindow = Math.max(1, window);
+    Chat.localOutput(String.format(Locale.US,
+                                   "Up to %d pages of \"/lb coords\" results will be requested ahead.",
+                                   _autoPageWindow));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of "/lb page #" requests that can be awaiting results at
+   * once when automatically stepping through "/lb coords" results.
+   *
+   * @return the number of pages requested ahead.
+   */
+  public int getAutoPageWindow()
+  {
+    return _autoPageWindow;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Enable or disable answering repeated "/lb ... coords" queries from the
+   * results of earlier queries.
+   *
+   * @param enabled if true, repeated queries are answered from cached results.
+   */
+  public void setQueryCache(boolean enabled)
+  {
+    _queryCache = enabled;
+    Chat.localOutput("Query result caching " + (enabled ? "enabled." : "disabled."));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if repeated "/lb ... coords" queries are answered from the
+   * results of earlier queries.
+   *
+   * @return true if repeated queries are answered from cached results.
+   */
+  public boolean isQueryCache()
+  {
+    return _queryCache;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the number of days that edits are kept in the journal of each server
+   * and dimension, so that they are restored in later sessions.
+   *
+   * @param days the number of days; 0 disables the journal.
+   */
+  public void setJournalDays(int days)
+  {
+    _journalDays = Math.max(0, days);
+    if (_journalDays == 0)
+    {
+      Chat.localOutput("Edits will not be kept between sessions.");
+    }
+    else
+    {
+      Chat.localOutput(String.format(Locale.US, "Edits will be kept between sessions for %d days.", _journalDays));
+    }
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of days that edits are kept in the journal of each
+   * server and dimension.
+   *
+   * @return the number of days; 0 if the journal is disabled.
+   */
+  public int getJournalDays()
+  {
+    return _journalDays;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Enable or disable the collection of the performance statistics shown by
+   * "/w stats".
+   *
+   * @param enabled if true, statistics are collected.
+   */
+  public void setStats(boolean enabled)
+  {
+    _stats = enabled;
+    Chat.localOutput("Statistics collection " + (enabled ? "enabled." : "disabled."));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the performance statistics shown by "/w stats" are
+   * collected.
+   *
+   * @return true if statistics are collected.
+   */
+  public boolean isStats()
+  {
+    return _stats;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Set the number of edits to fetch from LogBlock when "/w pre" is run.
@@ -881,6 +1085,139 @@ public class Configuration
     return _useChatHighlights;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Set the default number of screenshots taken by "/w burst".
+   *
+   * @param count the number of screenshots.
+   */
+  public void setBurstCount(int count)
+  {
+    _burstCount = count;
+    Chat.localOutput(String.format(Locale.US,
+                                   "By default, \"/w burst\" will take %d screenshots.", _burstCount));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the default number of screenshots taken by "/w burst".
+   *
+   * @return the default number of screenshots taken by "/w burst".
+   */
+  public int getBurstCount()
+  {
+    return _burstCount;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the time between screenshots in a burst, in seconds.
+   *
+   * @param seconds the interval in seconds.
+   */
+  public void setBurstIntervalSeconds(double seconds)
+  {
+    if (seconds < 0.0)
+    {
+      seconds = 0.0;
+    }
+    _burstIntervalSeconds = seconds;
+    Chat.localOutput(String.format(Locale.US,
+                                   "Burst screenshot interval set to %.2f seconds.", seconds));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time between screenshots in a burst, in seconds.
+   *
+   * @return the time between screenshots in a burst, in seconds.
+   */
+  public double getBurstIntervalSeconds()
+  {
+    return _burstIntervalSeconds;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the number of screen-sized buffers that burst screenshots can be
+   * captured into while earlier screenshots are still being written.
+   *
+   * @param buffers the number of buffers, from 1 to 16.
+   */
+  public void setBurstBuffers(int buffers)
+  {
+    _burstBuffers = Math.max(1, Math.min(BurstCapture.MAX_BUFFERS, buffers));
+    Chat.localOutput(String.format(Locale.US,
+                                   "Up to %d burst screenshots can be waiting to be written.", _burstBuffers));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of screen-sized buffers used by burst screenshots.
+   *
+   * @return the number of screen-sized buffers used by burst screenshots.
+   */
+  public int getBurstBuffers()
+  {
+    return _burstBuffers;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set whether burst screenshots are dropped, rather than delayed, when
+   * screenshots are being taken faster than they can be written.
+   *
+   * @param drop if true, drop screenshots; otherwise delay them.
+   */
+  public void setBurstDrop(boolean drop)
+  {
+    _burstDrop = drop;
+    Chat.localOutput(_burstDrop
+      ? "Burst screenshots will be dropped when the disk can't keep up."
+      : "Burst screenshots will be delayed when the disk can't keep up.");
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if burst screenshots are dropped, rather than delayed, when
+   * screenshots are being taken faster than they can be written.
+   *
+   * @return true if burst screenshots are dropped rather than delayed.
+   */
+  public boolean isBurstDrop()
+  {
+    return _burstDrop;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set whether the edit under the crosshair is highlighted.
+   *
+   * @param enabled if true, highlight the edit under the crosshair.
+   */
+  public void setHoverHighlight(boolean enabled)
+  {
+    _hoverHighlight = enabled;
+    Chat.localOutput("Highlighting of the edit under the crosshair "
+                     + (enabled ? "enabled." : "disabled."));
+    save();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the edit under the crosshair is highlighted.
+   *
+   * @return true if the edit under the crosshair is highlighted.
+   */
+  public boolean isHoverHighlight()
+  {
+    return _hoverHighlight;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Return all {@link ModifiedKeyBindings} in the order they should be listed
@@ -908,6 +1245,7 @@ public class Configuration
       MapValidatorNode root = new MapValidatorNode();
       root.addChild("enabled", new TypeValidatorNode(Boolean.class, true, true));
       root.addChild("debug", new TypeValidatorNode(Boolean.class, true, false));
+      root.addChild("log_json", new TypeValidatorNode(Boolean.class, true, false));
       root.addChild("auto_page", new TypeValidatorNode(Boolean.class, true, true));
       root.addChild("region_info_timeout", new TypeValidatorNode(Double.class, true, 5.0));
       root.addChild("vectors_shown", new TypeValidatorNode(Boolean.class, true, true));
@@ -919,7 +1257,12 @@ public class Configuration
 
       root.addChild("teleport_command", new TypeValidatorNode(String.class, true, "/tppos %g %d %g"));
       root.addChild("chat_timeout", new TypeValidatorNode(Double.class, true, 0.1));
+      root.addChild("chat_burst", new TypeValidatorNode(Integer.class, true, 1));
       root.addChild("max_auto_pages", new TypeValidatorNode(Integer.class, true, 10));
+      root.addChild("auto_page_window", new TypeValidatorNode(Integer.class, true, 1));
+      root.addChild("query_cache", new TypeValidatorNode(Boolean.class, true, true));
+      root.addChild("journal_days", new TypeValidatorNode(Integer.class, true, 7));
+      root.addChild("stats", new TypeValidatorNode(Boolean.class, true, false));
       root.addChild("pre_count", new TypeValidatorNode(Integer.class, true, 45));
       root.addChild("post_count", new TypeValidatorNode(Integer.class, true, 45));
       root.addChild("watson_prefix", new TypeValidatorNode(String.class, true, "w"));
@@ -932,6 +1275,11 @@ public class Configuration
       root.addChild("vector_length", new TypeValidatorNode(Double.class, true, 4.0));
 
       root.addChild("chat_highlights", new TypeValidatorNode(Boolean.class, true, false));
+      root.addChild("burst_count", new TypeValidatorNode(Integer.class, true, 10));
+      root.addChild("burst_interval", new TypeValidatorNode(Double.class, true, 1.0));
+      root.addChild("burst_buffers", new TypeValidatorNode(Integer.class, true, 4));
+      root.addChild("burst_drop", new TypeValidatorNode(Boolean.class, true, false));
+      root.addChild("hover_highlight", new TypeValidatorNode(Boolean.class, true, false));
 
       for (Entry<String, ModifiedKeyBinding> entry : getKeyBindingsMap().entrySet())
       {
@@ -960,6 +1308,8 @@ public class Configuration
     _bindings.add(KEYBIND_CURSOR_NEXT);
     _bindings.add(KEYBIND_CURSOR_PREV);
     _bindings.add(KEYBIND_TP_CURSOR);
+    _bindings.add(KEYBIND_CURSOR_NEAREST);
+    _bindings.add(KEYBIND_TP_NEAREST);
   } // ctor
 
   // --------------------------------------------------------------------------
@@ -1066,12 +1416,40 @@ public class Configuration
    */
   protected double                        _chatTimeoutSeconds       = 0.1;
 
+  /**
+   * The maximum number of programmatically sent chat messages that can be sent
+   * together, after a quiet period.
+   */
+  protected int                           _chatBurst                = 1;
+
   /**
    * The maximum number of pages of "/lb coords" results that will be
    * automatically stepped through by issuing "/lb page #" commands.
    */
   protected int                           _maxAutoPages             = 10;
 
+  /**
+   * The number of "/lb page #" requests that can be awaiting results at once.
+   */
+  protected int                           _autoPageWindow           = 1;
+
+  /**
+   * If true, repeated "/lb ... coords" queries are answered from the results of
+   * earlier queries.
+   */
+  protected boolean                       _queryCache               = true;
+
+  /**
+   * The number of days that edits are kept in the journal of each server and
+   * dimension; 0 disables the journal.
+   */
+  protected int                           _journalDays              = 7;
+
+  /**
+   * If true, the performance statistics shown by "/w stats" are collected.
+   */
+  protected boolean                       _stats                    = false;
+
   /**
    * The number of edits to fetch from LogBlock when "/w pre" is run.
    */
@@ -1134,6 +1512,33 @@ public class Configuration
    */
   protected boolean                       _useChatHighlights        = false;
 
+  /**
+   * The default number of screenshots taken by "/w burst".
+   */
+  protected int                           _burstCount               = 10;
+
+  /**
+   * The time between screenshots in a burst, in seconds.
+   */
+  protected double                        _burstIntervalSeconds     = 1.0;
+
+  /**
+   * The number of screen-sized buffers that burst screenshots are captured
+   * into.
+   */
+  protected int                           _burstBuffers             = 4;
+
+  /**
+   * If true, burst screenshots are dropped when no buffer is free; otherwise
+   * they are delayed.
+   */
+  protected boolean                       _burstDrop                = false;
+
+  /**
+   * If true, the edit under the crosshair is highlighted every frame.
+   */
+  protected boolean                       _hoverHighlight           = false;
+
   /**
    * All {@link ModifiedKeyBindings} in the order they should be listed in the
    * configuration panel.
@@ -0,0 +1,280 @@
+package watson;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import watson.chat.Chat;
+import watson.chat.ChatHighlighter;
+import watson.db.BlockTypeRegistry;
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * Watches the mod directory for changes to "blocks.yml" and
+ * "chathighlights.yml" and reloads them, so that colours and highlights can be
+ * adjusted without restarting the client.
+ *
+ * The watcher runs in its own daemon thread, which also parses the changed
+ * file; the reloaded settings are swapped in by a task in the
+ * {@link SyncTaskQueue}. Editors often write a file in several steps, so a
+ * reload only happens once the file has been quiet for DEBOUNCE_MILLIS, and
+ * only if its contents have actually changed.
+ */
+public class ConfigurationWatcher
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Single instance of this class.
+   */
+  public static final ConfigurationWatcher instance = new ConfigurationWatcher();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Start watching the mod directory, if not already doing so.
+   */
+  public synchronized void start()
+  {
+    if (_thread != null)
+    {
+      return;
+    }
+
+    for (String fileName : WATCHED_FILES)
+    {
+      noteWritten(fileName);
+    }
+
+    try
+    {
+      final WatchService watcher = FileSystems.getDefault().newWatchService();
+      Controller.getModDirectory().toPath().register(watcher,
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY,
+        StandardWatchEventKinds.ENTRY_DELETE);
+
+      _thread = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          watch(watcher);
+        }
+      }, "Watson Configuration Watcher");
+      _thread.setDaemon(true);
+      _thread.start();
+    }
+    catch (Exception ex)
+    {
+      Log.exception(Level.WARNING, "unable to watch configuration files for changes", ex);
+    }
+  } // start
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record the current contents of a watched file, so that a change
+   * notification caused by Watson writing that content is ignored.
+   *
+   * @param fileName the name of the file in the mod directory.
+   */
+  public void noteWritten(String fileName)
+  {
+    byte[] digest = digest(fileName);
+    synchronized (_digests)
+    {
+      _digests.put(fileName, digest);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Wait for and handle changes to watched files until the WatchService stops
+   * working.
+   *
+   * @param watcher the WatchService.
+   */
+  protected void watch(WatchService watcher)
+  {
+    LinkedHashSet<String> changed = new LinkedHashSet<String>();
+    long deadline = 0;
+    for (;;)
+    {
+      WatchKey key;
+      try
+      {
+        // Once a watched file has changed, wait until there have been no
+        // further events for watched files for DEBOUNCE_MILLIS before
+        // reloading. Events for other files, like the log, don't delay it.
+        if (changed.isEmpty())
+        {
+          key = watcher.take();
+        }
+        else
+        {
+          long remaining = deadline - System.currentTimeMillis();
+          key = (remaining > 0) ? watcher.poll(remaining, TimeUnit.MILLISECONDS) : null;
+        }
+      }
+      catch (InterruptedException ex)
+      {
+        return;
+      }
+
+      if (key == null)
+      {
+        for (String fileName : changed)
+        {
+          reloadIfChanged(fileName);
+        }
+        changed.clear();
+        continue;
+      }
+
+      for (WatchEvent<?> event : key.pollEvents())
+      {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+        {
+          changed.addAll(Arrays.asList(WATCHED_FILES));
+          deadline = System.currentTimeMillis() + DEBOUNCE_MILLIS;
+        }
+        else
+        {
+          String fileName = ((Path) event.context()).getFileName().toString();
+          if (Arrays.asList(WATCHED_FILES).contains(fileName))
+          {
+            changed.add(fileName);
+            deadline = System.currentTimeMillis() + DEBOUNCE_MILLIS;
+          }
+        }
+      }
+
+      if (!key.reset())
+      {
+        Log.warning("the mod directory can no longer be watched for configuration changes");
+        return;
+      }
+    } // for
+  } // watch
+
+  // --------------------------------------------------------------------------
+  /**
+   * Reload the specified file if its contents differ from when it was last
+   * loaded or written.
+   *
+   * @param fileName the name of the file in the mod directory.
+   */
+  protected void reloadIfChanged(String fileName)
+  {
+    byte[] digest = digest(fileName);
+    synchronized (_digests)
+    {
+      if (Arrays.equals(digest, _digests.get(fileName)))
+      {
+        return;
+      }
+      _digests.put(fileName, digest);
+    }
+
+    Log.info("reloading " + fileName);
+    if (fileName.equals(BlockTypeRegistry.BLOCK_TYPES_FILE))
+    {
+      BlockTypeRegistry.instance.reloadBlockTypes();
+    }
+    else if (fileName.equals(ChatHighlighter.CHAT_HIGHLIGHTS_FILE))
+    {
+      Chat.getChatHighlighter().reloadHighlights();
+    }
+  } // reloadIfChanged
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the SHA-1 digest of a file in the mod directory, or null if it
+   * doesn't exist or can't be read.
+   *
+   * @param fileName the name of the file.
+   * @return the digest, or null.
+   */
+  protected static byte[] digest(String fileName)
+  {
+    File file = new File(Controller.getModDirectory(), fileName);
+    if (!file.canRead())
+    {
+      return null;
+    }
+
+    try
+    {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      InputStream in = new FileInputStream(file);
+      try
+      {
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) > 0)
+        {
+          digest.update(buffer, 0, count);
+        }
+      }
+      finally
+      {
+        in.close();
+      }
+      return digest.digest();
+    }
+    catch (IOException ex)
+    {
+      return null;
+    }
+    catch (Exception ex)
+    {
+      Log.exception(Level.WARNING, "error computing digest of " + fileName, ex);
+      return null;
+    }
+  } // digest
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor to enforce singleton pattern.
+   */
+  private ConfigurationWatcher()
+  {
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The names of the files, in the mod directory, that are reloaded when they
+   * change.
+   */
+  protected static final String[]         WATCHED_FILES   = {BlockTypeRegistry.BLOCK_TYPES_FILE,
+                                                            ChatHighlighter.CHAT_HIGHLIGHTS_FILE};
+
+  /**
+   * The time in milliseconds that a file must be unchanged before it is
+   * reloaded.
+   */
+  protected static final long             DEBOUNCE_MILLIS = 500;
+
+  /**
+   * The thread that waits for changes, or null if not started.
+   */
+  protected Thread                        _thread;
+
+  /**
+   * Map from file name to the digest of its contents when last loaded or
+   * written (null if it didn't exist).
+   */
+  protected final HashMap<String, byte[]> _digests        = new HashMap<String, byte[]>();
+} // class ConfigurationWatcher
@@ -5,13 +5,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -21,19 +21,24 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.client.multiplayer.ServerData;
 import net.minecraft.client.renderer.BufferBuilder;
 import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.Vec3d;
 
 import org.lwjgl.opengl.GL11;
+import watson.analysis.PageFetcher;
 import watson.chat.Chat;
 import watson.cli.AnnoCommand;
 import watson.cli.CalcCommand;
-import watson.cli.CaseInsensitivePrefixFileFilter;
 import watson.cli.ClientCommandManager;
 import watson.cli.HighlightCommand;
 import watson.cli.WatsonCommand;
 import watson.db.BlockEdit;
 import watson.db.BlockEditSet;
 import watson.db.BlockTypeRegistry;
+import watson.db.CompactEditSet;
 import watson.db.Filters;
+import watson.db.Region;
+import watson.db.TimeStamp;
 import watson.debug.Log;
 import watson.gui.WatsonGuiScreen;
 // import watson.macro.MacroIntegration;
@@ -60,6 +65,8 @@ public class Controller
     createBlockEditDirectory();
     BlockTypeRegistry.instance.loadBlockTypes();
     Chat.getChatHighlighter().loadHighlights();
+    ConfigurationWatcher.instance.start();
+    SaveFileCatalogue.instance.start();
 
     // Initialise the commands.
     ClientCommandManager.instance.registerCommand(new WatsonCommand());
@@ -87,14 +94,9 @@ public class Controller
       public void run()
       {
         Date now = new Date();
-        Configuration config = Configuration.instance;
         String player = (String) Controller.instance.getVariables().get("player");
-        String subdirectoryName = (player != null && config.isSsPlayerDirectory())
-          ? player
-          : config.getSsDateDirectory().format(now).toString();
         Minecraft mc = Minecraft.getMinecraft();
-        File screenshotsDir = new File(mc.mcDataDir, "screenshots");
-        File subdirectory = new File(screenshotsDir, subdirectoryName);
+        File subdirectory = Screenshot.getScreenshotDirectory(player, now);
         File file = Screenshot.getUniqueFilename(subdirectory, player, now);
         Chat.localChat(Screenshot.save(file, mc.displayWidth, mc.displayHeight));
       }
@@ -148,7 +150,7 @@ public class Controller
         if (_selection != null && _selection.playerEditSet != null)
         {
           BlockEdit edit = _selection.playerEditSet.getEditAfter(_selection);
-          if (edit != null)
+          if (edit != null && getBlockEditSet().isInTimeWindow(edit))
           {
             selectBlockEdit(edit);
           }
@@ -166,7 +168,7 @@ public class Controller
         if (_selection != null && _selection.playerEditSet != null)
         {
           BlockEdit edit = _selection.playerEditSet.getEditBefore(_selection);
-          if (edit != null)
+          if (edit != null && getBlockEditSet().isInTimeWindow(edit))
           {
             selectBlockEdit(edit);
           }
@@ -186,6 +188,38 @@ public class Controller
       }
     });
 
+    config.KEYBIND_CURSOR_NEAREST.setHandler(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        BlockEdit edit = findEditUnderCrosshair();
+        if (edit == null)
+        {
+          Entity viewer = Minecraft.getMinecraft().getRenderViewEntity();
+          if (viewer != null)
+          {
+            List<BlockEdit> nearest = getBlockEditSet().findNearestEdits(viewer.posX, viewer.posY, viewer.posZ, 1);
+            edit = nearest.isEmpty() ? null : nearest.get(0);
+          }
+        }
+        selectBlockEdit(edit);
+      }
+    });
+
+    config.KEYBIND_TP_NEAREST.setHandler(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        Entity viewer = Minecraft.getMinecraft().getRenderViewEntity();
+        if (viewer != null)
+        {
+          getBlockEditSet().getOreDB().tpNearest(viewer.posX, viewer.posY, viewer.posZ);
+        }
+      }
+    });
+
   } // initialise
 
   // --------------------------------------------------------------------------
@@ -226,13 +260,301 @@ public class Controller
    * Return the current {@link BlockEditSet} under examination.
    *
    * A separate {@link BlockEditSet} is maintained for each dimension
-   * (overworld, nether, end).
+   * (overworld, nether, end) and, once CoreProtect or Prism has named the
+   * world the player is in, for each world of a multi-world server.
    *
    * @return the current {@link BlockEditSet} under examination.
    */
   public BlockEditSet getBlockEditSet()
   {
-    // Compute id of the form: address/dimension
+    // Lookup BlockEditSet or create new mapping if not found.
+    String id = getBlockEditSetId();
+    BlockEditSet edits = _edits.get(id);
+    if (edits == null)
+    {
+      edits = new BlockEditSet();
+      _edits.put(id, edits);
+      openJournal(edits, id);
+    }
+    return edits;
+  } // getBlockEditSet
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the identifier of the current server, dimension and, if known,
+   * world, of the form address/dimension[/world], under which the current
+   * {@link BlockEditSet} is kept.
+   *
+   * @return the identifier of the current server, dimension and world.
+   */
+  public String getBlockEditSetId()
+  {
+    return getBlockEditSetId(getWorld());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the name of the world the player is in, as reported by CoreProtect
+   * or Prism, or null if not yet known.
+   *
+   * @return the name of the current world, or null if not known.
+   */
+  public String getWorld()
+  {
+    return _worlds.get(getDimensionId());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Switch the displayed edits to those of the named world, in the current
+   * server and dimension.
+   *
+   * The edits of the world that was displayed are kept in a
+   * {@link CompactEditSet}, which is not drawn, and the edits of the named
+   * world are expanded from theirs, so no queries need to be repeated.
+   *
+   * @param world the name of the world.
+   */
+  public void setWorld(String world)
+  {
+    String current = getWorld();
+    if (world.equals(current))
+    {
+      Chat.localOutput("Already showing edits in world " + world + ".");
+      return;
+    }
+    if (current == null)
+    {
+      // The edits so far were presumably in the world being named.
+      adoptWorld(world);
+    }
+    else
+    {
+      String currentId = getBlockEditSetId(current);
+      BlockEditSet edits = _edits.remove(currentId);
+      if (edits != null)
+      {
+        edits.closeJournal();
+        if (edits.getBlockEditCount() != 0 || !edits.getAnnotations().isEmpty())
+        {
+          _inactiveWorlds.put(currentId, edits.compact(current));
+        }
+      }
+
+      _worlds.put(getDimensionId(), world);
+      String id = getBlockEditSetId(world);
+      edits = new BlockEditSet();
+      CompactEditSet compact = _inactiveWorlds.remove(id);
+      if (compact != null)
+      {
+        compact.expand(edits);
+      }
+      _edits.put(id, edits);
+      openJournal(edits, id);
+    }
+    _selectionChanged = true;
+    _selection = null;
+    Chat.localOutput(String.format(Locale.US, "Showing %d edits in world %s.",
+      getBlockEditSet().getBlockEditCount(), world));
+  } // setWorld
+
+  // --------------------------------------------------------------------------
+  /**
+   * List the worlds of the current server and dimension that have edits.
+   */
+  public void listWorlds()
+  {
+    String current = getWorld();
+    if (current == null)
+    {
+      Chat.localOutput("The world you are in is not known yet.");
+      listInactiveWorlds();
+      return;
+    }
+
+    Chat.localOutput(String.format(Locale.US, "%s (current): %d edits",
+      current, getBlockEditSet().getBlockEditCount()));
+    listInactiveWorlds();
+  } // listWorlds
+
+  // --------------------------------------------------------------------------
+  /**
+   * List the worlds of the current server and dimension whose edits are not
+   * displayed.
+   */
+  protected void listInactiveWorlds()
+  {
+    String prefix = getDimensionId() + '/';
+    for (Map.Entry<String, CompactEditSet> entry : _inactiveWorlds.entrySet())
+    {
+      CompactEditSet compact = entry.getValue();
+      if (entry.getKey().equals(prefix + compact.getWorld()))
+      {
+        Chat.localOutput(String.format(Locale.US, "%s: %d edits",
+          compact.getWorld(), compact.getBlockEditCount()));
+      }
+    }
+  } // listInactiveWorlds
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit to the set of edits of the world it was made in.
+   *
+   * Edits in the current world, or in an unnamed world, are added to the
+   * current {@link BlockEditSet}. Edits in other worlds of the same server and
+   * dimension are added to that world's {@link CompactEditSet}, where they are
+   * not drawn.
+   *
+   * The world that the player is in is only known from results that must be
+   * in it: Prism inspector results, or lookups limited to a radius around the
+   * player (see {@link #noteLookup(String)}). The callers of this method
+   * switch to that world first. Until then, edits in named worlds are kept
+   * apart, since a global lookup can list edits in any world first.
+   *
+   * @param edit the edit.
+   * @param updateVariables if true, and the edit is in the current world, the
+   *          state variables signifying the selected edit are updated.
+   * @param world the name of the world reported by the logging plugin, or
+   *          null if not reported.
+   */
+  public void addBlockEdit(BlockEdit edit, boolean updateVariables, String world)
+  {
+    String current = getWorld();
+    if (world == null || world.equals(current))
+    {
+      getBlockEditSet().addBlockEdit(edit, updateVariables);
+    }
+    else if (getFilters().isAcceptedPlayer(edit.player))
+    {
+      String id = getBlockEditSetId(world);
+      CompactEditSet compact = _inactiveWorlds.get(id);
+      if (compact == null)
+      {
+        compact = new CompactEditSet(world);
+        _inactiveWorlds.put(id, compact);
+        if (current == null)
+        {
+          Chat.localOutput(String.format(Locale.US,
+            "Edits in world %s are stored separately until you are known to be in it. If you are: /%s world %s",
+            world, Configuration.instance.getWatsonPrefix(), world));
+        }
+        else
+        {
+          Chat.localOutput(String.format(Locale.US,
+            "Edits in world %s are stored separately. To show them: /%s world %s",
+            world, Configuration.instance.getWatsonPrefix(), world));
+        }
+      }
+      compact.addBlockEdit(edit);
+    }
+  } // addBlockEdit
+
+  // --------------------------------------------------------------------------
+  /**
+   * Note a chat message sent to the server: if it is a CoreProtect or Prism
+   * lookup, note whether it is limited to a radius around the player, so that
+   * its results are known to be in the player's world.
+   *
+   * Page requests continue the previous lookup and do not change this.
+   *
+   * @param chat the chat message.
+   */
+  public void noteLookup(String chat)
+  {
+    String trimmed = chat.trim();
+    if (LOOKUP_COMMAND.matcher(trimmed).lookingAt() && !LOOKUP_PAGE.matcher(trimmed).matches())
+    {
+      _localLookup = LOCAL_LOOKUP.matcher(trimmed).find();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the most recent CoreProtect or Prism lookup was limited to
+   * a radius around the player, so that its results are in the player's world.
+   *
+   * @return true if the results of the most recent lookup are in the player's
+   *         world.
+   */
+  public boolean isLocalLookup()
+  {
+    return _localLookup;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Name the world of the current server and dimension, which was not known,
+   * keeping the edits already received as the edits of that world, along with
+   * those that were received for that world by name.
+   *
+   * @param world the name of the world.
+   */
+  protected void adoptWorld(String world)
+  {
+    BlockEditSet edits = _edits.remove(getBlockEditSetId(null));
+    _worlds.put(getDimensionId(), world);
+    String id = getBlockEditSetId(world);
+    if (edits != null)
+    {
+      // Move the journal; opening the new one writes all of the edits to it.
+      File journal = edits.closeJournal();
+      if (journal != null && !journal.delete())
+      {
+        Log.warning("could not delete journal: " + journal);
+      }
+      _edits.put(id, edits);
+      openJournal(edits, id);
+    }
+
+    // Add the edits in the world that were kept apart until it was known.
+    CompactEditSet compact = _inactiveWorlds.remove(id);
+    if (compact != null)
+    {
+      compact.expand(getBlockEditSet());
+    }
+  } // adoptWorld
+
+  // --------------------------------------------------------------------------
+  /**
+   * Restore the edits from previous sessions into a newly created set, and
+   * journal it, if journaling is enabled.
+   *
+   * Single player worlds all have the same id, so they are not journaled.
+   *
+   * @param edits the set of edits.
+   * @param id the identifier of the set's server, dimension and world.
+   */
+  protected void openJournal(BlockEditSet edits, String id)
+  {
+    if (getServerIP() != null && Configuration.instance.getJournalDays() > 0)
+    {
+      edits.openJournal(new File(getJournalDirectory(), id.replaceAll("[^\\w.-]", "_") + ".txt"));
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the identifier of the set of edits of a world in the current server
+   * and dimension.
+   *
+   * @param world the name of the world, or null if not known.
+   * @return the identifier, of the form address/dimension[/world].
+   */
+  protected String getBlockEditSetId(String world)
+  {
+    String id = getDimensionId();
+    return (world == null) ? id : id + '/' + world;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the identifier of the current server and dimension, of the form
+   * address/dimension.
+   *
+   * @return the identifier of the current server and dimension.
+   */
+  protected String getDimensionId()
+  {
     // Note: Minecraft.theWorld.getWorldInfo().getDimension() doesn't update.
     Minecraft mc = Minecraft.getMinecraft();
     StringBuilder idBuilder = new StringBuilder();
@@ -247,17 +569,8 @@ public class Controller
     }
     idBuilder.append('/');
     idBuilder.append(mc.player.dimension);
-    String id = idBuilder.toString();
-
-    // Lookup BlockEditSet or create new mapping if not found.
-    BlockEditSet edits = _edits.get(id);
-    if (edits == null)
-    {
-      edits = new BlockEditSet();
-      _edits.put(id, edits);
-    }
-    return edits;
-  } // getBlockEditSet
+    return idBuilder.toString();
+  } // getDimensionId
 
   // --------------------------------------------------------------------------
   /**
@@ -299,6 +612,7 @@ public class Controller
     {
       BlockEditSet edits = getBlockEditSet();
       int editCount = edits.save(file);
+      SaveFileCatalogue.instance.update(file);
       int annoCount = edits.getAnnotations().size();
       Chat.localOutput(String.format(Locale.US,
                                      "Saved %d edits and %d annotations to %s", editCount, annoCount,
@@ -313,51 +627,68 @@ public class Controller
 
   // --------------------------------------------------------------------------
   /**
-   * Load the set of {@link BlockEdit}s from the specified file.
+   * Load {@link BlockEdit}s from the specified files, merging them into the
+   * current set of edits.
+   *
+   * Files are read one line at a time. Edits that are already loaded, from an
+   * earlier file, an overlapping query or the journal, are skipped, so
+   * overlapping files do not inflate the edit count or the ore deposits.
    *
-   * @param fileName the file name, or the start of the file name (beginning of
-   *          player name), in the BlockEdit saves directory.
+   * @param fileNames the file names, or the starts of the file names
+   *          (beginning of player name), in the BlockEdit saves directory.
    *
    * @TODO: Does this need to be smarter about which dimension/server we're in?
    */
-  public void loadBlockEditFile(String fileName)
+  public void loadBlockEditFiles(String[] fileNames)
   {
-    File file = new File(getBlockEditDirectory(), fileName);
-    if (!file.canRead())
+    BlockEditSet edits = getBlockEditSet();
+    for (String fileName : fileNames)
     {
-      // Try to find a file that begins with fileName, i.e. treat that as the
-      // player name.
-      File[] files = getBlockEditFileList(fileName);
-      if (files.length > 0)
+      File file = new File(getBlockEditDirectory(), fileName);
+      if (!file.canRead())
       {
-        // Chose the most recent matching file.
-        file = files[files.length - 1];
+        // Try to find a file that begins with fileName, i.e. treat that as the
+        // player name.
+        File[] files = getBlockEditFileList(fileName);
+        if (files.length > 0)
+        {
+          // Chose the most recent matching file.
+          file = files[files.length - 1];
+        }
       }
-    }
 
-    if (file.canRead())
-    {
-      try
+      if (file.canRead())
       {
-        BlockEditSet edits = getBlockEditSet();
-        int editCount = edits.load(file);
-        int annoCount = edits.getAnnotations().size();
-        Chat.localOutput(String.format(Locale.US,
-                                       "Loaded %d edits and %d annotations from %s", editCount, annoCount,
-                                       file.getName()));
+        try
+        {
+          int oldEditCount = edits.getBlockEditCount();
+          int oldAnnoCount = edits.getAnnotations().size();
+          int readCount = edits.load(file);
+          int editCount = edits.getBlockEditCount() - oldEditCount;
+          int annoCount = edits.getAnnotations().size() - oldAnnoCount;
+          Chat.localOutput(String.format(Locale.US,
+                                         "Loaded %d edits and %d annotations from %s", editCount, annoCount,
+                                         file.getName()));
+          if (readCount > editCount)
+          {
+            Chat.localOutput(String.format(Locale.US,
+                                           "Skipped %d edits that were already loaded or filtered out.",
+                                           readCount - editCount));
+          }
+        }
+        catch (Exception ex)
+        {
+          Log.exception(Level.SEVERE, "error loading BlockEditSet from " + file,
+                        ex);
+          Chat.localError("The file " + fileName + " could not be loaded.");
+        }
       }
-      catch (Exception ex)
+      else
       {
-        Log.exception(Level.SEVERE, "error loading BlockEditSet from " + file,
-                      ex);
-        Chat.localError("The file " + fileName + " could not be loaded.");
+        Chat.localError("Can't open " + fileName + " to read.");
       }
-    }
-    else
-    {
-      Chat.localError("Can't open " + fileName + " to read.");
-    }
-  } // loadBlockEditFile
+    } // for
+  } // loadBlockEditFiles
 
   // --------------------------------------------------------------------------
   /**
@@ -369,23 +700,23 @@ public class Controller
    */
   public void listBlockEditFiles(String prefix, int page)
   {
-    File[] files = getBlockEditFileList(prefix);
-    if (files.length == 0)
+    List<SaveFileCatalogue.Entry> files = SaveFileCatalogue.instance.find(prefix);
+    if (files.isEmpty())
     {
       Chat.localOutput("No matching files.");
     }
     else
     {
-      if (files.length == 1)
+      if (files.size() == 1)
       {
         Chat.localOutput("1 matching file:");
       }
       else
       {
-        Chat.localOutput(files.length + " matching files:");
+        Chat.localOutput(files.size() + " matching files:");
       }
 
-      int pages = (files.length + PAGE_LINES - 1) / PAGE_LINES;
+      int pages = (files.size() + PAGE_LINES - 1) / PAGE_LINES;
       if (page > pages)
       {
         Chat.localError(String.format(Locale.US, "The highest page number is %d.",
@@ -397,11 +728,20 @@ public class Controller
 
         // page <= pages
         int start = (page - 1) * PAGE_LINES;
-        int end = Math.min(files.length, page * PAGE_LINES);
+        int end = Math.min(files.size(), page * PAGE_LINES);
 
         for (int i = start; i < end; ++i)
         {
-          Chat.localOutput("    " + files[i].getName());
+          SaveFileCatalogue.Entry file = files.get(i);
+          if (file.editCount > 0)
+          {
+            Chat.localOutput(String.format(Locale.US, "    %s (%d edits, %s to %s)", file.name, file.editCount,
+              TimeStamp.formatMonthDayTime(file.firstEditTime), TimeStamp.formatMonthDayTime(file.lastEditTime)));
+          }
+          else
+          {
+            Chat.localOutput("    " + file.name);
+          }
         }
 
         Chat.localOutput(String.format(Locale.US, "Page %d of %d.", page, pages));
@@ -432,6 +772,7 @@ public class Controller
       {
         if (file.delete())
         {
+          SaveFileCatalogue.instance.update(file);
           Chat.localOutput("Deleted " + file.getName());
         }
         else
@@ -496,21 +837,19 @@ public class Controller
       // Keep track of total files deleted, and number of failures to delete.
       int deleted = 0;
       int failed = 0;
-      File[] files = getBlockEditFileList("*");
-      for (File file : files)
+      for (SaveFileCatalogue.Entry entry : SaveFileCatalogue.instance.findModifiedBefore(expiryTime))
       {
-        if (file.lastModified() < expiryTime)
+        File file = entry.getFile();
+        if (file.delete())
         {
-          if (file.delete())
-          {
-            ++deleted;
-            Chat.localOutput("Deleted " + file.getName());
-          }
-          else
-          {
-            ++failed;
-            Chat.localError("Could not delete " + file.getName());
-          }
+          ++deleted;
+          SaveFileCatalogue.instance.update(file);
+          Chat.localOutput("Deleted " + file.getName());
+        }
+        else
+        {
+          ++failed;
+          Chat.localError("Could not delete " + file.getName());
         }
       } // for
 
@@ -543,16 +882,20 @@ public class Controller
   // --------------------------------------------------------------------------
   /**
    * Return an array of {@link BlockEditSet} save files whose names begin with
-   * the specified prefix, matched case insensitively.
+   * the specified prefix, matched case insensitively, from the
+   * {@link SaveFileCatalogue}.
    *
    * @param prefix the case-insensitive prefix.
    * @return the array of files.
    */
   public File[] getBlockEditFileList(String prefix)
   {
-    createBlockEditDirectory();
-    File[] files = getBlockEditDirectory().listFiles(new CaseInsensitivePrefixFileFilter(prefix));
-    Arrays.sort(files);
+    List<SaveFileCatalogue.Entry> entries = SaveFileCatalogue.instance.find(prefix);
+    File[] files = new File[entries.size()];
+    for (int i = 0; i < files.length; ++i)
+    {
+      files[i] = entries.get(i).getFile();
+    }
     return files;
   }
 
@@ -706,10 +1049,79 @@ public class Controller
 
   // --------------------------------------------------------------------------
   /**
-   * Draw a cursor at the currently selected position.
+   * Return the region selected with "/w select", or null if there is none.
+   *
+   * @return the selected region, or null.
+   */
+  public Region getRegion()
+  {
+    return _region;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Select a region for "/w stats region".
+   *
+   * @param region the region, or null to clear the selection.
+   */
+  public void setRegion(Region region)
+  {
+    _region = region;
+    if (region != null)
+    {
+      Chat.localOutput("Selected " + region + ".");
+    }
+    else
+    {
+      Chat.localOutput("The region selection was cleared.");
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the nearest drawn edit that lies along the line of sight of the
+   * player, or null if there is none within MAX_CROSSHAIR_DISTANCE blocks.
+   *
+   * Edits are found whether or not they are hidden behind other blocks.
+   *
+   * @return the edit under the crosshair, or null.
+   */
+  public BlockEdit findEditUnderCrosshair()
+  {
+    Entity viewer = Minecraft.getMinecraft().getRenderViewEntity();
+    if (viewer == null)
+    {
+      return null;
+    }
+    Vec3d eyes = viewer.getPositionEyes(1.0f);
+    Vec3d look = viewer.getLook(1.0f);
+    return getBlockEditSet().findEditAlongRay(eyes.x, eyes.y, eyes.z,
+      look.x, look.y, look.z, MAX_CROSSHAIR_DISTANCE);
+  } // findEditUnderCrosshair
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw a cursor at the currently selected position and the bounding box of
+   * the selected region, and, if the hover_highlight setting is on, highlight
+   * the edit under the crosshair.
    */
   public void drawSelection()
   {
+    if (Configuration.instance.isHoverHighlight())
+    {
+      BlockEdit hover = findEditUnderCrosshair();
+      if (hover != null)
+      {
+        GL.glColor4f(255 / 255f, 255 / 255f, 255 / 255f, 128);
+        GL.glLineWidth(3.0f);
+        drawBox(hover.x - HOVER_MARGIN, hover.y - HOVER_MARGIN, hover.z - HOVER_MARGIN,
+          hover.x + 1 + HOVER_MARGIN, hover.y + 1 + HOVER_MARGIN, hover.z + 1 + HOVER_MARGIN);
+      }
+    }
+    if (_region != null && getDisplaySettings().isSelectionShown())
+    {
+      drawRegion();
+    }
     if (_selection != null && getDisplaySettings().isSelectionShown())
     {
       Tessellator tess = Tessellator.getInstance();
@@ -734,7 +1146,7 @@ public class Controller
       {
 
         BlockEdit predecessor = _selection.playerEditSet.getEditBefore(_selection);
-        if (predecessor != null)
+        if (predecessor != null && getBlockEditSet().isInTimeWindow(predecessor))
         {
           vb.begin(GL.GL_LINES, GL.VF_POSITION);
           GL.glColor4f(255 / 255f, 0 / 255f, 255 / 255f, 128);
@@ -750,6 +1162,53 @@ public class Controller
     }
   } // drawSelection
 
+  // --------------------------------------------------------------------------
+  /**
+   * Draw the edges of the bounding box of the selected region.
+   */
+  protected void drawRegion()
+  {
+    GL.glColor4f(255 / 255f, 0 / 255f, 255 / 255f, 128);
+    GL.glLineWidth(2.0f);
+
+    // Block coordinates are inclusive, so the box extends to max + 1.
+    drawBox(_region.getMinX(), _region.getMinY(), _region.getMinZ(),
+      _region.getMaxX() + 1, _region.getMaxY() + 1, _region.getMaxZ() + 1);
+  } // drawRegion
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw the edges of an axis-aligned box in the current colour and line
+   * width.
+   *
+   * @param x1 the minimum x coordinate.
+   * @param y1 the minimum y coordinate.
+   * @param z1 the minimum z coordinate.
+   * @param x2 the maximum x coordinate.
+   * @param y2 the maximum y coordinate.
+   * @param z2 the maximum z coordinate.
+   */
+  protected void drawBox(float x1, float y1, float z1, float x2, float y2, float z2)
+  {
+    Tessellator tess = Tessellator.getInstance();
+    BufferBuilder vb = tess.getBuffer();
+    vb.begin(GL.GL_LINES, GL.VF_POSITION);
+    for (int i = 0; i < 4; ++i)
+    {
+      float y = (i & 1) == 0 ? y1 : y2;
+      float z = (i & 2) == 0 ? z1 : z2;
+      vb.pos(x1, y, z).endVertex();
+      vb.pos(x2, y, z).endVertex();
+      float x = (i & 1) == 0 ? x1 : x2;
+      vb.pos(x, y1, z).endVertex();
+      vb.pos(x, y2, z).endVertex();
+      y = (i & 2) == 0 ? y1 : y2;
+      vb.pos(x, y, z1).endVertex();
+      vb.pos(x, y, z2).endVertex();
+    }
+    tess.draw();
+  } // drawBox
+
   // --------------------------------------------------------------------------
   /**
    * Return true if the selected position has changed since the last time this
@@ -828,7 +1287,18 @@ public class Controller
    */
   public void serverChat(String message)
   {
-    _serverChatQueue.add(message);
+    _chatScheduler.add(message);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the scheduler of programmatically generated chats.
+   *
+   * @return the scheduler of programmatically generated chats.
+   */
+  public ServerChatScheduler getServerChatScheduler()
+  {
+    return _chatScheduler;
   }
 
   // --------------------------------------------------------------------------
@@ -849,24 +1319,45 @@ public class Controller
   /**
    * To prevent Watson's "/w pre" command from automatically issuing /lb page
    * commands at a rate that would annoy the server's spam filter, outgoing
-   * (programmatically generated) chat packets are added to this queue and rate
-   * limited to at most one per Configuration.getChatTimeoutMillis()
-   * milliseconds.
+   * (programmatically generated) chat packets are queued in the
+   * {@link ServerChatScheduler} and rate limited according to the chat_timeout
+   * and chat_burst settings.
    */
   public void processServerChatQueue()
   {
-    // Just in case System.currentTimeMillis() is still relatively expensive...
-    if (!_serverChatQueue.isEmpty())
+    _chatScheduler.process();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Do the work that is done once per tick, in the main thread, whether or not
+   * the player is in game: run synchronous tasks, send scheduled chat, write
+   * journals and advance captures, playback and page fetching.
+   */
+  public void onTick()
+  {
+    SyncTaskQueue.instance.runTasks();
+    processServerChatQueue();
+    flushJournals();
+    BurstCapture.instance.onTick();
+    Playback.instance.onTick();
+    PageFetcher.instance.onTick();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write recently added edits of every server and dimension to their
+   * journals.
+   *
+   * This method should be called from the main thread, once per tick.
+   */
+  public void flushJournals()
+  {
+    for (BlockEditSet edits : _edits.values())
     {
-      long now = System.currentTimeMillis();
-      if (now - _lastServerChatTime >= (long) (1000 * Configuration.instance.getChatTimeoutSeconds()))
-      {
-        _lastServerChatTime = now;
-        String message = _serverChatQueue.poll();
-        immediateServerChat(message);
-      }
+      edits.flushJournal();
     }
-  } // processServerChatQueue
+  }
 
   // --------------------------------------------------------------------------
   /**
@@ -912,12 +1403,15 @@ public class Controller
   /**
    * Return the directory where this mod's data files are stored.
    *
+   * When there is no Minecraft client, as in the benchmarks, the directory is
+   * relative to the current working directory.
+   *
    * @return the directory where this mod's data files are stored.
    */
   public static File getModDirectory()
   {
     Minecraft mc = Minecraft.getMinecraft();
-    return new File(mc.mcDataDir, MOD_SUBDIR);
+    return (mc != null) ? new File(mc.mcDataDir, MOD_SUBDIR) : new File(MOD_SUBDIR);
   }
 
   // --------------------------------------------------------------------------
@@ -931,6 +1425,18 @@ public class Controller
     return new File(getModDirectory(), SAVE_SUBDIR);
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the directory where the journals of edits in each server and
+   * dimension are kept.
+   *
+   * @return the directory where journals are kept.
+   */
+  public static File getJournalDirectory()
+  {
+    return new File(getModDirectory(), JOURNAL_SUBDIR);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Return an input stream that reads the specified file or resource name.
@@ -979,6 +1485,26 @@ public class Controller
    */
   protected static final Pattern          DATE_PATTERN     = Pattern.compile("^(\\d{4})-(\\d{1,2})-(\\d{1,2})$");
 
+  /**
+   * Matches the start of a CoreProtect or Prism lookup command.
+   */
+  protected static final Pattern          LOOKUP_COMMAND   = Pattern.compile("/(co|core|coreprotect|pr|prism)\\s+(l|lookup)\\s",
+                                                             Pattern.CASE_INSENSITIVE);
+
+  /**
+   * Matches a CoreProtect lookup command that requests a page of the previous
+   * results.
+   */
+  protected static final Pattern          LOOKUP_PAGE      = Pattern.compile("/(co|core|coreprotect)\\s+(l|lookup)\\s+\\d+(:\\d+)?",
+                                                             Pattern.CASE_INSENSITIVE);
+
+  /**
+   * Finds a numeric radius parameter in a lookup command, which limits the
+   * lookup to the player's world.
+   */
+  protected static final Pattern          LOCAL_LOOKUP     = Pattern.compile("\\s(r|radius):\\d+(\\s|$)",
+                                                             Pattern.CASE_INSENSITIVE);
+
   /**
    * Cache the version string after it is loaded from a resource.
    */
@@ -996,6 +1522,24 @@ public class Controller
    */
   protected HashMap<String, BlockEditSet> _edits           = new HashMap<String, BlockEditSet>();
 
+  /**
+   * A map from the server address, dimension number and world name to the
+   * compact form of the edits of worlds that are not displayed.
+   */
+  protected HashMap<String, CompactEditSet> _inactiveWorlds  = new HashMap<String, CompactEditSet>();
+
+  /**
+   * True if the most recent CoreProtect or Prism lookup sent was limited to a
+   * radius around the player.
+   */
+  protected volatile boolean              _localLookup;
+
+  /**
+   * A map from the server address and dimension number to the name of the
+   * world the player is in, once known.
+   */
+  protected HashMap<String, String>       _worlds          = new HashMap<String, String>();
+
   /**
    * Determines which edits are stored (in a {@link BlocKEditSet}) and which are
    * ignored.
@@ -1013,15 +1557,10 @@ public class Controller
   protected Calendar                      _calendar        = Calendar.getInstance();
 
   /**
-   * A queue of programmatically generated chats (commands to be sent to the
+   * Schedules programmatically generated chats (commands to be sent to the
    * server).
    */
-  protected ConcurrentLinkedQueue<String> _serverChatQueue = new ConcurrentLinkedQueue<String>();
-
-  /**
-   * The last local time at which a queued up chat was sent to the server.
-   */
-  protected long                          _lastServerChatTime;
+  protected ServerChatScheduler           _chatScheduler   = new ServerChatScheduler();
 
   /**
    * The main package name of the classes of this mod, and also the name of the
@@ -1040,6 +1579,12 @@ public class Controller
    */
   protected static final String           SAVE_SUBDIR      = "saves";
 
+  /**
+   * Subdirectory of the mod specific directory where the journals of edits in
+   * each server and dimension are kept.
+   */
+  protected static final String           JOURNAL_SUBDIR   = "journal";
+
   /**
    * True if the selected edit position has changed.
    */
@@ -1052,4 +1597,21 @@ public class Controller
    * been edited. In that case, the timestamp of the BlockEdit will be 0.
    */
   protected BlockEdit                     _selection;
+
+  /**
+   * The region selected with "/w select", or null if there is none.
+   */
+  protected Region                        _region;
+
+  /**
+   * The maximum distance, in blocks, from the player's eyes to the edit under
+   * the crosshair.
+   */
+  protected static final double           MAX_CROSSHAIR_DISTANCE = 128.0;
+
+  /**
+   * The distance by which the box drawn around the edit under the crosshair
+   * exceeds the block, so that it is not hidden by the edit's outline.
+   */
+  protected static final float            HOVER_MARGIN           = 0.03f;
 } // class Controller
@@ -32,11 +32,13 @@ import org.lwjgl.input.Keyboard;
 import org.lwjgl.opengl.Display;
 import org.lwjgl.opengl.GL11;
 
+import watson.analysis.QueryCache;
 import watson.chat.Chat;
 import watson.chat.ChatProcessor;
 import watson.cli.ClientCommandManager;
 import watson.db.BlockEditSet;
 import watson.debug.Log;
+import watson.debug.Stats;
 import watson.gui.ModifiedKeyBinding;
 import watson.gui.MouseButton;
 import watson.gui.WatsonConfigPanel;
@@ -45,6 +47,7 @@ import com.google.gson.Gson;
 import com.mojang.realmsclient.dto.RealmsServer;
 import com.mumfrey.liteloader.ChatFilter;
 import com.mumfrey.liteloader.Configurable;
+import com.mumfrey.liteloader.HUDRenderListener;
 import com.mumfrey.liteloader.JoinGameListener;
 import com.mumfrey.liteloader.OutboundChatFilter;
 import com.mumfrey.liteloader.PostRenderListener;
@@ -63,7 +66,7 @@ import com.mumfrey.liteloader.transformers.event.EventInfo;
  */
 @ExposableOptions(strategy = ConfigStrategy.Versioned, filename = "watson.json")
 public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable,
-  PostRenderListener, OutboundChatFilter, Configurable
+  PostRenderListener, HUDRenderListener, OutboundChatFilter, Configurable
 {
   // --------------------------------------------------------------------------
   /**
@@ -220,8 +223,7 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable,
       Configuration.instance.KEYBIND_SCREENSHOT.perform();
     }
 
-    SyncTaskQueue.instance.runTasks();
-    Controller.instance.processServerChatQueue();
+    Controller.instance.onTick();
 
     // With Forge, onJoinGame() gets called before the chat GUI is ready to
     // display the welcome message.
@@ -262,8 +264,11 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable,
                                -getPlayerZ(partialTicks));
 
       BlockEditSet edits = Controller.instance.getBlockEditSet();
+      long time = Stats.instance.start();
       edits.drawOutlines();
+      time = Stats.instance.lap(Stats.OUTLINES, time);
       edits.drawVectors();
+      time = Stats.instance.lap(Stats.VECTORS, time);
       Controller.instance.drawSelection();
 
       // Test code. X marks the spot.
@@ -279,8 +284,11 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable,
 
       GlStateManager.popMatrix();
 
+      time = Stats.instance.start();
       edits.drawAnnotations();
+      time = Stats.instance.lap(Stats.ANNOTATIONS, time);
       edits.getOreDB().drawDepositLabels();
+      Stats.instance.lap(Stats.LABELS, time);
 
       // More test code.
       // drawBillboard(0, 70, 0, 0x80000000, 0xFFFFFFFF, 0.02,
@@ -311,6 +319,30 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable,
   {
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * @see com.mumfrey.liteloader.HUDRenderListener#onPreRenderHUD(int, int)
+   */
+  @Override
+  public void onPreRenderHUD(int screenWidth, int screenHeight)
+  {
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw the statistics overlay, if shown.
+   *
+   * @see com.mumfrey.liteloader.HUDRenderListener#onPostRenderHUD(int, int)
+   */
+  @Override
+  public void onPostRenderHUD(int screenWidth, int screenHeight)
+  {
+    if (Configuration.instance.isEnabled())
+    {
+      Stats.instance.drawHud();
+    }
+  }
+
   // --------------------------------------------------------------------------
 
   private double getPlayerX(float partialTicks)
@@ -343,8 +375,27 @@ public class LiteModWatson implements JoinGameListener, ChatFilter, Tickable,
   public boolean onSendChatMessage(String chat)
   {
     // Send the chat to server if not handled locally as a command.
-    return !ClientCommandManager.instance.handleClientCommand(chat);
-  }
+    if (ClientCommandManager.instance.handleClientCommand(chat))
+    {
+      return false;
+    }
+
+    // The results of lookups limited to a radius are in the player's world.
+    Controller.instance.noteLookup(chat);
+
+    // LogBlock queries may be answered, in whole or in part, from the cache.
+    String query = QueryCache.instance.resolve(chat);
+    if (query == null)
+    {
+      return false;
+    }
+    else if (!query.equals(chat))
+    {
+      Controller.instance.immediateServerChat(query);
+      return false;
+    }
+    return true;
+  } // onSendChatMessage
 
   // --------------------------------------------------------------------------
   /**
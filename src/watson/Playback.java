@@ -0,0 +1,359 @@
+package watson;
+
+import java.util.Locale;
+
+import watson.chat.Chat;
+import watson.db.BlockEditSet;
+import watson.db.EditTimeIndex;
+import watson.db.TimeStamp;
+
+// ----------------------------------------------------------------------------
+/**
+ * Plays back the loaded edits as a time-lapse, by moving the end of the
+ * {@link BlockEditSet} time window (the cursor) forward in time, so that only
+ * the edits made before the cursor are drawn.
+ *
+ * The position of the cursor is tracked in the time-ordered index of all
+ * loaded edits. Each tick advances that position incrementally, and drawing
+ * finds the visible edits of each player by binary search, so the cost of a
+ * frame does not depend on how far the cursor has moved or how many edits are
+ * hidden. Long idle periods between edits are skipped.
+ */
+public class Playback
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Single instance of this class.
+   */
+  public static final Playback instance = new Playback();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Start playback from the start of the time window, or resume it if paused.
+   */
+  public void play()
+  {
+    if (!_active && !start())
+    {
+      return;
+    }
+    int first = _index.indexOf(_since);
+    if (_position >= _index.indexOf(_before))
+    {
+      // Replay from the start after reaching the end.
+      moveTo(_index.getTime(first), first);
+    }
+    _playing = true;
+    _lastTickTime = System.currentTimeMillis();
+    showStatus("Playing");
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Pause playback, leaving the edits up to the cursor visible.
+   */
+  public void pause()
+  {
+    if (checkActive())
+    {
+      _playing = false;
+      showStatus("Paused");
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * End playback and restore the time window that was in effect when it
+   * started.
+   */
+  public void stop()
+  {
+    if (checkActive())
+    {
+      _edits.setTimeWindow(_since, _before);
+      _active = _playing = false;
+      _edits = null;
+      _index = null;
+      Chat.localOutput("Playback stopped.");
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Set the playback speed.
+   *
+   * @param speed the number of seconds of edits played per second.
+   */
+  public void setSpeed(double speed)
+  {
+    _speed = speed;
+    Chat.localOutput(String.format(Locale.US, "Playback speed is %gx.", speed));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Move the cursor to the specified time.
+   *
+   * @param time the new cursor time.
+   */
+  public void seek(long time)
+  {
+    if (_active || start())
+    {
+      moveTo(time, _index.indexOf(time));
+      showStatus(_playing ? "Playing" : "Paused");
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Move the cursor forwards or backwards in time.
+   *
+   * @param millis the time to move, negative to move backwards.
+   */
+  public void skip(long millis)
+  {
+    if (_active || start())
+    {
+      seek(_cursor + millis);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Move the cursor forwards or backwards by a number of edits and pause.
+   *
+   * @param count the number of edits to show or hide; negative to hide.
+   */
+  public void step(int count)
+  {
+    if (_active || start())
+    {
+      _playing = false;
+      int position = Math.max(_index.indexOf(_since), Math.min(_index.indexOf(_before), _position + count));
+      long time = (position > 0) ? _index.getTime(position - 1) + 1 : _since;
+      moveTo(time, position);
+      showStatus("Paused");
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time of the cursor, or Long.MIN_VALUE if not playing back.
+   *
+   * @return the time of the cursor.
+   */
+  public long getCursor()
+  {
+    return _active ? _cursor : Long.MIN_VALUE;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Advance the cursor according to the elapsed time and playback speed.
+   *
+   * This method must be called from the main thread, once per tick.
+   */
+  public void onTick()
+  {
+    if (!_active)
+    {
+      return;
+    }
+
+    // Stop if the dimension changed; pick up edits loaded during playback.
+    if (_edits != Controller.instance.getBlockEditSet())
+    {
+      _edits.setTimeWindow(_since, _before);
+      _active = _playing = false;
+      _edits = null;
+      _index = null;
+      return;
+    }
+    // Edits inserted before the cursor shift the positions of later edits.
+    EditTimeIndex index = _edits.getTimeIndex();
+    if (index != _index || index.getVersion() != _version)
+    {
+      _index = index;
+      _version = index.getVersion();
+      _position = index.indexOf(_cursor);
+    }
+
+    if (!_playing)
+    {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    long cursor = _cursor + (long) ((now - _lastTickTime) * _speed);
+    _lastTickTime = now;
+
+    // If nothing happens for more than MAX_IDLE_MILLIS of real time, skip
+    // ahead to just before the next edit.
+    int end = _index.indexOf(_before);
+    if (_position < end)
+    {
+      long next = _index.getTime(_position);
+      if ((next - cursor) / _speed > MAX_IDLE_MILLIS)
+      {
+        cursor = next - (long) (MAX_IDLE_MILLIS * _speed);
+      }
+    }
+
+    int position = _position;
+    while (position < end && _index.getTime(position) < cursor)
+    {
+      ++position;
+    }
+    moveTo(cursor, position);
+
+    if (_position >= end)
+    {
+      _playing = false;
+      showStatus("Finished");
+    }
+  } // onTick
+
+  // --------------------------------------------------------------------------
+  /**
+   * Begin playback of the current set of edits, within the current time
+   * window.
+   *
+   * @return true if there are edits to play.
+   */
+  protected boolean start()
+  {
+    BlockEditSet edits = Controller.instance.getBlockEditSet();
+    EditTimeIndex index = edits.getTimeIndex();
+    int first = index.indexOf(edits.getSince());
+    if (first >= index.indexOf(edits.getBefore()))
+    {
+      Chat.localError("There are no edits to play back.");
+      return false;
+    }
+
+    _edits = edits;
+    _index = index;
+    _version = index.getVersion();
+    _since = edits.getSince();
+    _before = edits.getBefore();
+    _active = true;
+    _playing = false;
+    moveTo(index.getTime(first), first);
+    return true;
+  } // start
+
+  // --------------------------------------------------------------------------
+  /**
+   * Move the cursor and update the time window of the edits that are drawn.
+   *
+   * @param time the new cursor time.
+   * @param position the index of the first edit at or after the cursor.
+   */
+  protected void moveTo(long time, int position)
+  {
+    _cursor = Math.max(_since, Math.min(_before, time));
+    _position = position;
+    _edits.setTimeWindow(_since, _cursor);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Report an error if playback has not been started.
+   *
+   * @return true if playback has been started.
+   */
+  protected boolean checkActive()
+  {
+    if (!_active)
+    {
+      Chat.localError("Playback has not been started.");
+    }
+    return _active;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Show the state of playback in chat.
+   *
+   * @param state the state, e.g. "Playing".
+   */
+  protected void showStatus(String state)
+  {
+    int first = _index.indexOf(_since);
+    Chat.localOutput(String.format(Locale.US, "%s at %s, %gx: %d of %d edits shown.",
+      state, TimeStamp.formatMonthDayTime(_cursor), _speed,
+      _position - first, _index.indexOf(_before) - first));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor to enforce singleton pattern.
+   */
+  private Playback()
+  {
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Default playback speed: one minute of edits per second.
+   */
+  protected static final double DEFAULT_SPEED   = 60.0;
+
+  /**
+   * The longest period of real time for which no edits are revealed before
+   * the cursor skips to the next edit.
+   */
+  protected static final long   MAX_IDLE_MILLIS = 2000;
+
+  /**
+   * True if playback has been started and not stopped.
+   */
+  protected boolean             _active;
+
+  /**
+   * True if the cursor is advancing.
+   */
+  protected boolean             _playing;
+
+  /**
+   * The edits being played back.
+   */
+  protected BlockEditSet        _edits;
+
+  /**
+   * The time index of _edits, used to track the cursor position.
+   */
+  protected EditTimeIndex       _index;
+
+  /**
+   * The version of _index when _position was last found by searching it.
+   */
+  protected int                 _version;
+
+  /**
+   * The time window of _edits when playback started.
+   */
+  protected long                _since;
+  protected long                _before;
+
+  /**
+   * The time of the cursor; edits before this time are shown.
+   */
+  protected long                _cursor;
+
+  /**
+   * The index in _index of the first edit at or after the cursor.
+   */
+  protected int                 _position;
+
+  /**
+   * Seconds of edits played per second of real time.
+   */
+  protected double              _speed          = DEFAULT_SPEED;
+
+  /**
+   * The time of the last tick while playing.
+   */
+  protected long                _lastTickTime;
+} // class Playback
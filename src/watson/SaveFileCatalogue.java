@@ -0,0 +1,600 @@
+package watson;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * An index of the {@link watson.db.BlockEditSet} save files, so that the
+ * "/w file" commands can search, page through and expire them without
+ * listing and examining the saves directory every time.
+ *
+ * For each file, the catalogue holds its name, size, modification time, the
+ * number of edits it contains and the time span of those edits. Entries are
+ * kept in case-insensitive name order, so that finding the files with a given
+ * prefix is a range lookup.
+ *
+ * The catalogue is persisted in the mod directory, so that a file is only
+ * read again if its size or modification time has changed. A daemon thread
+ * brings the catalogue up to date with the saves directory once at startup
+ * and then updates it incrementally from WatchService events; a burst of
+ * events is handled once the directory has been quiet for DEBOUNCE_MILLIS.
+ * Until the startup update has found the files in the directory, searches list
+ * the directory instead of trusting the persisted catalogue.
+ * Files saved or deleted by Watson itself are updated immediately.
+ */
+public class SaveFileCatalogue
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Single instance of this class.
+   */
+  public static final SaveFileCatalogue instance = new SaveFileCatalogue();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Information about one save file.
+   */
+  public static final class Entry
+  {
+    /**
+     * Return the file.
+     *
+     * @return the file.
+     */
+    public File getFile()
+    {
+      return new File(Controller.getBlockEditDirectory(), name);
+    }
+
+    /**
+     * The file name.
+     */
+    public String name;
+
+    /**
+     * The file size in bytes.
+     */
+    public long   size;
+
+    /**
+     * The last modification time of the file.
+     */
+    public long   lastModified;
+
+    /**
+     * The number of edits in the file, or -1 if not yet known.
+     */
+    public int    editCount = -1;
+
+    /**
+     * The times of the oldest and most recent edits in the file, or 0 if there
+     * are none.
+     */
+    public long   firstEditTime, lastEditTime;
+  } // class Entry
+
+  // --------------------------------------------------------------------------
+  /**
+   * Load the persisted catalogue and start keeping it up to date, if not
+   * already doing so.
+   */
+  public synchronized void start()
+  {
+    if (_thread != null)
+    {
+      return;
+    }
+
+    loadIndex();
+    try
+    {
+      final WatchService watcher = FileSystems.getDefault().newWatchService();
+      Controller.getBlockEditDirectory().toPath().register(watcher,
+        StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY,
+        StandardWatchEventKinds.ENTRY_DELETE);
+
+      _thread = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          // Changes made while Watson wasn't running.
+          reconcile();
+          watch(watcher);
+        }
+      }, "Watson Save File Catalogue");
+      _thread.setDaemon(true);
+      _thread.start();
+    }
+    catch (Exception ex)
+    {
+      Log.exception(Level.WARNING, "unable to watch the saves directory for changes", ex);
+      reconcile();
+    }
+  } // start
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the files whose names begin with the specified prefix, matched case
+   * insensitively, in case insensitive name order.
+   *
+   * @param prefix the prefix; null or "*" matches all files.
+   * @return the matching files.
+   */
+  public synchronized List<Entry> find(String prefix)
+  {
+    String lowerPrefix = (prefix == null || prefix.equals("*")) ? "" : prefix.toLowerCase(Locale.US);
+    return new ArrayList<Entry>(getEntries().subMap(lowerPrefix, lowerPrefix + Character.MAX_VALUE).values());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the files last modified before the specified time, in case
+   * insensitive name order.
+   *
+   * @param time the time.
+   * @return the files last modified before the time.
+   */
+  public synchronized List<Entry> findModifiedBefore(long time)
+  {
+    ArrayList<Entry> entries = new ArrayList<Entry>();
+    for (Entry entry : getEntries().values())
+    {
+      if (entry.lastModified < time)
+      {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Update the catalogue entry of a file that has just been written or
+   * deleted.
+   *
+   * @param file the file.
+   */
+  public void update(File file)
+  {
+    refresh(file.getName(), true);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the catalogue entries, by the key returned by getKey().
+   *
+   * Until the catalogue has been reconciled with the saves directory, the
+   * persisted catalogue may be missing or out of date, so the entries are
+   * instead made from a listing of the directory. Persisted entries are used
+   * for files that have not changed; the edits in other files are not counted.
+   *
+   * The caller must hold this object's lock.
+   *
+   * @return the catalogue entries.
+   */
+  protected TreeMap<String, Entry> getEntries()
+  {
+    if (_reconciled)
+    {
+      return _entries;
+    }
+
+    TreeMap<String, Entry> entries = new TreeMap<String, Entry>();
+    File directory = Controller.getBlockEditDirectory();
+    String[] names = directory.list();
+    if (names != null)
+    {
+      for (String name : names)
+      {
+        File file = new File(directory, name);
+        if (file.isFile())
+        {
+          String key = getKey(name);
+          Entry entry = _entries.get(key);
+          if (entry == null || entry.size != file.length() || entry.lastModified != file.lastModified())
+          {
+            entry = new Entry();
+            entry.name = name;
+            entry.size = file.length();
+            entry.lastModified = file.lastModified();
+          }
+          entries.put(key, entry);
+        }
+      }
+    }
+    return entries;
+  } // getEntries
+
+  // --------------------------------------------------------------------------
+  /**
+   * Bring the entry of the specified file up to date.
+   *
+   * @param name the file name.
+   * @param countEdits if true, read the file to count its edits if it has
+   *          changed or they have not been counted; otherwise only update the
+   *          file size and modification time, which is much faster.
+   */
+  protected void refresh(String name, boolean countEdits)
+  {
+    File file = new File(Controller.getBlockEditDirectory(), name);
+    String key = getKey(name);
+    if (!file.isFile())
+    {
+      synchronized (this)
+      {
+        if (_entries.remove(key) != null)
+        {
+          _dirty = true;
+        }
+      }
+      return;
+    }
+
+    long size = file.length();
+    long lastModified = file.lastModified();
+    synchronized (this)
+    {
+      Entry entry = _entries.get(key);
+      if (entry != null && entry.size == size && entry.lastModified == lastModified
+          && (entry.editCount >= 0 || !countEdits))
+      {
+        return;
+      }
+    }
+
+    // Read the file without holding the lock.
+    Entry entry = new Entry();
+    entry.name = name;
+    entry.size = size;
+    entry.lastModified = lastModified;
+    if (countEdits)
+    {
+      try
+      {
+        readEdits(file, entry);
+      }
+      catch (IOException ex)
+      {
+        Log.exception(Level.WARNING, "could not read save file " + file, ex);
+      }
+    }
+    synchronized (this)
+    {
+      _entries.put(key, entry);
+      _dirty = true;
+    }
+  } // refresh
+
+  // --------------------------------------------------------------------------
+  /**
+   * Bring the whole catalogue up to date with the saves directory.
+   *
+   * The names, sizes and modification times of the files are brought up to
+   * date first, which only needs the directory listing, so that the catalogue
+   * can be used straight away. The edits in new and changed files are then
+   * counted.
+   */
+  protected void reconcile()
+  {
+    String[] names = Controller.getBlockEditDirectory().list();
+    if (names == null)
+    {
+      synchronized (this)
+      {
+        _reconciled = true;
+      }
+      return;
+    }
+
+    HashSet<String> keys = new HashSet<String>();
+    for (String name : names)
+    {
+      keys.add(getKey(name));
+    }
+    synchronized (this)
+    {
+      if (_entries.keySet().retainAll(keys))
+      {
+        _dirty = true;
+      }
+    }
+
+    for (String name : names)
+    {
+      refresh(name, false);
+    }
+    synchronized (this)
+    {
+      _reconciled = true;
+    }
+    saveIndex();
+
+    for (String name : names)
+    {
+      refresh(name, true);
+    }
+    saveIndex();
+  } // reconcile
+
+  // --------------------------------------------------------------------------
+  /**
+   * Wait for and handle changes to the saves directory until the WatchService
+   * stops working.
+   *
+   * @param watcher the WatchService.
+   */
+  protected void watch(WatchService watcher)
+  {
+    LinkedHashSet<String> changed = new LinkedHashSet<String>();
+    boolean overflowed = false;
+    for (;;)
+    {
+      WatchKey key;
+      try
+      {
+        key = (changed.isEmpty() && !overflowed) ? watcher.take() : watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException ex)
+      {
+        return;
+      }
+
+      if (key == null)
+      {
+        if (overflowed)
+        {
+          reconcile();
+        }
+        else
+        {
+          for (String name : changed)
+          {
+            refresh(name, true);
+          }
+          saveIndex();
+        }
+        changed.clear();
+        overflowed = false;
+        continue;
+      }
+
+      for (WatchEvent<?> event : key.pollEvents())
+      {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+        {
+          overflowed = true;
+        }
+        else
+        {
+          changed.add(((Path) event.context()).getFileName().toString());
+        }
+      }
+
+      if (!key.reset())
+      {
+        Log.warning("the saves directory can no longer be watched for changes");
+        return;
+      }
+    } // for
+  } // watch
+
+  // --------------------------------------------------------------------------
+  /**
+   * Count the edits in a save file and find their time span.
+   *
+   * @param file the file.
+   * @param entry the entry to update.
+   */
+  protected static void readEdits(File file, Entry entry)
+    throws IOException
+  {
+    Calendar calendar = Calendar.getInstance();
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try
+    {
+      int count = 0;
+      long first = Long.MAX_VALUE;
+      long last = Long.MIN_VALUE;
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        Matcher m = EDIT_TIME_PATTERN.matcher(line);
+        if (m.lookingAt())
+        {
+          calendar.set(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)) - 1,
+            Integer.parseInt(m.group(3)), Integer.parseInt(m.group(4)),
+            Integer.parseInt(m.group(5)), Integer.parseInt(m.group(6)));
+          long time = calendar.getTimeInMillis();
+          first = Math.min(first, time);
+          last = Math.max(last, time);
+          ++count;
+        }
+      }
+      entry.editCount = count;
+      entry.firstEditTime = (count > 0) ? first : 0;
+      entry.lastEditTime = (count > 0) ? last : 0;
+    }
+    finally
+    {
+      reader.close();
+    }
+  } // readEdits
+
+  // --------------------------------------------------------------------------
+  /**
+   * Load the persisted catalogue.
+   */
+  protected synchronized void loadIndex()
+  {
+    File file = new File(Controller.getModDirectory(), INDEX_FILE);
+    if (!file.canRead())
+    {
+      return;
+    }
+
+    try
+    {
+      BufferedReader reader = new BufferedReader(new FileReader(file));
+      try
+      {
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+          String[] fields = line.split("\t", 6);
+          if (fields.length == 6)
+          {
+            Entry entry = new Entry();
+            entry.size = Long.parseLong(fields[0]);
+            entry.lastModified = Long.parseLong(fields[1]);
+            entry.editCount = Integer.parseInt(fields[2]);
+            entry.firstEditTime = Long.parseLong(fields[3]);
+            entry.lastEditTime = Long.parseLong(fields[4]);
+            entry.name = fields[5];
+            _entries.put(getKey(entry.name), entry);
+          }
+        }
+      }
+      finally
+      {
+        reader.close();
+      }
+    }
+    catch (Exception ex)
+    {
+      // The catalogue will be rebuilt.
+      Log.exception(Level.WARNING, "could not load the save file catalogue", ex);
+      _entries.clear();
+    }
+  } // loadIndex
+
+  // --------------------------------------------------------------------------
+  /**
+   * Persist the catalogue, if it has changed since it was last saved.
+   */
+  protected void saveIndex()
+  {
+    ArrayList<Entry> entries;
+    synchronized (this)
+    {
+      if (!_dirty)
+      {
+        return;
+      }
+      entries = new ArrayList<Entry>(_entries.values());
+      _dirty = false;
+    }
+
+    File file = new File(Controller.getModDirectory(), INDEX_FILE);
+    File temp = new File(file.getPath() + ".tmp");
+    try
+    {
+      PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(temp)));
+      try
+      {
+        for (Entry entry : entries)
+        {
+          writer.format(Locale.US, "%d\t%d\t%d\t%d\t%d\t%s\n", entry.size, entry.lastModified,
+            entry.editCount, entry.firstEditTime, entry.lastEditTime, entry.name);
+        }
+      }
+      finally
+      {
+        writer.close();
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException ex)
+    {
+      Log.exception(Level.WARNING, "could not save the save file catalogue", ex);
+    }
+  } // saveIndex
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the key of a file name in the catalogue, which orders names case
+   * insensitively but keeps names that differ only in case distinct.
+   *
+   * @param name the file name.
+   * @return the key.
+   */
+  protected static String getKey(String name)
+  {
+    return name.toLowerCase(Locale.US) + '\0' + name;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor to enforce singleton pattern.
+   */
+  private SaveFileCatalogue()
+  {
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The name of the file in the mod directory where the catalogue is
+   * persisted.
+   */
+  protected static final String     INDEX_FILE        = "savecatalogue.txt";
+
+  /**
+   * The time in milliseconds that the saves directory must be unchanged before
+   * changes are examined.
+   */
+  protected static final long       DEBOUNCE_MILLIS   = 500;
+
+  /**
+   * Matches the time stamp at the start of an edit line in a save file.
+   */
+  protected static final Pattern    EDIT_TIME_PATTERN = Pattern.compile("(\\d{4})-(\\d{2})-(\\d{2})\\|(\\d{2}):(\\d{2}):(\\d{2})\\|");
+
+  /**
+   * The thread that waits for changes, or null if not started.
+   */
+  protected Thread                  _thread;
+
+  /**
+   * Catalogue entries, by the key returned by getKey().
+   */
+  protected TreeMap<String, Entry>  _entries          = new TreeMap<String, Entry>();
+
+  /**
+   * True if the catalogue has changed since it was last persisted.
+   */
+  protected boolean                 _dirty;
+
+  /**
+   * True once the catalogue has been brought up to date with the saves
+   * directory, after which it is used instead of listing the directory.
+   */
+  protected boolean                 _reconciled;
+} // class SaveFileCatalogue
@@ -1,7 +1,9 @@
 package watson;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -9,6 +11,7 @@ import java.util.Date;
 
 import javax.imageio.ImageIO;
 
+import net.minecraft.client.Minecraft;
 import net.minecraft.util.text.event.ClickEvent;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.util.text.TextComponentTranslation;
@@ -35,32 +38,10 @@ public class Screenshot
   {
     try
     {
-      file.getParentFile().mkdirs();
-
       ByteBuffer buffer = BufferUtils.createByteBuffer(width * height * 4);
-      GL11.glReadBuffer(GL11.GL_FRONT);
-      // GL11.glReadBuffer() unexpectedly sets an error state (invalid enum).
-      GL11.glGetError();
-      GL11.glReadPixels(0, 0, width, height, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, buffer);
-
-      BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-      for (int x = 0; x < width; x++)
-      {
-        for (int y = 0; y < height; y++)
-        {
-          int i = (x + width * y) * 4;
-          int r = buffer.get(i) & 0xFF;
-          int g = buffer.get(i + 1) & 0xFF;
-          int b = buffer.get(i + 2) & 0xFF;
-          image.setRGB(x, (height - 1) - y, (0xFF << 24) | (r << 16) | (g << 8) | b);
-        }
-      }
-
-      ImageIO.write(image, "png", file);
-      TextComponentString text = new TextComponentString(file.getName());
-      text.getStyle().setClickEvent(new ClickEvent(ClickEvent.Action.OPEN_FILE, file.getAbsolutePath()));
-      text.getStyle().setUnderlined(Boolean.valueOf(true));
-      return new TextComponentTranslation("screenshot.success", new Object[]{text});
+      readPixels(buffer, width, height);
+      encode(buffer, width, height, file);
+      return getSuccessMessage(file);
     }
     catch (Exception ex)
     {
@@ -68,6 +49,106 @@ public class Screenshot
     }
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Read the pixels of the front buffer into the specified buffer as RGBA
+   * bytes.
+   * 
+   * This is the only part of taking a screenshot that must run in the render
+   * thread.
+   * 
+   * @param buffer a direct buffer with room for at least width * height * 4
+   *          bytes.
+   * @param width the screen width.
+   * @param height the screen height.
+   */
+  public static void readPixels(ByteBuffer buffer, int width, int height)
+  {
+    buffer.clear();
+    GL11.glReadBuffer(GL11.GL_FRONT);
+    // GL11.glReadBuffer() unexpectedly sets an error state (invalid enum).
+    GL11.glGetError();
+    GL11.glReadPixels(0, 0, width, height, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, buffer);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Convert pixels read by {@link #readPixels(ByteBuffer, int, int)} into an
+   * image and write it to a PNG file.
+   * 
+   * This method makes no OpenGL calls and so can be called from any thread.
+   * 
+   * @param buffer the buffer containing RGBA bytes, bottom row first.
+   * @param width the screen width.
+   * @param height the screen height.
+   * @param file the file to write.
+   * @throws IOException if the file could not be written.
+   */
+  public static void encode(ByteBuffer buffer, int width, int height, File file)
+    throws IOException
+  {
+    file.getParentFile().mkdirs();
+
+    // Write the pixels straight into the image's backing array rather than
+    // calling setRGB() per pixel, and flip the rows since OpenGL puts the
+    // origin at the bottom left.
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    for (int y = 0; y < height; ++y)
+    {
+      int i = width * y * 4;
+      int row = width * ((height - 1) - y);
+      for (int x = 0; x < width; ++x, i += 4)
+      {
+        int r = buffer.get(i) & 0xFF;
+        int g = buffer.get(i + 1) & 0xFF;
+        int b = buffer.get(i + 2) & 0xFF;
+        pixels[row + x] = (r << 16) | (g << 8) | b;
+      }
+    }
+
+    ImageIO.write(image, "png", file);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the chat message announcing that a screenshot was saved, with a
+   * clickable link to the file.
+   * 
+   * @param file the saved screenshot.
+   * @return the chat message.
+   */
+  public static ITextComponent getSuccessMessage(File file)
+  {
+    TextComponentString text = new TextComponentString(file.getName());
+    text.getStyle().setClickEvent(new ClickEvent(ClickEvent.Action.OPEN_FILE, file.getAbsolutePath()));
+    text.getStyle().setUnderlined(Boolean.valueOf(true));
+    return new TextComponentTranslation("screenshot.success", new Object[]{text});
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the directory that should contain screenshots taken now.
+   * 
+   * The directory is named after the currently selected player, if
+   * ss_player_directory is enabled, or is otherwise formatted from the current
+   * date according to ss_date_directory.
+   * 
+   * @param player the name of the player who did the most recently selected
+   *          edit, or null if none is selected.
+   * @param now the current time.
+   * @return the screenshot directory.
+   */
+  public static File getScreenshotDirectory(String player, Date now)
+  {
+    Configuration config = Configuration.instance;
+    String subdirectoryName = (player != null && config.isSsPlayerDirectory())
+      ? player
+      : config.getSsDateDirectory().format(now).toString();
+    File screenshotsDir = new File(Minecraft.getMinecraft().mcDataDir, "screenshots");
+    return new File(screenshotsDir, subdirectoryName);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Return a unique PNG filename for the next screenshot.
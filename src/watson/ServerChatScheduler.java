@@ -0,0 +1,157 @@
+package watson;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.regex.Pattern;
+
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * Schedules programmatically generated chat messages (usually commands) for
+ * transmission to the server without annoying the server's spam filter.
+ *
+ * Messages are rate limited by a token bucket: one token accrues every
+ * chat_timeout seconds, up to chat_burst tokens, and each message sent costs
+ * one token. With the default burst of one, this is the same as a fixed gap of
+ * chat_timeout seconds between messages; larger bursts let a few messages go
+ * out together after a quiet period.
+ *
+ * Rate limit budget is not wasted on messages that have become pointless:
+ * <ul>
+ * <li>a message identical to one already waiting is dropped, and</li>
+ * <li>waiting page requests are dropped when a LogBlock, Prism or CoreProtect
+ * query is queued or a new LogBlock results header is received, since they
+ * would page through the wrong results.</li>
+ * </ul>
+ */
+public class ServerChatScheduler
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Queue a message for transmission to the server.
+   *
+   * @param message the message.
+   */
+  public synchronized void add(String message)
+  {
+    String trimmed = message.trim();
+    for (String queued : _queue)
+    {
+      if (queued.equalsIgnoreCase(trimmed))
+      {
+        Log.debug("dropped duplicate server chat: %s", trimmed);
+        return;
+      }
+    }
+
+    // A new query makes waiting page requests obsolete. Several page requests
+    // can be waiting at once when pages are fetched ahead.
+    if (QUERY_COMMAND.matcher(trimmed).lookingAt() && !PAGE_REQUEST.matcher(trimmed).matches())
+    {
+      cancelPageRequests();
+    }
+    _queue.add(trimmed);
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Drop all page requests that are waiting to be sent.
+   *
+   * This is called when a new LogBlock results header arrives.
+   */
+  public synchronized void cancelPageRequests()
+  {
+    Iterator<String> it = _queue.iterator();
+    while (it.hasNext())
+    {
+      String queued = it.next();
+      if (PAGE_REQUEST.matcher(queued).matches())
+      {
+        Log.debug("dropped superseded server chat: %s", queued);
+        it.remove();
+      }
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Send as many waiting messages as the rate limit currently allows.
+   *
+   * This method should be called from the main thread, once per tick.
+   */
+  public synchronized void process()
+  {
+    // Just in case System.currentTimeMillis() is still relatively expensive...
+    if (_queue.isEmpty())
+    {
+      return;
+    }
+
+    Configuration config = Configuration.instance;
+    long now = System.currentTimeMillis();
+    double intervalMillis = 1000 * config.getChatTimeoutSeconds();
+    int burst = config.getChatBurst();
+    if (intervalMillis <= 0)
+    {
+      _tokens = burst;
+    }
+    else
+    {
+      _tokens = Math.min(burst, _tokens + (now - _lastRefillTime) / intervalMillis);
+    }
+    _lastRefillTime = now;
+
+    while (_tokens >= 1 && !_queue.isEmpty())
+    {
+      _tokens -= 1;
+      Controller.instance.immediateServerChat(_queue.poll());
+    }
+  } // process
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of messages waiting to be sent.
+   *
+   * @return the number of messages waiting to be sent.
+   */
+  public synchronized int size()
+  {
+    return _queue.size();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Matches a LogBlock, Prism or CoreProtect lookup command. LogBlock lookups
+   * have no subcommand, so every LogBlock command other than those listed is a
+   * lookup.
+   */
+  protected static final Pattern QUERY_COMMAND   = Pattern.compile("/(lb|logblock)\\s+(?!(page|prev|next|tp|me|tool|toolblock|hide|help|savequeue|reload|rollback|rb|redo|undo|clearlog|writelogfile)(\\s|$))"
+                                                                   + "|/(prism|pr)\\s+(l|lookup|near)(\\s|$)"
+                                                                   + "|/(co|core|coreprotect)\\s+(l|lookup|near)(\\s|$)",
+                                                   Pattern.CASE_INSENSITIVE);
+
+  /**
+   * Matches a LogBlock, Prism or CoreProtect page request.
+   */
+  protected static final Pattern PAGE_REQUEST    = Pattern.compile("/(lb|logblock)\\s+page\\s+\\d+"
+                                                                   + "|/(prism|pr)\\s+(page|pg)\\s+\\d+"
+                                                                   + "|/(co|core|coreprotect)\\s+(l|lookup)\\s+\\d+(:\\d+)?",
+                                                   Pattern.CASE_INSENSITIVE);
+
+  /**
+   * Messages waiting to be sent, in order.
+   */
+  protected ArrayDeque<String>   _queue          = new ArrayDeque<String>();
+
+  /**
+   * The number of messages that can be sent now; fractional tokens accrue
+   * between messages.
+   */
+  protected double               _tokens         = 1;
+
+  /**
+   * The time when _tokens was last updated.
+   */
+  protected long                 _lastRefillTime;
+} // class ServerChatScheduler
@@ -2,6 +2,8 @@ package watson;
 
 import java.util.concurrent.ConcurrentLinkedQueue;
 
+import watson.debug.Stats;
+
 // ----------------------------------------------------------------------------
 /**
  * A queue of tasks that must be run synchronously to the main thread.
@@ -32,9 +34,14 @@ public class SyncTaskQueue
   // --------------------------------------------------------------------------
   /**
    * Run and dequeue all tasks.
+   *
+   * When statistics are enabled, the number of tasks and the time taken are
+   * recorded in {@link Stats}.
    */
   public void runTasks()
   {
+    long start = Stats.instance.start();
+    int tasks = 0;
     for (;;)
     {
       Runnable task = _taskQueue.poll();
@@ -43,6 +50,11 @@ public class SyncTaskQueue
         break;
       }
       task.run();
+      ++tasks;
+    }
+    if (start != 0)
+    {
+      Stats.instance.recordQueueDrain(tasks, start);
     }
   }
 
@@ -8,6 +8,7 @@ import java.util.regex.Pattern;
 import net.minecraft.util.text.ITextComponent;
 import watson.chat.IChatHandler;
 import watson.chat.IMatchedChatHandler;
+import watson.debug.Stats;
 
 // ----------------------------------------------------------------------------
 /**
@@ -31,6 +32,11 @@ public class Analysis implements IChatHandler
    */
   public boolean dispatchMatchedChat(ITextComponent chat)
   {
+    if (Stats.instance.isEnabled())
+    {
+      return dispatchMatchedChatTimed(chat);
+    }
+
     String unformatted = chat.getUnformattedText();
     for (Entry<Pattern, IMatchedChatHandler> entry : _handlers.entrySet())
     {
@@ -43,6 +49,36 @@ public class Analysis implements IChatHandler
     return true;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * As for {@link #dispatchMatchedChat(ITextComponent)}, but recording the
+   * time taken to match each pattern, and whether the chat matched, in
+   * {@link Stats}.
+   *
+   * @param chat the chat to match.
+   * @return the return value of the IMatchedChatHandler that was called, or
+   *         true if none were called.
+   */
+  protected boolean dispatchMatchedChatTimed(ITextComponent chat)
+  {
+    Stats.AnalysisStats stats = Stats.instance.getAnalysisStats(getClass().getSimpleName());
+    String unformatted = chat.getUnformattedText();
+    for (Entry<Pattern, IMatchedChatHandler> entry : _handlers.entrySet())
+    {
+      long start = System.nanoTime();
+      Matcher m = entry.getKey().matcher(unformatted);
+      boolean matches = m.matches();
+      stats.getPatternTimer(entry.getKey()).add(System.nanoTime() - start);
+      if (matches)
+      {
+        stats.addLine(true);
+        return entry.getValue().onMatchedChat(chat, m);
+      }
+    }
+    stats.addLine(false);
+    return true;
+  } // dispatchMatchedChatTimed
+
   // --------------------------------------------------------------------------
   /**
    * Specify that the handler's onMatchedChat() should be called for chat that
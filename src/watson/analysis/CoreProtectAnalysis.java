@@ -4,7 +4,9 @@ import static watson.analysis.CoreProtectPatterns.DETAILS;
 import static watson.analysis.CoreProtectPatterns.INSPECTOR_COORDS;
 import static watson.analysis.CoreProtectPatterns.LOOKUP_COORDS;
 import static watson.analysis.CoreProtectPatterns.LOOKUP_HEADER;
+import static watson.analysis.CoreProtectPatterns.LOOKUP_PAGE;
 
+import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -39,7 +41,18 @@ import watson.db.TimeStamp;
  *                 ^ (x3/y63/z-7/world)
  * 0.01/h ago - totemo placed #4 (Cobblestone).
  *                 ^ (x3/y63/z-6/world)
+ * Page 1/3. View older data by typing "/co l &lt;page&gt;".
  * </pre>
+ *
+ * Since the page number comes at the end of each page, further pages of
+ * lookup results are requested when it arrives. For the same reason, the edits
+ * on a page that was requested by the {@link PageFetcher} are held until its
+ * footer shows whether the page is a duplicate.
+ *
+ * Relative times like "0.01/h ago" only locate an edit to within 36 seconds,
+ * so they are passed through a {@link TimeReconciler}, which keeps the times
+ * of successive results in order and gives an edit returned by several queries
+ * the same time each time.
  */
 public class CoreProtectAnalysis extends Analysis
 {
@@ -85,6 +98,15 @@ public class CoreProtectAnalysis extends Analysis
         return true;
       }
     });
+    addMatchedChatHandler(LOOKUP_PAGE, new IMatchedChatHandler()
+    {
+      @Override
+      public boolean onMatchedChat(ITextComponent chat, Matcher m)
+      {
+        lookupPage(chat, m);
+        return true;
+      }
+    });
   } // constructor
 
   // --------------------------------------------------------------------------
@@ -95,12 +117,14 @@ public class CoreProtectAnalysis extends Analysis
   @SuppressWarnings("unused")
   void inspectorCoords(ITextComponent chat, Matcher m)
   {
+    releaseHeldEdits();
     _isLookup = false;
     _x = Integer.parseInt(m.group(1));
     _y = Integer.parseInt(m.group(2));
     _z = Integer.parseInt(m.group(3));
     Controller.instance.selectPosition(_x, _y, _z);
     _firstInspectorResult = true;
+    _timeReconciler.startListing();
   } // inspectorCoords
 
   // --------------------------------------------------------------------------
@@ -114,7 +138,7 @@ public class CoreProtectAnalysis extends Analysis
     _lookupDetails = false;
     if (m.group(3).equals("placed") || m.group(3).equals("removed"))
     {
-      _millis = parseTimeExpression(m.group(1));
+      parseTimeExpression(m.group(1));
       _player = m.group(2);
       _creation = m.group(3).equals("placed");
 
@@ -144,7 +168,7 @@ public class CoreProtectAnalysis extends Analysis
         // An inspector result, so it can be queued for addition.
         if (Controller.instance.getFilters().isAcceptedPlayer(_player))
         {
-          BlockEdit edit = new BlockEdit(_millis, _player, _creation, _x, _y, _z, _type);
+          BlockEdit edit = new BlockEdit(getEditTime(), _player, _creation, _x, _y, _z, _type);
           SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, _firstInspectorResult));
 
           // The first inspector result to pass the filter sets variables.
@@ -165,8 +189,25 @@ public class CoreProtectAnalysis extends Analysis
   @SuppressWarnings("unused")
   void lookupHeader(ITextComponent chat, Matcher m)
   {
+    // A previous page without a footer was the only page of its results.
+    releaseHeldEdits();
     _isLookup = true;
-  }
+    _lookupCoordsSeen = false;
+
+    // Unless this is a page that the PageFetcher requested, it is the start
+    // of a new lookup, or a page the user asked for.
+    _holdingPage = PageFetcher.instance.isAwaitingPages(PageFetcher.COREPROTECT_PAGE);
+    if (!_holdingPage)
+    {
+      PageFetcher.instance.reset();
+
+      // Later pages of the same lookup continue the listing of the first.
+      if (!_morePages)
+      {
+        _timeReconciler.startListing();
+      }
+    }
+  } // lookupHeader
 
   // --------------------------------------------------------------------------
   /**
@@ -177,34 +218,89 @@ public class CoreProtectAnalysis extends Analysis
   void lookupCoords(ITextComponent chat, Matcher m)
   {
     _isLookup = true;
+    _lookupCoordsSeen = true;
     if (_lookupDetails)
     {
       _x = Integer.parseInt(m.group(1));
       _y = Integer.parseInt(m.group(2));
       _z = Integer.parseInt(m.group(3));
-      // TODO: String world = m.group(4);
-      // https://github.com/totemo/watson/issues/23
+      String world = m.group(4);
 
-      BlockEdit edit = new BlockEdit(_millis, _player, _creation, _x, _y, _z, _type);
-      SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      // Edits in other worlds are kept apart from those in the current world.
+      // Results of a lookup limited to a radius are in the player's world.
+      BlockEdit edit = new BlockEdit(getEditTime(), _player, _creation, _x, _y, _z, _type);
+      AddBlockEditTask task = new AddBlockEditTask(edit, true, world, Controller.instance.isLocalLookup());
+      if (_holdingPage)
+      {
+        _heldEdits.add(task);
+      }
+      else
+      {
+        SyncTaskQueue.instance.addTask(task);
+      }
       _lookupDetails = false;
     }
   } // lookupCoords
 
   // --------------------------------------------------------------------------
   /**
-   * Convert time expressions like "1.25/h ago" or LogBlock-style absolute time
-   * expressions, like "04-06 08:44:25", into a local timestamp.
+   * When the corresponding chat line is matched, a page of lookup results is
+   * complete; add its held edits, unless the page was a duplicate, and request
+   * further pages if the results have coordinates.
+   */
+  @SuppressWarnings("unused")
+  void lookupPage(ITextComponent chat, Matcher m)
+  {
+    int page = Integer.parseInt(m.group(1));
+    int pageCount = Integer.parseInt(m.group(2));
+    _morePages = (page < pageCount);
+    PageFetcher.instance.onPage(page, pageCount, null, PageFetcher.COREPROTECT_PAGE);
+    if (PageFetcher.instance.isDiscarding())
+    {
+      _heldEdits.clear();
+      _holdingPage = false;
+    }
+    else
+    {
+      releaseHeldEdits();
+    }
+
+    if (_lookupCoordsSeen)
+    {
+      PageFetcher.instance.requestPages();
+    }
+  } // lookupPage
+
+  // --------------------------------------------------------------------------
+  /**
+   * Queue the held edits of the current page for addition.
+   */
+  protected void releaseHeldEdits()
+  {
+    for (AddBlockEditTask task : _heldEdits)
+    {
+      SyncTaskQueue.instance.addTask(task);
+    }
+    _heldEdits.clear();
+    _holdingPage = false;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse time expressions like "1.25/h ago" or LogBlock-style absolute time
+   * expressions, like "04-06 08:44:25".
    * 
-   * Using relative time expressions - particularly low-precision ones - is not
-   * ideal. They result in potentially multiple objects being stored for a given
-   * edit (the time stamp is the major distinguishing factor).
+   * An absolute time is stored in _millis. A relative time is stored as the
+   * interval [_earliest, _latest] of local times that it could signify, given
+   * the precision it was expressed to; {@link #getEditTime()} then picks a
+   * time from that interval once the rest of the edit is known.
    * 
    * @param time the formatted time.
-   * @return local millisecond timestamp.
    */
-  private long parseTimeExpression(String time)
+  private void parseTimeExpression(String time)
   {
+    _relative = false;
+    _millis = 0;
     Matcher absolute = ABSOLUTE_TIME.matcher(time);
     if (absolute.matches())
     {
@@ -213,94 +309,159 @@ public class CoreProtectAnalysis extends Analysis
       int hour = Integer.parseInt(absolute.group(3));
       int minute = Integer.parseInt(absolute.group(4));
       int second = Integer.parseInt(absolute.group(5));
-      return TimeStamp.toMillis(month, day, hour, minute, second);
+      _millis = TimeStamp.toMillis(month, day, hour, minute, second);
+      _timeReconciler.addAbsoluteTime(_millis);
     }
     else
     {
       Matcher relative = HOURS_AGO_TIME.matcher(time);
       if (relative.matches())
       {
-        float hours = Float.parseFloat(relative.group(1));
-        long millis = System.currentTimeMillis() - (long) (hours * MS_PER_HOUR);
-
-        // Timestamp is accurate to 1/100ths of an hour, so discard the extra
-        // precision to encourage merging of edits.
-        millis -= millis % (MS_PER_HOUR / 100);
-        return millis;
+        // CoreProtect rounds the age to the number of decimal places shown.
+        String hours = relative.group(1);
+        long precision = MS_PER_HOUR;
+        for (int i = hours.indexOf('.') + 1; i < hours.length(); ++i)
+        {
+          precision /= 10;
+        }
+        long age = (long) (Double.parseDouble(hours) * MS_PER_HOUR);
+        long now = System.currentTimeMillis();
+        _earliest = now - age - precision / 2;
+        _latest = now - Math.max(0, age - precision / 2);
+        _relative = true;
       }
     }
-    return 0;
   } // parseTimeExpression
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time stamp of the edit described by the most recently parsed
+   * details, reconciling a relative time with the other results in the
+   * listing.
+   * 
+   * @return local millisecond timestamp.
+   */
+  private long getEditTime()
+  {
+    if (_relative)
+    {
+      return _timeReconciler.reconcile(_earliest, _latest, _player, _creation, _x, _y, _z, _type);
+    }
+    return _millis;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Milliseconds in an hour.
    */
-  protected static final int     MS_PER_HOUR           = 60 * 60 * 1000;
+  protected static final int            MS_PER_HOUR           = 60 * 60 * 1000;
 
   /**
    * Pattern of an absolute time stamp. Prettier IMO, if all those numbers are
    * two digits, but allow single digits.
    */
-  protected static final Pattern ABSOLUTE_TIME         = Pattern.compile("(\\d{1,2})-(\\d{1,2}) (\\d{1,2}):(\\d{2}):(\\d{2})");
+  protected static final Pattern        ABSOLUTE_TIME         = Pattern.compile("(\\d{1,2})-(\\d{1,2}) (\\d{1,2}):(\\d{2}):(\\d{2})");
 
   /**
    * Pattern of a relative time stamp signifying decimal hours ago.
    */
-  protected static final Pattern HOURS_AGO_TIME        = Pattern.compile("(\\d+.\\d+)/h ago");
+  protected static final Pattern        HOURS_AGO_TIME        = Pattern.compile("(\\d+.\\d+)/h ago");
 
   // --------------------------------------------------------------------------
   /**
    * This flag is set to true when we are parsing lookup results (when the
    * lookup header is found), and false when we are parsing inspector results.
    */
-  protected boolean              _isLookup             = false;
+  protected boolean                     _isLookup             = false;
 
   /**
    * True if the next coreprotect.inspectordetails line encountered will be the
    * first one after the coreprotect.inspectorcoords header.
    */
-  protected boolean              _firstInspectorResult = false;
+  protected boolean                     _firstInspectorResult = false;
 
   /**
    * Set to true if the coreprotect.details line is for a block place or break
    * and follows up lookup. False for inspector results or other actions like
    * kills, uses etc.
    */
-  protected boolean              _lookupDetails        = false;
+  protected boolean                     _lookupDetails        = false;
+
+  /**
+   * Set to true when a coreprotect.lookupcoords line follows the lookup
+   * header, i.e. the lookup results have coordinates.
+   */
+  protected boolean                     _lookupCoordsSeen     = false;
+
+  /**
+   * Set to true when the most recent page of lookup results was not the last,
+   * so that the next lookup header continues the same listing.
+   */
+  protected boolean                     _morePages            = false;
+
+  /**
+   * True if the current page was requested by the {@link PageFetcher}, so that
+   * its edits are held until its footer arrives.
+   */
+  protected boolean                     _holdingPage          = false;
+
+  /**
+   * The edits of the current page, held until its footer arrives.
+   */
+  protected ArrayList<AddBlockEditTask> _heldEdits            = new ArrayList<AddBlockEditTask>();
+
+  /**
+   * Assigns times to edits with relative times.
+   */
+  protected TimeReconciler              _timeReconciler       = new TimeReconciler();
 
   /**
    * True for creation (place) and false for destruction (break).
    */
-  protected boolean              _creation;
+  protected boolean                     _creation;
 
   /**
    * X coordinate.
    */
-  protected int                  _x;
+  protected int                         _x;
 
   /**
    * Y coordinate.
    */
-  protected int                  _y;
+  protected int                         _y;
 
   /**
    * Z coordinate.
    */
-  protected int                  _z;
+  protected int                         _z;
+
+  /**
+   * Time stamp, if the details had an absolute time.
+   */
+  protected long                        _millis;
+
+  /**
+   * True if the details had a relative time, given by _earliest and _latest.
+   */
+  protected boolean                     _relative;
+
+  /**
+   * The earliest time that the relative time in the details could signify.
+   */
+  protected long                        _earliest;
 
   /**
-   * Time stamp.
+   * The latest time that the relative time in the details could signify.
    */
-  protected long                 _millis;
+  protected long                        _latest;
 
   /**
    * Player name.
    */
-  protected String               _player;
+  protected String                      _player;
 
   /**
    * Block type.
    */
-  protected BlockType            _type;
+  protected BlockType                   _type;
 } // class CoreProtectAnalysis
\ No newline at end of file
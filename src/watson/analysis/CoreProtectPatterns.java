@@ -17,6 +17,7 @@ import java.util.regex.Pattern;
  * §f                 §7^ §o(x3/y63/z-7/world)
  * §70.01/h ago §f- §3totemo §fplaced §3#4 (Cobblestone)§f.
  * §f                 §7^ §o(x2/y63/z-7/world)
+ * §fPage 1/3. View older data by typing "§3/co l &lt;page&gt;§f".
  * </pre>
  */
 public interface CoreProtectPatterns
@@ -31,4 +32,7 @@ public interface CoreProtectPatterns
 
   public static final Pattern LOOKUP_HEADER    = Pattern.compile("^----- CoreProtect Lookup Results -----$");
 
+  // The footer of each page of lookup results.
+  public static final Pattern LOOKUP_PAGE      = Pattern.compile("^Page (\\d+)/(\\d+)\\. View older data by typing .*$");
+
 } // class CoreProtectPatterns
\ No newline at end of file
@@ -20,11 +20,12 @@ import java.util.logging.Level;
 import java.util.regex.Matcher;
 
 import net.minecraft.util.text.ITextComponent;
+import net.minecraft.util.text.Style;
+import net.minecraft.util.text.TextComponentString;
+import net.minecraft.util.text.TextFormatting;
 import watson.Configuration;
-import watson.Controller;
 import watson.SyncTaskQueue;
 import watson.analysis.task.AddBlockEditTask;
-import watson.chat.Chat;
 import watson.chat.ChatComponents;
 import watson.chat.Colour;
 import watson.chat.IMatchedChatHandler;
@@ -83,7 +84,8 @@ public class LbCoordsAnalysis extends Analysis
       public boolean onMatchedChat(ITextComponent chat, Matcher m)
       {
         lbPage(chat, m);
-        return true;
+        // Echoed in page order by the PageFetcher.
+        return false;
       }
     });
 
@@ -115,6 +117,11 @@ public class LbCoordsAnalysis extends Analysis
    */
   void lbCoord(ITextComponent chat, Matcher m)
   {
+    if (PageFetcher.instance.isDiscarding())
+    {
+      return;
+    }
+
     try
     {
       // TODO: describe Matcher groups and their conversions in a config file.
@@ -128,10 +135,10 @@ public class LbCoordsAnalysis extends Analysis
       int minute = Integer.parseInt(m.group(4));
       int second = Integer.parseInt(m.group(5));
       long millis = TimeStamp.toMillis(ymd, hour, minute, second);
+      ServerTime.instance.observeEditTime(millis, true);
 
       String player = m.group(6);
       String action = m.group(7);
-      String block = m.group(8);
 
       // If there are an extra 4 groups, then we're dealing with a sign.
       String sign1 = null, sign2 = null, sign3 = null, sign4 = null;
@@ -153,10 +160,13 @@ public class LbCoordsAnalysis extends Analysis
         z = Integer.parseInt(m.group(11));
       }
 
-      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(block);
+      // Look up the block name in place. Since the whole chat matched, group()
+      // is the chat text itself, not a copy.
+      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(m.group(), m.start(8), m.end(8));
       boolean created = action.equals("created");
       BlockEdit edit = new BlockEdit(millis, player, created, x, y, z, type);
       SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      QueryCache.instance.addResult(edit);
 
       char colourCode = getChatColourChar(x, y, z);
       String colour = Configuration.instance.getRecolourQueryResults() ? "\247" + colourCode : "";
@@ -179,7 +189,7 @@ public class LbCoordsAnalysis extends Analysis
             "%s(%2d) %s%02d-%02d %02d:%02d:%02d (%d,%d,%d) %C%d %s%s",
             colour, index, year, ymd[1], ymd[2], hour, minute,
             second, x, y, z, (created ? '+' : '-'), type.getId(), player, signText);
-          Chat.localChat(output);
+          echo(new TextComponentString(output));
         }
       }
       else
@@ -187,11 +197,11 @@ public class LbCoordsAnalysis extends Analysis
         // No reformatting of query results. Recolour?
         if (Configuration.instance.getRecolourQueryResults())
         {
-          Chat.localChat(ChatComponents.getTextFormatting(colourCode), chat.getUnformattedText());
+          echo(ChatComponents.getTextFormatting(colourCode), chat.getUnformattedText());
         }
         else
         {
-          Chat.localChat(chat);
+          echo(chat);
         }
       }
 
@@ -209,6 +219,11 @@ public class LbCoordsAnalysis extends Analysis
    */
   void lbCoordKills(ITextComponent chat, Matcher m)
   {
+    if (PageFetcher.instance.isDiscarding())
+    {
+      return;
+    }
+
     try
     {
       int index = Integer.parseInt(m.group(1));
@@ -217,6 +232,7 @@ public class LbCoordsAnalysis extends Analysis
       int minute = Integer.parseInt(m.group(4));
       int second = Integer.parseInt(m.group(5));
       long millis = TimeStamp.toMillis(ymd, hour, minute, second);
+      ServerTime.instance.observeEditTime(millis, true);
 
       String player = m.group(6);
       String victim = m.group(7);
@@ -241,6 +257,7 @@ public class LbCoordsAnalysis extends Analysis
       // For our purposes, we'll treat a kill like a block destruction
       BlockEdit edit = new BlockEdit(millis, player, false, x, y, z, type);
       SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      QueryCache.instance.addResult(edit);
 
       char colourCode = getChatColourChar(x, y, z);
       String colour = Configuration.instance.getRecolourQueryResults() ? "\247" + colourCode : "";
@@ -259,7 +276,7 @@ public class LbCoordsAnalysis extends Analysis
             "%s(%2d) %s%02d-%02d %02d:%02d:%02d (%d,%d,%d) %s %s > %s",
             colour, index, year, ymd[1], ymd[2], hour, minute,
             second, x, y, z, player, weapon, victim);
-          Chat.localChat(output);
+          echo(new TextComponentString(output));
         }
       }
       else
@@ -267,11 +284,11 @@ public class LbCoordsAnalysis extends Analysis
         // No reformatting of query results. Recolour?
         if (Configuration.instance.getRecolourQueryResults())
         {
-          Chat.localChat(ChatComponents.getTextFormatting(colourCode), chat.getUnformattedText());
+          echo(ChatComponents.getTextFormatting(colourCode), chat.getUnformattedText());
         }
         else
         {
-          Chat.localChat(chat);
+          echo(chat);
         }
       }
 
@@ -290,6 +307,11 @@ public class LbCoordsAnalysis extends Analysis
    */
   void lbCoordReplaced(ITextComponent chat, Matcher m)
   {
+    if (PageFetcher.instance.isDiscarding())
+    {
+      return;
+    }
+
     try
     {
       int index = Integer.parseInt(m.group(1));
@@ -298,18 +320,19 @@ public class LbCoordsAnalysis extends Analysis
       int minute = Integer.parseInt(m.group(4));
       int second = Integer.parseInt(m.group(5));
       long millis = TimeStamp.toMillis(ymd, hour, minute, second);
+      ServerTime.instance.observeEditTime(millis, true);
 
       String player = m.group(6);
-      String oldBlock = m.group(7);
       // UNUSED: String newBlock = m.group(8);
       int x = Integer.parseInt(m.group(9));
       int y = Integer.parseInt(m.group(10));
       int z = Integer.parseInt(m.group(11));
-      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(oldBlock);
+      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(m.group(), m.start(7), m.end(7));
 
       // Store the destruction but don't bother with the creation.
       BlockEdit edit = new BlockEdit(millis, player, false, x, y, z, type);
       SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, true));
+      QueryCache.instance.addResult(edit);
 
       char colourCode = getChatColourChar(x, y, z);
       String colour = Configuration.instance.getRecolourQueryResults() ? "\247" + colourCode : "";
@@ -327,7 +350,7 @@ public class LbCoordsAnalysis extends Analysis
           String output = String.format(Locale.US,
             "%s(%2d) %s%02d-%02d %02d:%02d:%02d (%d,%d,%d) %C%d %s",
             colour, index, year, ymd[1], ymd[2], hour, minute, second, x, y, z, '-', type.getId(), player);
-          Chat.localChat(output);
+          echo(new TextComponentString(output));
         }
       }
       else
@@ -335,11 +358,11 @@ public class LbCoordsAnalysis extends Analysis
         // No reformatting of query results. Recolour?
         if (Configuration.instance.getRecolourQueryResults())
         {
-          Chat.localChat(ChatComponents.getTextFormatting(colourCode), chat.getUnformattedText());
+          echo(ChatComponents.getTextFormatting(colourCode), chat.getUnformattedText());
         }
         else
         {
-          Chat.localChat(chat);
+          echo(chat);
         }
       }
       requestNextPage();
@@ -363,55 +386,62 @@ public class LbCoordsAnalysis extends Analysis
   {
     int currentPage = Integer.parseInt(m.group(1));
     int pageCount = Integer.parseInt(m.group(2));
-
-    // Enforce the page limit here.
-    if (pageCount <= Configuration.instance.getMaxAutoPages())
-    {
-      _currentPage = currentPage;
-      _pageCount = pageCount;
-    }
-    else
-    {
-      _currentPage = _pageCount = 0;
-    }
+    PageFetcher.instance.onPage(currentPage, pageCount, chat, PageFetcher.LOGBLOCK_PAGE);
   } // lbPage
 
   // --------------------------------------------------------------------------
   /**
    * Sometimes you do an /lb query (e.g. "/lb time 4h block 56 sum p") that
    * results in a page header ("Page 1/3"), and immediately follow that with an
-   * "/lb coords" query that doesn't have a page header. Consequently,
-   * _currentPage and _pageCount can be set to the values for the preceding
-   * query and requestNextPage() will attempt to page through. To prevent that,
-   * we look for the various headers in /lb results and clear the counters.
+   * "/lb coords" query that doesn't have a page header. Consequently, the
+   * PageFetcher would still have the page count of the preceding query and
+   * requestNextPage() would attempt to page through. To prevent that, we look
+   * for the various headers in /lb results and reset the PageFetcher.
    */
   @SuppressWarnings("unused")
   void lbHeader(ITextComponent chat, Matcher m)
   {
-    _currentPage = _pageCount = 0;
+    QueryCache.instance.onHeader();
+    PageFetcher.instance.reset();
   }
 
   // --------------------------------------------------------------------------
   /**
    * This method is called when coordinates are parsed out of chat to request
-   * the next page of "/lb coords" results, up to the configured maximum number
+   * the next pages of "/lb coords" results, up to the configured maximum number
    * of pages.
    */
   private void requestNextPage()
   {
-    if (Configuration.instance.isAutoPage())
-    {
-      if (_currentPage != 0 && _currentPage < _pageCount
-          && _pageCount <= Configuration.instance.getMaxAutoPages())
-      {
-        Controller.instance.serverChat(String.format(Locale.US, "/lb page %d", _currentPage + 1));
+    PageFetcher.instance.requestPages();
+  }
 
-        // Remember that we don't need to do this again until next page is
-        // parsed.
-        _currentPage = _pageCount = 0;
-      }
-    }
-  } // requestNextPage
+  // --------------------------------------------------------------------------
+  /**
+   * Echo a line of results in chat, in page order.
+   *
+   * @param chat the line.
+   */
+  private void echo(ITextComponent chat)
+  {
+    PageFetcher.instance.echo(chat);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Echo a line of results in chat, in page order, in the specified colour.
+   *
+   * @param colour the colour.
+   * @param text the text of the line.
+   */
+  private void echo(TextFormatting colour, String text)
+  {
+    TextComponentString chat = new TextComponentString(text);
+    Style style = new Style();
+    style.setColor(colour);
+    chat.setStyle(style);
+    echo(chat);
+  }
 
   // --------------------------------------------------------------------------
   /**
@@ -473,14 +503,4 @@ public class LbCoordsAnalysis extends Analysis
    */
   protected int                _lastX, _lastY, _lastZ;
 
-  /**
-   * Current page number extracted from lb.page lines.
-   */
-  protected int                _currentPage            = 0;
-
-  /**
-   * Total number of pages of results, from lb.page lines.
-   */
-  protected int                _pageCount              = 0;
-
 } // class LbCoordsAnalysis
\ No newline at end of file
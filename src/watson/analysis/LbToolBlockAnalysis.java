@@ -89,11 +89,11 @@ public class LbToolBlockAnalysis extends Analysis
       int minute = Integer.parseInt(m.group(3));
       int second = Integer.parseInt(m.group(4));
       long millis = TimeStamp.toMillis(ymd, hour, minute, second);
+      ServerTime.instance.observeEditTime(millis, false);
       String player = m.group(5);
       String action = m.group(6);
       boolean created = action.equals("created");
-      String block = m.group(7);
-      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(block);
+      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(m.group(), m.start(7), m.end(7));
       addBlockEdit(millis, player, created, type);
     }
   } // lbEdit
@@ -111,9 +111,9 @@ public class LbToolBlockAnalysis extends Analysis
       int minute = Integer.parseInt(m.group(3));
       int second = Integer.parseInt(m.group(4));
       long millis = TimeStamp.toMillis(ymd, hour, minute, second);
+      ServerTime.instance.observeEditTime(millis, false);
       String player = m.group(5);
-      String oldBlock = m.group(6);
-      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(oldBlock);
+      BlockType type = BlockTypeRegistry.instance.getBlockTypeByName(m.group(), m.start(6), m.end(6));
 
       // Just add the destruction.
       addBlockEdit(millis, player, false, type);
@@ -77,6 +77,11 @@ public interface LogBlockPatterns
   // "§3Stone and diamond ore changes from player freddo between 869 and 787 minutes ago in world summed up by blocks:"
   public static final Pattern LB_HEADER_BLOCK         = Pattern.compile("^(?: |,|\\w)+ (?:destructions|changes) from player \\w+ (?:in the last \\d+ minutes |between \\d+ and \\d+ minutes ago |more than -?\\d+ minutes ago )?(?:within \\d+ blocks of you )?in .+(?: summed up by (players|blocks))?:$");
 
+  // A generalisation of ID lb.header.block that also matches headers without a
+  // player, e.g. "Block changes in the last 60 minutes within 10 blocks of you
+  // in world:".
+  public static final Pattern LB_HEADER_ANY           = Pattern.compile("^(?: |,|\\w)+ (?:destructions|changes) .*in .+:$");
+
   public static final Pattern LB_SUM                  = Pattern.compile("^(\\d+)[ ]{6,}(\\d+)[ ]{6,}((?:\\w| )+)$");
 
 } // class LogBlockPatterns
\ No newline at end of file
@@ -0,0 +1,425 @@
+package watson.analysis;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.minecraft.util.text.ITextComponent;
+import watson.Configuration;
+import watson.Controller;
+import watson.chat.Chat;
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * Automatically pages through multi-page LogBlock, Prism and CoreProtect
+ * results that include coordinates, keeping up to auto_page_window page
+ * requests in flight at once rather than waiting for each page to arrive
+ * before requesting the next.
+ *
+ * Each plugin's analysis reports its page headers (or, for CoreProtect, page
+ * footers) to {@link #onPage(int, int, ITextComponent, String)}, along with
+ * the command that requests a page from that plugin. Page requests are sent
+ * through the rate limited server chat queue.
+ *
+ * The plugins answer page requests in the order they were sent, so the lines
+ * that follow a LogBlock "Page N/M" header belong to page N. The fetcher
+ * tracks which pages have been requested and received, and uses that to:
+ * <ul>
+ * <li>recognise pages that arrive twice; while {@link #isDiscarding()} returns
+ * true, each analysis ignores the lines it parses,</li>
+ * <li>request again, once, any page that was skipped (e.g. because the server's
+ * spam filter swallowed the request), and</li>
+ * <li>hold the echoed lines of pages that arrive ahead of a missing page, so
+ * that results are shown in page order once the missing page arrives.</li>
+ * </ul>
+ * If a missing page still hasn't arrived after HOLD_TIMEOUT_MILLIS, the held
+ * lines are shown anyway. Only LogBlock results are echoed through the
+ * fetcher; Prism and CoreProtect results are shown as they arrive.
+ *
+ * CoreProtect only numbers a page in its footer, after the lines of the page,
+ * so its analysis holds the edits of a page it has requested until the footer
+ * says whether they are a duplicate; see {@link #isAwaitingPages(String)}.
+ *
+ * Each analysis calls {@link #reset()} when the header of a new lookup
+ * arrives, so that page requests still queued for the previous results are
+ * not sent.
+ */
+public class PageFetcher
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Single instance of this class.
+   */
+  public static final PageFetcher instance          = new PageFetcher();
+
+  /**
+   * The format of the command that requests a page of LogBlock results.
+   */
+  public static final String      LOGBLOCK_PAGE     = "/lb page %d";
+
+  /**
+   * The format of the command that requests a page of Prism results.
+   */
+  public static final String      PRISM_PAGE        = "/prism page %d";
+
+  /**
+   * The format of the command that requests a page of CoreProtect results.
+   */
+  public static final String      COREPROTECT_PAGE  = "/co l %d";
+
+  // --------------------------------------------------------------------------
+  /**
+   * Forget the pages of the previous results, when the header of new results
+   * is received.
+   *
+   * Any held lines are shown and page requests that have not been sent yet are
+   * cancelled.
+   */
+  public synchronized void reset()
+  {
+    flushHeld();
+    Controller.instance.getServerChatScheduler().cancelPageRequests();
+    _pageCount = _resultPages = _page = _highestRequested = _nextEcho = 0;
+    _discarding = false;
+    _requested.clear();
+    _received.clear();
+    _retried.clear();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Handle a "Page N/M" header.
+   *
+   * @param page the page number (N).
+   * @param pageCount the number of pages (M).
+   * @param chat the header line, which is echoed in page order, or null if
+   *          the caller shows it.
+   * @param pageCommand the format of the command that requests a page from
+   *          the plugin that sent the header, e.g. {@link #LOGBLOCK_PAGE}.
+   */
+  public synchronized void onPage(int page, int pageCount, ITextComponent chat, String pageCommand)
+  {
+    if (_pageCount == 0 || pageCount != _pageCount || !pageCommand.equals(_pageCommand)
+        || (page == 1 && _received.get(1)))
+    {
+      // The first page seen since the header, which may not be page 1 if the
+      // user typed "/lb page N". Page 1 is never requested by the fetcher, so
+      // it always starts new results.
+      _pageCommand = pageCommand;
+      start(page, pageCount);
+    }
+    else if (_received.get(page))
+    {
+      Log.debug("dropped duplicate page %d of %d", page, pageCount);
+      _discarding = true;
+      return;
+    }
+    else
+    {
+      // The previous page is complete.
+      advanceEcho();
+      requestSkippedPages(page);
+    }
+
+    _discarding = false;
+    _page = page;
+    _received.set(page);
+    _lastReceivedTime = System.currentTimeMillis();
+    if (chat != null)
+    {
+      echo(chat);
+    }
+  } // onPage
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the lines currently arriving belong to a page that has
+   * already been received, and should be ignored.
+   *
+   * @return true if the current lines should be ignored.
+   */
+  public synchronized boolean isDiscarding()
+  {
+    return _discarding;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if pages of the current results that were requested with the
+   * specified command have not arrived yet, meaning that the next results from
+   * that plugin are one of those pages rather than a new lookup.
+   *
+   * @param pageCommand the format of the command that requests a page, e.g.
+   *          {@link #COREPROTECT_PAGE}.
+   * @return true if requested pages are still to arrive.
+   */
+  public synchronized boolean isAwaitingPages(String pageCommand)
+  {
+    return _pageCount != 0 && pageCommand.equals(_pageCommand) && getPagesInFlight() > 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if every page of the current results has been received, or
+   * the results were not split into pages.
+   *
+   * @return true if every page of the current results has been received.
+   */
+  public synchronized boolean isComplete()
+  {
+    return _resultPages == 0 || _received.nextClearBit(1) > _resultPages;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Show a line of results in chat, or hold it until earlier pages have been
+   * shown.
+   *
+   * @param chat the line to show.
+   */
+  public synchronized void echo(ITextComponent chat)
+  {
+    _lastReceivedTime = System.currentTimeMillis();
+    if (_pageCount == 0 || _page == _nextEcho)
+    {
+      Chat.localChat(chat);
+    }
+    else
+    {
+      ArrayList<ITextComponent> lines = _held.get(_page);
+      if (lines == null)
+      {
+        lines = new ArrayList<ITextComponent>();
+        _held.put(_page, lines);
+      }
+      lines.add(chat);
+    }
+  } // echo
+
+  // --------------------------------------------------------------------------
+  /**
+   * Request further pages, up to the configured number in flight.
+   *
+   * This is called whenever a line with coordinates is parsed, so that only
+   * results with coordinates are paged through automatically.
+   */
+  public synchronized void requestPages()
+  {
+    if (!Configuration.instance.isAutoPage() || _pageCount == 0)
+    {
+      return;
+    }
+
+    int window = Configuration.instance.getAutoPageWindow();
+    while (_highestRequested < _pageCount && getPagesInFlight() < window)
+    {
+      ++_highestRequested;
+      _requested.set(_highestRequested);
+      Controller.instance.serverChat(String.format(Locale.US, _pageCommand, _highestRequested));
+    }
+  } // requestPages
+
+  // --------------------------------------------------------------------------
+  /**
+   * Show held lines if the pages they are waiting for are overdue.
+   *
+   * This method should be called from the main thread, once per tick.
+   */
+  public synchronized void onTick()
+  {
+    if (!_held.isEmpty() && System.currentTimeMillis() - _lastReceivedTime > HOLD_TIMEOUT_MILLIS)
+    {
+      for (int page = _nextEcho; page < _held.firstKey(); ++page)
+      {
+        if (!_received.get(page))
+        {
+          Log.warning(String.format(Locale.US, "page %d of %d of results never arrived", page, _pageCount));
+        }
+      }
+      flushHeld();
+      _nextEcho = _page;
+    }
+  } // onTick
+
+  // --------------------------------------------------------------------------
+  /**
+   * Start tracking the pages of new results.
+   *
+   * @param page the first page received.
+   * @param pageCount the number of pages.
+   */
+  protected void start(int page, int pageCount)
+  {
+    flushHeld();
+    _requested.clear();
+    _received.clear();
+    _retried.clear();
+
+    // Results with more than max_auto_pages pages are not paged through.
+    _resultPages = pageCount;
+    _pageCount = (pageCount <= Configuration.instance.getMaxAutoPages()) ? pageCount : 0;
+    _requested.set(1, page + 1);
+    _received.set(1, page);
+    _highestRequested = page;
+    _nextEcho = page;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Advance the next page to echo past all pages that are complete, showing
+   * their held lines.
+   *
+   * Pages are complete once a later page header arrives.
+   */
+  protected void advanceEcho()
+  {
+    while (_nextEcho <= _pageCount && _received.get(_nextEcho))
+    {
+      ArrayList<ITextComponent> lines = _held.remove(_nextEcho);
+      if (lines != null)
+      {
+        for (ITextComponent line : lines)
+        {
+          Chat.localChat(line);
+        }
+      }
+      ++_nextEcho;
+    }
+  } // advanceEcho
+
+  // --------------------------------------------------------------------------
+  /**
+   * Request again any pages that were requested before the specified page but
+   * have not been received, unless they have already been requested again.
+   *
+   * @param page the page just received.
+   */
+  protected void requestSkippedPages(int page)
+  {
+    for (int skipped = _nextEcho; skipped < page; ++skipped)
+    {
+      if (_requested.get(skipped) && !_received.get(skipped) && !_retried.get(skipped))
+      {
+        Log.debug("requesting skipped page %d of %d", skipped, _pageCount);
+        _retried.set(skipped);
+        Controller.instance.serverChat(String.format(Locale.US, _pageCommand, skipped));
+      }
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of pages requested but not yet received.
+   *
+   * @return the number of pages in flight.
+   */
+  protected int getPagesInFlight()
+  {
+    int count = 0;
+    for (int page = _nextEcho; page <= _highestRequested; ++page)
+    {
+      if (_requested.get(page) && !_received.get(page))
+      {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Show all held lines in page order.
+   */
+  protected void flushHeld()
+  {
+    for (Map.Entry<Integer, ArrayList<ITextComponent>> entry : _held.entrySet())
+    {
+      for (ITextComponent line : entry.getValue())
+      {
+        Chat.localChat(line);
+      }
+    }
+    _held.clear();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor to enforce singleton pattern.
+   */
+  private PageFetcher()
+  {
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The time in milliseconds without any results arriving after which held
+   * lines are shown, even though earlier pages are missing.
+   */
+  protected static final long                                HOLD_TIMEOUT_MILLIS = 3000;
+
+  /**
+   * The number of pages of the current results, or 0 if they are not being
+   * paged through.
+   */
+  protected int                                              _pageCount;
+
+  /**
+   * The number of pages of the current results, even if they are not being
+   * paged through, or 0 if there was no page header.
+   */
+  protected int                                              _resultPages;
+
+  /**
+   * The format of the command that requests a page of the current results.
+   */
+  protected String                                           _pageCommand        = LOGBLOCK_PAGE;
+
+  /**
+   * The page whose lines are currently arriving.
+   */
+  protected int                                              _page;
+
+  /**
+   * The highest page number requested.
+   */
+  protected int                                              _highestRequested;
+
+  /**
+   * The lowest page whose lines have not all been shown; lines of this page
+   * are shown as they arrive.
+   */
+  protected int                                              _nextEcho;
+
+  /**
+   * True if the current page is a duplicate, whose lines are ignored.
+   */
+  protected boolean                                          _discarding;
+
+  /**
+   * The time when the last line of results arrived.
+   */
+  protected long                                             _lastReceivedTime;
+
+  /**
+   * Pages that have been requested.
+   */
+  protected BitSet                                           _requested          = new BitSet();
+
+  /**
+   * Pages that have been received.
+   */
+  protected BitSet                                           _received           = new BitSet();
+
+  /**
+   * Pages that have been requested a second time.
+   */
+  protected BitSet                                           _retried            = new BitSet();
+
+  /**
+   * Lines held until earlier pages have been shown, by page number.
+   */
+  protected TreeMap<Integer, ArrayList<ITextComponent>>      _held               = new TreeMap<Integer, ArrayList<ITextComponent>>();
+} // class PageFetcher
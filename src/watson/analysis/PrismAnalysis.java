@@ -3,6 +3,7 @@ package watson.analysis;
 import static watson.analysis.PrismPatterns.DATE_TIME_WORLD_COORDS;
 import static watson.analysis.PrismPatterns.INSPECTOR_HEADER;
 import static watson.analysis.PrismPatterns.LOOKUP_DEFAULTS;
+import static watson.analysis.PrismPatterns.LOOKUP_HEADER;
 import static watson.analysis.PrismPatterns.PLACE_BREAK;
 
 import java.util.regex.Matcher;
@@ -110,6 +111,15 @@ public class PrismAnalysis extends Analysis
         return true;
       }
     });
+    addMatchedChatHandler(LOOKUP_HEADER, new IMatchedChatHandler()
+    {
+      @Override
+      public boolean onMatchedChat(ITextComponent chat, Matcher m)
+      {
+        lookupHeader(chat, m);
+        return true;
+      }
+    });
   } // constructor
 
   // --------------------------------------------------------------------------
@@ -154,9 +164,8 @@ public class PrismAnalysis extends Analysis
       // optional count, e.g. "x5" for 5 edits grouped together. Discard the
       // count.
       Matcher countMatch = COUNT_PATTERN.matcher(blockAndCount);
-      String block = countMatch.find() ? blockAndCount.substring(0, m.start())
-        : blockAndCount;
-      _type = BlockTypeRegistry.instance.getBlockTypeByName(block);
+      int blockEnd = countMatch.find() ? countMatch.start() : blockAndCount.length();
+      _type = BlockTypeRegistry.instance.getBlockTypeByName(blockAndCount, 0, blockEnd);
     }
 
     // Actions include place and break for blocks and bucket for liquids.
@@ -174,6 +183,12 @@ public class PrismAnalysis extends Analysis
     if (_expectingDateTimeCoords)
     {
       _expectingDateTimeCoords = false;
+      if (!_inspectorResult && PageFetcher.instance.isDiscarding())
+      {
+        // A result on a duplicate page of lookup results.
+        return;
+      }
+
       int month = Integer.parseInt(m.group(1));
       int day = Integer.parseInt(m.group(2));
       int year = 2000 + Integer.parseInt(m.group(3));
@@ -187,9 +202,10 @@ public class PrismAnalysis extends Analysis
       }
       long millis = TimeStamp.toMillis(year, month, day, hour, minute, second);
 
-      int x = Integer.parseInt(m.group(8));
-      int y = Integer.parseInt(m.group(9));
-      int z = Integer.parseInt(m.group(10));
+      String world = m.group(8);
+      int x = Integer.parseInt(m.group(9));
+      int y = Integer.parseInt(m.group(10));
+      int z = Integer.parseInt(m.group(11));
       Controller.instance.selectPosition(x, y, z);
 
       if (_player != null && _type != null)
@@ -199,14 +215,18 @@ public class PrismAnalysis extends Analysis
           // Update variables only on the first (most recent) result after an
           // inspector header, but update it on every result from a lookup.
           boolean updateVariables = (!_inspectorResult || _awaitingFirstResult);
+          // Inspector results are in the player's world, as are the results
+          // of lookups limited to a radius; other lookups may not be.
           BlockEdit edit = new BlockEdit(millis, _player, _created, x, y, z, _type);
-          SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, updateVariables));
+          SyncTaskQueue.instance.addTask(new AddBlockEditTask(edit, updateVariables, world,
+            _inspectorResult || Controller.instance.isLocalLookup()));
           if (_awaitingFirstResult)
           {
             _awaitingFirstResult = false;
           }
         }
       }
+      PageFetcher.instance.requestPages();
     }
   } // dateTimeWorldCoords
 
@@ -221,6 +241,25 @@ public class PrismAnalysis extends Analysis
     _inspectorResult = false;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Parse the "Page X of Y" header at the top of each page of lookup results,
+   * so that the results can be paged through automatically.
+   *
+   * The PageFetcher never requests page 1, so it is the start of a new lookup.
+   */
+  @SuppressWarnings("unused")
+  void lookupHeader(ITextComponent chat, Matcher m)
+  {
+    int page = Integer.parseInt(m.group(3));
+    int pageCount = Integer.parseInt(m.group(4));
+    if (page == 1)
+    {
+      PageFetcher.instance.reset();
+    }
+    PageFetcher.instance.onPage(page, pageCount, null, PageFetcher.PRISM_PAGE);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * When the corresponding chat line is matched, we know that we are parsing
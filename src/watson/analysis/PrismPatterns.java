@@ -36,7 +36,7 @@ public interface PrismPatterns
 
   // Date is M/D/YY.
   // -- 2178 - 3/25/13 6:37pm - world @ 2.0 65.0 238.0
-  public static final Pattern DATE_TIME_WORLD_COORDS = Pattern.compile("^ -- \\d+ - (\\d+)/(\\d+)/(\\d+) (\\d+):(\\d+):(\\d+)([ap]m) - .+ @ (-?\\d+).0 (\\d+).0 (-?\\d+).0\\s*$");
+  public static final Pattern DATE_TIME_WORLD_COORDS = Pattern.compile("^ -- \\d+ - (\\d+)/(\\d+)/(\\d+) (\\d+):(\\d+):(\\d+)([ap]m) - (.+) @ (-?\\d+).0 (\\d+).0 (-?\\d+).0\\s*$");
 
   // Prism // Showing 1 results. Page 1 of 1
   // Someone may one day fix the 's' on "results" for singular results.
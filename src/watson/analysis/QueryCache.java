@@ -0,0 +1,840 @@
+package watson.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.util.math.MathHelper;
+import watson.Configuration;
+import watson.Controller;
+import watson.SyncTaskQueue;
+import watson.analysis.task.AddBlockEditTask;
+import watson.chat.Chat;
+import watson.db.BlockEdit;
+import watson.db.BlockTypeRegistry;
+import watson.db.TimeStamp;
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * Remembers the edits returned by "/lb ... coords" queries so that repeating a
+ * query, e.g. after hiding or clearing edits or returning from another
+ * dimension, can be answered without asking the server again.
+ *
+ * Queries are normalised into a key made of the players, blocks, area and
+ * other parameters, independent of their order and case. The time range of the
+ * query ("since"/"time" and "before") is kept separately, so that a repeated
+ * query with a relative time ("time 2h") is answered from the cached edits in
+ * the part of its range that was already fetched, and only the remainder is
+ * requested from the server. A query without a start time is treated in the
+ * same way: its cached edits are shown and the query is sent again, narrowed
+ * to the edits since it was cached. Queries with a "limit" are only answered
+ * when they are repeated exactly, their time parameters are absolute and their
+ * time range has ended.
+ *
+ * Results are cached separately for each server and dimension, using the same
+ * identifiers as the {@link watson.db.BlockEditSet}s in the {@link Controller}.
+ * Each server and dimension holds at most MAX_ENTRIES queries, evicting the
+ * least recently used, and cached results expire after TTL_MILLIS.
+ *
+ * Complete results of a query that returns every stone and diamond ore
+ * destruction of its players also record the time range they cover in the
+ * {@link watson.db.BlockEditSet}, so that "/w ratio" can count those locally.
+ *
+ * Results are only cached when all of their pages were received. Edits are
+ * attributed to a query from the first LogBlock header after the query is
+ * sent, up to the next query's header.
+ */
+public class QueryCache
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Single instance of this class.
+   */
+  public static final QueryCache instance = new QueryCache();
+
+  // --------------------------------------------------------------------------
+  /**
+   * Examine a chat message about to be sent to the server and, if it is a
+   * LogBlock query whose results are cached, answer it locally.
+   *
+   * This is called for all outgoing chats, both typed and programmatically
+   * generated, after Watson's own commands have been handled.
+   *
+   * @param chat the outgoing chat message.
+   * @return null if the query was answered locally and should not be sent, a
+   *         narrower query to send in its place, or the chat itself if it
+   *         should be sent unchanged.
+   */
+  public synchronized String resolve(String chat)
+  {
+    long now = getServerNow();
+    settle();
+
+    Query query = parse(chat, now);
+    if (query == null)
+    {
+      return chat;
+    }
+
+    if (query.key != null && Configuration.instance.isQueryCache())
+    {
+      String id = Controller.instance.getBlockEditSetId();
+      LinkedHashMap<String, Entry> entries = getEntries(id);
+      Entry entry = entries.get(query.key);
+      if (entry != null && System.currentTimeMillis() - entry.storedTime > TTL_MILLIS)
+      {
+        entries.remove(query.key);
+        entry = null;
+      }
+
+      if (entry != null)
+      {
+        if (query.exact)
+        {
+          int count = replay(entry.edits, Long.MIN_VALUE, Long.MAX_VALUE);
+          Chat.localOutput(String.format(Locale.US, "%d cached edits shown; query not sent.", count));
+          return null;
+        }
+
+        long to = (query.before == Long.MAX_VALUE) ? now : query.before;
+        if (entry.since <= query.since)
+        {
+          if (to <= entry.end)
+          {
+            int count = replay(entry.edits, query.since, to);
+            cover(id, query, query.since, to);
+            Chat.localOutput(String.format(Locale.US, "%d cached edits shown; query not sent.", count));
+            return null;
+          }
+          else if (query.since < entry.end)
+          {
+            int count = replay(entry.edits, query.since, entry.end);
+            cover(id, query, query.since, entry.end);
+            String narrowed = query.narrow(entry.end);
+            Chat.localOutput(String.format(Locale.US, "%d cached edits shown; querying edits since %s.",
+              count, TimeStamp.formatMonthDayTime(entry.end)));
+            Log.debug("narrowed query: %s", narrowed);
+            return narrowed;
+          }
+        }
+      }
+    } // if cacheable
+
+    Recording recording = new Recording();
+    recording.id = Controller.instance.getBlockEditSetId();
+    recording.query = query;
+    recording.end = (query.before == Long.MAX_VALUE) ? now - now % 1000 : query.before;
+    recording.sentTime = System.currentTimeMillis();
+    _pending.add(recording);
+    return chat;
+  } // resolve
+
+  // --------------------------------------------------------------------------
+  /**
+   * Note that a LogBlock results header was received, marking the start of the
+   * results of the oldest query not yet answered.
+   *
+   * This must be called before the {@link PageFetcher} is reset for the new
+   * results, so that the completeness of the previous results can be checked.
+   */
+  public synchronized void onHeader()
+  {
+    long time = System.currentTimeMillis();
+    while (!_pending.isEmpty() && time - _pending.peek().sentTime > PENDING_TIMEOUT_MILLIS)
+    {
+      _pending.poll();
+    }
+
+    if (!_pending.isEmpty())
+    {
+      finish();
+      _current = _pending.poll();
+      _current.lastResultTime = time;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record an edit parsed from the results of the current query.
+   *
+   * @param edit the edit.
+   */
+  public synchronized void addResult(BlockEdit edit)
+  {
+    if (_current != null)
+    {
+      _current.edits.add(edit);
+      _current.lastResultTime = System.currentTimeMillis();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Forget all cached results.
+   */
+  public synchronized void clear()
+  {
+    _entries.clear();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Store the results of the current query if they are complete and no more
+   * are expected.
+   */
+  protected void settle()
+  {
+    if (_current != null && _pending.isEmpty() && PageFetcher.instance.isComplete()
+        && System.currentTimeMillis() - _current.lastResultTime >= SETTLE_MILLIS)
+    {
+      finish();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Stop recording the current query, storing its results if they are
+   * complete.
+   */
+  protected void finish()
+  {
+    Recording recording = _current;
+    _current = null;
+    if (recording == null || recording.query.key == null || !PageFetcher.instance.isComplete())
+    {
+      return;
+    }
+
+    Query query = recording.query;
+    cover(recording.id, query, query.since, recording.end);
+    LinkedHashMap<String, Entry> entries = getEntries(recording.id);
+    Entry entry = entries.get(query.key);
+    if (entry != null && !query.exact && entry.since <= query.since && query.since <= entry.end
+        && recording.end >= entry.end && System.currentTimeMillis() - entry.storedTime <= TTL_MILLIS)
+    {
+      // The results continue the cached results, e.g. of a narrowed query.
+      entry.edits.addAll(recording.edits);
+      entry.end = recording.end;
+    }
+    else
+    {
+      entry = new Entry();
+      entry.since = query.since;
+      entry.end = recording.end;
+      entry.edits = recording.edits;
+      entries.put(query.key, entry);
+    }
+    entry.storedTime = System.currentTimeMillis();
+    Log.debug("cached %d edits for %s %s", entry.edits.size(), recording.id, query.key);
+  } // finish
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record, in the current {@link watson.db.BlockEditSet}, that the edits
+   * returned by a query cover the time range [since,before), if the query
+   * returns every stone and diamond ore destruction by its players.
+   *
+   * This is done on the main thread, after the edits queued for addition
+   * before it.
+   *
+   * @param id the server and dimension identifier when the query was sent.
+   * @param query the query.
+   * @param since the start of the time range, inclusive.
+   * @param before the end of the time range, exclusive.
+   */
+  protected static void cover(final String id, Query query, final long since, final long before)
+  {
+    if (!query.covering)
+    {
+      return;
+    }
+
+    final ArrayList<String> players = query.players;
+    SyncTaskQueue.instance.addTask(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        if (id.equals(Controller.instance.getBlockEditSetId()))
+        {
+          Controller.instance.getBlockEditSet().addCoverage(players, since, before);
+        }
+      }
+    });
+  } // cover
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add the cached edits in the time range [from,to) to the current
+   * {@link watson.db.BlockEditSet}, on the main thread.
+   *
+   * @param edits the cached edits.
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return the number of edits added.
+   */
+  protected int replay(List<BlockEdit> edits, long from, long to)
+  {
+    ArrayList<BlockEdit> selected = new ArrayList<BlockEdit>();
+    for (BlockEdit edit : edits)
+    {
+      // Edit times are not always whole seconds; query times are.
+      long second = edit.time - edit.time % 1000;
+      if (second >= from && second < to)
+      {
+        selected.add(edit);
+      }
+    }
+
+    for (int i = 0; i < selected.size(); ++i)
+    {
+      // Select the last edit, as if the results had just arrived.
+      SyncTaskQueue.instance.addTask(new AddBlockEditTask(selected.get(i), i == selected.size() - 1));
+    }
+    return selected.size();
+  } // replay
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the cached results for the specified server and dimension.
+   *
+   * @param id the server and dimension identifier.
+   * @return the cached results, in least recently used order.
+   */
+  protected LinkedHashMap<String, Entry> getEntries(String id)
+  {
+    LinkedHashMap<String, Entry> entries = _entries.get(id);
+    if (entries == null)
+    {
+      entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+      {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+        {
+          return size() > MAX_ENTRIES;
+        }
+      };
+      _entries.put(id, entries);
+    }
+    return entries;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the current time at the server, in the same time zone as edit
+   * times.
+   *
+   * @return the current time at the server.
+   */
+  protected static long getServerNow()
+  {
+    return System.currentTimeMillis() - ServerTime.instance.getLocalMinusServerMinutes() * 60 * 1000L;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse a chat message as a LogBlock lookup query.
+   *
+   * @param chat the chat message.
+   * @param now the current time at the server.
+   * @return the parsed query, null if the chat is not a LogBlock lookup, or a
+   *         query with a null key if the lookup cannot be cached.
+   */
+  protected static Query parse(String chat, long now)
+  {
+    Matcher m = LB_QUERY.matcher(chat.trim());
+    if (!m.matches())
+    {
+      return null;
+    }
+
+    String[] tokens = m.group(1).toLowerCase(Locale.US).split("\\s+");
+    int first = tokens[0].equals("lookup") ? 1 : 0;
+    if (first >= tokens.length || NON_LOOKUPS.contains(tokens[first]))
+    {
+      return null;
+    }
+
+    Query query = new Query();
+    ArrayList<String> players = new ArrayList<String>();
+    ArrayList<String> blocks = new ArrayList<String>();
+    ArrayList<String> others = new ArrayList<String>();
+    boolean coords = false;
+    boolean limit = false;
+    boolean relative = false;
+    try
+    {
+      int i = first;
+      while (i < tokens.length)
+      {
+        String token = tokens[i++];
+        if (token.equals("player") || token.equals("players"))
+        {
+          while (i < tokens.length && !KEYWORDS.contains(tokens[i]))
+          {
+            players.add(tokens[i++]);
+          }
+        }
+        else if (token.equals("block") || token.equals("blocks") || token.equals("type"))
+        {
+          while (i < tokens.length && !KEYWORDS.contains(tokens[i]))
+          {
+            blocks.add(tokens[i++]);
+          }
+        }
+        else if (token.equals("since") || token.equals("time") || token.equals("before"))
+        {
+          int start = i;
+          long time;
+          if (i < tokens.length && QUERY_DATE.matcher(tokens[i]).matches())
+          {
+            String date = tokens[i++];
+            String timeOfDay = (i < tokens.length && QUERY_TIME.matcher(tokens[i]).matches()) ? tokens[i++] : null;
+            time = TimeStamp.parseQueryTime(date, timeOfDay);
+          }
+          else
+          {
+            long duration = 0;
+            if (i + 1 < tokens.length && tokens[i].matches("\\d+") && DURATION_UNITS.containsKey(tokens[i + 1]))
+            {
+              duration = Long.parseLong(tokens[i]) * DURATION_UNITS.get(tokens[i + 1]);
+              i += 2;
+            }
+            else if (i < tokens.length && COMPACT_DURATION.matcher(tokens[i]).matches())
+            {
+              Matcher part = DURATION_PART.matcher(tokens[i++]);
+              while (part.find())
+              {
+                duration += Long.parseLong(part.group(1)) * DURATION_UNITS.get(part.group(2));
+              }
+            }
+            else
+            {
+              // Not a time that we understand.
+              return query;
+            }
+            relative = true;
+            time = now - duration;
+          }
+
+          if (token.equals("before"))
+          {
+            query.before = time;
+          }
+          else
+          {
+            query.since = time;
+          }
+          query.timeSpans.add(new int[] {start - 1, i});
+        }
+        else if (token.equals("area") || token.equals("radius"))
+        {
+          // The area is relative to the player's position.
+          Minecraft mc = Minecraft.getMinecraft();
+          String radius = (i < tokens.length) ? tokens[i++] : "";
+          others.add(String.format(Locale.US, "area %s @ %d %d %d", radius,
+            MathHelper.floor(mc.player.posX), MathHelper.floor(mc.player.posY), MathHelper.floor(mc.player.posZ)));
+        }
+        else if (token.equals("world") || token.equals("limit"))
+        {
+          limit |= token.equals("limit");
+          others.add(token + " " + ((i < tokens.length) ? tokens[i++] : ""));
+        }
+        else if (UNCACHEABLE.contains(token))
+        {
+          return query;
+        }
+        else
+        {
+          coords |= token.equals("coords");
+          others.add(token);
+        }
+      } // while
+    }
+    catch (IllegalArgumentException ex)
+    {
+      return query;
+    }
+
+    // Queries with a limit can only be answered when repeated exactly, so their
+    // times must be absolute, and must not extend past the present, or edits
+    // made after the query was cached would be missing from the answer.
+    query.exact = limit;
+    if (!coords || (limit && (relative || query.before > now)))
+    {
+      return query;
+    }
+
+    // The results are complete enough to count stone:diamond ratios from if
+    // they are not limited to a number of results, an area, another world or
+    // creations.
+    query.players = players;
+    query.covering = !limit && query.since != Long.MIN_VALUE
+                     && COVERING_PARAMETERS.containsAll(others)
+                     && (blocks.isEmpty() || (includesBlock(blocks, STONE_ID) && includesBlock(blocks, DIAMOND_ORE_ID)));
+
+    Collections.sort(players);
+    Collections.sort(blocks);
+    Collections.sort(others);
+    StringBuilder key = new StringBuilder();
+    key.append("player ").append(players).append(" block ").append(blocks).append(' ').append(others);
+    if (query.exact)
+    {
+      key.append(" since ").append(query.since).append(" before ").append(query.before);
+    }
+    else if (query.since == Long.MIN_VALUE)
+    {
+      // The start of LogBlock's default time range is not known, so these
+      // results can only be reused by queries that also have no start time.
+      key.append(" default time");
+    }
+    query.key = key.toString();
+    query.tokens = tokens;
+    return query;
+  } // parse
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the "block" parameter of a query includes all data values
+   * of the block with the specified ID.
+   *
+   * @param blocks the words of the "block" parameter.
+   * @param id the block ID.
+   * @return true if the block is included.
+   */
+  protected static boolean includesBlock(List<String> blocks, int id)
+  {
+    for (String words : blocks)
+    {
+      for (String block : words.split(","))
+      {
+        if (block.matches("\\d+"))
+        {
+          if (Integer.parseInt(block) == id)
+          {
+            return true;
+          }
+        }
+        else if (!block.contains(":")
+                 && BlockTypeRegistry.instance.getBlockTypeByName(block.replace('_', ' ')).getId() == id)
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  } // includesBlock
+
+  // --------------------------------------------------------------------------
+  /**
+   * Private constructor to enforce singleton pattern.
+   */
+  private QueryCache()
+  {
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * A parsed LogBlock lookup query.
+   */
+  protected static final class Query
+  {
+    /**
+     * Return this query with its "since" time replaced by the specified time
+     * and its other parameters unchanged.
+     *
+     * @param since the new start of the time range.
+     * @return the narrowed query.
+     */
+    String narrow(long since)
+    {
+      StringBuilder narrowed = new StringBuilder("/lb");
+      for (int i = 0; i < tokens.length; ++i)
+      {
+        int[] span = getTimeSpan(i);
+        if (span == null)
+        {
+          narrowed.append(' ').append(tokens[i]);
+        }
+        else
+        {
+          i = span[1] - 1;
+        }
+      }
+      narrowed.append(" since ").append(TimeStamp.formatQueryTime(since));
+      if (before != Long.MAX_VALUE)
+      {
+        narrowed.append(" before ").append(TimeStamp.formatQueryTime(before));
+      }
+      return narrowed.toString();
+    }
+
+    /**
+     * Return the span of tokens of the time parameter starting at the
+     * specified token, or null if there is none.
+     */
+    int[] getTimeSpan(int start)
+    {
+      for (int[] span : timeSpans)
+      {
+        if (span[0] == start)
+        {
+          return span;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * The normalised query, or null if the query cannot be cached.
+     */
+    String              key;
+
+    /**
+     * True if only an identical query can be answered from the cache.
+     */
+    boolean             exact;
+
+    /**
+     * True if the results include every stone and diamond ore destruction by
+     * the players in the time range.
+     */
+    boolean             covering;
+
+    /**
+     * The lower case names of the players, or an empty list for all players.
+     */
+    ArrayList<String>   players;
+
+    /**
+     * The time range of the query, in server time.
+     */
+    long                since     = Long.MIN_VALUE;
+    long                before    = Long.MAX_VALUE;
+
+    /**
+     * The lower case words of the query, after "/lb".
+     */
+    String[]            tokens;
+
+    /**
+     * The [start,end) token indices of the time parameters.
+     */
+    ArrayList<int[]>    timeSpans = new ArrayList<int[]>();
+  } // class Query
+
+  // --------------------------------------------------------------------------
+  /**
+   * The cached results of a query.
+   */
+  protected static final class Entry
+  {
+    /**
+     * The time range covered by the edits, in server time.
+     */
+    long                 since, end;
+
+    /**
+     * The edits returned.
+     */
+    ArrayList<BlockEdit> edits;
+
+    /**
+     * The local time when the results were last fetched.
+     */
+    long                 storedTime;
+  } // class Entry
+
+  // --------------------------------------------------------------------------
+  /**
+   * A query that has been sent, whose results are being recorded.
+   */
+  protected static final class Recording
+  {
+    /**
+     * The server and dimension identifier when the query was sent.
+     */
+    String               id;
+
+    /**
+     * The query.
+     */
+    Query                query;
+
+    /**
+     * The end of the time range of the query, in server time.
+     */
+    long                 end;
+
+    /**
+     * The local time when the query was sent.
+     */
+    long                 sentTime;
+
+    /**
+     * The local time when the last result or header arrived.
+     */
+    long                 lastResultTime;
+
+    /**
+     * The edits received.
+     */
+    ArrayList<BlockEdit> edits = new ArrayList<BlockEdit>();
+  } // class Recording
+
+  // --------------------------------------------------------------------------
+  /**
+   * The maximum number of queries cached for each server and dimension.
+   */
+  protected static final int                                        MAX_ENTRIES            = 32;
+
+  /**
+   * The time after which cached results are discarded.
+   */
+  protected static final long                                       TTL_MILLIS             = 30 * 60 * 1000;
+
+  /**
+   * The time without results after which the results of a query are
+   * considered to have all arrived.
+   */
+  protected static final long                                       SETTLE_MILLIS          = 1000;
+
+  /**
+   * The time after which a sent query is assumed to have no results header.
+   */
+  protected static final long                                       PENDING_TIMEOUT_MILLIS = 10 * 1000;
+
+  /**
+   * Matches a LogBlock command; group 1 is the parameters.
+   */
+  protected static final Pattern                                    LB_QUERY               = Pattern.compile(
+                                                                                             "/(?:lb|logblock)\\s+(.+)",
+                                                                                             Pattern.CASE_INSENSITIVE);
+
+  /**
+   * Matches a date in a LogBlock query, "DD.MM.YYYY".
+   */
+  protected static final Pattern                                    QUERY_DATE             = Pattern.compile("\\d{1,2}\\.\\d{1,2}\\.\\d{4}");
+
+  /**
+   * Matches a time of day in a LogBlock query, "hh:mm[:ss]".
+   */
+  protected static final Pattern                                    QUERY_TIME             = Pattern.compile("\\d{1,2}:\\d{2}(?::\\d{2})?");
+
+  /**
+   * Matches a duration of the form "1d12h30m".
+   */
+  protected static final Pattern                                    COMPACT_DURATION       = Pattern.compile("(?:\\d+[dhms])+");
+
+  /**
+   * Matches one part of a compact duration.
+   */
+  protected static final Pattern                                    DURATION_PART          = Pattern.compile("(\\d+)([dhms])");
+
+  /**
+   * Milliseconds per unit of duration.
+   */
+  protected static final HashMap<String, Long>                      DURATION_UNITS         = new HashMap<String, Long>();
+  static
+  {
+    for (String unit : new String[] {"s", "sec", "secs", "second", "seconds"})
+    {
+      DURATION_UNITS.put(unit, 1000L);
+    }
+    for (String unit : new String[] {"m", "min", "mins", "minute", "minutes"})
+    {
+      DURATION_UNITS.put(unit, 60 * 1000L);
+    }
+    for (String unit : new String[] {"h", "hour", "hours"})
+    {
+      DURATION_UNITS.put(unit, 60 * 60 * 1000L);
+    }
+    for (String unit : new String[] {"d", "day", "days"})
+    {
+      DURATION_UNITS.put(unit, 24 * 60 * 60 * 1000L);
+    }
+  }
+
+  /**
+   * LogBlock sub-commands that are not lookups.
+   */
+  protected static final HashSet<String>                            NON_LOOKUPS            = new HashSet<String>(
+                                                                                             Arrays.asList("page", "prev",
+                                                                                               "next", "tp", "rollback",
+                                                                                               "rb", "redo", "undo",
+                                                                                               "clearlog", "writelogfile",
+                                                                                               "savequeue", "me", "tool",
+                                                                                               "toolblock", "hide",
+                                                                                               "reload", "help"));
+
+  /**
+   * Parameters whose results are not lists of edits, or depend on state that
+   * Watson can't see.
+   */
+  protected static final HashSet<String>                            UNCACHEABLE            = new HashSet<String>(
+                                                                                             Arrays.asList("sum", "sel",
+                                                                                               "selection", "last"));
+
+  /**
+   * Parameters that do not exclude any stone or diamond ore destructions from
+   * the results.
+   */
+  protected static final HashSet<String>                            COVERING_PARAMETERS    = new HashSet<String>(
+                                                                                             Arrays.asList("coords", "asc",
+                                                                                               "desc", "destroyed",
+                                                                                               "silent"));
+
+  /**
+   * The ID of stone.
+   */
+  protected static final int                                        STONE_ID               = 1;
+
+  /**
+   * The ID of diamond ore.
+   */
+  protected static final int                                        DIAMOND_ORE_ID         = 56;
+
+  /**
+   * Parameter names, which end lists of players or blocks.
+   */
+  protected static final HashSet<String>                            KEYWORDS               = new HashSet<String>(
+                                                                                             Arrays.asList("player",
+                                                                                               "players", "block",
+                                                                                               "blocks", "type", "area",
+                                                                                               "radius", "sel",
+                                                                                               "selection", "world",
+                                                                                               "time", "since", "before",
+                                                                                               "limit", "coords", "sum",
+                                                                                               "asc", "desc", "destroyed",
+                                                                                               "created", "chestaccess",
+                                                                                               "all", "last", "kills",
+                                                                                               "killer", "victim",
+                                                                                               "weapon", "silent"));
+
+  /**
+   * Cached results, by server and dimension identifier, then normalised
+   * query.
+   */
+  protected HashMap<String, LinkedHashMap<String, Entry>>           _entries               = new HashMap<String, LinkedHashMap<String, Entry>>();
+
+  /**
+   * Queries sent whose results have not started to arrive, oldest first.
+   */
+  protected ArrayDeque<Recording>                                   _pending               = new ArrayDeque<Recording>();
+
+  /**
+   * The query whose results are arriving, or null.
+   */
+  protected Recording                                               _current;
+} // class QueryCache
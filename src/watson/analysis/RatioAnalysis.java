@@ -166,30 +166,11 @@ public class RatioAnalysis extends Analysis
         String period = String.format(Locale.US, "Between %s and %s:",
           TimeStamp.formatQueryTime(since.getTimeInMillis()),
           TimeStamp.formatQueryTime(before.getTimeInMillis()));
-        Log.debug("Between " + _sinceMinutes + " and " + _beforeMinutes
-                  + " minutes ago ==>");
+        Log.debug("Between %d and %d minutes ago ==>", _sinceMinutes, _beforeMinutes);
         Log.debug(period);
 
         // The second line is the actual ratio.
-        String message;
-        if (_stoneCount <= 0)
-        {
-          message = "Was the player spelunking?";
-        }
-        else if (_diamondCount < 0)
-        {
-          message = "Player placed more diamonds than were destroyed.";
-        }
-        else if (_diamondCount == 0)
-        {
-          message = "Did the player place and destroy previously silk touched diamonds?";
-        }
-        else
-        {
-          message = String.format(Locale.US,
-            "stone:diamond = %d / %d = %.3g", _stoneCount, _diamondCount,
-            (_stoneCount / (double) _diamondCount));
-        }
+        String message = formatRatio(_stoneCount, _diamondCount);
 
         // Echo the chat line that we just parsed now, rather than waiting for
         // the ChatProcessor to do it.
@@ -205,6 +186,38 @@ public class RatioAnalysis extends Analysis
     return true;
   } // lbSum
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the message describing a stone:diamond ratio, or explaining why
+   * there isn't one.
+   *
+   * @param stoneCount the number of stone destroyed.
+   * @param diamondCount the number of diamond destroyed minus the number
+   *          created.
+   * @return the message.
+   */
+  public static String formatRatio(int stoneCount, int diamondCount)
+  {
+    if (stoneCount <= 0)
+    {
+      return "Was the player spelunking?";
+    }
+    else if (diamondCount < 0)
+    {
+      return "Player placed more diamonds than were destroyed.";
+    }
+    else if (diamondCount == 0)
+    {
+      return "Did the player place and destroy previously silk touched diamonds?";
+    }
+    else
+    {
+      return String.format(Locale.US,
+        "stone:diamond = %d / %d = %.3g", stoneCount, diamondCount,
+        (stoneCount / (double) diamondCount));
+    }
+  } // formatRatio
+
   // --------------------------------------------------------------------------
   /**
    * Reset the state to how it is when no results have been parsed and we are
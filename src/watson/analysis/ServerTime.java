@@ -1,12 +1,25 @@
 package watson.analysis;
 
+import static watson.analysis.LogBlockPatterns.LB_HEADER_ANY;
 import static watson.analysis.LogBlockPatterns.LB_HEADER_NO_RESULTS;
 import static watson.analysis.LogBlockPatterns.LB_HEADER_TIME_CHECK;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import net.minecraft.util.text.ITextComponent;
 import watson.Controller;
@@ -24,6 +37,17 @@ import watson.debug.Log;
  * than 16 characters to be certain that no results will be found and puts a
  * tight limit on the time span in an attempt to ensure that the database does
  * essentially no work.
+ * 
+ * The time difference is also estimated passively, from the times of edits in
+ * ordinary LogBlock results and the times that those results arrive. An edit
+ * can't be later than the current time at the server, which puts an upper
+ * bound on the difference; when the query header says that the results are
+ * from "the last N minutes" or "between A and B minutes ago", there is also a
+ * lower bound. Once the bounds are close enough together, the estimate is used
+ * instead of the query, so that ratio and pre/post queries don't have to wait
+ * for it. Estimates are saved per server and refined in later sessions; if new
+ * results contradict an estimate (e.g. because a clock was changed), it is
+ * discarded and estimation starts again.
  */
 public class ServerTime extends Analysis
 {
@@ -39,8 +63,9 @@ public class ServerTime extends Analysis
    * time.
    * 
    * NOTE: queryLocalTime() must be called and the server must return a result
-   * before this method can work correctly. If that is not done, the returned
-   * time difference will be zero minutes.
+   * before this method can work correctly, unless the difference has been
+   * estimated from LogBlock results. If neither is done, the returned time
+   * difference will be zero minutes.
    * 
    * @return the number of minutes that local time is ahead of the server local
    *         time; a negative number signifies that the server's clock is ahead
@@ -56,7 +81,12 @@ public class ServerTime extends Analysis
     else
     {
       Integer offsetMinutes = _localMinusServerMinutes.get(serverIP);
-      return offsetMinutes != null ? offsetMinutes : 0;
+      if (offsetMinutes != null)
+      {
+        return offsetMinutes;
+      }
+      Estimate estimate = getEstimate(serverIP);
+      return estimate.isKnown() ? estimate.getMinutes() : 0;
     }
   } // getLocalMinusServerMinutes
 
@@ -69,8 +99,8 @@ public class ServerTime extends Analysis
    * Block changes from player watsonservertimecheck between 1552 and 1552
    * minutes ago in world:
    * 
-   * The query is only issued if we are connected to a server and we have not
-   * already stored a time difference for that server.
+   * The query is only issued if we are connected to a server and we have
+   * neither stored nor estimated a time difference for that server.
    * 
    * @param showServerTime if true, the time at the server will be displayed as
    *          soon as it is known.
@@ -80,7 +110,7 @@ public class ServerTime extends Analysis
     String serverIP = Controller.instance.getServerIP();
     if (serverIP != null)
     {
-      if (_localMinusServerMinutes.get(serverIP) == null)
+      if (_localMinusServerMinutes.get(serverIP) == null && !getEstimate(serverIP).isKnown())
       {
         Calendar pastTime = getPastTime();
         String date = String.format(Locale.US, "%d.%d.%d",
@@ -90,7 +120,7 @@ public class ServerTime extends Analysis
           Locale.US,
           "/lb player watsonservertimecheck since %s 00:00:00 before %s 00:00:01 limit 1",
           date, date);
-        Log.debug("Server time query for " + serverIP + ": " + query);
+        Log.debug("Server time query for %s: %s", serverIP, query);
         _showServerTime = showServerTime;
         Controller.instance.serverChat(query);
       }
@@ -127,8 +157,87 @@ public class ServerTime extends Analysis
         return lbHeaderNoResults(chat, m);
       }
     });
+
+    addMatchedChatHandler(LB_HEADER_ANY, new IMatchedChatHandler()
+    {
+      @Override
+      public boolean onMatchedChat(ITextComponent chat, Matcher m)
+      {
+        lbHeader(chat, m);
+        return true;
+      }
+    });
   } // constructor
 
+  // --------------------------------------------------------------------------
+  /**
+   * Refine the estimated time difference with the time of an edit in LogBlock
+   * results that have just arrived.
+   * 
+   * @param millis the time of the edit, as formatted by the server and parsed
+   *          as a local time.
+   * @param windowed true if the edit is from the results of a query whose
+   *          header gave the time span of the results, e.g. "/lb coords";
+   *          false if there was no such header, e.g. tool block results.
+   */
+  public void observeEditTime(long millis, boolean windowed)
+  {
+    String serverIP = Controller.instance.getServerIP();
+    if (serverIP == null)
+    {
+      return;
+    }
+
+    // The edit can't be in the server's future, so local time at arrival,
+    // less the edit time, can't be less than the difference.
+    long lower = Long.MIN_VALUE;
+    long upper = System.currentTimeMillis() - millis;
+
+    // If the query was limited to a span of time, the time at the server
+    // when the query ran can't be more than the span after the edit. Allow
+    // for the edit time being truncated to the second and for lag.
+    if (windowed && _windowHeaderMillis != 0)
+    {
+      lower = _windowHeaderMillis - millis - _windowOldestMinutes * (long) MINUTES_TO_MILLISECONDS - LAG_MILLIS;
+      if (_windowNewestMinutes > 0)
+      {
+        upper = Math.min(upper, _windowHeaderMillis - millis - _windowNewestMinutes * (long) MINUTES_TO_MILLISECONDS);
+      }
+    }
+    refine(serverIP, lower, upper);
+  } // observeEditTime
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record the span of time covered by the results of a LogBlock query, from
+   * the header line of those results.
+   */
+  @SuppressWarnings("unused")
+  void lbHeader(ITextComponent chat, Matcher m)
+  {
+    Matcher window = HEADER_WINDOW.matcher(m.group());
+    if (window.find())
+    {
+      _windowHeaderMillis = System.currentTimeMillis();
+      if (window.group(1) != null)
+      {
+        _windowOldestMinutes = Integer.parseInt(window.group(1));
+        _windowNewestMinutes = 0;
+      }
+      else
+      {
+        int since = Integer.parseInt(window.group(2));
+        int before = Integer.parseInt(window.group(3));
+        _windowOldestMinutes = Math.max(since, before);
+        _windowNewestMinutes = Math.min(since, before);
+      }
+    }
+    else
+    {
+      _windowHeaderMillis = 0;
+    }
+  } // lbHeader
+
   // --------------------------------------------------------------------------
   /**
    * Handle the results of the time checking query.
@@ -150,11 +259,14 @@ public class ServerTime extends Analysis
       // This number is positive if local time is ahead of the server.
       int localMinusServer = localMinutes - serverMinutes;
       _localMinusServerMinutes.put(serverIP, localMinusServer);
-      Log.debug("Past time was " + serverMinutes
-                + " minutes ago on the server and " + localMinutes
-                + " minutes ago on the client.");
-      Log.debug("Client is " + localMinusServer
-                + " minutes ahead of the server.");
+
+      // The header is accurate to within a minute either way. Save that for
+      // next time.
+      refine(serverIP, (localMinusServer - 1) * (long) MINUTES_TO_MILLISECONDS,
+        (localMinusServer + 1) * (long) MINUTES_TO_MILLISECONDS);
+      Log.debug("Past time was %d minutes ago on the server and %d minutes ago on the client.",
+                serverMinutes, localMinutes);
+      Log.debug("Client is %d minutes ahead of the server.", localMinusServer);
 
       // Have we scheduled echoing of the server time?
       if (_showServerTime)
@@ -189,13 +301,147 @@ public class ServerTime extends Analysis
    */
   private void showCurrentServerTime()
   {
-    String serverIP = Controller.instance.getServerIP();
-    Integer localMinusServerMinutes = _localMinusServerMinutes.get(serverIP);
+    int localMinusServerMinutes = getLocalMinusServerMinutes();
     long serverMillis = System.currentTimeMillis() - localMinusServerMinutes
                         * MINUTES_TO_MILLISECONDS;
     Chat.localOutput(TimeStamp.formatMonthDayTime(serverMillis));
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Narrow the estimated time difference for a server to the specified bounds.
+   * 
+   * If the bounds contradict the current estimate, the estimate is replaced.
+   * The estimate is saved whenever the number of minutes it signifies changes.
+   * 
+   * @param serverIP the server.
+   * @param lower the lower bound on local minus server time, in milliseconds.
+   * @param upper the upper bound on local minus server time, in milliseconds.
+   */
+  private synchronized void refine(String serverIP, long lower, long upper)
+  {
+    Estimate estimate = getEstimate(serverIP);
+    boolean wasKnown = estimate.isKnown();
+    int oldMinutes = estimate.getMinutes();
+    if (lower > estimate.upper || upper < estimate.lower)
+    {
+      Log.debug("Server time difference for %s contradicted; estimating again.", serverIP);
+      estimate.lower = lower;
+      estimate.upper = upper;
+    }
+    else
+    {
+      estimate.lower = Math.max(estimate.lower, lower);
+      estimate.upper = Math.min(estimate.upper, upper);
+    }
+
+    if (estimate.isKnown() && (!wasKnown || estimate.getMinutes() != oldMinutes))
+    {
+      Log.debug("Client is estimated to be %d minutes ahead of %s.", estimate.getMinutes(), serverIP);
+      saveEstimates();
+    }
+  } // refine
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the estimated time difference for a server, creating it if
+   * necessary.
+   * 
+   * @param serverIP the server.
+   * @return the estimate.
+   */
+  private synchronized Estimate getEstimate(String serverIP)
+  {
+    if (_estimates == null)
+    {
+      _estimates = new HashMap<String, Estimate>();
+      loadEstimates();
+    }
+    Estimate estimate = _estimates.get(serverIP);
+    if (estimate == null)
+    {
+      estimate = new Estimate();
+      _estimates.put(serverIP, estimate);
+    }
+    return estimate;
+  } // getEstimate
+
+  // --------------------------------------------------------------------------
+  /**
+   * Load the saved estimates.
+   */
+  private void loadEstimates()
+  {
+    File file = new File(Controller.getModDirectory(), ESTIMATES_FILE);
+    if (!file.canRead())
+    {
+      return;
+    }
+
+    try
+    {
+      BufferedReader reader = new BufferedReader(new FileReader(file));
+      try
+      {
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+          String[] fields = line.split("\t", 3);
+          if (fields.length == 3)
+          {
+            Estimate estimate = new Estimate();
+            estimate.lower = Long.parseLong(fields[0]);
+            estimate.upper = Long.parseLong(fields[1]);
+            _estimates.put(fields[2], estimate);
+          }
+        }
+      }
+      finally
+      {
+        reader.close();
+      }
+    }
+    catch (Exception ex)
+    {
+      Log.exception(Level.WARNING, "could not load server time estimates", ex);
+      _estimates.clear();
+    }
+  } // loadEstimates
+
+  // --------------------------------------------------------------------------
+  /**
+   * Save the estimates that are known.
+   */
+  private void saveEstimates()
+  {
+    File file = new File(Controller.getModDirectory(), ESTIMATES_FILE);
+    File temp = new File(file.getPath() + ".tmp");
+    try
+    {
+      PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(temp)));
+      try
+      {
+        for (Map.Entry<String, Estimate> entry : _estimates.entrySet())
+        {
+          Estimate estimate = entry.getValue();
+          if (estimate.isKnown())
+          {
+            writer.format(Locale.US, "%d\t%d\t%s\n", estimate.lower, estimate.upper, entry.getKey());
+          }
+        }
+      }
+      finally
+      {
+        writer.close();
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException ex)
+    {
+      Log.exception(Level.WARNING, "could not save server time estimates", ex);
+    }
+  } // saveEstimates
+
   // --------------------------------------------------------------------------
   /**
    * Return a timestamp that is definitely in the server's past no matter how
@@ -218,28 +464,111 @@ public class ServerTime extends Analysis
     return pastTime;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Bounds on the number of milliseconds that local time is ahead of the time
+   * at a server.
+   */
+  protected static final class Estimate
+  {
+    /**
+     * Return true if the bounds are close enough to use the estimate.
+     * 
+     * @return true if the bounds are close enough to use the estimate.
+     */
+    public boolean isKnown()
+    {
+      return lower != Long.MIN_VALUE && upper != Long.MAX_VALUE
+             && upper - lower <= MAX_UNCERTAINTY_MILLIS;
+    }
+
+    /**
+     * Return the estimated number of minutes that local time is ahead.
+     * 
+     * @return the estimated number of minutes that local time is ahead.
+     */
+    public int getMinutes()
+    {
+      return (int) Math.round((lower / 2.0 + upper / 2.0) / MINUTES_TO_MILLISECONDS);
+    }
+
+    /**
+     * The lower bound, or Long.MIN_VALUE if there is none.
+     */
+    public long lower = Long.MIN_VALUE;
+
+    /**
+     * The upper bound, or Long.MAX_VALUE if there is none.
+     */
+    public long upper = Long.MAX_VALUE;
+  } // class Estimate
+
   // --------------------------------------------------------------------------
   /**
    * Conversion factor to convert minutes to milliseconds.
    */
-  private static final int           MINUTES_TO_MILLISECONDS  = 60 * 1000;
+  private static final int            MINUTES_TO_MILLISECONDS  = 60 * 1000;
+
+  /**
+   * The largest difference between the bounds of an estimate that can be
+   * used.
+   */
+  private static final long           MAX_UNCERTAINTY_MILLIS   = 5 * MINUTES_TO_MILLISECONDS;
+
+  /**
+   * The longest time allowed between LogBlock running a query and its header
+   * arriving, plus a second for the truncation of edit times.
+   */
+  private static final long           LAG_MILLIS               = 10 * 1000;
+
+  /**
+   * The name of the file in the mod directory where estimates are saved.
+   */
+  private static final String         ESTIMATES_FILE           = "server_times.txt";
+
+  /**
+   * Finds the span of time covered by the results in a LogBlock header.
+   */
+  private static final Pattern        HEADER_WINDOW            = Pattern.compile("in the last (\\d+) minutes|between (\\d+) and (\\d+) minutes ago");
 
   /**
    * A map from server IP or DNS name to number of minutes that local time is
    * ahead of the server time (negative for behind).
    */
-  protected HashMap<String, Integer> _localMinusServerMinutes = new HashMap<String, Integer>();
+  protected HashMap<String, Integer>  _localMinusServerMinutes = new HashMap<String, Integer>();
 
   /**
    * If true, the next "No results found." chat line is re-echoed. We use this
    * facility to suppress that line for the time check query. Don't look at me
    * like that. :P
    */
-  protected boolean                  _echoNextNoResults       = true;
+  protected boolean                   _echoNextNoResults       = true;
 
   /**
    * If true, the result of querying the current server time will be displayed
    * in chat.
    */
-  protected boolean                  _showServerTime          = false;
+  protected boolean                   _showServerTime          = false;
+
+  /**
+   * A map from server IP or DNS name to the estimated time difference; null
+   * until the saved estimates are loaded.
+   */
+  protected HashMap<String, Estimate> _estimates;
+
+  /**
+   * The local time when the most recent LogBlock header giving a span of time
+   * arrived, or 0 if the most recent header did not.
+   */
+  protected long                      _windowHeaderMillis;
+
+  /**
+   * The age in minutes of the oldest results that the query could return.
+   */
+  protected int                       _windowOldestMinutes;
+
+  /**
+   * The age in minutes of the newest results that the query could return.
+   */
+  protected int                       _windowNewestMinutes;
 } // class ServerTime
\ No newline at end of file
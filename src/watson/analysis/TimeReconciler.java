@@ -0,0 +1,180 @@
+package watson.analysis;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import watson.db.BlockType;
+import watson.db.EditKeySet;
+
+// ----------------------------------------------------------------------------
+/**
+ * Assigns stable, monotonic time stamps to edits whose times were reported
+ * relative to the time of the query, e.g. "1.25/h ago".
+ *
+ * A relative time only says that the edit happened somewhere in an interval
+ * (36 seconds wide, in the case of hundredths of an hour), and where that
+ * interval falls depends on when the result arrived. Converting each result
+ * independently gives the same edit a different time in each query that
+ * returns it, so it is stored once per query, and edits listed in order can
+ * end up with their times out of order, which scrambles the vectors.
+ *
+ * This class narrows each interval with what else is known, then picks a time
+ * from it:
+ * <ul>
+ * <li>Results are listed most recent first, so an edit can be no later than
+ * the one listed before it, whether that had a relative or absolute time, and
+ * whether it was on this page or the previous one.</li>
+ * <li>If the same edit was given a time before that falls within the
+ * interval, that time is reused, so that the duplicate is discarded when it is
+ * added to the {@link watson.db.BlockEditSet}. Times are remembered by the
+ * hour in which they fall, and all of them are kept, so that a player
+ * repeating an action on a block within one interval is still listed as
+ * separate edits.</li>
+ * <li>Otherwise, the edit gets the latest time in the interval that is before
+ * the previous edit in the listing.</li>
+ * </ul>
+ *
+ * This class is not thread-safe; each {@link Analysis} that uses one calls it
+ * from the chat thread only.
+ */
+public class TimeReconciler
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Begin a new listing of results, e.g. when a header line is parsed.
+   *
+   * Results after this call are not constrained by those before it.
+   */
+  public void startListing()
+  {
+    _bound = Long.MAX_VALUE;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record the absolute time of an edit in the current listing, so that the
+   * edits listed after it are given earlier times.
+   *
+   * @param millis the time of the edit in milliseconds since the epoch.
+   */
+  public void addAbsoluteTime(long millis)
+  {
+    _bound = millis;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time to use for an edit in the current listing that is known to
+   * have happened within the specified interval.
+   *
+   * @param earliest the earliest possible time of the edit, in milliseconds
+   *          since the epoch.
+   * @param latest the latest possible time of the edit.
+   * @param player the player who made the edit.
+   * @param creation true if the block was created, false if destroyed.
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @param type the type of the block.
+   * @return the time of the edit in milliseconds since the epoch.
+   */
+  public long reconcile(long earliest, long latest, String player,
+                        boolean creation, int x, int y, int z, BlockType type)
+  {
+    // If the previous edit in the listing is before this interval, this
+    // result can't be part of the same listing; most likely, the end of the
+    // previous listing was not seen. Don't let it constrain this one.
+    if (_bound != Long.MAX_VALUE && _bound > earliest)
+    {
+      latest = Math.min(latest, _bound - 1);
+    }
+
+    // Reuse the latest time in the interval that was given to this edit before.
+    // The interval may span the boundary between two buckets.
+    for (long bucket = latest / BUCKET_MILLIS; bucket >= earliest / BUCKET_MILLIS; --bucket)
+    {
+      TreeSet<Long> times = _times.get(getKey(bucket, player, creation, x, y, z, type));
+      Long previous = (times != null) ? times.floor(latest) : null;
+      if (previous != null && previous >= earliest)
+      {
+        _bound = previous;
+        return previous;
+      }
+    }
+
+    Long key = getKey(latest / BUCKET_MILLIS, player, creation, x, y, z, type);
+    TreeSet<Long> times = _times.get(key);
+    if (times == null)
+    {
+      times = new TreeSet<Long>();
+      _times.put(key, times);
+    }
+    times.add(latest);
+    _bound = latest;
+    return latest;
+  } // reconcile
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the key under which the times of an edit in the specified bucket
+   * are remembered.
+   *
+   * @param bucket the time of the edit divided by BUCKET_MILLIS.
+   * @param player the player who made the edit.
+   * @param creation true if the block was created, false if destroyed.
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @param type the type of the block.
+   * @return the key.
+   */
+  protected static long getKey(long bucket, String player, boolean creation, int x, int y, int z,
+                               BlockType type)
+  {
+    return EditKeySet.getKey(bucket * BUCKET_MILLIS, player, creation, x, y, z, type.getId(), type.getData());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Forget all times assigned to edits.
+   */
+  public void clear()
+  {
+    _times.clear();
+    _bound = Long.MAX_VALUE;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The maximum number of edits whose times are remembered.
+   */
+  protected static final int               MAX_EDITS     = 65536;
+
+  /**
+   * The width in milliseconds of the time buckets by which assigned times are
+   * remembered; much wider than the interval of any relative time.
+   */
+  protected static final long              BUCKET_MILLIS = 60 * 60 * 1000L;
+
+  /**
+   * Map from the key of an edit, with its time reduced to a bucket, to the
+   * times assigned to it in that bucket. The least recently used are forgotten
+   * first.
+   */
+  @SuppressWarnings("serial")
+  protected final Map<Long, TreeSet<Long>> _times        = new LinkedHashMap<Long, TreeSet<Long>>(1024, 0.75f, true)
+                                                         {
+                                                           @Override
+                                                           protected boolean removeEldestEntry(Map.Entry<Long, TreeSet<Long>> eldest)
+                                                           {
+                                                             return size() > MAX_EDITS;
+                                                           }
+                                                         };
+
+  /**
+   * The time of the previous edit in the current listing, or Long.MAX_VALUE if
+   * there is none.
+   */
+  protected long                           _bound        = Long.MAX_VALUE;
+} // class TimeReconciler
@@ -5,7 +5,8 @@ import watson.db.BlockEdit;
 
 // ----------------------------------------------------------------------------
 /**
- * A synchronous task to add a {@link BlockEdit} to the current stored set.
+ * A synchronous task to add a {@link BlockEdit} to the stored set of the world
+ * it was made in.
  */
 public class AddBlockEditTask implements Runnable
 {
@@ -18,9 +19,28 @@ public class AddBlockEditTask implements Runnable
    *        updated.
    */
   public AddBlockEditTask(BlockEdit edit, boolean updateVariables)
+  {
+    this(edit, updateVariables, null, false);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor for edits whose world is reported by the logging plugin.
+   * 
+   * @param edit the edit to add when the task is run.
+   * @param updateVariables if true, the state variables signifying the selected edit are
+   *        updated.
+   * @param world the name of the world the edit was made in, or null if not
+   *        known.
+   * @param inWorld if true, the player is known to be in that world, e.g.
+   *        because the edit is an inspector result, so that world is shown.
+   */
+  public AddBlockEditTask(BlockEdit edit, boolean updateVariables, String world, boolean inWorld)
   {
     _edit = edit;
     _updateVariables = updateVariables;
+    _world = world;
+    _inWorld = inWorld;
   }
 
   // --------------------------------------------------------------------------
@@ -31,7 +51,11 @@ public class AddBlockEditTask implements Runnable
   public void run()
   {
     // TODO: potentially wrong if the server/dimension changes for queued tasks.
-    Controller.instance.getBlockEditSet().addBlockEdit(_edit, _updateVariables);
+    if (_inWorld && _world != null && !_world.equals(Controller.instance.getWorld()))
+    {
+      Controller.instance.setWorld(_world);
+    }
+    Controller.instance.addBlockEdit(_edit, _updateVariables, _world);
   }
 
   // --------------------------------------------------------------------------
@@ -44,4 +68,14 @@ public class AddBlockEditTask implements Runnable
    * Whether to update variables signifying the current selection.
    */
   protected boolean   _updateVariables;
+
+  /**
+   * The name of the world the edit was made in, or null if not known.
+   */
+  protected String    _world;
+
+  /**
+   * True if the player is known to be in the edit's world.
+   */
+  protected boolean   _inWorld;
 } // class AddBlockEditTask
\ No newline at end of file
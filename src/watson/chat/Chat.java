@@ -29,6 +29,18 @@ public class Chat
     return _chatHighlighter;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Redirect local and server chat to the specified {@link IChatSink} instead
+   * of the Minecraft client.
+   * 
+   * @param sink the sink, or null to use the client.
+   */
+  public static void setSink(IChatSink sink)
+  {
+    _sink = sink;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Send a chat message to the server.
@@ -37,6 +49,12 @@ public class Chat
    */
   public static void serverChat(String message)
   {
+    if (_sink != null)
+    {
+      _sink.serverChat(message);
+      return;
+    }
+
     try
     {
       Minecraft mc = Minecraft.getMinecraft();
@@ -56,6 +74,10 @@ public class Chat
    */
   public static boolean isChatGuiReady()
   {
+    if (_sink != null)
+    {
+      return true;
+    }
     Minecraft mc = Minecraft.getMinecraft();
     return mc.ingameGUI != null && mc.ingameGUI.getChatGUI() != null;
   }
@@ -98,7 +120,14 @@ public class Chat
     if (isChatGuiReady())
     {
       ITextComponent highlighted = Configuration.instance.useChatHighlights() ? getChatHighlighter().highlight(chat) : chat;
-      Minecraft.getMinecraft().ingameGUI.getChatGUI().printChatMessage(highlighted);
+      if (_sink != null)
+      {
+        _sink.localChat(highlighted);
+      }
+      else
+      {
+        Minecraft.getMinecraft().ingameGUI.getChatGUI().printChatMessage(highlighted);
+      }
     }
   }
 
@@ -129,4 +158,9 @@ public class Chat
    * The chat highlighter.
    */
   protected static ChatHighlighter _chatHighlighter = new ChatHighlighter();
+
+  /**
+   * Receives local and server chat instead of the client, if not null.
+   */
+  protected static IChatSink       _sink;
 } // class Chat
\ No newline at end of file
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -16,8 +17,16 @@ import net.minecraft.util.text.ITextComponent;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
 
+import watson.ConfigurationWatcher;
 import watson.Controller;
+import watson.SyncTaskQueue;
 import watson.debug.Log;
+import watson.yaml.ArrayValidatorNode;
+import watson.yaml.MapValidatorNode;
+import watson.yaml.SnakeValidator;
+import watson.yaml.TypeValidatorNode;
+import watson.yaml.ValidatorMessageList;
+import watson.yaml.ValidatorMessageSink;
 
 // ----------------------------------------------------------------------------
 /**
@@ -261,37 +270,146 @@ public class ChatHighlighter
    * 
    * @param in the stream.
    */
-  @SuppressWarnings("unchecked")
   public void loadHighlights(InputStream in)
   {
     try
     {
-      _highlights.clear();
+      _highlights = parseHighlights(in, new ValidatorMessageList(CHAT_HIGHLIGHTS_FILE));
+    }
+    catch (Exception ex)
+    {
+      _highlights = new ArrayList<Highlight>();
+      Log.exception(Level.SEVERE, "error loading chat highlights: ", ex);
+    }
+  } // loadHighlights
 
-      Yaml yaml = new Yaml();
-      HashMap<String, Object> root = (HashMap<String, Object>) yaml.load(in);
-      ArrayList<Object> highlights = (ArrayList<Object>) root.get("highlights");
-      if (highlights != null)
+  // --------------------------------------------------------------------------
+  /**
+   * Reload the highlights after the file has been changed.
+   * 
+   * The file is parsed in the calling thread, which should not be the main
+   * thread, and the new highlights replace the current ones in the main
+   * thread. If there is any problem with the file, even with a single
+   * highlight, the current highlights are kept.
+   */
+  public void reloadHighlights()
+  {
+    try
+    {
+      InputStream in = Controller.getConfigurationStream(CHAT_HIGHLIGHTS_FILE);
+      try
       {
-        for (Object entry : highlights)
+        ValidatorMessageList problems = new ValidatorMessageList(CHAT_HIGHLIGHTS_FILE);
+        final ArrayList<Highlight> highlights = parseHighlights(in, problems);
+        if (!problems.isEmpty())
         {
-          try
-          {
-            Highlight highlight = new Highlight((HashMap<String, Object>) entry);
-            _highlights.add(highlight);
-          }
-          catch (Exception ex)
+          // Don't silently drop the highlights that couldn't be parsed.
+          throw new IllegalArgumentException(problems.getSummary());
+        }
+        SyncTaskQueue.instance.addTask(new Runnable()
+        {
+          @Override
+          public void run()
           {
-            Log.exception(Level.SEVERE, "error loading chat highlights: ", ex);
+            _highlights = highlights;
+            Chat.localOutput("Reloaded " + highlights.size() + " highlights from " + CHAT_HIGHLIGHTS_FILE + ".");
           }
+        });
+      }
+      finally
+      {
+        in.close();
+      }
+    }
+    catch (final Exception ex)
+    {
+      Log.exception(Level.SEVERE, "error reloading chat highlights: ", ex);
+      SyncTaskQueue.instance.addTask(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          Chat.localError(CHAT_HIGHLIGHTS_FILE + " was not reloaded because it has errors: " + ex.getMessage());
+        }
+      });
+    }
+  } // reloadHighlights
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse highlights from the specified InputStream.
+   * 
+   * The document is checked against the schema returned by getValidator()
+   * first. Every problem is reported to the sink, but individual highlights
+   * that are invalid are just skipped.
+   * 
+   * @param in the stream.
+   * @param problems receives a message for each problem found.
+   * @return the highlights.
+   */
+  @SuppressWarnings("unchecked")
+  protected static ArrayList<Highlight> parseHighlights(InputStream in, ValidatorMessageSink problems)
+  {
+    ArrayList<Highlight> result = new ArrayList<Highlight>();
+    Yaml yaml = new Yaml();
+    Object dom = yaml.load(in);
+    getValidator().validate(dom, problems);
+    Object highlightsValue = (dom instanceof Map<?, ?>) ? ((Map<String, Object>) dom).get("highlights") : null;
+    if (highlightsValue instanceof ArrayList<?>)
+    {
+      ArrayList<Object> highlights = (ArrayList<Object>) highlightsValue;
+      for (int i = 0; i < highlights.size(); ++i)
+      {
+        // The validator has already reported entries of the wrong type.
+        try
+        {
+          Highlight highlight = new Highlight((HashMap<String, Object>) highlights.get(i));
+          result.add(highlight);
+        }
+        catch (PatternSyntaxException ex)
+        {
+          problems.message("/highlights/" + i + "/pattern is not a valid regular expression");
+        }
+        catch (IllegalArgumentException ex)
+        {
+          problems.message("/highlights/" + i + "/colourCode is not a valid format specifier");
+        }
+        catch (RuntimeException ex)
+        {
+          // ClassCastException or NullPointerException.
         }
       }
     }
-    catch (Exception ex)
+    return result;
+  } // parseHighlights
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the validator describing the structure of the highlights file,
+   * creating it on first use.
+   * 
+   * The validator only checks types; whether the colour code and pattern can
+   * be parsed is checked when each Highlight is constructed.
+   * 
+   * @return the validator.
+   */
+  protected static synchronized SnakeValidator getValidator()
+  {
+    if (_validator == null)
     {
-      Log.exception(Level.SEVERE, "error loading chat highlights: ", ex);
+      MapValidatorNode highlight = new MapValidatorNode();
+      highlight.addChild("colourCode", new TypeValidatorNode(String.class, false));
+      highlight.addChild("pattern", new TypeValidatorNode(String.class, false));
+      highlight.addChild("selection", new TypeValidatorNode(Boolean.class, true));
+
+      MapValidatorNode root = new MapValidatorNode();
+      root.addChild("highlights", new ArrayValidatorNode(highlight, true));
+
+      _validator = new SnakeValidator();
+      _validator.setRoot(root);
     }
-  } // loadHighlights
+    return _validator;
+  } // getValidator
 
   // --------------------------------------------------------------------------
   /**
@@ -322,6 +440,9 @@ public class ChatHighlighter
       {
         writer.close();
       }
+
+      // Don't reload what was just written.
+      ConfigurationWatcher.instance.noteWritten(CHAT_HIGHLIGHTS_FILE);
     }
     catch (Exception ex)
     {
@@ -465,6 +586,11 @@ public class ChatHighlighter
    */
   protected static final Pattern COLOUR_LINE = Pattern.compile("^(?:\247[0-9a-fk-or])+$");
 
+  /**
+   * Describes the structure of the highlights file; see getValidator().
+   */
+  protected static SnakeValidator _validator;
+
   /**
    * Highlight patterns.
    */
@@ -0,0 +1,28 @@
+package watson.chat;
+
+import net.minecraft.util.text.ITextComponent;
+
+// ----------------------------------------------------------------------------
+/**
+ * Receives the chat that {@link Chat} would otherwise display in the client's
+ * chat GUI or send to the server, so that Watson can be run without a
+ * Minecraft client.
+ */
+public interface IChatSink
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Called instead of displaying a chat locally.
+   * 
+   * @param chat the chat, after highlighting.
+   */
+  public void localChat(ITextComponent chat);
+
+  // --------------------------------------------------------------------------
+  /**
+   * Called instead of sending a chat message to the server.
+   * 
+   * @param message the message.
+   */
+  public void serverChat(String message);
+}
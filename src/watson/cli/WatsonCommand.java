@@ -1,5 +1,6 @@
 package watson.cli;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.regex.Pattern;
 
@@ -8,16 +9,25 @@ import net.minecraft.command.ICommandSender;
 import net.minecraft.util.text.event.ClickEvent;
 import net.minecraft.util.text.event.ClickEvent.Action;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.Style;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.util.text.TextFormatting;
+import watson.BurstCapture;
 import watson.Configuration;
 import watson.Controller;
 import watson.DisplaySettings;
+import watson.Playback;
+import watson.analysis.QueryCache;
 import watson.analysis.ServerTime;
+import watson.db.BlockEditSet;
 import watson.db.Filters;
 import watson.db.OreDB;
+import watson.db.Region;
+import watson.db.TimeStamp;
+import watson.debug.Stats;
 
 // ----------------------------------------------------------------------------
 /**
@@ -67,6 +77,11 @@ public class WatsonCommand extends WatsonCommandBase
         Controller.instance.getBlockEditSet().getOreDB().showRatios();
         return;
       }
+      else if (args[0].equalsIgnoreCase("tunnels"))
+      {
+        Controller.instance.getBlockEditSet().showTunnels(null);
+        return;
+      }
       else if (args[0].equalsIgnoreCase("servertime"))
       {
         ServerTime.instance.queryServerTime(true);
@@ -74,6 +89,13 @@ public class WatsonCommand extends WatsonCommandBase
       }
     }
 
+    // "/w tunnels <player>"
+    if (args.length == 2 && args[0].equalsIgnoreCase("tunnels"))
+    {
+      Controller.instance.getBlockEditSet().showTunnels(args[1]);
+      return;
+    }
+
     // "/w ore [<page>]"
     if (args.length >= 1 && args[0].equalsIgnoreCase("ore"))
     {
@@ -277,7 +299,7 @@ public class WatsonCommand extends WatsonCommandBase
       }
     } // "/w label"
 
-    // Ore teleport commands: /w tp [next|prev|<number>]
+    // Ore teleport commands: /w tp [next|prev|nearest|<number>]
     if (args.length >= 1 && args[0].equalsIgnoreCase("tp"))
     {
       OreDB oreDB = Controller.instance.getBlockEditSet().getOreDB();
@@ -298,6 +320,12 @@ public class WatsonCommand extends WatsonCommandBase
           oreDB.tpPrev();
           return;
         }
+        else if (args[1].equalsIgnoreCase("nearest"))
+        {
+          Vec3d position = sender.getPositionVector();
+          oreDB.tpNearest(position.x, position.y, position.z);
+          return;
+        }
         else
         {
           try
@@ -306,13 +334,291 @@ public class WatsonCommand extends WatsonCommandBase
           }
           catch (NumberFormatException ex)
           {
-            localError(sender, "The tp argument should be next, prev or an integer.");
+            localError(sender, "The tp argument should be next, prev, nearest or an integer.");
           }
           return;
         }
       }
     } // /w tp
 
+    // Screenshot bursts: /w burst [<count>|stop] or /w burst ore [<count>]
+    if (args.length >= 1 && args[0].equalsIgnoreCase("burst"))
+    {
+      if (args.length == 1)
+      {
+        BurstCapture.instance.start(Configuration.instance.getBurstCount());
+        return;
+      }
+      else if (args.length == 2 && args[1].equalsIgnoreCase("stop"))
+      {
+        BurstCapture.instance.stop();
+        return;
+      }
+      else if (args[1].equalsIgnoreCase("ore") && args.length <= 3)
+      {
+        int count = 0;
+        if (args.length == 3)
+        {
+          try
+          {
+            count = Integer.parseInt(args[2]);
+          }
+          catch (NumberFormatException ex)
+          {
+            // Handled by the check below.
+          }
+          if (count <= 0)
+          {
+            localError(sender, "The number of deposits should be greater than zero.");
+            return;
+          }
+        }
+        BurstCapture.instance.startOre(count);
+        return;
+      }
+      else if (args.length == 2)
+      {
+        boolean validCount = false;
+        try
+        {
+          int count = Integer.parseInt(args[1]);
+          if (count > 0)
+          {
+            validCount = true;
+            BurstCapture.instance.start(count);
+          }
+        }
+        catch (NumberFormatException ex)
+        {
+          // Handled by validCount flag.
+        }
+        if (!validCount)
+        {
+          localError(sender, "The number of screenshots should be greater than zero.");
+        }
+        return;
+      }
+    } // /w burst
+
+    // Time-lapse playback: /w playback [play|pause|stop|speed|seek|step ...]
+    if (args.length >= 1 && args[0].equalsIgnoreCase("playback"))
+    {
+      if (args.length == 1 || (args.length == 2 && args[1].equalsIgnoreCase("play")))
+      {
+        Playback.instance.play();
+        return;
+      }
+      else if (args.length == 2 && args[1].equalsIgnoreCase("pause"))
+      {
+        Playback.instance.pause();
+        return;
+      }
+      else if (args.length == 2 && args[1].equalsIgnoreCase("stop"))
+      {
+        Playback.instance.stop();
+        return;
+      }
+      else if (args.length == 3 && args[1].equalsIgnoreCase("speed"))
+      {
+        boolean validSpeed = false;
+        try
+        {
+          double speed = Double.parseDouble(args[2]);
+          if (speed > 0)
+          {
+            validSpeed = true;
+            Playback.instance.setSpeed(speed);
+          }
+        }
+        catch (NumberFormatException ex)
+        {
+          // Handled by validSpeed flag.
+        }
+        if (!validSpeed)
+        {
+          localError(sender, "The speed should be a number greater than zero.");
+        }
+        return;
+      }
+      else if (args.length >= 3 && args[1].equalsIgnoreCase("seek"))
+      {
+        try
+        {
+          if (args.length == 3 && (args[2].startsWith("+") || args[2].startsWith("-")))
+          {
+            Playback.instance.skip(TimeStamp.parseDuration(args[2]));
+          }
+          else
+          {
+            long now = System.currentTimeMillis() - ServerTime.instance.getLocalMinusServerMinutes() * 60 * 1000L;
+            Playback.instance.seek(TimeStamp.parseTime(args, 2, now));
+          }
+        }
+        catch (IllegalArgumentException ex)
+        {
+          localError(sender, "The time should be (+|-)<number>(s|m|h|d), or a time as for /w edits since.");
+        }
+        return;
+      }
+      else if ((args.length == 2 || args.length == 3) && args[1].equalsIgnoreCase("step"))
+      {
+        try
+        {
+          Playback.instance.step(args.length == 3 ? Integer.parseInt(args[2]) : 1);
+        }
+        catch (NumberFormatException ex)
+        {
+          localError(sender, "The number of edits should be an integer.");
+        }
+        return;
+      }
+    } // /w playback
+
+    // Multi-world servers: /w world [<name>]
+    if (args.length >= 1 && args[0].equalsIgnoreCase("world"))
+    {
+      if (args.length == 1)
+      {
+        Controller.instance.listWorlds();
+        return;
+      }
+      else if (args.length == 2)
+      {
+        Controller.instance.setWorld(args[1]);
+        return;
+      }
+    } // /w world
+
+    // Region selection: /w select [clear|<x1> <y1> <z1> <x2> <y2> <z2>|sphere
+    // <radius> [<x> <y> <z>]]
+    if (args.length >= 1 && args[0].equalsIgnoreCase("select"))
+    {
+      if (args.length == 1)
+      {
+        Region region = Controller.instance.getRegion();
+        localOutput(sender, (region != null) ? "Selected " + region + "." : "No region is selected.");
+        return;
+      }
+      else if (args.length == 2 && args[1].equalsIgnoreCase("clear"))
+      {
+        Controller.instance.setRegion(null);
+        return;
+      }
+      else if (args.length == 7)
+      {
+        try
+        {
+          Controller.instance.setRegion(Region.box(
+            Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+            Integer.parseInt(args[4]), Integer.parseInt(args[5]), Integer.parseInt(args[6])));
+        }
+        catch (NumberFormatException ex)
+        {
+          localError(sender, "The coordinates should be integers.");
+        }
+        return;
+      }
+      else if ((args.length == 3 || args.length == 6) && args[1].equalsIgnoreCase("sphere"))
+      {
+        try
+        {
+          int radius = Integer.parseInt(args[2]);
+          if (radius < 0)
+          {
+            localError(sender, "The radius cannot be negative.");
+            return;
+          }
+          // Around the player, unless the centre is specified.
+          BlockPos centre = sender.getPosition();
+          int x = (args.length == 6) ? Integer.parseInt(args[3]) : centre.getX();
+          int y = (args.length == 6) ? Integer.parseInt(args[4]) : centre.getY();
+          int z = (args.length == 6) ? Integer.parseInt(args[5]) : centre.getZ();
+          Controller.instance.setRegion(Region.sphere(x, y, z, radius));
+        }
+        catch (NumberFormatException ex)
+        {
+          localError(sender, "The radius and coordinates should be integers.");
+        }
+        return;
+      }
+    } // /w select
+
+    // Edits nearest the player: /w nearest [<count>]
+    if (args.length >= 1 && args[0].equalsIgnoreCase("nearest"))
+    {
+      if (args.length <= 2)
+      {
+        boolean validCount = false;
+        try
+        {
+          int count = (args.length == 2) ? Integer.parseInt(args[1]) : DEFAULT_NEAREST_COUNT;
+          if (count > 0)
+          {
+            validCount = true;
+            Vec3d position = sender.getPositionVector();
+            Controller.instance.getBlockEditSet().showNearestEdits(position.x, position.y, position.z, count);
+          }
+        }
+        catch (NumberFormatException ex)
+        {
+          // Handled by validCount test.
+        }
+
+        if (!validCount)
+        {
+          localError(sender, "The count parameter should be a positive number of edits to list.");
+        }
+        return;
+      }
+    } // /w nearest
+
+    // Performance statistics: /w stats [reset|region|hud [on|off]]
+    if (args.length >= 1 && args[0].equalsIgnoreCase("stats"))
+    {
+      if (args.length == 1)
+      {
+        Stats.instance.report();
+        return;
+      }
+      else if (args.length == 2 && args[1].equalsIgnoreCase("region"))
+      {
+        Region region = Controller.instance.getRegion();
+        if (region != null)
+        {
+          Controller.instance.getBlockEditSet().showRegionStats(region);
+        }
+        else
+        {
+          localError(sender, "Select a region first, with \"/w select\".");
+        }
+        return;
+      }
+      else if (args.length == 2 && args[1].equalsIgnoreCase("reset"))
+      {
+        Stats.instance.reset();
+        localOutput(sender, "Statistics reset.");
+        return;
+      }
+      else if (args[1].equalsIgnoreCase("hud"))
+      {
+        if (args.length == 2)
+        {
+          Stats.instance.setHudShown(!Stats.instance.isHudShown());
+          return;
+        }
+        else if (args.length == 3 && args[2].equalsIgnoreCase("on"))
+        {
+          Stats.instance.setHudShown(true);
+          return;
+        }
+        else if (args.length == 3 && args[2].equalsIgnoreCase("off"))
+        {
+          Stats.instance.setHudShown(false);
+          return;
+        }
+      }
+    } // /w stats
+
     // "/w edits" command.
     if (args[0].equalsIgnoreCase("edits"))
     {
@@ -321,6 +627,36 @@ public class WatsonCommand extends WatsonCommandBase
         Controller.instance.getBlockEditSet().listEdits();
         return;
       }
+      else if (args.length == 2 && args[1].equalsIgnoreCase("all"))
+      {
+        Controller.instance.getBlockEditSet().setTimeWindow(Long.MIN_VALUE, Long.MAX_VALUE);
+        Controller.instance.getBlockEditSet().showTimeWindow();
+        return;
+      }
+      else if (args.length >= 3 && (args[1].equalsIgnoreCase("since") || args[1].equalsIgnoreCase("before")))
+      {
+        // Edit times are server times, so "2h" means 2 hours ago on the server.
+        long now = System.currentTimeMillis() - ServerTime.instance.getLocalMinusServerMinutes() * 60 * 1000L;
+        try
+        {
+          long time = TimeStamp.parseTime(args, 2, now);
+          BlockEditSet edits = Controller.instance.getBlockEditSet();
+          if (args[1].equalsIgnoreCase("since"))
+          {
+            edits.setTimeWindow(time, edits.getBefore());
+          }
+          else
+          {
+            edits.setTimeWindow(edits.getSince(), time);
+          }
+          edits.showTimeWindow();
+        }
+        catch (IllegalArgumentException ex)
+        {
+          localError(sender, "The time should be <number>(s|m|h|d), or [[YYYY-]MM-DD] hh:mm[:ss].");
+        }
+        return;
+      }
       else if (args.length >= 3)
       {
         if (args[1].equalsIgnoreCase("hide") || args[1].equalsIgnoreCase("show"))
@@ -426,10 +762,10 @@ public class WatsonCommand extends WatsonCommandBase
         Controller.instance.expireBlockEditFiles(args[2]);
         return;
       }
-      else if (args[1].equalsIgnoreCase("load") && args.length == 3)
+      else if (args[1].equalsIgnoreCase("load") && args.length >= 3)
       {
-        // args[2] is either a full file name or a player name.
-        Controller.instance.loadBlockEditFile(args[2]);
+        // Each argument is either a full file name or a player name.
+        Controller.instance.loadBlockEditFiles(Arrays.copyOfRange(args, 2, args.length));
         return;
       }
       else if (args[1].equalsIgnoreCase("save"))
@@ -596,6 +932,29 @@ public class WatsonCommand extends WatsonCommandBase
       }
     } // /w config debug
 
+    // Enable or disable logging as JSON objects.
+    if (args[1].equalsIgnoreCase("log_json"))
+    {
+      if (args.length == 2)
+      {
+        Configuration.instance.setLogJson(!Configuration.instance.isLogJson());
+        return true;
+      }
+      else if (args.length == 3)
+      {
+        if (args[2].equalsIgnoreCase("on"))
+        {
+          Configuration.instance.setLogJson(true);
+          return true;
+        }
+        else if (args[2].equalsIgnoreCase("off"))
+        {
+          Configuration.instance.setLogJson(false);
+          return true;
+        }
+      }
+    } // /w config log_json
+
     // Enable or disable automatic "/lb coords" paging.
     if (args[1].equalsIgnoreCase("auto_page"))
     {
@@ -763,6 +1122,30 @@ public class WatsonCommand extends WatsonCommandBase
       }
     } // /w config chat_timeout
 
+    // Set the number of programmatically generated chat messages that can be
+    // sent together.
+    if (args[1].equalsIgnoreCase("chat_burst"))
+    {
+      if (args.length == 3)
+      {
+        try
+        {
+          Configuration.instance.setChatBurst(Integer.parseInt(args[2]));
+        }
+        catch (NumberFormatException ex)
+        {
+          localError(sender, "The number of messages should be an integer greater than zero.");
+        }
+        return true;
+      }
+      else if (args.length == 2)
+      {
+        int burst = Configuration.instance.getChatBurst();
+        localOutput(sender, "Up to " + burst + " chat commands can currently be sent together.");
+        return true;
+      }
+    } // /w config chat_burst
+
     // Set the maximum number of pages of "/lb coords" results automatically
     // paged through.
     if (args[1].equalsIgnoreCase("max_auto_pages"))
@@ -799,6 +1182,99 @@ public class WatsonCommand extends WatsonCommandBase
       }
     } // /w config max_auto_pages
 
+    // Set the number of "/lb page" requests awaiting results at once.
+    if (args[1].equalsIgnoreCase("auto_page_window"))
+    {
+      if (args.length == 3)
+      {
+        try
+        {
+          Configuration.instance.setAutoPageWindow(Integer.parseInt(args[2]));
+        }
+        catch (NumberFormatException ex)
+        {
+          localError(sender, "The number of pages should be an integer greater than zero.");
+        }
+        return true;
+      }
+      else if (args.length == 2)
+      {
+        int window = Configuration.instance.getAutoPageWindow();
+        localOutput(sender, "Currently, up to " + window + " pages of \"/lb coords\" results are requested ahead.");
+        return true;
+      }
+    } // /w config auto_page_window
+
+    // Enable or disable answering repeated LogBlock queries from the cache.
+    if (args[1].equalsIgnoreCase("query_cache"))
+    {
+      if (args.length == 2)
+      {
+        Configuration.instance.setQueryCache(!Configuration.instance.isQueryCache());
+        return true;
+      }
+      else if (args.length == 3)
+      {
+        if (args[2].equalsIgnoreCase("on"))
+        {
+          Configuration.instance.setQueryCache(true);
+          return true;
+        }
+        else if (args[2].equalsIgnoreCase("off"))
+        {
+          Configuration.instance.setQueryCache(false);
+          QueryCache.instance.clear();
+          return true;
+        }
+      }
+    } // /w config query_cache
+
+    // Set the number of days that edits are kept between sessions.
+    if (args[1].equalsIgnoreCase("journal_days"))
+    {
+      if (args.length == 3)
+      {
+        try
+        {
+          Configuration.instance.setJournalDays(Integer.parseInt(args[2]));
+        }
+        catch (NumberFormatException ex)
+        {
+          localError(sender, "The number of days should be an integer, or 0 to keep no edits.");
+        }
+        return true;
+      }
+      else if (args.length == 2)
+      {
+        int days = Configuration.instance.getJournalDays();
+        localOutput(sender, "Edits are currently kept between sessions for " + days + " days.");
+        return true;
+      }
+    } // /w config journal_days
+
+    // Enable or disable the collection of performance statistics.
+    if (args[1].equalsIgnoreCase("stats"))
+    {
+      if (args.length == 2)
+      {
+        Configuration.instance.setStats(!Configuration.instance.isStats());
+        return true;
+      }
+      else if (args.length == 3)
+      {
+        if (args[2].equalsIgnoreCase("on"))
+        {
+          Configuration.instance.setStats(true);
+          return true;
+        }
+        else if (args[2].equalsIgnoreCase("off"))
+        {
+          Configuration.instance.setStats(false);
+          return true;
+        }
+      }
+    } // /w config stats
+
     // Set the default number of edits to query when no count parameter is
     // specified with "/w pre".
     if (args[1].equalsIgnoreCase("pre_count"))
@@ -1073,6 +1549,144 @@ public class WatsonCommand extends WatsonCommandBase
       }
     } // /w config chat_highlights
 
+    // Set the default number of screenshots taken by "/w burst".
+    if (args[1].equalsIgnoreCase("burst_count"))
+    {
+      if (args.length == 3)
+      {
+        boolean validCount = false;
+        try
+        {
+          int count = Integer.parseInt(args[2]);
+          if (count > 0)
+          {
+            validCount = true;
+            Configuration.instance.setBurstCount(count);
+          }
+        }
+        catch (NumberFormatException ex)
+        {
+          // Handled by validCount flag.
+        }
+
+        if (!validCount)
+        {
+          localError(sender, "The number of screenshots should be at least 1.");
+        }
+        return true;
+      }
+      else if (args.length == 2)
+      {
+        int count = Configuration.instance.getBurstCount();
+        localOutput(sender, "By default, \"/" + Configuration.instance.getWatsonPrefix() + " burst\" takes " + count
+                            + " screenshots.");
+        return true;
+      }
+    } // /w config burst_count
+
+    // Set the time between screenshots in a burst.
+    if (args[1].equalsIgnoreCase("burst_interval"))
+    {
+      if (args.length == 3)
+      {
+        boolean validInterval = false;
+        try
+        {
+          double seconds = Double.parseDouble(args[2]);
+          if (seconds > 0)
+          {
+            validInterval = true;
+            Configuration.instance.setBurstIntervalSeconds(seconds);
+          }
+        }
+        catch (NumberFormatException ex)
+        {
+          // Handled by validInterval flag.
+        }
+
+        if (!validInterval)
+        {
+          localError(sender, "The interval should be a number of seconds greater than zero.");
+        }
+        return true;
+      }
+      else if (args.length == 2)
+      {
+        double seconds = Configuration.instance.getBurstIntervalSeconds();
+        localOutput(sender, "Burst screenshot interval is currently set to " + seconds + " seconds.");
+        return true;
+      }
+    } // /w config burst_interval
+
+    // Set the number of buffers that burst screenshots are captured into.
+    if (args[1].equalsIgnoreCase("burst_buffers"))
+    {
+      if (args.length == 3)
+      {
+        try
+        {
+          Configuration.instance.setBurstBuffers(Integer.parseInt(args[2]));
+        }
+        catch (NumberFormatException ex)
+        {
+          localError(sender, "The number of buffers should be an integer from 1 to 16.");
+        }
+        return true;
+      }
+      else if (args.length == 2)
+      {
+        int buffers = Configuration.instance.getBurstBuffers();
+        localOutput(sender, "Burst screenshots currently use " + buffers + " buffers.");
+        return true;
+      }
+    } // /w config burst_buffers
+
+    // Drop or delay burst screenshots when the disk can't keep up.
+    if (args[1].equalsIgnoreCase("burst_drop"))
+    {
+      if (args.length == 2)
+      {
+        Configuration.instance.setBurstDrop(!Configuration.instance.isBurstDrop());
+        return true;
+      }
+      else if (args.length == 3)
+      {
+        if (args[2].equalsIgnoreCase("on"))
+        {
+          Configuration.instance.setBurstDrop(true);
+          return true;
+        }
+        else if (args[2].equalsIgnoreCase("off"))
+        {
+          Configuration.instance.setBurstDrop(false);
+          return true;
+        }
+      }
+    } // /w config burst_drop
+
+    // Enable or disable highlighting of the edit under the crosshair.
+    if (args[1].equalsIgnoreCase("hover_highlight"))
+    {
+      if (args.length == 2)
+      {
+        Configuration.instance.setHoverHighlight(!Configuration.instance.isHoverHighlight());
+        return true;
+      }
+      else if (args.length == 3)
+      {
+        if (args[2].equalsIgnoreCase("on"))
+        {
+          Configuration.instance.setHoverHighlight(true);
+          return true;
+        }
+        else if (args[2].equalsIgnoreCase("off"))
+        {
+          Configuration.instance.setHoverHighlight(false);
+          return true;
+        }
+      }
+    } // /w config hover_highlight
+
     // Help with /w config
     if (args[1].equalsIgnoreCase("help"))
     {
@@ -1082,6 +1696,7 @@ public class WatsonCommand extends WatsonCommandBase
       localOutput(sender, "  /" + w + " config help : display these instructions");
       localOutput(sender, "  /" + w + " config watson : toggles watson mod as a whole");
       localOutput(sender, "  /" + w + " config debug : enable or disable debug logging");
+      localOutput(sender, "  /" + w + " config log_json [on|off] : enable or disable logging as JSON lines to log.jsonl");
       localOutput(sender, "  /" + w + " config auto_page : enable or disable automatic \"/lb coords\" paging");
       localOutput(sender,
                   "  /" + w
@@ -1096,11 +1711,21 @@ public class WatsonCommand extends WatsonCommandBase
                   "  /"
                     + w
                     + " config chat_timeout [seconds] : set minimum time separation between programmatically generated chat messages sent to the server");
+      localOutput(sender, "  /" + w
+                          + " config chat_burst [int] : set the number of programmatically generated chat messages that can be sent together");
       localOutput(
                   sender,
                   "  /"
                     + w
                     + " config max_auto_pages [int]: set the maximum number of pages of \"/lb coords\" results automatically paged through");
+      localOutput(sender, "  /" + w
+                          + " config auto_page_window [int] : set the number of pages of \"/lb coords\" results requested ahead");
+      localOutput(sender, "  /" + w
+                          + " config query_cache [on|off] : enable or disable answering repeated \"/lb coords\" queries from earlier results");
+      localOutput(sender, "  /" + w
+                          + " config journal_days [int] : set the number of days that edits are kept between sessions");
+      localOutput(sender, "  /" + w
+                          + " config stats [on|off] : enable or disable the collection of statistics shown by /" + w + " stats");
       localOutput(sender,
                   "  /"
                     + w
@@ -1132,6 +1757,14 @@ public class WatsonCommand extends WatsonCommandBase
                     + " config vector_length [decimal]: set the default minimum length of a vector for it to be visible");
       localOutput(sender, "  /" + w
               + " config chat_highlights [on/off] : enable or disable chat highlight functionality");
+      localOutput(sender, "  /" + w + " config burst_count [int] : set the default number of screenshots taken by \"/" + w
+                          + " burst\"");
+      localOutput(sender, "  /" + w + " config burst_interval [seconds] : set the time between burst screenshots");
+      localOutput(sender, "  /" + w
+                          + " config burst_buffers [int] : set the number of burst screenshots that can be waiting to be written");
+      localOutput(sender, "  /" + w
+                          + " config burst_drop [on/off] : drop (on) or delay (off) burst screenshots when the disk can't keep up");
+      localOutput(sender, "  /" + w + " config hover_highlight [on|off] : highlight the edit under the crosshair");
       return true;
     } // /w config help
 
@@ -1159,16 +1792,31 @@ public class WatsonCommand extends WatsonCommandBase
     localOutput(sender, "  /" + w + " post [<count>]");
     localOutput(sender, "  /" + w + " ore [<page>]");
     localOutput(sender, "  /" + w + " ratio");
-    localOutput(sender, "  /" + w + " tp [next|prev|<number>]");
+    localOutput(sender, "  /" + w + " tunnels [<player>]");
+    localOutput(sender, "  /" + w + " tp [next|prev|nearest|<number>]");
+    localOutput(sender, "  /" + w + " burst [<count>|stop]");
+    localOutput(sender, "  /" + w + " burst ore [<count>]");
     localOutput(sender, "  /" + w + " edits [list]");
     localOutput(sender, "  /" + w + " edits (hide|show|remove) <player> ...");
+    localOutput(sender, "  /" + w + " edits (since|before) <time>");
+    localOutput(sender, "  /" + w + " edits all");
+    localOutput(sender, "  /" + w + " playback [play|pause|stop]");
+    localOutput(sender, "  /" + w + " playback speed <factor>");
+    localOutput(sender, "  /" + w + " playback seek (<time>|(+|-)<duration>)");
+    localOutput(sender, "  /" + w + " playback step [<count>]");
     localOutput(sender, "  /" + w + " filter [list|clear]");
     localOutput(sender, "  /" + w + " filter (add|remove) <player> ...");
     localOutput(sender, "  /" + w + " servertime");
+    localOutput(sender, "  /" + w + " world [<name>]");
+    localOutput(sender, "  /" + w + " select [clear|<x1> <y1> <z1> <x2> <y2> <z2>]");
+    localOutput(sender, "  /" + w + " select sphere <radius> [<x> <y> <z>]");
+    localOutput(sender, "  /" + w + " nearest [<count>]");
+    localOutput(sender, "  /" + w + " stats [reset|region]");
+    localOutput(sender, "  /" + w + " stats hud [on|off]");
     localOutput(sender, "  /" + w + " file list [*|<playername>] [<page>]");
     localOutput(sender, "  /" + w + " file delete *|<filename>|<playername>");
     localOutput(sender, "  /" + w + " file expire <YYYY-MM-DD>");
-    localOutput(sender, "  /" + w + " file load <filename>|<playername>");
+    localOutput(sender, "  /" + w + " file load <filename>|<playername> ...");
     localOutput(sender, "  /" + w + " file save [<filename>]");
     localOutput(sender, "  /" + w + " config <name> [<value>]");
     localOutput(sender, "  /hl help" + (Configuration.instance.useChatHighlights() ? "" : " (Disabled!)"));
@@ -1197,5 +1845,10 @@ public class WatsonCommand extends WatsonCommandBase
   /**
    * Allowable patterns of command prefixes (setCommandPrefix()).
    */
-  protected static final Pattern PREFIX_PATTERN = Pattern.compile("\\w+");
+  protected static final Pattern PREFIX_PATTERN        = Pattern.compile("\\w+");
+
+  /**
+   * The number of edits listed by "/w nearest" when no count is given.
+   */
+  protected static final int     DEFAULT_NEAREST_COUNT = 5;
 } // class WatsonCommand
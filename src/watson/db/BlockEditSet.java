@@ -9,16 +9,25 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.minecraft.client.Minecraft;
 import watson.Configuration;
 import watson.Controller;
+import watson.SyncTaskQueue;
 import watson.DisplaySettings;
 import watson.chat.Chat;
+import watson.debug.Log;
 import watson.model.ARGB;
 
 // ----------------------------------------------------------------------------
@@ -41,11 +50,60 @@ public class BlockEditSet
   /**
    * Load additional entries from the specified file.
    *
+   * The file is merged into the edits already in this set, line by line.
+   * Edits that are already present are skipped without being instantiated, so
+   * several overlapping files can be loaded in turn without accumulating
+   * duplicates.
+   *
    * @param file the file to load.
-   * @return the number of edits loaded.
+   * @return the number of edits read from the file, including duplicates.
    */
   public synchronized int load(File file)
     throws Exception
+  {
+    ArrayList<BlockEdit> edits = new ArrayList<BlockEdit>();
+    HashMap<String, TimeCoverage> coverage = new HashMap<String, TimeCoverage>();
+    int count = read(file, _editKeys, edits, _annotations, coverage);
+    for (BlockEdit edit : edits)
+    {
+      addBlockEdit(edit);
+    }
+    for (Map.Entry<String, TimeCoverage> entry : coverage.entrySet())
+    {
+      List<String> players = entry.getKey().equals(OreDB.ALL_PLAYERS)
+        ? Collections.<String>emptyList() : Collections.singletonList(entry.getKey());
+      for (Map.Entry<Long, Long> range : entry.getValue().getRanges().entrySet())
+      {
+        addCoverage(players, range.getKey(), range.getValue());
+      }
+    }
+
+    // If there was at least one BlockEdit, select it.
+    if (!edits.isEmpty())
+    {
+      Controller.instance.selectBlockEdit(edits.get(edits.size() - 1));
+    }
+    return count;
+  } // load
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read the edits and annotations in a file written by {@link #save(File)}.
+   *
+   * This does not modify any {@link BlockEditSet}, so it can be called from
+   * any thread.
+   *
+   * @param file the file to read.
+   * @param skip the set of edits that are not to be instantiated, or null.
+   * @param edits the list to which edits are added, in the order read.
+   * @param annotations the list to which annotations are added.
+   * @param coverage the map to which the time ranges covered by the edits are
+   *          added, by player, or null to ignore them.
+   * @return the number of edits read from the file, including skipped ones.
+   */
+  protected static int read(File file, EditKeySet skip, List<BlockEdit> edits, List<Annotation> annotations,
+                            Map<String, TimeCoverage> coverage)
+    throws IOException
   {
     BufferedReader reader = new BufferedReader(new FileReader(file));
 
@@ -53,10 +111,11 @@ public class BlockEditSet
     {
       Pattern editPattern = Pattern.compile("(\\d{4})-(\\d{2})-(\\d{2})\\|(\\d{2}):(\\d{2}):(\\d{2})\\|(\\w+)\\|([cd])\\|(\\d+)\\|(\\d+)\\|(-?\\d+)\\|(\\d+)\\|(-?\\d+)");
       Pattern annoPattern = Pattern.compile("#(-?\\d+)\\|(\\d+)\\|(-?\\d+)\\|(.*)");
+      Pattern coveragePattern = Pattern.compile("@(\\*|\\w+)\\|(-?\\d+)\\|(-?\\d+)");
       Calendar time = Calendar.getInstance();
+      time.set(Calendar.MILLISECOND, 0);
       String line;
-      int edits = 0;
-      BlockEdit blockEdit = null;
+      int count = 0;
       while ((line = reader.readLine()) != null)
       {
         Matcher edit = editPattern.matcher(line);
@@ -77,13 +136,16 @@ public class BlockEditSet
           int x = Integer.parseInt(edit.group(11));
           int y = Integer.parseInt(edit.group(12));
           int z = Integer.parseInt(edit.group(13));
+          ++count;
+          if (skip != null && skip.contains(time.getTimeInMillis(), player, created, x, y, z, id, data))
+          {
+            continue;
+          }
 
           BlockType type = BlockTypeRegistry.instance.getBlockTypeByIdData(id,
                                                                            data);
-          blockEdit = new BlockEdit(time.getTimeInMillis(), player, created, x,
-                                    y, z, type);
-          addBlockEdit(blockEdit);
-          ++edits;
+          edits.add(new BlockEdit(time.getTimeInMillis(), player, created, x,
+                                  y, z, type));
         } // if
         else
         {
@@ -95,23 +157,32 @@ public class BlockEditSet
             int y = Integer.parseInt(anno.group(2));
             int z = Integer.parseInt(anno.group(3));
             String text = anno.group(4);
-            _annotations.add(new Annotation(x, y, z, text));
+            annotations.add(new Annotation(x, y, z, text));
+          }
+          else if (coverage != null)
+          {
+            Matcher covered = coveragePattern.matcher(line);
+            if (covered.matches())
+            {
+              String player = covered.group(1).toLowerCase();
+              TimeCoverage ranges = coverage.get(player);
+              if (ranges == null)
+              {
+                ranges = new TimeCoverage();
+                coverage.put(player, ranges);
+              }
+              ranges.add(Long.parseLong(covered.group(2)), Long.parseLong(covered.group(3)));
+            }
           }
         }
       } // while
-
-      // If there was at least one BlockEdit, select it.
-      if (blockEdit != null)
-      {
-        Controller.instance.selectBlockEdit(blockEdit);
-      }
-      return edits;
+      return count;
     }
     finally
     {
       reader.close();
     }
-  } // load
+  } // read
 
   // --------------------------------------------------------------------------
   /**
@@ -126,6 +197,11 @@ public class BlockEditSet
    * Where action is c (created) or d (destroyed) and id is the numeric block
    * type.
    *
+   * The time ranges recorded by
+   * {@link #addCoverage(Collection, long, long)} follow, as lines of the form
+   * "@player|since|before", with the times in milliseconds since epoch and *
+   * for all players.
+   *
    * @param file the file to save.
    * @return the number of edits saved.
    */
@@ -136,26 +212,238 @@ public class BlockEditSet
                                                             new FileWriter(file)));
     try
     {
-      // Save edits.
-      int editCount = 0;
-      for (PlayerEditSet editsForPlayer : _playerEdits.values())
+      return save(writer, Long.MIN_VALUE);
+    }
+    finally
+    {
+      writer.close();
+    }
+  } // save
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write the {@link BlockEdit}s at or after the specified time, and all
+   * annotations, to the specified PrintWriter, in the format of
+   * {@link #save(File)}.
+   *
+   * @param writer the PrintWriter.
+   * @param since the time of the oldest edit to save.
+   * @return the number of edits saved.
+   */
+  protected synchronized int save(PrintWriter writer, long since)
+  {
+    // Save edits.
+    int editCount = 0;
+    for (PlayerEditSet editsForPlayer : _playerEdits.values())
+    {
+      editCount += editsForPlayer.save(writer, since);
+    }
+
+    // Save annotations.
+    for (Annotation annotation : _annotations)
+    {
+      write(writer, annotation);
+    }
+
+    // Save the time ranges in which the edits are known to be complete.
+    for (Map.Entry<String, TimeCoverage> entry : _oreDB.getCoverage().entrySet())
+    {
+      for (Map.Entry<Long, Long> range : entry.getValue().getRanges().entrySet())
       {
-        editCount += editsForPlayer.save(writer);
+        if (range.getValue() > since)
+        {
+          writer.format(Locale.US, "@%s|%d|%d\n", entry.getKey(), Math.max(range.getKey(), since),
+            range.getValue());
+        }
       }
+    }
+    return editCount;
+  } // save
 
-      // Save annotations.
-      for (Annotation annotation : _annotations)
+  // --------------------------------------------------------------------------
+  /**
+   * Write one annotation to the specified PrintWriter in the format read by
+   * {@link #load(File)}.
+   *
+   * @param writer the PrintWriter.
+   * @param annotation the annotation.
+   */
+  static void write(PrintWriter writer, Annotation annotation)
+  {
+    writer.format("#%d|%d|%d|%s\n", annotation.getX(), annotation.getY(),
+                  annotation.getZ(), annotation.getText());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Restore the edits recorded in the specified journal file and record all
+   * edits subsequently added to this set in it.
+   *
+   * The file is read by a background thread. The edits read are then added on
+   * the main thread, RESTORE_BATCH per tick, by {@link #flushJournal()}, so
+   * that restoring a large journal does not stall the game. Edits are not
+   * appended to the journal until they have all been restored; the journal is
+   * then compacted, which writes all edits in memory to it.
+   *
+   * @param file the journal file, which need not exist yet.
+   */
+  public synchronized void openJournal(final File file)
+  {
+    _journal = new EditJournal(file);
+    if (!file.canRead())
+    {
+      // Write any edits already in memory.
+      _journal.requestCompaction();
+      return;
+    }
+
+    ++_pendingRestores;
+    final int generation = _restoreGeneration;
+    Thread thread = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        final ArrayList<BlockEdit> edits = new ArrayList<BlockEdit>();
+        final ArrayList<Annotation> annotations = new ArrayList<Annotation>();
+        try
+        {
+          read(file, null, edits, annotations, null);
+
+          // Add them in time order, so that time indexes are appended to.
+          Collections.sort(edits, new BlockEditComparator());
+        }
+        catch (Exception ex)
+        {
+          Log.exception(Level.SEVERE, "could not read journal: " + file, ex);
+        }
+
+        SyncTaskQueue.instance.addTask(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            beginRestore(edits, annotations, generation);
+          }
+        });
+      }
+    }, "Watson Journal Restore");
+    thread.setDaemon(true);
+    thread.start();
+  } // openJournal
+
+  // --------------------------------------------------------------------------
+  /**
+   * Queue the edits read from a journal by the restore thread to be added.
+   *
+   * @param edits the edits read from the journal, in time order.
+   * @param annotations the annotations read from the journal.
+   * @param generation the value of _restoreGeneration when the journal was
+   *          opened; if the set has been cleared since then, the edits are
+   *          discarded.
+   */
+  protected synchronized void beginRestore(List<BlockEdit> edits, List<Annotation> annotations, int generation)
+  {
+    if (generation == _restoreGeneration)
+    {
+      _annotations.addAll(annotations);
+      _restoreQueue.add(edits);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add the next RESTORE_BATCH edits read from the journal, and finish
+   * restoring if there are no more.
+   */
+  protected void continueRestore()
+  {
+    if (_restoredEdits == null)
+    {
+      if (_restoreQueue.isEmpty())
       {
-        writer.format("#%d|%d|%d|%s\n", annotation.getX(), annotation.getY(),
-                      annotation.getZ(), annotation.getText());
+        return;
       }
-      return editCount;
+
+      // Build the time index now, if necessary, so that it is then updated as
+      // each restored edit is added rather than rebuilt.
+      getTimeIndex();
+      _restoredEdits = _restoreQueue.remove(0);
+      _restorePosition = 0;
     }
-    finally
+
+    int end = Math.min(_restoredEdits.size(), _restorePosition + RESTORE_BATCH);
+    while (_restorePosition < end)
     {
-      writer.close();
+      addBlockEdit(_restoredEdits.get(_restorePosition++), false);
     }
-  } // save
+
+    if (_restorePosition == _restoredEdits.size())
+    {
+      if (!_restoredEdits.isEmpty())
+      {
+        Chat.localOutput(String.format(Locale.US, "Restored %d edits from the journal.", _restoredEdits.size()));
+        Controller.instance.selectBlockEdit(_restoredEdits.get(_restoredEdits.size() - 1));
+      }
+      _restoredEdits = null;
+
+      // Drop expired edits from the file and add those added since opening it.
+      if (--_pendingRestores == 0 && _journal != null)
+      {
+        _journal.requestCompaction();
+      }
+    }
+  } // continueRestore
+
+  // --------------------------------------------------------------------------
+  /**
+   * Stop recording edits in the journal, writing those already recorded.
+   *
+   * @return the journal file, or null if there was no journal.
+   */
+  public synchronized File closeJournal()
+  {
+    if (_journal == null)
+    {
+      return null;
+    }
+    File file = _journal.getFile();
+    _journal.close();
+    _journal = null;
+    return file;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write recently added edits to the journal, compacting it if necessary, and
+   * continue restoring the edits read from the journal.
+   *
+   * This method should be called once per tick.
+   */
+  public synchronized void flushJournal()
+  {
+    if (_pendingRestores != 0)
+    {
+      continueRestore();
+    }
+    if (_journal != null)
+    {
+      if (Configuration.instance.getJournalDays() <= 0)
+      {
+        // Journaling was turned off.
+        _journal.close();
+        _journal = null;
+      }
+      else if (_pendingRestores == 0 && _journal.isCompactionDue())
+      {
+        _journal.compact(this);
+      }
+      else
+      {
+        _journal.flush();
+      }
+    }
+  } // flushJournal
 
   // --------------------------------------------------------------------------
   /**
@@ -166,8 +454,46 @@ public class BlockEditSet
     _playerEdits.clear();
     _annotations.clear();
     _oreDB.clear();
+    _editKeys.clear();
+    _keyedEdits.clear();
+    _timeIndex = null;
+    _spatialIndex = null;
+    _kdTree = null;
+    _pendingRestores = 0;
+    ++_restoreGeneration;
+    _restoreQueue.clear();
+    _restoredEdits = null;
+    if (_journal != null)
+    {
+      _journal.clear();
+    }
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return a copy of all edits and annotations in the compact form used for
+   * worlds that are not displayed.
+   *
+   * @param world the name of the world that the edits are in.
+   * @return the compact copy.
+   */
+  public synchronized CompactEditSet compact(String world)
+  {
+    CompactEditSet compact = new CompactEditSet(world);
+    for (PlayerEditSet editsForPlayer : _playerEdits.values())
+    {
+      for (BlockEdit edit : editsForPlayer.edits(Long.MIN_VALUE, Long.MAX_VALUE))
+      {
+        compact.addBlockEdit(edit);
+      }
+    }
+    for (Annotation annotation : _annotations)
+    {
+      compact.addAnnotation(annotation);
+    }
+    return compact;
+  } // compact
+
   // --------------------------------------------------------------------------
   /**
    * Find an edit with the specified coordinates and, optionally, player.
@@ -219,6 +545,10 @@ public class BlockEditSet
   /**
    * Add the specified edit to the list.
    *
+   * An edit with the same time, player, coordinates, block type and action as
+   * one already in the list is not added again; in particular, it is not
+   * counted a second time in the ore database.
+   *
    * @param edit the BlockEdit describing an edit to add.
    * @param updateVariables update the state variables for the most recent edit.
    * @return true if the edit passes the currently set filters.
@@ -232,6 +562,12 @@ public class BlockEditSet
         Controller.instance.selectBlockEdit(edit);
       }
 
+      if (_editKeys.contains(edit))
+      {
+        // Already present, e.g. from an overlapping file or a repeated query.
+        return true;
+      }
+
       // Add a new PlayerEditSet if there isn't one for this player.
       String lowerName = edit.player.toLowerCase();
       PlayerEditSet editsForPlayer = _playerEdits.get(lowerName);
@@ -240,16 +576,30 @@ public class BlockEditSet
         editsForPlayer = new PlayerEditSet(edit.player);
         _playerEdits.put(lowerName, editsForPlayer);
       }
-      editsForPlayer.addBlockEdit(edit);
-
-      // Only cluster edits into ore deposits on non-creative (survival,
-      // adventure) games. I assume this will not stuff up for admins etc whose
-      // gamemode is creative, but just in case, allow a configuration override.
-      Minecraft mc = Minecraft.getMinecraft();
-      if (!mc.world.getWorldInfo().getGameType().isCreative()
-          || Configuration.instance.isGroupingOresInCreative())
+      if (editsForPlayer.addBlockEdit(edit, _oreDB))
       {
-        _oreDB.addBlockEdit(edit);
+        _editKeys.add(edit, _keyedEdits.size());
+        _keyedEdits.add(edit);
+        if (_journal != null && _pendingRestores == 0)
+        {
+          _journal.append(edit);
+        }
+        if (_kdTree != null)
+        {
+          _kdTree.add(edit);
+        }
+        if (_timeIndex != null)
+        {
+          _timeIndex.add(edit);
+        }
+        if (_spatialIndex != null)
+        {
+          _spatialIndex.add(edit);
+        }
+        if (isGroupingOres())
+        {
+          _oreDB.addBlockEdit(edit);
+        }
       }
       return true;
     }
@@ -259,6 +609,90 @@ public class BlockEditSet
     }
   } // addBlockEdit
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if added edits should be clustered into ore deposits.
+   *
+   * Only cluster edits into ore deposits on non-creative (survival, adventure)
+   * games. I assume this will not stuff up for admins etc whose gamemode is
+   * creative, but just in case, allow a configuration override.
+   *
+   * @return true if added edits should be clustered into ore deposits.
+   */
+  protected boolean isGroupingOres()
+  {
+    Minecraft mc = Minecraft.getMinecraft();
+    return !mc.world.getWorldInfo().getGameType().isCreative()
+           || Configuration.instance.isGroupingOresInCreative();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the total number of edits in this set.
+   *
+   * @return the total number of edits in this set.
+   */
+  public synchronized int getBlockEditCount()
+  {
+    return _editKeys.size();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record that all of the stone and diamond ore destroyed by the specified
+   * players in the time range [since,before) has been loaded into this set,
+   * e.g. by a complete LogBlock query or a saved file, so that
+   * "/w ratio" can count it without querying the server.
+   *
+   * Since only the edits of players accepted by the filters are loaded, the
+   * range is only recorded for those players.
+   *
+   * @param players the names of the players, or an empty collection for all
+   *          players.
+   * @param since the start time, inclusive.
+   * @param before the end time, exclusive.
+   */
+  public synchronized void addCoverage(Collection<String> players, long since, long before)
+  {
+    Filters filters = Controller.instance.getFilters();
+    if (players.isEmpty())
+    {
+      players = filters.getPlayers();
+      if (players.isEmpty())
+      {
+        _oreDB.addCoverage(OreDB.ALL_PLAYERS, since, before);
+        return;
+      }
+    }
+
+    for (String player : players)
+    {
+      if (filters.isAcceptedPlayer(player))
+      {
+        _oreDB.addCoverage(player, since, before);
+      }
+    }
+  } // addCoverage
+
+  // --------------------------------------------------------------------------
+  /**
+   * Rebuild the set of keys of the edits in this set, after edits have been
+   * removed.
+   */
+  protected void rebuildEditKeys()
+  {
+    _editKeys.clear();
+    _keyedEdits.clear();
+    for (PlayerEditSet editsForPlayer : _playerEdits.values())
+    {
+      for (BlockEdit edit : editsForPlayer.edits(Long.MIN_VALUE, Long.MAX_VALUE))
+      {
+        _editKeys.add(edit, _keyedEdits.size());
+        _keyedEdits.add(edit);
+      }
+    }
+  }
+
   // --------------------------------------------------------------------------
   /**
    * List the number and visibility of stored edits on a per player basis in the
@@ -273,16 +707,395 @@ public class BlockEditSet
     else
     {
       Chat.localOutput("Listing number and visibility of edits in this world:");
+      boolean windowed = isTimeWindowSet();
       for (PlayerEditSet editsByPlayer : _playerEdits.values())
       {
+        String count = windowed
+          ? String.format(Locale.US, "%d of %d", editsByPlayer.getBlockEditCount(_since, _before),
+                          editsByPlayer.getBlockEditCount())
+          : Integer.toString(editsByPlayer.getBlockEditCount());
         Chat.localOutput(String.format(Locale.US,
-                                       "  %s - %d edits %s", editsByPlayer.getPlayer(),
-                                       editsByPlayer.getBlockEditCount(),
+                                       "  %s - %s edits %s", editsByPlayer.getPlayer(),
+                                       count,
                                        (editsByPlayer.isVisible() ? "shown" : "hidden")));
       }
+      if (windowed)
+      {
+        showTimeWindow();
+      }
     }
   } // listEdits
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return an index of the edits of all players, ordered by time.
+   *
+   * The index is built when first needed, then kept sorted as edits are added.
+   * It is only rebuilt after edits have been removed. Callers that hold
+   * positions in the index can detect changes by comparing the returned
+   * reference and {@link EditTimeIndex#getVersion()} with those seen earlier.
+   *
+   * @return an index of the edits of all players.
+   */
+  public synchronized EditTimeIndex getTimeIndex()
+  {
+    if (_timeIndex == null)
+    {
+      // Concatenate the time-ordered edits of each player. Sorting a list of
+      // sorted runs is close to linear.
+      ArrayList<BlockEdit> edits = new ArrayList<BlockEdit>();
+      for (PlayerEditSet editsForPlayer : _playerEdits.values())
+      {
+        edits.addAll(editsForPlayer.edits(Long.MIN_VALUE, Long.MAX_VALUE));
+      }
+      Collections.sort(edits, new BlockEditComparator());
+      _timeIndex = new EditTimeIndex(edits);
+    }
+    return _timeIndex;
+  } // getTimeIndex
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return an index of the edits of all players, by location.
+   *
+   * Added edits are inserted into the index; it is rebuilt on demand after
+   * edits have been removed.
+   *
+   * @return an index of the edits of all players, by location.
+   */
+  public synchronized SpatialIndex getSpatialIndex()
+  {
+    if (_spatialIndex == null)
+    {
+      ArrayList<BlockEdit> edits = new ArrayList<BlockEdit>();
+      for (PlayerEditSet editsForPlayer : _playerEdits.values())
+      {
+        edits.addAll(editsForPlayer.edits(Long.MIN_VALUE, Long.MAX_VALUE));
+      }
+      _spatialIndex = new SpatialIndex(edits);
+    }
+    return _spatialIndex;
+  } // getSpatialIndex
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the k-d tree of the edits of all players, building it if necessary.
+   *
+   * Once built, the tree is updated as edits are added, so that it can be
+   * searched every frame.
+   *
+   * @return the k-d tree of the edits of all players.
+   */
+  protected KdTree getKdTree()
+  {
+    if (_kdTree == null)
+    {
+      ArrayList<BlockEdit> edits = new ArrayList<BlockEdit>();
+      for (PlayerEditSet editsForPlayer : _playerEdits.values())
+      {
+        edits.addAll(editsForPlayer.edits(Long.MIN_VALUE, Long.MAX_VALUE));
+      }
+      _kdTree = new KdTree(edits);
+    }
+    return _kdTree;
+  } // getKdTree
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return up to count of the edits that are drawn that are nearest to the
+   * specified point, nearest first.
+   *
+   * @param x the x coordinate of the point.
+   * @param y the y coordinate of the point.
+   * @param z the z coordinate of the point.
+   * @param count the maximum number of edits to return.
+   * @return the edits.
+   */
+  public synchronized List<BlockEdit> findNearestEdits(double x, double y, double z, int count)
+  {
+    return getKdTree().nearest(x, y, z, count, _drawnFilter);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the nearest edit that is drawn and lies along the specified ray,
+   * e.g. the edit under the crosshair.
+   *
+   * @param x the x coordinate of the origin of the ray.
+   * @param y the y coordinate of the origin of the ray.
+   * @param z the z coordinate of the origin of the ray.
+   * @param dx the x component of the direction, which must be a unit vector.
+   * @param dy the y component of the direction.
+   * @param dz the z component of the direction.
+   * @param maxDistance the maximum distance along the ray.
+   * @return the edit, or null if there is none.
+   */
+  public synchronized BlockEdit findEditAlongRay(double x, double y, double z,
+                                                 double dx, double dy, double dz, double maxDistance)
+  {
+    return getKdTree().nearestAlongRay(x, y, z, dx, dy, dz, maxDistance, RAY_RADIUS, _drawnFilter);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * List up to count of the drawn edits nearest to the specified point in
+   * chat, nearest first, and select the nearest.
+   *
+   * @param x the x coordinate of the point.
+   * @param y the y coordinate of the point.
+   * @param z the z coordinate of the point.
+   * @param count the maximum number of edits to list.
+   */
+  public synchronized void showNearestEdits(double x, double y, double z, int count)
+  {
+    long start = System.nanoTime();
+    List<BlockEdit> edits = findNearestEdits(x, y, z, count);
+    double millis = (System.nanoTime() - start) / 1e6;
+    if (edits.isEmpty())
+    {
+      Chat.localError("There are no edits to select.");
+      return;
+    }
+
+    Chat.localOutput(String.format(Locale.US, "The %d nearest edits (%.1f ms):", edits.size(), millis));
+    for (BlockEdit edit : edits)
+    {
+      double dx = edit.x + 0.5 - x;
+      double dy = edit.y + 0.5 - y;
+      double dz = edit.z + 0.5 - z;
+      Chat.localOutput(String.format(Locale.US, "  (%d, %d, %d) %.1fm %s %s %s %s",
+        edit.x, edit.y, edit.z, Math.sqrt(dx * dx + dy * dy + dz * dz),
+        TimeStamp.formatMonthDayTime(edit.time), edit.player,
+        edit.creation ? "created" : "destroyed", edit.type.getName(0)));
+    }
+    Controller.instance.selectBlockEdit(edits.get(0));
+  } // showNearestEdits
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the edits in the specified region and the current time window, in
+   * no particular order.
+   *
+   * @param region the region.
+   * @return the edits.
+   */
+  public synchronized List<BlockEdit> getEdits(Region region)
+  {
+    return getSpatialIndex().edits(region, _since, _before);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Summarise the edits in the specified region and the current time window by
+   * player and by block type, in chat.
+   *
+   * @param region the region.
+   */
+  public synchronized void showRegionStats(Region region)
+  {
+    long start = System.nanoTime();
+    List<BlockEdit> edits = getEdits(region);
+
+    // Counts of blocks created and destroyed, by player and by block type.
+    LinkedHashMap<String, int[]> byPlayer = new LinkedHashMap<String, int[]>();
+    LinkedHashMap<String, int[]> byType = new LinkedHashMap<String, int[]>();
+    for (BlockEdit edit : edits)
+    {
+      int action = edit.creation ? 0 : 1;
+      ++getCounts(byPlayer, edit.player)[action];
+      ++getCounts(byType, edit.type.getName(0))[action];
+    }
+    double millis = (System.nanoTime() - start) / 1e6;
+
+    Chat.localOutput(String.format(Locale.US, "%d edits by %d players in %s (%.1f ms):",
+      edits.size(), byPlayer.size(), region, millis));
+    showRegionCounts(byPlayer);
+    if (!byType.isEmpty())
+    {
+      Chat.localOutput("  --");
+    }
+    showRegionCounts(byType);
+    if (isTimeWindowSet())
+    {
+      showTimeWindow();
+    }
+  } // showRegionStats
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the counts of blocks created and destroyed stored under the
+   * specified key, adding zero counts if there are none.
+   *
+   * @param counts map from key to counts.
+   * @param key the key.
+   * @return the counts: element 0 is created, element 1 is destroyed.
+   */
+  protected static int[] getCounts(Map<String, int[]> counts, String key)
+  {
+    int[] count = counts.get(key);
+    if (count == null)
+    {
+      count = new int[2];
+      counts.put(key, count);
+    }
+    return count;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Show counts of blocks created and destroyed in chat, most edits first, up
+   * to MAX_REGION_STATS_LINES lines.
+   *
+   * @param counts map from player name or block type to counts.
+   */
+  protected static void showRegionCounts(Map<String, int[]> counts)
+  {
+    ArrayList<Map.Entry<String, int[]>> entries = new ArrayList<Map.Entry<String, int[]>>(counts.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, int[]>>()
+    {
+      @Override
+      public int compare(Map.Entry<String, int[]> a, Map.Entry<String, int[]> b)
+      {
+        int totalA = a.getValue()[0] + a.getValue()[1];
+        int totalB = b.getValue()[0] + b.getValue()[1];
+        return (totalA != totalB) ? (totalB < totalA ? -1 : 1) : a.getKey().compareTo(b.getKey());
+      }
+    });
+
+    int lines = Math.min(entries.size(), MAX_REGION_STATS_LINES);
+    for (int i = 0; i < lines; ++i)
+    {
+      Map.Entry<String, int[]> entry = entries.get(i);
+      Chat.localOutput(String.format(Locale.US, "  %s - %d destroyed, %d created",
+        entry.getKey(), entry.getValue()[1], entry.getValue()[0]));
+    }
+    if (entries.size() > lines)
+    {
+      Chat.localOutput(String.format(Locale.US, "  ... and %d more", entries.size() - lines));
+    }
+  } // showRegionCounts
+
+  // --------------------------------------------------------------------------
+  /**
+   * Limit the edits that are drawn, and the ore deposits and tunnels that are
+   * analysed, to those in the time range [since,before).
+   *
+   * @param since the start time, inclusive, or Long.MIN_VALUE for no limit.
+   * @param before the end time, exclusive, or Long.MAX_VALUE for no limit.
+   */
+  public synchronized void setTimeWindow(long since, long before)
+  {
+    _since = since;
+    _before = before;
+    _oreDB.setTimeWindow(since, before);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified edit is in the current time window.
+   *
+   * @param edit the edit.
+   * @return true if the specified edit is in the current time window.
+   */
+  public synchronized boolean isInTimeWindow(BlockEdit edit)
+  {
+    return edit.time >= _since && edit.time < _before;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the start of the time range of edits that are drawn (inclusive), or
+   * Long.MIN_VALUE if there is no limit.
+   *
+   * @return the start of the time range of edits that are drawn.
+   */
+  public synchronized long getSince()
+  {
+    return _since;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the end of the time range of edits that are drawn (exclusive), or
+   * Long.MAX_VALUE if there is no limit.
+   *
+   * @return the end of the time range of edits that are drawn.
+   */
+  public synchronized long getBefore()
+  {
+    return _before;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the edits that are drawn are limited to a time range.
+   *
+   * @return true if the edits that are drawn are limited to a time range.
+   */
+  public synchronized boolean isTimeWindowSet()
+  {
+    return _since != Long.MIN_VALUE || _before != Long.MAX_VALUE;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Describe the time range of edits that are drawn in chat.
+   */
+  public synchronized void showTimeWindow()
+  {
+    if (!isTimeWindowSet())
+    {
+      Chat.localOutput("Showing edits from all times.");
+    }
+    else
+    {
+      int count = 0;
+      for (PlayerEditSet editsByPlayer : _playerEdits.values())
+      {
+        count += editsByPlayer.getBlockEditCount(_since, _before);
+      }
+      Chat.localOutput(String.format(Locale.US, "Showing %d edits %s%s%s.", count,
+        (_since != Long.MIN_VALUE) ? "since " + TimeStamp.formatMonthDayTime(_since) : "",
+        (_since != Long.MIN_VALUE && _before != Long.MAX_VALUE) ? " and " : "",
+        (_before != Long.MAX_VALUE) ? "before " + TimeStamp.formatMonthDayTime(_before) : ""));
+    }
+  } // showTimeWindow
+
+  // --------------------------------------------------------------------------
+  /**
+   * List the tunnels dug by the specified player, or by every player if the
+   * player is null.
+   *
+   * @param player the name of the player, or null.
+   */
+  public synchronized void showTunnels(String player)
+  {
+    if (player == null)
+    {
+      if (_playerEdits.size() == 0)
+      {
+        Chat.localOutput("There are no stored edits for this world.");
+      }
+      for (PlayerEditSet editsByPlayer : _playerEdits.values())
+      {
+        _oreDB.showTunnels(editsByPlayer);
+      }
+    }
+    else
+    {
+      PlayerEditSet editsByPlayer = _playerEdits.get(player.toLowerCase());
+      if (editsByPlayer != null)
+      {
+        _oreDB.showTunnels(editsByPlayer);
+      }
+      else
+      {
+        Chat.localError(String.format(Locale.US,
+                                      "There are no stored edits for %s.", player));
+      }
+    }
+  } // showTunnels
+
   // --------------------------------------------------------------------------
   /**
    * Set the visibility of the edits for the specified player.
@@ -320,7 +1133,15 @@ public class BlockEditSet
     if (editsByPlayer != null)
     {
       _playerEdits.remove(player.toLowerCase());
+      _timeIndex = null;
+      _spatialIndex = null;
+      _kdTree = null;
+      rebuildEditKeys();
       getOreDB().removeDeposits(player);
+      if (_journal != null)
+      {
+        _journal.requestCompaction();
+      }
       Chat.localOutput(String.format(Locale.US,
                                      "%d edits by %s were removed.", editsByPlayer.getBlockEditCount(),
                                      editsByPlayer.getPlayer()));
@@ -334,7 +1155,7 @@ public class BlockEditSet
 
   // --------------------------------------------------------------------------
   /**
-   * Draw wireframe outlines of all blocks.
+   * Draw wireframe outlines of all blocks edited in the current time window.
    */
   public synchronized void drawOutlines()
   {
@@ -342,14 +1163,15 @@ public class BlockEditSet
     {
       for (PlayerEditSet editsForPlayer : _playerEdits.values())
       {
-        editsForPlayer.drawOutlines();
+        editsForPlayer.drawOutlines(_since, _before);
       }
     }
   }
 
   // --------------------------------------------------------------------------
   /**
-   * Draw direction vectors indicating motion of the miner.
+   * Draw direction vectors indicating motion of the miner in the current time
+   * window.
    */
   public synchronized void drawVectors()
   {
@@ -359,7 +1181,7 @@ public class BlockEditSet
       int colourIndex = 0;
       for (PlayerEditSet editsForPlayer : _playerEdits.values())
       {
-        editsForPlayer.drawVectors(_vectorColours[colourIndex]);
+        editsForPlayer.drawVectors(_vectorColours[colourIndex], _since, _before);
         colourIndex = (colourIndex + 1) % _vectorColours.length;
       }
     } // if drawing
@@ -416,11 +1238,121 @@ public class BlockEditSet
    */
   protected ArrayList<Annotation>                _annotations   = new ArrayList<Annotation>();
 
+  /**
+   * Index of the edits of all players by time, or null if it must be rebuilt.
+   */
+  protected EditTimeIndex                        _timeIndex;
+
+  /**
+   * An index of the edits of all players by location, or null if it must be
+   * rebuilt.
+   */
+  protected SpatialIndex                         _spatialIndex;
+
+  /**
+   * A k-d tree of the edits of all players, updated as edits are added, or
+   * null if it must be rebuilt.
+   */
+  protected KdTree                               _kdTree;
+
+  /**
+   * Accepts the edits that are drawn: those of visible players in the current
+   * time window.
+   */
+  protected IBlockEditFilter                     _drawnFilter   = new IBlockEditFilter()
+                                                                {
+                                                                  @Override
+                                                                  public boolean accept(BlockEdit edit)
+                                                                  {
+                                                                    return edit.time >= _since && edit.time < _before
+                                                                           && (edit.playerEditSet == null || edit.playerEditSet.isVisible());
+                                                                  }
+                                                                };
+
+  /**
+   * The start of the time range of edits that are drawn (inclusive).
+   */
+  protected long                                 _since         = Long.MIN_VALUE;
+
+  /**
+   * The end of the time range of edits that are drawn (exclusive).
+   */
+  protected long                                 _before        = Long.MAX_VALUE;
+
   /**
    * The spatial database indexing the edits.
    */
   protected OreDB                                _oreDB         = new OreDB();
 
+  /**
+   * All edits in this set, in the order they were added to _editKeys.
+   */
+  protected ArrayList<BlockEdit>                 _keyedEdits    = new ArrayList<BlockEdit>();
+
+  /**
+   * The keys of all edits in this set, used to skip duplicates.
+   */
+  protected EditKeySet                           _editKeys      = new EditKeySet(new IEditSource()
+                                                                {
+                                                                  @Override
+                                                                  public boolean isEdit(int index, long time, String player,
+                                                                                        boolean creation, int x, int y, int z,
+                                                                                        int id, int data)
+                                                                  {
+                                                                    return EditKeySet.isEdit(_keyedEdits.get(index), time, player,
+                                                                      creation, x, y, z, id, data);
+                                                                  }
+                                                                });
+
+  /**
+   * Records added edits so that they can be restored in a later session; null
+   * if not journaled.
+   */
+  protected EditJournal                          _journal;
+
+  /**
+   * The number of journals opened whose edits have not all been added yet.
+   */
+  protected int                                  _pendingRestores;
+
+  /**
+   * Incremented when the set is cleared, so that journal restores in progress
+   * are abandoned.
+   */
+  protected int                                  _restoreGeneration;
+
+  /**
+   * Edits read from journals by the restore thread, waiting to be added.
+   */
+  protected ArrayList<List<BlockEdit>>           _restoreQueue  = new ArrayList<List<BlockEdit>>();
+
+  /**
+   * The edits read from a journal, in time order, while they are being added;
+   * otherwise null.
+   */
+  protected List<BlockEdit>                      _restoredEdits;
+
+  /**
+   * The position in _restoredEdits of the next edit to add.
+   */
+  protected int                                  _restorePosition;
+
+  /**
+   * The maximum number of players or block types listed by showRegionStats().
+   */
+  protected static final int                    MAX_REGION_STATS_LINES = 10;
+
+  /**
+   * The number of edits restored from a journal per tick.
+   */
+  protected static final int                    RESTORE_BATCH  = 2000;
+
+  /**
+   * The maximum distance of the centre of a block from a ray, for the block to
+   * be considered to lie along the ray.
+   */
+  protected static final double                 RAY_RADIUS     = 0.6;
+
   /**
    * The cycle of colours used to draw vectors for different players.
    */
@@ -0,0 +1,202 @@
+package watson.db;
+
+import java.util.Map;
+
+// ----------------------------------------------------------------------------
+/**
+ * A read-only, case-insensitive map from block name to {@link BlockType} that
+ * can be queried with any slice of a CharSequence without allocating.
+ *
+ * The index is built once, after "blocks.yml" has been loaded, as an
+ * open-addressed hash table with a power of two number of slots, at most 1/4
+ * full so that probe sequences stay short. Names are folded to lower case when
+ * the table is built and each character of the key is folded as it is hashed
+ * and compared, so callers never need to call toLowerCase().
+ */
+public class BlockNameIndex
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param byName the map from name to BlockType to index.
+   */
+  public BlockNameIndex(Map<String, BlockType> byName)
+  {
+    int capacity = 16;
+    while (capacity < byName.size() * 4)
+    {
+      capacity <<= 1;
+    }
+    _mask = capacity - 1;
+    _names = new String[capacity];
+    _hashes = new int[capacity];
+    _types = new BlockType[capacity];
+
+    for (Map.Entry<String, BlockType> entry : byName.entrySet())
+    {
+      String name = foldCase(entry.getKey());
+      int hash = hash(name, 0, name.length());
+      int slot = hash & _mask;
+      while (_names[slot] != null)
+      {
+        if (_hashes[slot] == hash && _names[slot].equals(name))
+        {
+          // Names that differ only in case: the lowest index wins, as in
+          // BlockTypeRegistry.addBlockTypeName().
+          break;
+        }
+        slot = (slot + 1) & _mask;
+      }
+      if (_types[slot] == null || entry.getValue().getIndex() < _types[slot].getIndex())
+      {
+        _names[slot] = name;
+        _hashes[slot] = hash;
+        _types[slot] = entry.getValue();
+      }
+    }
+  } // ctor
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the BlockType with the specified name (case insensitive), or null
+   * if not found.
+   *
+   * @param name the name.
+   * @return the BlockType with the specified name, or null if not found.
+   */
+  public BlockType get(CharSequence name)
+  {
+    return get(name, 0, name.length());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the BlockType whose name (case insensitive) is the characters of
+   * the specified CharSequence in the range [start,end), or null if not found.
+   *
+   * @param text the text containing the name.
+   * @param start the index of the first character of the name.
+   * @param end the index after the last character of the name.
+   * @return the BlockType with the specified name, or null if not found.
+   */
+  public BlockType get(CharSequence text, int start, int end)
+  {
+    int hash = hash(text, start, end);
+    int slot = hash & _mask;
+    for (;;)
+    {
+      String name = _names[slot];
+      if (name == null)
+      {
+        return null;
+      }
+      if (_hashes[slot] == hash && foldedEquals(name, text, start, end))
+      {
+        return _types[slot];
+      }
+      slot = (slot + 1) & _mask;
+    }
+  } // get
+
+  // --------------------------------------------------------------------------
+  /**
+   * Compute the hash of a range of characters, folded to lower case.
+   *
+   * @param text the characters.
+   * @param start the index of the first character.
+   * @param end the index after the last character.
+   * @return the hash.
+   */
+  protected static int hash(CharSequence text, int start, int end)
+  {
+    int hash = 0;
+    for (int i = start; i < end; ++i)
+    {
+      hash = 31 * hash + fold(text.charAt(i));
+    }
+    // Spread the high bits into the low bits that select the slot.
+    return hash ^ (hash >>> 16);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if a lower case name is equal to a range of characters, folded
+   * to lower case.
+   *
+   * @param name the lower case name.
+   * @param text the characters.
+   * @param start the index of the first character.
+   * @param end the index after the last character.
+   * @return true if they are equal.
+   */
+  protected static boolean foldedEquals(String name, CharSequence text, int start, int end)
+  {
+    if (name.length() != end - start)
+    {
+      return false;
+    }
+    for (int i = 0; i < name.length(); ++i)
+    {
+      if (name.charAt(i) != fold(text.charAt(start + i)))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Fold a String to lower case, consistently with {@link #fold(char)}.
+   *
+   * @param name the name.
+   * @return the lower case name.
+   */
+  protected static String foldCase(String name)
+  {
+    StringBuilder folded = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); ++i)
+    {
+      folded.append(fold(name.charAt(i)));
+    }
+    return folded.toString();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Fold a character to lower case, with a fast path for ASCII.
+   *
+   * @param c the character.
+   * @return the lower case character.
+   */
+  protected static char fold(char c)
+  {
+    if (c < 128)
+    {
+      return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+    return Character.toLowerCase(c);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Slot index mask; the number of slots is a power of two.
+   */
+  protected final int         _mask;
+
+  /**
+   * Lower case names, by slot; null where the slot is empty.
+   */
+  protected final String[]    _names;
+
+  /**
+   * Hashes of the names, by slot.
+   */
+  protected final int[]       _hashes;
+
+  /**
+   * BlockTypes, by slot.
+   */
+  protected final BlockType[] _types;
+} // class BlockNameIndex
@@ -272,6 +272,24 @@ public final class BlockType
     return _blockModel;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Copy the names and appearance of another BlockType with the same index.
+   * 
+   * This is used when "blocks.yml" is reloaded, so that existing edits, which
+   * refer to this instance, are drawn according to the new settings.
+   * 
+   * @param other the BlockType to copy.
+   */
+  public void copyFrom(BlockType other)
+  {
+    _names = new ArrayList<String>(other._names);
+    _blockModel = other._blockModel;
+    _argb = other._argb;
+    _lineWidth = other._lineWidth;
+    setBounds(other._x1, other._y1, other._z1, other._x2, other._y2, other._z2);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Return a String representation, for debugging only.
@@ -1,21 +1,39 @@
 package watson.db;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.yaml.snakeyaml.Yaml;
 
 import watson.Controller;
+import watson.SyncTaskQueue;
+import watson.chat.Chat;
 import watson.debug.Log;
 import watson.model.ARGB;
 import watson.model.BlockModel;
 import watson.model.BlockModelRegistry;
+import watson.yaml.ArrayValidatorNode;
+import watson.yaml.MapValidatorNode;
+import watson.yaml.SnakeValidator;
+import watson.yaml.TypeValidatorNode;
+import watson.yaml.ValidatorMessageList;
+import watson.yaml.ValidatorMessageSink;
 
 // ----------------------------------------------------------------------------
 /**
@@ -44,23 +62,36 @@ public final class BlockTypeRegistry
   /**
    * Load the BlockType instances from a configuration file or resource in the
    * minecraft.jar file.
+   * 
+   * Parsing "blocks.yml" is comparatively slow, so the resolved registry is
+   * saved in a compact binary form in "blocks.cache", tagged with a digest of
+   * the YAML. On subsequent startups the cache is used if the digest still
+   * matches; otherwise the YAML is parsed and the cache rewritten.
    */
   public void loadBlockTypes()
   {
     try
     {
-      BlockTypeRegistry registry = BlockTypeRegistry.instance;
-      InputStream in = Controller.getConfigurationStream(BLOCK_TYPES_FILE);
-      try
+      byte[] yaml = readBlockTypesFile();
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(yaml);
+      File cacheFile = new File(Controller.getModDirectory(), BLOCK_TYPES_CACHE_FILE);
+      long start = System.nanoTime();
+      long yamlNanos = loadCache(cacheFile, digest);
+      if (yamlNanos >= 0)
       {
-        registry.loadBlockTypes(in);
+        long cacheNanos = System.nanoTime() - start;
+        Log.info(String.format(Locale.US,
+          "loaded block types from %s in %.1f ms, saving %.1f ms of parsing %s",
+          BLOCK_TYPES_CACHE_FILE, cacheNanos / 1e6, (yamlNanos - cacheNanos) / 1e6, BLOCK_TYPES_FILE));
       }
-      finally
+      else
       {
-        if (in != null)
-        {
-          in.close();
-        }
+        start = System.nanoTime();
+        loadBlockTypes(new ByteArrayInputStream(yaml), new ValidatorMessageList(BLOCK_TYPES_FILE));
+        yamlNanos = System.nanoTime() - start;
+        Log.info(String.format(Locale.US,
+          "loaded block types from %s in %.1f ms", BLOCK_TYPES_FILE, yamlNanos / 1e6));
+        saveCache(cacheFile, digest, yamlNanos);
       }
     }
     catch (Exception ex)
@@ -69,58 +100,443 @@ public final class BlockTypeRegistry
     }
   } // loadBlockTypes
 
+  // --------------------------------------------------------------------------
+  /**
+   * Reload "blocks.yml" after it has been changed.
+   * 
+   * The file is parsed into a separate registry in the calling thread, which
+   * should not be the main thread. If that succeeds, a task is queued to merge
+   * the new definitions into this registry in the main thread, between frames,
+   * so that the change is atomic as far as rendering and chat parsing are
+   * concerned. If the validator or the loader finds any problem at all in the
+   * file, the current definitions are kept.
+   * 
+   * Existing BlockType instances are updated in place, so that edits already
+   * in the {@link BlockEditSet} and the {@link OreDB}, which refer to them,
+   * pick up the new settings without being reloaded. Only the name index and
+   * the cache of recently resolved names are rebuilt.
+   */
+  public void reloadBlockTypes()
+  {
+    try
+    {
+      long start = System.nanoTime();
+      byte[] yaml = readBlockTypesFile();
+      final BlockTypeRegistry staging = new BlockTypeRegistry();
+      ValidatorMessageList problems = new ValidatorMessageList(BLOCK_TYPES_FILE);
+      if (!staging.loadBlockTypes(new ByteArrayInputStream(yaml), problems))
+      {
+        throw new IllegalArgumentException("no block types were defined");
+      }
+      if (!problems.isEmpty())
+      {
+        // Don't adopt a registry with some block types missing or mangled.
+        throw new IllegalArgumentException(problems.getSummary());
+      }
+      long yamlNanos = System.nanoTime() - start;
+
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(yaml);
+      staging.saveCache(new File(Controller.getModDirectory(), BLOCK_TYPES_CACHE_FILE), digest, yamlNanos);
+
+      SyncTaskQueue.instance.addTask(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          int count = adopt(staging);
+          Chat.localOutput(String.format(Locale.US, "Reloaded %d block types from %s.", count, BLOCK_TYPES_FILE));
+        }
+      });
+    }
+    catch (final Exception ex)
+    {
+      Log.exception(Level.SEVERE, "error reloading block types: ", ex);
+      SyncTaskQueue.instance.addTask(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          Chat.localError(BLOCK_TYPES_FILE + " was not reloaded because it has errors: " + ex.getMessage());
+        }
+      });
+    }
+  } // reloadBlockTypes
+
+  // --------------------------------------------------------------------------
+  /**
+   * Replace the contents of this registry with those of a newly loaded one.
+   * 
+   * Where a BlockType is defined at the same index in both registries, the
+   * existing instance is kept and updated from the new one.
+   * 
+   * @param staging the newly loaded registry.
+   * @return the number of BlockTypes defined in the new registry.
+   */
+  private int adopt(BlockTypeRegistry staging)
+  {
+    IdentityHashMap<BlockType, BlockType> live = new IdentityHashMap<BlockType, BlockType>();
+    for (int i = 0; i <= MAX_INDEX; ++i)
+    {
+      BlockType newType = staging._byIndex[i];
+      if (newType != null && newType.getIndex() == i)
+      {
+        BlockType oldType = _byIndex[i];
+        if (oldType != null && oldType.getIndex() == i)
+        {
+          oldType.copyFrom(newType);
+          live.put(newType, oldType);
+        }
+        else
+        {
+          live.put(newType, newType);
+        }
+      }
+    }
+
+    BlockType[] byIndex = new BlockType[MAX_INDEX + 1];
+    for (int i = 0; i <= MAX_INDEX; ++i)
+    {
+      byIndex[i] = live.get(staging._byIndex[i]);
+    }
+    HashMap<String, BlockType> byName = new HashMap<String, BlockType>();
+    for (Map.Entry<String, BlockType> entry : staging._byName.entrySet())
+    {
+      byName.put(entry.getKey(), live.get(entry.getValue()));
+    }
+
+    _byIndex = byIndex;
+    _byName = byName;
+    _nameIndex = new BlockNameIndex(_byName);
+    clearRecentNames();
+    return live.size();
+  } // adopt
+
   // --------------------------------------------------------------------------
   /**
    * Load the BlockType definitions in "blocks.yml" YAML format from an
    * InputStream.
+   * 
+   * The document is checked against the schema returned by getValidator()
+   * before it is loaded. Block types that fail the check are loaded as best
+   * they can be, as before, but every problem is reported to the sink.
+   * 
+   * @param in the stream.
+   * @param problems receives a message for each problem found.
+   * @return true if the stream contained a list of blocks.
    */
   @SuppressWarnings("unchecked")
-  public void loadBlockTypes(InputStream in)
+  public boolean loadBlockTypes(InputStream in, ValidatorMessageSink problems)
   {
     Yaml yaml = new Yaml();
-    HashMap<String, Object> root = (HashMap<String, Object>) yaml.load(in);
-    ArrayList<Object> blocks = (ArrayList<Object>) root.get("blocks");
+    Object dom = yaml.load(in);
+    getValidator().validate(dom, problems);
+    if (!(dom instanceof Map<?, ?>))
+    {
+      Log.severe("\"blocks.yml\" does not contain a map; nothing will be drawn");
+      return false;
+    }
+    Map<String, Object> root = (Map<String, Object>) dom;
+    Object blocksValue = root.get("blocks");
+    ArrayList<Object> blocks = (blocksValue instanceof ArrayList<?>) ? (ArrayList<Object>) blocksValue : null;
     if (blocks == null)
     {
       Log.severe("the top level node of \"blocks.yml\" should be \"blocks\" but isn't; nothing will be drawn");
+      return false;
     }
     else
     {
       for (Object entry : blocks)
       {
-        loadBlockType((HashMap<String, Object>) entry);
+        if (entry instanceof Map<?, ?>)
+        {
+          loadBlockType((Map<String, Object>) entry, problems);
+        }
+      }
+
+      finishLoading();
+      return true;
+    } // (blocks != null)
+  } // loadBlockTypes
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the validator describing the structure of "blocks.yml", creating it
+   * on first use.
+   * 
+   * The "data" attribute of a block type can be an integer, a list of integers
+   * or "all", so it is checked by loadBlockType() instead.
+   * 
+   * @return the validator.
+   */
+  private static synchronized SnakeValidator getValidator()
+  {
+    if (_validator == null)
+    {
+      MapValidatorNode block = new MapValidatorNode();
+      block.addChild("id", new TypeValidatorNode(Integer.class, false));
+      block.addChild("names", new ArrayValidatorNode(new TypeValidatorNode(String.class, false),
+        false, 1, Integer.MAX_VALUE));
+      block.addChild("lineWidth", new TypeValidatorNode(Number.class, true));
+      block.addChild("model", new TypeValidatorNode(String.class, true));
+      block.addChild("rgba", new ArrayValidatorNode(new TypeValidatorNode(Integer.class, false), true, 3, 4));
+      block.addChild("bounds", new ArrayValidatorNode(new TypeValidatorNode(Number.class, false), true, 6, 6));
+
+      MapValidatorNode root = new MapValidatorNode();
+      root.addChild("blocks", new ArrayValidatorNode(block, false));
+
+      _validator = new SnakeValidator();
+      _validator.setRoot(root);
+    }
+    return _validator;
+  } // getValidator
+
+  // --------------------------------------------------------------------------
+  /**
+   * Fill in the "unknown" block type where no type was loaded and build the
+   * name index, once all BlockTypes have been added.
+   */
+  private void finishLoading()
+  {
+    // Set all uninitialised BlockType entries to reference the "unknown"
+    // block type. If one has not been defined by the stream, set that up
+    // first.
+    BlockType unknown = getBlockTypeByIndex(MAX_INDEX);
+    if (unknown == null)
+    {
+      unknown = new BlockType();
+      unknown.setIndex(MAX_INDEX);
+      unknown.addName("unknown");
+      // ARGB defaults to high visibility magenta.
+      unknown.setBlockModel(BlockModelRegistry.instance.getBlockModel("cuboid"));
+      addBlockType(unknown);
+    }
+
+    // Note: array size is MAX_INDEX+1.
+    for (int i = 0; i < MAX_INDEX; ++i)
+    {
+      if (_byIndex[i] == null)
+      {
+        _byIndex[i] = unknown;
       }
+    }
+
+    _nameIndex = new BlockNameIndex(_byName);
+    clearRecentNames();
+  } // finishLoading
 
-      // Set all uninitialised BlockType entries to reference the "unknown"
-      // block type. If one has not been defined by the stream, set that up
-      // first.
-      BlockType unknown = getBlockTypeByIndex(MAX_INDEX);
-      if (unknown == null)
-      {
-        unknown = new BlockType();
-        unknown.setIndex(MAX_INDEX);
-        unknown.addName("unknown");
-        // ARGB defaults to high visibility magenta.
-        unknown.setBlockModel(BlockModelRegistry.instance.getBlockModel("cuboid"));
-        addBlockType(unknown);
+  // --------------------------------------------------------------------------
+  /**
+   * Load the resolved BlockTypes from the binary cache file, if it was
+   * generated from YAML with the specified digest.
+   * 
+   * The whole file is read in one go. The format is:
+   * <ul>
+   * <li>magic number and format version (ints),</li>
+   * <li>digest length (int) and digest bytes of the YAML,</li>
+   * <li>the time taken to parse the YAML in nanoseconds (long),</li>
+   * <li>the number of BlockTypes (int), and for each: index (int), names
+   * (count, then UTF strings), line width (float), ARGB (int), model name
+   * (UTF) and bounds (6 floats).</li>
+   * </ul>
+   * 
+   * @param file the cache file.
+   * @param digest the digest of the current "blocks.yml".
+   * @return the time it took to parse the YAML, in nanoseconds, or -1 if the
+   *         cache is missing, stale or could not be read, in which case no
+   *         BlockTypes are loaded.
+   */
+  private long loadCache(File file, byte[] digest)
+  {
+    if (!file.canRead())
+    {
+      return -1;
+    }
+
+    ArrayList<BlockType> blockTypes = new ArrayList<BlockType>();
+    long yamlNanos;
+    try
+    {
+      byte[] contents = new byte[(int) file.length()];
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try
+      {
+        in.readFully(contents);
+      }
+      finally
+      {
+        in.close();
       }
 
-      // Note: array size is MAX_INDEX+1.
-      for (int i = 0; i < MAX_INDEX; ++i)
+      in = new DataInputStream(new ByteArrayInputStream(contents));
+      if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION)
+      {
+        return -1;
+      }
+      byte[] cachedDigest = new byte[in.readInt()];
+      in.readFully(cachedDigest);
+      if (!Arrays.equals(digest, cachedDigest))
       {
-        if (_byIndex[i] == null)
+        Log.info(BLOCK_TYPES_FILE + " has changed since " + BLOCK_TYPES_CACHE_FILE + " was written");
+        return -1;
+      }
+      yamlNanos = in.readLong();
+
+      int count = in.readInt();
+      for (int i = 0; i < count; ++i)
+      {
+        BlockType blockType = new BlockType();
+        blockType.setIndex(in.readInt());
+        int nameCount = in.readInt();
+        for (int n = 0; n < nameCount; ++n)
         {
-          _byIndex[i] = unknown;
+          blockType.addName(in.readUTF());
         }
+        blockType.setLineWidth(in.readFloat());
+        blockType.setARGB(new ARGB(in.readInt()));
+        BlockModel model = BlockModelRegistry.instance.getBlockModel(in.readUTF());
+        blockType.setBlockModel(model != null ? model : BlockModelRegistry.instance.getBlockModel("cuboid"));
+        blockType.setBounds(in.readFloat(), in.readFloat(), in.readFloat(),
+          in.readFloat(), in.readFloat(), in.readFloat());
+        blockTypes.add(blockType);
       }
-    } // (blocks != null)
-  } // loadBlockTypes
+    }
+    catch (Exception ex)
+    {
+      Log.exception(Level.WARNING, "error reading " + BLOCK_TYPES_CACHE_FILE, ex);
+      return -1;
+    }
+
+    // Only modify the registry once the whole cache has been read.
+    for (BlockType blockType : blockTypes)
+    {
+      addBlockType(blockType);
+    }
+    finishLoading();
+    return yamlNanos;
+  } // loadCache
+
+  // --------------------------------------------------------------------------
+  /**
+   * Save the resolved BlockTypes to the binary cache file.
+   * 
+   * @param file the cache file.
+   * @param digest the digest of the YAML that the BlockTypes were loaded from.
+   * @param yamlNanos the time it took to parse the YAML, in nanoseconds.
+   * @see #loadCache(File, byte[])
+   */
+  private void saveCache(File file, byte[] digest, long yamlNanos)
+  {
+    ArrayList<BlockType> blockTypes = new ArrayList<BlockType>();
+    for (int i = 0; i <= MAX_INDEX; ++i)
+    {
+      // Skip entries that merely refer to the "unknown" type.
+      BlockType blockType = _byIndex[i];
+      if (blockType != null && blockType.getIndex() == i)
+      {
+        blockTypes.add(blockType);
+      }
+    }
+
+    try
+    {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(CACHE_MAGIC);
+      out.writeInt(CACHE_VERSION);
+      out.writeInt(digest.length);
+      out.write(digest);
+      out.writeLong(yamlNanos);
+      out.writeInt(blockTypes.size());
+      for (BlockType blockType : blockTypes)
+      {
+        out.writeInt(blockType.getIndex());
+        out.writeInt(blockType.getNameCount());
+        for (int n = 0; n < blockType.getNameCount(); ++n)
+        {
+          out.writeUTF(blockType.getName(n));
+        }
+        out.writeFloat(blockType.getLineWidth());
+        out.writeInt(blockType.getARGB().getValue());
+        out.writeUTF(blockType.getBlockModel().getName());
+        out.writeFloat(blockType.getX1());
+        out.writeFloat(blockType.getY1());
+        out.writeFloat(blockType.getZ1());
+        out.writeFloat(blockType.getX2());
+        out.writeFloat(blockType.getY2());
+        out.writeFloat(blockType.getZ2());
+      }
+      out.close();
+
+      FileOutputStream fileOut = new FileOutputStream(file);
+      try
+      {
+        bytes.writeTo(fileOut);
+      }
+      finally
+      {
+        fileOut.close();
+      }
+    }
+    catch (IOException ex)
+    {
+      Log.exception(Level.WARNING, "error writing " + BLOCK_TYPES_CACHE_FILE, ex);
+    }
+  } // saveCache
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read the whole of "blocks.yml" from the mod directory, or the default
+   * from the mod JAR.
+   * 
+   * @return the contents of the file.
+   */
+  private static byte[] readBlockTypesFile() throws IOException
+  {
+    InputStream in = Controller.getConfigurationStream(BLOCK_TYPES_FILE);
+    if (in == null)
+    {
+      throw new IOException("can't open " + BLOCK_TYPES_FILE);
+    }
+    try
+    {
+      return readFully(in);
+    }
+    finally
+    {
+      in.close();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Read the whole of an InputStream.
+   * 
+   * @param in the stream.
+   * @return the bytes read.
+   */
+  private static byte[] readFully(InputStream in) throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int count;
+    while ((count = in.read(buffer)) > 0)
+    {
+      bytes.write(buffer, 0, count);
+    }
+    return bytes.toByteArray();
+  }
 
   // --------------------------------------------------------------------------
   /**
    * Load a BlockType instance from a YAML map node.
+   * 
+   * Problems that the validator can't detect, such as invalid data values,
+   * unknown models and duplicate definitions, are reported to the sink.
+   * 
+   * @param map the map node.
+   * @param problems receives a message for each problem found.
    */
-  private void loadBlockType(Map<String, Object> map)
+  private void loadBlockType(Map<String, Object> map, ValidatorMessageSink problems)
   {
     Integer id = loadScalar(map, "id", Integer.class, null);
     if (id == null)
@@ -162,13 +578,13 @@ public final class BlockTypeRegistry
         }
         else
         {
-          Log.severe("block type " + id + " has a data value that is not an integer");
+          problems.message("block type " + id + " has a data value that is not an integer");
         }
       }
     }
     else
     {
-      Log.severe("block type " + id + " has an invalid data value");
+      problems.message("block type " + id + " has an invalid data value");
     }
 
     ArrayList<String> names = loadArray(map, "names", String.class, null);
@@ -198,6 +614,7 @@ public final class BlockTypeRegistry
     if (rgba == null || rgba.size() < 3 || rgba.size() > 4)
     {
       Log.warning("block type " + id + " had a malformed colour value and was set to the default colour");
+      rgba = DEFAULT_RGBA;
     }
 
     String modelName = loadScalar(map, "model", String.class, "cuboid");
@@ -209,6 +626,7 @@ public final class BlockTypeRegistry
     BlockModel model = BlockModelRegistry.instance.getBlockModel(modelName);
     if (model == null)
     {
+      problems.message("block type " + id + " has an unknown model, " + modelName + ", and will be drawn as a cuboid");
       model = BlockModelRegistry.instance.getBlockModel("cuboid");
     }
 
@@ -251,7 +669,7 @@ public final class BlockTypeRegistry
       }
       else
       {
-        Log.warning("block type " + id + ':' + dataValue + " has a duplicate definition; only the first counts");
+        problems.message("block type " + id + ':' + dataValue + " has a duplicate definition; only the first counts");
         continue;
       }
 
@@ -379,7 +797,7 @@ public final class BlockTypeRegistry
    */
   private void addBlockType(BlockType blockType)
   {
-    Log.debug("block type: " + blockType.toString());
+    Log.debug("block type: %s", blockType);
 
     _byIndex[blockType.getIndex()] = blockType;
     for (int i = 0; i < blockType.getNameCount(); ++i)
@@ -471,19 +889,31 @@ public final class BlockTypeRegistry
    *          "diamond ore".
    * @return the {@link BlockType}.
    */
-  public BlockType getBlockTypeByName(String name)
+  public BlockType getBlockTypeByName(CharSequence name)
   {
-    BlockType result = _byName.get(name.toLowerCase());
-    if (result == null)
-    {
-      // Return the "unknown" BlockType.
-      return getBlockTypeByIndex(MAX_INDEX);
-    }
-    else
-    {
-      return result;
-    }
-  } // getBlockTypeByName
+    BlockType result = findBlockTypeByName(name);
+    return (result != null) ? result : getBlockTypeByIndex(MAX_INDEX);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the block type whose name (case insensitive) is the characters of
+   * text in the range [start,end).
+   * 
+   * This allows chat parsers to look up a block name in the unformatted chat
+   * text, e.g. using the start and end of a regexp group, without creating a
+   * new String.
+   * 
+   * @param text the text containing the name of the block.
+   * @param start the index of the first character of the name.
+   * @param end the index after the last character of the name.
+   * @return the {@link BlockType}.
+   */
+  public BlockType getBlockTypeByName(CharSequence text, int start, int end)
+  {
+    BlockType result = _nameIndex.get(text, start, end);
+    return (result != null) ? result : getBlockTypeByIndex(MAX_INDEX);
+  }
 
   // --------------------------------------------------------------------------
   /**
@@ -493,9 +923,9 @@ public final class BlockTypeRegistry
    *          "cow" or "pig".
    * @return the {@link BlockType}.
    */
-  public BlockType getBlockKillTypeByName(String name)
+  public BlockType getBlockKillTypeByName(CharSequence name)
   {
-    BlockType result = _byName.get(name.toLowerCase());
+    BlockType result = findBlockTypeByName(name);
     if (result == null)
     {
       // Return the "player" BlockKillType.
@@ -516,32 +946,104 @@ public final class BlockTypeRegistry
    *          string of the form ## or ##:#.
    * @return the {@link BlockType}.
    */
-  public BlockType getBlockTypeByFormattedId(String idData)
+  public BlockType getBlockTypeByFormattedId(CharSequence idData)
   {
-    // Could it be a numeric type?
-    Matcher m = NUMERIC_BLOCK_TYPE.matcher(idData);
-    if (m.matches())
+    // Parse the digits directly; the id is at most 3 digits and the data value
+    // at most 2, so there is no need to guard against overflow beyond that.
+    int length = idData.length();
+    int i = 0;
+    int id = 0;
+    while (i < length && i < 3 && Character.isDigit(idData.charAt(i)))
     {
-      try
+      id = 10 * id + (idData.charAt(i) - '0');
+      ++i;
+    }
+
+    if (i > 0)
+    {
+      int data = 0;
+      if (i < length && idData.charAt(i) == ':')
       {
-        int id = Integer.parseInt(m.group(1));
-        int data = (m.group(2) != null) ? Integer.parseInt(m.group(2)) : 0;
-        if (id >= 0 && id < 256 && data >= 0 && data < 16)
+        int dataStart = ++i;
+        while (i < length && i - dataStart < 2 && Character.isDigit(idData.charAt(i)))
+        {
+          data = 10 * data + (idData.charAt(i) - '0');
+          ++i;
+        }
+        if (i == dataStart)
         {
-          return getBlockTypeByIdData(id, data);
+          // A colon with no data value.
+          i = -1;
         }
-        // Fall through if id or data out of range.
       }
-      catch (NumberFormatException ex)
+
+      if (i == length && id < 256 && data < 16)
       {
-        // Fall through if integer parsing fails.
-        Log.exception(Level.WARNING, "error parsing numeric block id", ex);
+        return getBlockTypeByIdData(id, data);
       }
     }
+
     // Return the "unknown" BlockType.
     return getBlockTypeByIndex(MAX_INDEX);
   } // getBlockTypeByFormattedId
 
+  // --------------------------------------------------------------------------
+  /**
+   * Look up a block name, checking the most recently resolved names first.
+   * 
+   * Chat parsers typically see the same handful of block names over and over
+   * (stone, dirt, diamond ore...), so a String that is equal to one of those is
+   * resolved without probing the index. The cache is shared by the chat thread
+   * and the threads that load files, so it is accessed under its own lock.
+   * 
+   * @param name the name of the block (case insensitive).
+   * @return the {@link BlockType}, or null if not found.
+   */
+  private BlockType findBlockTypeByName(CharSequence name)
+  {
+    BlockNameIndex index = _nameIndex;
+    if (!(name instanceof String))
+    {
+      return index.get(name);
+    }
+
+    synchronized (_recentNames)
+    {
+      BlockType cached = _recentNames.get(name);
+      if (cached != null)
+      {
+        return cached;
+      }
+    }
+
+    BlockType result = index.get(name);
+    if (result != null)
+    {
+      synchronized (_recentNames)
+      {
+        // Don't cache a result from an index that was replaced by a reload
+        // during the lookup.
+        if (index == _nameIndex)
+        {
+          _recentNames.put((String) name, result);
+        }
+      }
+    }
+    return result;
+  } // findBlockTypeByName
+
+  // --------------------------------------------------------------------------
+  /**
+   * Forget the recently resolved names, after _nameIndex is replaced.
+   */
+  private void clearRecentNames()
+  {
+    synchronized (_recentNames)
+    {
+      _recentNames.clear();
+    }
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Private constructor to enforce Singleton pattern.
@@ -556,13 +1058,29 @@ public final class BlockTypeRegistry
    * The basename of the file containing the YAML descriptions of all BlockType
    * instances.
    */
-  private static final String            BLOCK_TYPES_FILE   = "blocks.yml";
+  public static final String             BLOCK_TYPES_FILE   = "blocks.yml";
+
+  /**
+   * The basename of the binary cache of the BlockTypes loaded from
+   * "blocks.yml", in the mod directory.
+   */
+  private static final String            BLOCK_TYPES_CACHE_FILE = "blocks.cache";
+
+  /**
+   * Magic number at the start of the cache file.
+   */
+  private static final int               CACHE_MAGIC        = 0x57424C4B;
 
   /**
-   * The pattern of an all-numeric block type (with optional data value) when
-   * parsed by getBlockTypeByName().
+   * Version of the cache file format. Increment this whenever the format or
+   * the interpretation of "blocks.yml" changes.
    */
-  private static final Pattern           NUMERIC_BLOCK_TYPE = Pattern.compile("(\\d+)(?::(\\d+))?");
+  private static final int               CACHE_VERSION      = 1;
+
+  /**
+   * The number of recently resolved names that are cached.
+   */
+  private static final int               RECENT_NAMES       = 8;
 
   // --------------------------------------------------------------------------
   /**
@@ -579,11 +1097,21 @@ public final class BlockTypeRegistry
    */
   private static final int               DEFAULT_ALPHA      = (int) (0.8 * 255);
 
+  /**
+   * Default colour when the one in "blocks.yml" is malformed: opaque magenta.
+   */
+  private static final ArrayList<Integer> DEFAULT_RGBA      = new ArrayList<Integer>(Arrays.asList(255, 0, 255, 255));
+
   /**
    * Default cuboid bounds when loaded from "blocks.yml".
    */
   private static final ArrayList<Number> DEFAULT_BOUNDS     = new ArrayList<Number>(Arrays.asList(
                                                               0.005, 0.005, 0.005, 0.995, 0.995, 0.995));
+  /**
+   * Describes the structure of "blocks.yml"; see getValidator().
+   */
+  private static SnakeValidator          _validator;
+
   /**
    * An array of BlockType instances accessed by index.
    */
@@ -593,4 +1121,23 @@ public final class BlockTypeRegistry
    * A map from name (primary or alias) to BlockType instance.
    */
   private Map<String, BlockType>         _byName            = new HashMap<String, BlockType>();
+
+  /**
+   * Case-insensitive index of the names in _byName, rebuilt after loading.
+   */
+  private volatile BlockNameIndex        _nameIndex         = new BlockNameIndex(_byName);
+
+  /**
+   * Recently resolved names, checked before _nameIndex, in access order; the
+   * least recently used name is evicted when the cache is full.
+   */
+  @SuppressWarnings("serial")
+  private final Map<String, BlockType>   _recentNames       = new LinkedHashMap<String, BlockType>(16, 0.75f, true)
+                                                            {
+                                                              @Override
+                                                              protected boolean removeEldestEntry(Map.Entry<String, BlockType> eldest)
+                                                              {
+                                                                return size() > RECENT_NAMES;
+                                                              }
+                                                            };
 } // class BlockTypeRegistry
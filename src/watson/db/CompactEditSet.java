@@ -0,0 +1,222 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// ----------------------------------------------------------------------------
+/**
+ * The edits of a world that is not currently displayed, packed into arrays of
+ * primitives.
+ *
+ * A {@link BlockEditSet} keeps each edit as an object, indexed by player, by
+ * time and, for ores, by deposit, so that it can be drawn and navigated. None
+ * of that is needed for a world the player is not in, so those edits are kept
+ * here instead, at about 40 bytes each, and only expanded into a BlockEditSet
+ * when the player switches to that world. Edits are still de-duplicated as
+ * they are added.
+ *
+ * This class is not thread-safe; it is only used from the client's main
+ * thread.
+ */
+public class CompactEditSet
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param world the name of the world, as reported by the logging plugin.
+   */
+  public CompactEditSet(String world)
+  {
+    _world = world;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the name of the world.
+   *
+   * @return the name of the world.
+   */
+  public String getWorld()
+  {
+    return _world;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit, unless an identical one has already been added.
+   *
+   * @param edit the edit.
+   * @return true if the edit was added; false if it was a duplicate.
+   */
+  public boolean addBlockEdit(BlockEdit edit)
+  {
+    if (!_editKeys.add(edit, _size))
+    {
+      return false;
+    }
+
+    if (_size == _times.length)
+    {
+      int capacity = 2 * _size;
+      _times = Arrays.copyOf(_times, capacity);
+      _coords = Arrays.copyOf(_coords, 3 * capacity);
+      _info = Arrays.copyOf(_info, capacity);
+    }
+    _times[_size] = edit.time;
+    _coords[3 * _size] = edit.x;
+    _coords[3 * _size + 1] = edit.y;
+    _coords[3 * _size + 2] = edit.z;
+    _info[_size] = ((long) getPlayerIndex(edit.player) << 32)
+                   | ((long) edit.type.getIndex() << 1)
+                   | (edit.creation ? 1 : 0);
+    ++_size;
+    return true;
+  } // addBlockEdit
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an annotation.
+   *
+   * @param annotation the annotation.
+   */
+  public void addAnnotation(Annotation annotation)
+  {
+    _annotations.add(annotation);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of edits.
+   *
+   * @return the number of edits.
+   */
+  public int getBlockEditCount()
+  {
+    return _size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add all edits and annotations to a {@link BlockEditSet}, in the order they
+   * were added here.
+   *
+   * @param edits the set to add to.
+   */
+  public void expand(BlockEditSet edits)
+  {
+    for (int i = 0; i < _size; ++i)
+    {
+      long info = _info[i];
+      BlockType type = BlockTypeRegistry.instance.getBlockTypeByIndex((int) ((info & 0xFFFFFFFFL) >>> 1));
+      edits.addBlockEdit(new BlockEdit(_times[i], _players.get((int) (info >>> 32)), (info & 1) != 0,
+        _coords[3 * i], _coords[3 * i + 1], _coords[3 * i + 2], type), false);
+    }
+    edits.getAnnotations().addAll(_annotations);
+  } // expand
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the edit at the specified index has the specified
+   * attributes.
+   *
+   * @see IEditSource#isEdit(int, long, String, boolean, int, int, int, int,
+   *      int)
+   */
+  protected boolean isEdit(int index, long time, String player, boolean creation, int x, int y, int z, int id,
+                           int data)
+  {
+    long info = _info[index];
+    if (_times[index] / 1000 != time / 1000 || ((info & 1) != 0) != creation
+        || _coords[3 * index] != x || _coords[3 * index + 1] != y || _coords[3 * index + 2] != z)
+    {
+      return false;
+    }
+    BlockType type = BlockTypeRegistry.instance.getBlockTypeByIndex((int) ((info & 0xFFFFFFFFL) >>> 1));
+    return type.getId() == id && type.getData() == data
+           && _players.get((int) (info >>> 32)).equalsIgnoreCase(player);
+  } // isEdit
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the index of a player's name in _players, adding it if necessary.
+   *
+   * @param player the name of the player.
+   * @return the index.
+   */
+  protected int getPlayerIndex(String player)
+  {
+    Integer index = _playerIndices.get(player);
+    if (index == null)
+    {
+      index = _players.size();
+      _players.add(player);
+      _playerIndices.put(player, index);
+    }
+    return index;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The initial number of edits that can be held without growing the arrays.
+   */
+  protected static final int         INITIAL_CAPACITY = 256;
+
+  /**
+   * The name of the world.
+   */
+  protected String                   _world;
+
+  /**
+   * The number of edits.
+   */
+  protected int                      _size;
+
+  /**
+   * The time of each edit.
+   */
+  protected long[]                   _times           = new long[INITIAL_CAPACITY];
+
+  /**
+   * The x, y and z coordinates of each edit, consecutively.
+   */
+  protected int[]                    _coords          = new int[3 * INITIAL_CAPACITY];
+
+  /**
+   * For each edit, the index of the player's name in _players in the high 32
+   * bits, the index of the block type in the bits below, and 1 in the lowest
+   * bit for a creation.
+   */
+  protected long[]                   _info            = new long[INITIAL_CAPACITY];
+
+  /**
+   * The distinct names of the players who made the edits.
+   */
+  protected ArrayList<String>        _players         = new ArrayList<String>();
+
+  /**
+   * Map from player name to index in _players.
+   */
+  protected HashMap<String, Integer> _playerIndices   = new HashMap<String, Integer>();
+
+  /**
+   * The keys of all edits, used to discard duplicates.
+   */
+  protected EditKeySet               _editKeys        = new EditKeySet(new IEditSource()
+                                                      {
+                                                        @Override
+                                                        public boolean isEdit(int index, long time, String player,
+                                                                              boolean creation, int x, int y, int z,
+                                                                              int id, int data)
+                                                        {
+                                                          return CompactEditSet.this.isEdit(index, time, player, creation,
+                                                            x, y, z, id, data);
+                                                        }
+                                                      });
+
+  /**
+   * The annotations.
+   */
+  protected ArrayList<Annotation>    _annotations     = new ArrayList<Annotation>();
+} // class CompactEditSet
@@ -0,0 +1,393 @@
+package watson.db;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.logging.Level;
+
+import watson.Configuration;
+import watson.SyncTaskQueue;
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * An append-only file that records the edits added to one
+ * {@link BlockEditSet}, so that they can be restored in a later session.
+ *
+ * The journal uses the same format as files written by "/w file save". Each
+ * new edit is appended as one line and the file is flushed once per tick, so a
+ * crash loses at most the last tick of edits; a line that was only partly
+ * written is ignored when the journal is read back.
+ *
+ * The journal is compacted by rewriting it from the edits in memory, to a
+ * temporary file that then replaces the journal, so that it is never left
+ * partly written. Compaction drops edits older than the journal_days setting
+ * and, beyond MAX_EDITS, the oldest edits. It is requested when the journal is
+ * opened, after COMPACTION_INTERVAL edits have been appended and after edits
+ * are removed from memory.
+ *
+ * The temporary file is written by a background thread, from a snapshot of the
+ * edits taken on the main thread, so that the game does not stall. Edits
+ * appended in the meantime are held in memory. When the file is written, the
+ * main thread replaces the journal with it and appends the held edits.
+ *
+ * This class is not thread-safe; it is only used by its {@link BlockEditSet},
+ * under that object's lock. The background thread uses only the snapshot.
+ */
+public class EditJournal
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param file the journal file.
+   */
+  public EditJournal(File file)
+  {
+    _file = file;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the journal file.
+   *
+   * @return the journal file.
+   */
+  public File getFile()
+  {
+    return _file;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Append an edit to the journal.
+   *
+   * @param edit the edit.
+   */
+  public void append(BlockEdit edit)
+  {
+    if (_compacting)
+    {
+      _backlog.add(edit);
+      return;
+    }
+
+    try
+    {
+      if (_writer == null)
+      {
+        _file.getParentFile().mkdirs();
+        _writer = new PrintWriter(new BufferedWriter(new FileWriter(_file, true)));
+      }
+      PlayerEditSet.write(_writer, _calendar, edit);
+      _dirty = true;
+      ++_appended;
+    }
+    catch (IOException ex)
+    {
+      Log.exception(Level.SEVERE, "could not append to journal: " + _file, ex);
+    }
+  } // append
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write appended edits to the file.
+   */
+  public void flush()
+  {
+    if (_dirty && _writer != null)
+    {
+      _writer.flush();
+      if (_writer.checkError())
+      {
+        Log.severe("error writing journal: " + _file);
+      }
+      _dirty = false;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Request that the journal be rewritten at the next opportunity, e.g.
+   * because edits were removed from memory.
+   */
+  public void requestCompaction()
+  {
+    _compactionRequested = true;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the journal should be compacted.
+   *
+   * @return true if the journal should be compacted.
+   */
+  public boolean isCompactionDue()
+  {
+    return !_compacting && (_compactionRequested || _appended >= COMPACTION_INTERVAL);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Start rewriting the journal from the specified edits, dropping those that
+   * are too old or too many.
+   *
+   * The edits to keep are a view of the time index of the set, which is not
+   * affected by edits added later, so taking the snapshot is cheap.
+   *
+   * @param edits the edits.
+   */
+  public void compact(final BlockEditSet edits)
+  {
+    close();
+    _appended = 0;
+    _compactionRequested = false;
+    _compacting = true;
+    final int generation = _generation;
+
+    long since = System.currentTimeMillis() - Configuration.instance.getJournalDays() * DAY_MILLIS;
+    EditTimeIndex index = edits.getTimeIndex();
+    if (index.size() > MAX_EDITS)
+    {
+      since = Math.max(since, index.getTime(index.size() - MAX_EDITS));
+    }
+    final List<BlockEdit> snapshot = index.edits(since, Long.MAX_VALUE);
+    final ArrayList<Annotation> annotations = new ArrayList<Annotation>(edits.getAnnotations());
+    final File temp = new File(_file.getPath() + ".tmp");
+
+    Thread thread = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        IOException error = null;
+        try
+        {
+          write(temp, snapshot, annotations);
+        }
+        catch (IOException ex)
+        {
+          error = ex;
+        }
+
+        final IOException result = error;
+        SyncTaskQueue.instance.addTask(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            synchronized (edits)
+            {
+              finishCompaction(generation, temp, snapshot.size(), result);
+            }
+          }
+        });
+      }
+    }, "Watson Journal Compaction");
+    thread.setDaemon(true);
+    thread.start();
+  } // compact
+
+  // --------------------------------------------------------------------------
+  /**
+   * Replace the journal with the file written by the compaction thread, then
+   * append the edits that were added while it was being written.
+   *
+   * If the journal was closed or cleared in the meantime, the file is
+   * discarded instead.
+   *
+   * @param generation the value of _generation when compaction started.
+   * @param temp the file written.
+   * @param count the number of edits written.
+   * @param error the exception thrown while writing the file, or null.
+   */
+  protected void finishCompaction(int generation, File temp, int count, IOException error)
+  {
+    if (generation != _generation)
+    {
+      temp.delete();
+      return;
+    }
+
+    _compacting = false;
+    try
+    {
+      if (error != null)
+      {
+        throw error;
+      }
+      try
+      {
+        Files.move(temp.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (AtomicMoveNotSupportedException ex)
+      {
+        Files.move(temp.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      Log.debug("compacted journal %s to %d edits", _file, count);
+    }
+    catch (IOException ex)
+    {
+      Log.exception(Level.SEVERE, "could not compact journal: " + _file, ex);
+      temp.delete();
+    }
+
+    for (BlockEdit edit : _backlog)
+    {
+      append(edit);
+    }
+    _backlog.clear();
+  } // finishCompaction
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write the specified edits and annotations to a file.
+   *
+   * This is called by the compaction thread.
+   *
+   * @param file the file.
+   * @param edits the edits.
+   * @param annotations the annotations.
+   * @throws IOException if the file could not be written.
+   */
+  protected static void write(File file, List<BlockEdit> edits, List<Annotation> annotations)
+    throws IOException
+  {
+    file.getParentFile().mkdirs();
+    PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+    try
+    {
+      Calendar calendar = Calendar.getInstance();
+      for (BlockEdit edit : edits)
+      {
+        PlayerEditSet.write(writer, calendar, edit);
+      }
+      for (Annotation annotation : annotations)
+      {
+        BlockEditSet.write(writer, annotation);
+      }
+    }
+    finally
+    {
+      writer.close();
+    }
+    if (writer.checkError())
+    {
+      throw new IOException("error writing " + file);
+    }
+  } // write
+
+  // --------------------------------------------------------------------------
+  /**
+   * Discard all edits in the journal.
+   */
+  public void clear()
+  {
+    _backlog.clear();
+    close();
+    _appended = 0;
+    _compactionRequested = false;
+    if (_file.exists() && !_file.delete())
+    {
+      Log.warning("could not delete journal: " + _file);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Close the file, writing any appended edits.
+   *
+   * A compaction in progress is abandoned; the edits held until it finished
+   * are appended to the journal as it was before compaction.
+   */
+  public void close()
+  {
+    ++_generation;
+    if (_compacting)
+    {
+      _compacting = false;
+      for (BlockEdit edit : _backlog)
+      {
+        append(edit);
+      }
+      _backlog.clear();
+    }
+    if (_writer != null)
+    {
+      _writer.close();
+      _writer = null;
+      _dirty = false;
+    }
+  } // close
+
+  // --------------------------------------------------------------------------
+  /**
+   * The number of milliseconds in a day.
+   */
+  protected static final long     DAY_MILLIS          = 24 * 60 * 60 * 1000L;
+
+  /**
+   * The maximum number of edits kept in the journal by compaction.
+   */
+  protected static final int      MAX_EDITS           = 200000;
+
+  /**
+   * The number of edits appended after which the journal is compacted.
+   */
+  protected static final int      COMPACTION_INTERVAL = 20000;
+
+  /**
+   * The journal file.
+   */
+  protected File                  _file;
+
+  /**
+   * Writes appended edits; null until the first edit is appended.
+   */
+  protected PrintWriter           _writer;
+
+  /**
+   * Used to format edit times.
+   */
+  protected Calendar              _calendar           = Calendar.getInstance();
+
+  /**
+   * True if there are appended edits that have not been flushed.
+   */
+  protected boolean               _dirty;
+
+  /**
+   * The number of edits appended since the journal was last compacted.
+   */
+  protected int                   _appended;
+
+  /**
+   * True if compaction was requested.
+   */
+  protected boolean               _compactionRequested;
+
+  /**
+   * True while the compaction thread is writing the journal.
+   */
+  protected boolean               _compacting;
+
+  /**
+   * Incremented when the journal is closed, so that a compaction that was in
+   * progress is abandoned.
+   */
+  protected int                   _generation;
+
+  /**
+   * Edits appended while compacting, to be written when compaction finishes.
+   */
+  protected ArrayList<BlockEdit>  _backlog            = new ArrayList<BlockEdit>();
+} // class EditJournal
@@ -0,0 +1,314 @@
+package watson.db;
+
+// ----------------------------------------------------------------------------
+/**
+ * A compact set of edit keys, used to recognise edits that have already been
+ * added to a {@link BlockEditSet}.
+ *
+ * Each edit is identified by its time (to the second), player, coordinates,
+ * block type and action, which are hashed into a 64-bit key. The keys are kept
+ * in an open addressing hash table of longs, alongside the index of each edit
+ * in its owner's storage, which costs 12 to 24 bytes per edit rather than the
+ * object overhead of a HashSet entry. Since distinct edits can have the same
+ * key, a key match is confirmed by comparing the attributes of the stored edit,
+ * through the {@link IEditSource} of the set's owner.
+ *
+ * This class is not thread-safe; it is only used by its {@link BlockEditSet},
+ * under that object's lock.
+ */
+public class EditKeySet
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param source the owner's storage, by which key matches are confirmed.
+   */
+  public EditKeySet(IEditSource source)
+  {
+    _source = source;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the key identifying an edit with the specified attributes.
+   *
+   * The time is truncated to whole seconds, since that is the resolution of
+   * LogBlock results and save files, and the player name is not case sensitive.
+   *
+   * @param time the time of the edit in milliseconds since epoch.
+   * @param player the player name.
+   * @param creation true if the block was created, false if destroyed.
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @param id the block ID.
+   * @param data the block data value.
+   * @return the key.
+   */
+  public static long getKey(long time, String player, boolean creation, int x,
+                            int y, int z, int id, int data)
+  {
+    long key = mix(time / 1000);
+    key = mix(key ^ player.toLowerCase().hashCode());
+    key = mix(key ^ (((long) x << 32) | (z & 0xFFFFFFFFL)));
+    key = mix(key ^ (((long) y << 32) | ((id & 0xFFFFL) << 16) | ((data & 0x7FFFL) << 1) | (creation ? 1 : 0)));
+    return key;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if an edit has the specified attributes, comparing times to the
+   * second and player names without regard to case, in the same way as keys.
+   *
+   * @param edit the edit.
+   * @param time the time of the edit in milliseconds since epoch.
+   * @param player the player name.
+   * @param creation true if the block was created, false if destroyed.
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @param id the block ID.
+   * @param data the block data value.
+   * @return true if the edit has those attributes.
+   */
+  public static boolean isEdit(BlockEdit edit, long time, String player, boolean creation, int x,
+                               int y, int z, int id, int data)
+  {
+    return edit.time / 1000 == time / 1000 && edit.creation == creation
+           && edit.x == x && edit.y == y && edit.z == z
+           && edit.type.getId() == id && edit.type.getData() == data
+           && edit.player.equalsIgnoreCase(player);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit to the set, unless it is already present.
+   *
+   * @param edit the edit.
+   * @param index the index of the edit in the owner's storage.
+   * @return true if the edit was added; false if it was already present.
+   */
+  public boolean add(BlockEdit edit, int index)
+  {
+    return add(edit.time, edit.player, edit.creation, edit.x, edit.y, edit.z,
+      edit.type.getId(), edit.type.getData(), index);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit with the specified attributes to the set, unless it is already
+   * present.
+   *
+   * @param time the time of the edit in milliseconds since epoch.
+   * @param player the player name.
+   * @param creation true if the block was created, false if destroyed.
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @param id the block ID.
+   * @param data the block data value.
+   * @param index the index of the edit in the owner's storage.
+   * @return true if the edit was added; false if it was already present.
+   */
+  public boolean add(long time, String player, boolean creation, int x, int y,
+                     int z, int id, int data, int index)
+  {
+    long key = getKey(time, player, creation, x, y, z, id, data);
+    int slot = find(key, time, player, creation, x, y, z, id, data);
+    if (slot >= 0)
+    {
+      return false;
+    }
+    slot = -slot - 1;
+    _keys[slot] = (key == EMPTY) ? ZERO_KEY : key;
+    _indices[slot] = index;
+    if (++_size > _keys.length * MAX_LOAD)
+    {
+      resize(_keys.length * 2);
+    }
+    return true;
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the set contains the specified edit.
+   *
+   * @param edit the edit.
+   * @return true if the set contains the edit.
+   */
+  public boolean contains(BlockEdit edit)
+  {
+    return contains(edit.time, edit.player, edit.creation, edit.x, edit.y, edit.z,
+      edit.type.getId(), edit.type.getData());
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the set contains an edit with the specified attributes.
+   *
+   * @param time the time of the edit in milliseconds since epoch.
+   * @param player the player name.
+   * @param creation true if the block was created, false if destroyed.
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @param id the block ID.
+   * @param data the block data value.
+   * @return true if the set contains such an edit.
+   */
+  public boolean contains(long time, String player, boolean creation, int x,
+                          int y, int z, int id, int data)
+  {
+    long key = getKey(time, player, creation, x, y, z, id, data);
+    return find(key, time, player, creation, x, y, z, id, data) >= 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of keys in the set.
+   *
+   * @return the number of keys in the set.
+   */
+  public int size()
+  {
+    return _size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Remove all keys from the set, releasing the table.
+   */
+  public void clear()
+  {
+    _keys = new long[INITIAL_CAPACITY];
+    _indices = new int[INITIAL_CAPACITY];
+    _size = 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Find the slot of the edit with the specified key and attributes.
+   *
+   * @param key the key of the edit.
+   * @param time the time of the edit in milliseconds since epoch.
+   * @param player the player name.
+   * @param creation true if the block was created, false if destroyed.
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @param id the block ID.
+   * @param data the block data value.
+   * @return the slot of the edit if present; otherwise, -1 minus the index of
+   *         the empty slot where it would be added.
+   */
+  protected int find(long key, long time, String player, boolean creation,
+                     int x, int y, int z, int id, int data)
+  {
+    if (key == EMPTY)
+    {
+      key = ZERO_KEY;
+    }
+    int mask = _keys.length - 1;
+    int i = (int) key & mask;
+    while (_keys[i] != EMPTY)
+    {
+      if (_keys[i] == key && _source.isEdit(_indices[i], time, player, creation, x, y, z, id, data))
+      {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -i - 1;
+  } // find
+
+  // --------------------------------------------------------------------------
+  /**
+   * Rehash all keys into a table of the specified capacity.
+   *
+   * @param capacity the new capacity; a power of two.
+   */
+  protected void resize(int capacity)
+  {
+    long[] oldKeys = _keys;
+    int[] oldIndices = _indices;
+    _keys = new long[capacity];
+    _indices = new int[capacity];
+    int mask = capacity - 1;
+    for (int slot = 0; slot < oldKeys.length; ++slot)
+    {
+      long key = oldKeys[slot];
+      if (key != EMPTY)
+      {
+        int i = (int) key & mask;
+        while (_keys[i] != EMPTY)
+        {
+          i = (i + 1) & mask;
+        }
+        _keys[i] = key;
+        _indices[i] = oldIndices[slot];
+      }
+    }
+  } // resize
+
+  // --------------------------------------------------------------------------
+  /**
+   * Scramble the bits of a 64-bit value (the finalisation step of MurmurHash3),
+   * so that every bit of the input affects the low bits used to index the
+   * table.
+   *
+   * @param value the value.
+   * @return the scrambled value.
+   */
+  protected static long mix(long value)
+  {
+    value ^= value >>> 33;
+    value *= 0xFF51AFD7ED558CCDL;
+    value ^= value >>> 33;
+    value *= 0xC4CEB9FE1A85EC53L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The value of an unused slot in the table.
+   */
+  protected static final long   EMPTY            = 0;
+
+  /**
+   * The key stored in place of a key that happens to equal EMPTY.
+   */
+  protected static final long   ZERO_KEY         = 1;
+
+  /**
+   * The initial number of slots in the table; a power of two.
+   */
+  protected static final int    INITIAL_CAPACITY = 1024;
+
+  /**
+   * The fraction of slots that can be used before the table is enlarged.
+   */
+  protected static final double MAX_LOAD         = 0.5;
+
+  /**
+   * The owner's storage, by which key matches are confirmed.
+   */
+  protected final IEditSource   _source;
+
+  /**
+   * The table of keys.
+   */
+  protected long[]              _keys            = new long[INITIAL_CAPACITY];
+
+  /**
+   * The index in the owner's storage of the edit whose key is in the
+   * corresponding slot of _keys.
+   */
+  protected int[]               _indices         = new int[INITIAL_CAPACITY];
+
+  /**
+   * The number of keys in the set.
+   */
+  protected int                 _size;
+} // class EditKeySet
@@ -0,0 +1,409 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+// ----------------------------------------------------------------------------
+/**
+ * A time-ordered index over a set of edits, used to find the edits in a time
+ * range, and count stone and diamond ore edits in it, without walking the
+ * edits.
+ *
+ * The edit times are held in a sorted array of longs that is binary searched to
+ * find the bounds of a time range. The edits in a range are returned as a view
+ * of a parallel array of edits, without copying. Alongside them are prefix
+ * sums: the difference between two elements of each count array is the number
+ * of matching edits between the corresponding positions.
+ *
+ * The index is kept up to date as edits are added, rather than being rebuilt.
+ * The arrays have spare room at both ends, since LogBlock lists results most
+ * recent first while edits loaded from files and journals come oldest first, so
+ * an edit that is older or newer than all of those indexed is stored in
+ * amortised constant time. Any other edit is set aside and the pending edits
+ * are sorted and merged into new arrays, in linear time, when the index is next
+ * read. Elements within the indexed range are never overwritten, so views
+ * returned earlier are unaffected by later additions.
+ *
+ * The index is ordered by {@link BlockEditComparator}, the same ordering as
+ * the sets of edits that it indexes.
+ */
+public class EditTimeIndex
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param edits the edits to index, ordered from oldest to most recent.
+   */
+  public EditTimeIndex(Collection<BlockEdit> edits)
+  {
+    BlockEdit[] sorted = edits.toArray(new BlockEdit[edits.size()]);
+    fill(sorted, sorted.length);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit to the index.
+   *
+   * The caller must not add an edit that is already indexed.
+   *
+   * @param edit the edit.
+   */
+  public synchronized void add(BlockEdit edit)
+  {
+    if (!_pending.isEmpty())
+    {
+      _pending.add(edit);
+    }
+    else if (_start == _end || _comparator.compare(edit, _edits[_end - 1]) > 0)
+    {
+      if (_end == _times.length)
+      {
+        grow();
+      }
+      _times[_end] = edit.time;
+      _edits[_end] = edit;
+      _stoneDestroyed[_end + 1] = _stoneDestroyed[_end] + getStone(edit);
+      _diamondMined[_end + 1] = _diamondMined[_end] + getDiamond(edit);
+      ++_end;
+    }
+    else if (_comparator.compare(edit, _edits[_start]) < 0)
+    {
+      if (_start == 0)
+      {
+        grow();
+      }
+      --_start;
+      _times[_start] = edit.time;
+      _edits[_start] = edit;
+      _stoneDestroyed[_start] = _stoneDestroyed[_start + 1] - getStone(edit);
+      _diamondMined[_start] = _diamondMined[_start + 1] - getDiamond(edit);
+      ++_version;
+    }
+    else
+    {
+      _pending.add(edit);
+    }
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a number that changes whenever edits are inserted before existing
+   * ones, changing the positions returned by {@link #indexOf(long)}.
+   *
+   * Edits added after all others leave existing positions unchanged and so do
+   * not change the version.
+   *
+   * @return the version of the positions in this index.
+   */
+  public synchronized int getVersion()
+  {
+    merge();
+    return _version;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of edits indexed.
+   *
+   * @return the number of edits indexed.
+   */
+  public synchronized int size()
+  {
+    merge();
+    return _end - _start;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time of the edit at the specified position in the index.
+   *
+   * @param index the position, from 0 to size() - 1.
+   * @return the time of the edit.
+   */
+  public synchronized long getTime(int index)
+  {
+    merge();
+    return _times[_start + index];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the position of the first edit at or after the specified time, or
+   * size() if there is no such edit.
+   *
+   * @param time the time.
+   * @return the position of the first edit at or after the time.
+   */
+  public synchronized int indexOf(long time)
+  {
+    merge();
+    return lowerBound(time) - _start;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the edits in the time range [from,to), from oldest to most recent.
+   *
+   * The returned list is a read-only view of the index and is not affected by
+   * edits added subsequently.
+   *
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return the edits in the time range.
+   */
+  public synchronized List<BlockEdit> edits(long from, long to)
+  {
+    merge();
+    int start = lowerBound(from);
+    int end = lowerBound(to);
+    return _editList.subList(start, Math.max(start, end));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of edits in the time range [from,to).
+   *
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return the number of edits in the time range.
+   */
+  public synchronized int count(long from, long to)
+  {
+    merge();
+    return Math.max(0, lowerBound(to) - lowerBound(from));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of stone blocks destroyed in the time range [from,to).
+   *
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return the number of stone blocks destroyed.
+   */
+  public synchronized int getStoneCount(long from, long to)
+  {
+    merge();
+    return Math.max(0, _stoneDestroyed[lowerBound(to)] - _stoneDestroyed[lowerBound(from)]);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of diamond ore blocks destroyed minus the number created
+   * in the time range [from,to).
+   *
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return the net number of diamond ore blocks mined.
+   */
+  public synchronized int getDiamondCount(long from, long to)
+  {
+    merge();
+    return (to <= from) ? 0 : _diamondMined[lowerBound(to)] - _diamondMined[lowerBound(from)];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the array index of the first edit whose time is not less than the
+   * specified time, or _end if there is no such edit.
+   *
+   * @param time the time.
+   * @return the array index of the first edit at or after the time.
+   */
+  protected int lowerBound(long time)
+  {
+    int low = _start;
+    int high = _end;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (_times[mid] < time)
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  } // lowerBound
+
+  // --------------------------------------------------------------------------
+  /**
+   * Merge the pending edits, if any, into the indexed edits.
+   */
+  protected void merge()
+  {
+    if (_pending.isEmpty())
+    {
+      return;
+    }
+
+    Collections.sort(_pending, _comparator);
+    int count = _end - _start + _pending.size();
+    BlockEdit[] merged = new BlockEdit[count];
+    int i = _start;
+    int j = 0;
+    int k = 0;
+    while (i < _end && j < _pending.size())
+    {
+      merged[k++] = (_comparator.compare(_edits[i], _pending.get(j)) <= 0) ? _edits[i++] : _pending.get(j++);
+    }
+    while (i < _end)
+    {
+      merged[k++] = _edits[i++];
+    }
+    while (j < _pending.size())
+    {
+      merged[k++] = _pending.get(j++);
+    }
+    _pending.clear();
+    fill(merged, count);
+    ++_version;
+  } // merge
+
+  // --------------------------------------------------------------------------
+  /**
+   * Make room at both ends of the arrays, by copying the indexed edits into
+   * new arrays.
+   */
+  protected void grow()
+  {
+    fill(Arrays.copyOfRange(_edits, _start, _end), _end - _start);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Replace the arrays with new ones holding the specified edits in the middle,
+   * with room for as many again to be added at either end.
+   *
+   * New arrays are allocated, rather than reusing the current ones, so that
+   * views returned by {@link #edits(long, long)} are unaffected.
+   *
+   * @param sorted the edits, ordered from oldest to most recent.
+   * @param count the number of edits.
+   */
+  protected void fill(BlockEdit[] sorted, int count)
+  {
+    int capacity = 2 * Math.max(count, MIN_SPARE) + count;
+    _times = new long[capacity];
+    _edits = new BlockEdit[capacity];
+    _editList = Collections.unmodifiableList(Arrays.asList(_edits));
+    _stoneDestroyed = new int[capacity + 1];
+    _diamondMined = new int[capacity + 1];
+    _start = (capacity - count) / 2;
+    _end = _start + count;
+
+    System.arraycopy(sorted, 0, _edits, _start, count);
+    for (int i = _start; i < _end; ++i)
+    {
+      BlockEdit edit = _edits[i];
+      _times[i] = edit.time;
+      _stoneDestroyed[i + 1] = _stoneDestroyed[i] + getStone(edit);
+      _diamondMined[i + 1] = _diamondMined[i] + getDiamond(edit);
+    }
+  } // fill
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return 1 if the specified edit destroyed stone, or 0 otherwise.
+   *
+   * @param edit the edit.
+   * @return the edit's contribution to the stone count.
+   */
+  protected static int getStone(BlockEdit edit)
+  {
+    return (edit.type.getId() == STONE_ID && !edit.creation) ? 1 : 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the specified edit's contribution to the diamond count: as for
+   * LogBlock's sums, destroyed minus created.
+   *
+   * @param edit the edit.
+   * @return 1 if diamond ore was destroyed, -1 if created, or 0 otherwise.
+   */
+  protected static int getDiamond(BlockEdit edit)
+  {
+    if (edit.type.getId() != DIAMOND_ORE_ID)
+    {
+      return 0;
+    }
+    return edit.creation ? -1 : 1;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Block ID of stone.
+   */
+  protected static final int             STONE_ID              = 1;
+
+  /**
+   * Block ID of diamond ore.
+   */
+  protected static final int             DIAMOND_ORE_ID        = 56;
+
+  /**
+   * The minimum number of free elements at each end of newly allocated arrays.
+   */
+  protected static final int             MIN_SPARE             = 64;
+
+  /**
+   * The order of the indexed edits.
+   */
+  protected final BlockEditComparator    _comparator           = new BlockEditComparator();
+
+  /**
+   * Edits that are neither older nor newer than all indexed edits, waiting to
+   * be merged into the arrays.
+   */
+  protected final ArrayList<BlockEdit>   _pending              = new ArrayList<BlockEdit>();
+
+  /**
+   * Edit times, from oldest to most recent, in elements [_start,_end).
+   */
+  protected long[]                       _times;
+
+  /**
+   * The edits, parallel to _times.
+   */
+  protected BlockEdit[]                  _edits;
+
+  /**
+   * Read-only list view of _edits, from which range views are taken.
+   */
+  protected List<BlockEdit>              _editList;
+
+  /**
+   * Prefix sums of the number of stone blocks destroyed, in elements
+   * [_start,_end]. Only differences between elements are meaningful.
+   */
+  protected int[]                        _stoneDestroyed;
+
+  /**
+   * Prefix sums of the number of diamond ore blocks destroyed minus created,
+   * in elements [_start,_end].
+   */
+  protected int[]                        _diamondMined;
+
+  /**
+   * The array index of the oldest indexed edit.
+   */
+  protected int                          _start;
+
+  /**
+   * One more than the array index of the most recent indexed edit.
+   */
+  protected int                          _end;
+
+  /**
+   * Incremented whenever existing positions change.
+   */
+  protected int                          _version;
+} // class EditTimeIndex
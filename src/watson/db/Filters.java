@@ -1,5 +1,7 @@
 package watson.db;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 
 import watson.Controller;
@@ -98,6 +100,18 @@ public class Filters
     return _filters.size() == 0 || _filters.contains(player);
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the lower case names of the players whose edits are accepted.
+   * 
+   * @return the names of the players whose edits are accepted, or an empty
+   *         collection if all edits are accepted.
+   */
+  public Collection<String> getPlayers()
+  {
+    return Collections.unmodifiableSet(_filters);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * The names of all the players whose edits will be stored when returned from
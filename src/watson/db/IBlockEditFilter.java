@@ -0,0 +1,16 @@
+package watson.db;
+
+// ----------------------------------------------------------------------------
+/**
+ * Interface to decide which {@link BlockEdit}s a search considers.
+ */
+public interface IBlockEditFilter
+{
+  /**
+   * Return true if the edit should be considered.
+   *
+   * @param edit the edit.
+   * @return true if the edit should be considered.
+   */
+  public boolean accept(BlockEdit edit);
+}
@@ -0,0 +1,31 @@
+package watson.db;
+
+// ----------------------------------------------------------------------------
+/**
+ * Interface to the edits whose keys are held in an {@link EditKeySet}, by
+ * which the set checks that an edit with a matching key really is the same
+ * edit.
+ */
+public interface IEditSource
+{
+  /**
+   * Return true if the edit at the specified index has the specified
+   * attributes.
+   *
+   * Times are compared to the second and player names without regard to case.
+   *
+   * @param index the index of the edit, as passed to
+   *          {@link EditKeySet#add(long, String, boolean, int, int, int, int, int, int)}.
+   * @param time the time of the edit in milliseconds since epoch.
+   * @param player the player name.
+   * @param creation true if the block was created, false if destroyed.
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @param id the block ID.
+   * @param data the block data value.
+   * @return true if the edit at the index has those attributes.
+   */
+  public boolean isEdit(int index, long time, String player, boolean creation, int x, int y, int z, int id,
+                        int data);
+}
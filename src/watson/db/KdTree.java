@@ -0,0 +1,658 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+// ----------------------------------------------------------------------------
+/**
+ * A 3-d tree of edits, used to find the edits nearest to a point, or nearest
+ * along a ray, quickly enough to be done every frame.
+ *
+ * Like {@link SpatialIndex}, the tree is maintained incrementally. Edits are
+ * added as leaves, and when a leaf ends up too deep, the smallest unbalanced
+ * subtree on its path is rebuilt around its median (a scapegoat tree), which
+ * keeps the depth logarithmic at an amortised cost of O(log^2 n) per edit.
+ *
+ * Each node records the bounding box of its subtree. Searches prune subtrees
+ * by those boxes rather than by the splitting planes, so the tree stays valid
+ * whatever order edits are added in, and edits that are hidden can be skipped
+ * by an {@link IBlockEditFilter} at search time rather than removed.
+ *
+ * Nodes are held in parallel arrays of primitives, indexed by node number,
+ * rather than as objects. Distances are measured between block centres.
+ *
+ * This class is not thread-safe; it is only used by its {@link BlockEditSet},
+ * under that object's lock.
+ */
+public class KdTree
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param edits the initial edits.
+   */
+  public KdTree(Collection<BlockEdit> edits)
+  {
+    int capacity = Math.max(INITIAL_CAPACITY, edits.size());
+    _edits = new BlockEdit[capacity];
+    _coords = new int[3 * capacity];
+    _bounds = new int[6 * capacity];
+    _left = new int[capacity];
+    _right = new int[capacity];
+    _count = new int[capacity];
+    _axis = new byte[capacity];
+
+    for (BlockEdit edit : edits)
+    {
+      newNode(edit);
+    }
+    int[] nodes = new int[_size];
+    for (int i = 0; i < _size; ++i)
+    {
+      nodes[i] = i;
+    }
+    _root = build(nodes, 0, _size);
+  } // ctor
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of edits in the tree.
+   *
+   * @return the number of edits in the tree.
+   */
+  public int size()
+  {
+    return _size;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit.
+   *
+   * @param edit the edit.
+   */
+  public void add(BlockEdit edit)
+  {
+    int node = newNode(edit);
+    if (_root < 0)
+    {
+      _root = node;
+      return;
+    }
+
+    // Descend to a leaf, widening the bounds of each subtree passed through.
+    int depth = 0;
+    int current = _root;
+    for (;;)
+    {
+      if (depth == _path.length)
+      {
+        _path = Arrays.copyOf(_path, 2 * depth);
+      }
+      _path[depth++] = current;
+      ++_count[current];
+      includeInBounds(current, node);
+
+      int axis = _axis[current];
+      boolean left = _coords[3 * node + axis] < _coords[3 * current + axis];
+      int child = left ? _left[current] : _right[current];
+      if (child < 0)
+      {
+        if (left)
+        {
+          _left[current] = node;
+        }
+        else
+        {
+          _right[current] = node;
+        }
+        _axis[node] = (byte) ((axis + 1) % 3);
+        break;
+      }
+      current = child;
+    }
+
+    // If the new leaf is too deep, find the lowest ancestor where one subtree
+    // outweighs the other and rebuild it.
+    if (depth > Math.log(_size) / LOG_INVERSE_ALPHA + 1)
+    {
+      int child = node;
+      for (int i = depth - 1; i >= 0; --i)
+      {
+        int ancestor = _path[i];
+        if (_count[child] > ALPHA * _count[ancestor])
+        {
+          rebuild(ancestor, (i > 0) ? _path[i - 1] : -1);
+          break;
+        }
+        child = ancestor;
+      }
+    }
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return up to count accepted edits nearest to a point, nearest first.
+   *
+   * @param x the x coordinate of the point.
+   * @param y the y coordinate of the point.
+   * @param z the z coordinate of the point.
+   * @param count the maximum number of edits to return.
+   * @param filter decides which edits are considered.
+   * @return the edits.
+   */
+  public List<BlockEdit> nearest(double x, double y, double z, int count, IBlockEditFilter filter)
+  {
+    _bestNodes = new int[count];
+    _bestDistances = new double[count];
+    _bestCount = 0;
+    if (count > 0 && _root >= 0)
+    {
+      searchNearest(_root, x, y, z, filter);
+    }
+
+    ArrayList<BlockEdit> result = new ArrayList<BlockEdit>(_bestCount);
+    for (int i = 0; i < _bestCount; ++i)
+    {
+      result.add(_edits[_bestNodes[i]]);
+    }
+    _bestNodes = null;
+    _bestDistances = null;
+    return result;
+  } // nearest
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the accepted edit whose block centre is within the specified radius
+   * of a ray and is nearest to the origin of the ray.
+   *
+   * @param x the x coordinate of the origin.
+   * @param y the y coordinate of the origin.
+   * @param z the z coordinate of the origin.
+   * @param dx the x component of the direction, which must be a unit vector.
+   * @param dy the y component of the direction.
+   * @param dz the z component of the direction.
+   * @param maxDistance the maximum distance along the ray.
+   * @param radius the maximum distance of the block centre from the ray.
+   * @param filter decides which edits are considered.
+   * @return the edit, or null if there is none.
+   */
+  public BlockEdit nearestAlongRay(double x, double y, double z,
+                                   double dx, double dy, double dz,
+                                   double maxDistance, double radius, IBlockEditFilter filter)
+  {
+    _rayBestNode = -1;
+    _rayBestDistance = maxDistance;
+    if (_root >= 0)
+    {
+      searchRay(_root, x, y, z, dx, dy, dz, radius, filter);
+    }
+    return (_rayBestNode >= 0) ? _edits[_rayBestNode] : null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Visit the nodes of a subtree that could be nearer to a point than the
+   * furthest of the best nodes found so far, nearer child first.
+   */
+  protected void searchNearest(int node, double x, double y, double z, IBlockEditFilter filter)
+  {
+    BlockEdit edit = _edits[node];
+    if (filter.accept(edit))
+    {
+      double ex = _coords[3 * node] + 0.5 - x;
+      double ey = _coords[3 * node + 1] + 0.5 - y;
+      double ez = _coords[3 * node + 2] + 0.5 - z;
+      double distance = ex * ex + ey * ey + ez * ez;
+      if (_bestCount < _bestNodes.length || distance < _bestDistances[_bestCount - 1])
+      {
+        // Insertion sort into the best nodes, which are few.
+        int i = (_bestCount < _bestNodes.length) ? _bestCount++ : _bestCount - 1;
+        while (i > 0 && _bestDistances[i - 1] > distance)
+        {
+          _bestNodes[i] = _bestNodes[i - 1];
+          _bestDistances[i] = _bestDistances[i - 1];
+          --i;
+        }
+        _bestNodes[i] = node;
+        _bestDistances[i] = distance;
+      }
+    }
+
+    int left = _left[node];
+    int right = _right[node];
+    double leftDistance = (left >= 0) ? boxDistance(left, x, y, z) : Double.MAX_VALUE;
+    double rightDistance = (right >= 0) ? boxDistance(right, x, y, z) : Double.MAX_VALUE;
+    if (leftDistance > rightDistance)
+    {
+      int swap = left;
+      left = right;
+      right = swap;
+      double swapDistance = leftDistance;
+      leftDistance = rightDistance;
+      rightDistance = swapDistance;
+    }
+    if (left >= 0 && isCandidateDistance(leftDistance))
+    {
+      searchNearest(left, x, y, z, filter);
+    }
+    if (right >= 0 && isCandidateDistance(rightDistance))
+    {
+      searchNearest(right, x, y, z, filter);
+    }
+  } // searchNearest
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if a subtree whose bounds are at the specified squared distance
+   * could contain one of the best nodes.
+   *
+   * @param distance the squared distance.
+   * @return true if the subtree should be searched.
+   */
+  protected boolean isCandidateDistance(double distance)
+  {
+    return _bestCount < _bestNodes.length || distance < _bestDistances[_bestCount - 1];
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Visit the nodes of a subtree whose bounds, widened by the radius, are
+   * entered by the ray before the best distance found so far.
+   */
+  protected void searchRay(int node, double x, double y, double z,
+                           double dx, double dy, double dz, double radius, IBlockEditFilter filter)
+  {
+    double cx = _coords[3 * node] + 0.5 - x;
+    double cy = _coords[3 * node + 1] + 0.5 - y;
+    double cz = _coords[3 * node + 2] + 0.5 - z;
+    double t = cx * dx + cy * dy + cz * dz;
+    if (t >= 0 && t < _rayBestDistance)
+    {
+      double ox = cx - t * dx;
+      double oy = cy - t * dy;
+      double oz = cz - t * dz;
+      if (ox * ox + oy * oy + oz * oz <= radius * radius && filter.accept(_edits[node]))
+      {
+        _rayBestNode = node;
+        _rayBestDistance = t;
+      }
+    }
+
+    int left = _left[node];
+    int right = _right[node];
+    double leftEntry = (left >= 0) ? rayEntry(left, x, y, z, dx, dy, dz, radius) : Double.MAX_VALUE;
+    double rightEntry = (right >= 0) ? rayEntry(right, x, y, z, dx, dy, dz, radius) : Double.MAX_VALUE;
+    if (leftEntry > rightEntry)
+    {
+      int swap = left;
+      left = right;
+      right = swap;
+      double swapEntry = leftEntry;
+      leftEntry = rightEntry;
+      rightEntry = swapEntry;
+    }
+    if (left >= 0 && leftEntry <= _rayBestDistance)
+    {
+      searchRay(left, x, y, z, dx, dy, dz, radius, filter);
+    }
+    if (right >= 0 && rightEntry <= _rayBestDistance)
+    {
+      searchRay(right, x, y, z, dx, dy, dz, radius, filter);
+    }
+  } // searchRay
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the squared distance from a point to the nearest block centre that
+   * could be in the bounds of a subtree.
+   */
+  protected double boxDistance(int node, double x, double y, double z)
+  {
+    double distance = 0;
+    for (int axis = 0; axis < 3; ++axis)
+    {
+      double min = _bounds[6 * node + axis] + 0.5;
+      double max = _bounds[6 * node + 3 + axis] + 0.5;
+      double p = (axis == 0) ? x : (axis == 1 ? y : z);
+      double d = (p < min) ? min - p : (p > max ? p - max : 0);
+      distance += d * d;
+    }
+    return distance;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the distance along a ray at which it enters the bounds of the block
+   * centres of a subtree, widened by a radius, or Double.MAX_VALUE if it
+   * misses.
+   */
+  protected double rayEntry(int node, double x, double y, double z,
+                            double dx, double dy, double dz, double radius)
+  {
+    double entry = 0;
+    double exit = Double.MAX_VALUE;
+    for (int axis = 0; axis < 3; ++axis)
+    {
+      double min = _bounds[6 * node + axis] + 0.5 - radius;
+      double max = _bounds[6 * node + 3 + axis] + 0.5 + radius;
+      double o = (axis == 0) ? x : (axis == 1 ? y : z);
+      double d = (axis == 0) ? dx : (axis == 1 ? dy : dz);
+      if (d == 0)
+      {
+        if (o < min || o > max)
+        {
+          return Double.MAX_VALUE;
+        }
+      }
+      else
+      {
+        double t1 = (min - o) / d;
+        double t2 = (max - o) / d;
+        entry = Math.max(entry, Math.min(t1, t2));
+        exit = Math.min(exit, Math.max(t1, t2));
+        if (entry > exit)
+        {
+          return Double.MAX_VALUE;
+        }
+      }
+    }
+    return entry;
+  } // rayEntry
+
+  // --------------------------------------------------------------------------
+  /**
+   * Allocate a node for an edit, with no children.
+   *
+   * @param edit the edit.
+   * @return the node.
+   */
+  protected int newNode(BlockEdit edit)
+  {
+    if (_size == _edits.length)
+    {
+      int capacity = 2 * _size;
+      _edits = Arrays.copyOf(_edits, capacity);
+      _coords = Arrays.copyOf(_coords, 3 * capacity);
+      _bounds = Arrays.copyOf(_bounds, 6 * capacity);
+      _left = Arrays.copyOf(_left, capacity);
+      _right = Arrays.copyOf(_right, capacity);
+      _count = Arrays.copyOf(_count, capacity);
+      _axis = Arrays.copyOf(_axis, capacity);
+    }
+
+    int node = _size++;
+    _edits[node] = edit;
+    _coords[3 * node] = edit.x;
+    _coords[3 * node + 1] = edit.y;
+    _coords[3 * node + 2] = edit.z;
+    for (int axis = 0; axis < 3; ++axis)
+    {
+      _bounds[6 * node + axis] = _bounds[6 * node + 3 + axis] = _coords[3 * node + axis];
+    }
+    _left[node] = _right[node] = -1;
+    _count[node] = 1;
+    _axis[node] = 0;
+    return node;
+  } // newNode
+
+  // --------------------------------------------------------------------------
+  /**
+   * Widen the bounds of a subtree to include the coordinates of a node.
+   *
+   * @param node the root of the subtree.
+   * @param other the node to include.
+   */
+  protected void includeInBounds(int node, int other)
+  {
+    for (int axis = 0; axis < 3; ++axis)
+    {
+      int c = _coords[3 * other + axis];
+      _bounds[6 * node + axis] = Math.min(_bounds[6 * node + axis], c);
+      _bounds[6 * node + 3 + axis] = Math.max(_bounds[6 * node + 3 + axis], c);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Rebuild a subtree so that it is balanced.
+   *
+   * @param node the root of the subtree.
+   * @param parent the parent of node, or -1 if it is the root of the tree.
+   */
+  protected void rebuild(int node, int parent)
+  {
+    int[] nodes = new int[_count[node]];
+    int count = 0;
+    int[] stack = new int[nodes.length];
+    int top = 0;
+    stack[top++] = node;
+    while (top > 0)
+    {
+      int current = stack[--top];
+      nodes[count++] = current;
+      if (_left[current] >= 0)
+      {
+        stack[top++] = _left[current];
+      }
+      if (_right[current] >= 0)
+      {
+        stack[top++] = _right[current];
+      }
+    }
+
+    int subtree = build(nodes, 0, count);
+    if (parent < 0)
+    {
+      _root = subtree;
+    }
+    else if (_left[parent] == node)
+    {
+      _left[parent] = subtree;
+    }
+    else
+    {
+      _right[parent] = subtree;
+    }
+  } // rebuild
+
+  // --------------------------------------------------------------------------
+  /**
+   * Build a balanced subtree of the specified nodes, splitting each subtree at
+   * the median along the axis where its bounds are widest.
+   *
+   * @param nodes the nodes; the range is reordered.
+   * @param from the index of the first node in the range.
+   * @param to the index after the last node in the range.
+   * @return the root of the subtree, or -1 if the range is empty.
+   */
+  protected int build(int[] nodes, int from, int to)
+  {
+    if (from >= to)
+    {
+      return -1;
+    }
+
+    int[] min = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE };
+    int[] max = { Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+    for (int i = from; i < to; ++i)
+    {
+      for (int axis = 0; axis < 3; ++axis)
+      {
+        int c = _coords[3 * nodes[i] + axis];
+        min[axis] = Math.min(min[axis], c);
+        max[axis] = Math.max(max[axis], c);
+      }
+    }
+    int axis = 0;
+    for (int a = 1; a < 3; ++a)
+    {
+      if ((long) max[a] - min[a] > (long) max[axis] - min[axis])
+      {
+        axis = a;
+      }
+    }
+
+    int middle = (from + to) >>> 1;
+    select(nodes, from, to, middle, axis);
+    int node = nodes[middle];
+    _axis[node] = (byte) axis;
+    _count[node] = to - from;
+    for (int a = 0; a < 3; ++a)
+    {
+      _bounds[6 * node + a] = min[a];
+      _bounds[6 * node + 3 + a] = max[a];
+    }
+    _left[node] = build(nodes, from, middle);
+    _right[node] = build(nodes, middle + 1, to);
+    return node;
+  } // build
+
+  // --------------------------------------------------------------------------
+  /**
+   * Reorder a range of nodes so that the node at index k has the coordinate
+   * that it would have if they were sorted along an axis, with no greater
+   * coordinates before it and no lesser ones after it (quickselect).
+   */
+  protected void select(int[] nodes, int from, int to, int k, int axis)
+  {
+    int lo = from;
+    int hi = to - 1;
+    while (lo < hi)
+    {
+      int pivot = _coords[3 * nodes[(lo + hi) >>> 1] + axis];
+      int i = lo;
+      int j = hi;
+      while (i <= j)
+      {
+        while (_coords[3 * nodes[i] + axis] < pivot)
+        {
+          ++i;
+        }
+        while (_coords[3 * nodes[j] + axis] > pivot)
+        {
+          --j;
+        }
+        if (i <= j)
+        {
+          int swap = nodes[i];
+          nodes[i] = nodes[j];
+          nodes[j] = swap;
+          ++i;
+          --j;
+        }
+      }
+      if (k <= j)
+      {
+        hi = j;
+      }
+      else if (k >= i)
+      {
+        lo = i;
+      }
+      else
+      {
+        break;
+      }
+    }
+  } // select
+
+  // --------------------------------------------------------------------------
+  /**
+   * The initial number of nodes that can be held without growing the arrays.
+   */
+  protected static final int    INITIAL_CAPACITY  = 256;
+
+  /**
+   * The fraction of the edits in a subtree that one of its children can hold
+   * before the subtree may need rebuilding.
+   */
+  protected static final double ALPHA             = 0.7;
+
+  /**
+   * The natural logarithm of 1 / ALPHA, which relates the number of edits to
+   * the maximum depth of a leaf.
+   */
+  protected static final double LOG_INVERSE_ALPHA = Math.log(1 / ALPHA);
+
+  /**
+   * The edit at each node.
+   */
+  protected BlockEdit[]         _edits;
+
+  /**
+   * The x, y and z coordinates of each node, consecutively.
+   */
+  protected int[]               _coords;
+
+  /**
+   * The minimum x, y and z, then maximum x, y and z coordinates of the
+   * subtree rooted at each node, consecutively.
+   */
+  protected int[]               _bounds;
+
+  /**
+   * The left child of each node, or -1.
+   */
+  protected int[]               _left;
+
+  /**
+   * The right child of each node, or -1.
+   */
+  protected int[]               _right;
+
+  /**
+   * The number of nodes in the subtree rooted at each node.
+   */
+  protected int[]               _count;
+
+  /**
+   * The axis along which each node splits its subtree: 0 for x, 1 for y and 2
+   * for z.
+   */
+  protected byte[]              _axis;
+
+  /**
+   * The number of nodes.
+   */
+  protected int                 _size;
+
+  /**
+   * The root node, or -1 if the tree is empty.
+   */
+  protected int                 _root             = -1;
+
+  /**
+   * The nodes passed through by the most recent add().
+   */
+  protected int[]               _path             = new int[64];
+
+  /**
+   * During nearest(), the best nodes found so far, nearest first.
+   */
+  protected int[]               _bestNodes;
+
+  /**
+   * During nearest(), the squared distances of the best nodes.
+   */
+  protected double[]            _bestDistances;
+
+  /**
+   * During nearest(), the number of best nodes found so far.
+   */
+  protected int                 _bestCount;
+
+  /**
+   * During nearestAlongRay(), the best node found so far, or -1.
+   */
+  protected int                 _rayBestNode;
+
+  /**
+   * During nearestAlongRay(), the distance along the ray of the best node, or
+   * the maximum distance if there is none.
+   */
+  protected double              _rayBestDistance;
+} // class KdTree
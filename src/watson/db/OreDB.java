@@ -4,13 +4,17 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Level;
 
 import watson.Configuration;
 import watson.Controller;
 import watson.DisplaySettings;
+import watson.analysis.RatioAnalysis;
 import watson.analysis.ServerTime;
 import watson.chat.Chat;
 import watson.chat.Colour;
@@ -76,6 +80,8 @@ public class OreDB
 
     // The first call to tpNex() will increment this to 1.
     _tpIndex = 0;
+    _visited.clear();
+    _coverage.clear();
     invalidateOreDepositSequence();
   } // clear
 
@@ -201,9 +207,71 @@ public class OreDB
     {
       db.removeDeposits(player);
     }
+
+    // Coverage of all players no longer holds for this one.
+    _coverage.remove(player.toLowerCase());
+    _coverage.remove(ALL_PLAYERS);
     invalidateOreDepositSequence();
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Record that all of the stone and diamond ore destroyed by the specified
+   * player in the time range [since,before) has been loaded, so that ratios
+   * in that range can be computed without querying the server.
+   *
+   * @param player the case-insensitive player name, or {@link #ALL_PLAYERS}.
+   * @param since the start time, inclusive.
+   * @param before the end time, exclusive.
+   */
+  public void addCoverage(String player, long since, long before)
+  {
+    player = player.toLowerCase();
+    TimeCoverage coverage = _coverage.get(player);
+    if (coverage == null)
+    {
+      coverage = new TimeCoverage();
+      _coverage.put(player, coverage);
+    }
+    coverage.add(since, before);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time ranges recorded by {@link #addCoverage(String, long, long)},
+   * by lower case player name or {@link #ALL_PLAYERS}.
+   *
+   * @return the time ranges recorded, by player.
+   */
+  public Map<String, TimeCoverage> getCoverage()
+  {
+    return _coverage;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time ranges in which all of the stone and diamond ore destroyed
+   * by the specified player has been loaded.
+   *
+   * @param player the case-insensitive player name.
+   * @return the time ranges.
+   */
+  protected TimeCoverage getCoverage(String player)
+  {
+    TimeCoverage coverage = new TimeCoverage();
+    TimeCoverage forPlayer = _coverage.get(player.toLowerCase());
+    if (forPlayer != null)
+    {
+      coverage.addAll(forPlayer);
+    }
+    TimeCoverage forAll = _coverage.get(ALL_PLAYERS);
+    if (forAll != null)
+    {
+      coverage.addAll(forAll);
+    }
+    return coverage;
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Teleport to the next ore deposit.
@@ -238,6 +306,7 @@ public class OreDB
     {
       _tpIndex = index = limitOreDepositIndex(index);
       OreDeposit deposit = getOreDeposit(index);
+      _visited.add(deposit);
       IntCoord coord = deposit.getKeyOreBlock().getLocation();
       Controller.instance.teleport(coord.getX(), coord.getY(), coord.getZ());
       Chat.localOutput(String.format(Locale.US,
@@ -248,31 +317,91 @@ public class OreDB
     }
   } // tpIndex
 
+  // --------------------------------------------------------------------------
+  /**
+   * Teleport to the ore deposit nearest the specified position that has not
+   * been teleported to since the last "/w clear".
+   *
+   * Once every deposit has been visited, they are all considered unvisited
+   * again.
+   *
+   * @param x the x coordinate of the position.
+   * @param y the y coordinate of the position.
+   * @param z the z coordinate of the position.
+   */
+  public void tpNearest(double x, double y, double z)
+  {
+    ArrayList<OreDeposit> deposits = getOreDepositSequence();
+    if (deposits.isEmpty())
+    {
+      Chat.localError("There are no ore deposits to teleport to.");
+      return;
+    }
+
+    if (_visited.size() >= deposits.size())
+    {
+      _visited.retainAll(deposits);
+      if (_visited.size() == deposits.size())
+      {
+        Chat.localOutput("All ore deposits have been visited. Starting again.");
+        _visited.clear();
+      }
+    }
+
+    // There are at most a few hundred deposits, so a linear search is fine.
+    int nearest = 0;
+    double nearestDistance = Double.MAX_VALUE;
+    for (int i = 0; i < deposits.size(); ++i)
+    {
+      OreDeposit deposit = deposits.get(i);
+      if (!_visited.contains(deposit))
+      {
+        IntCoord coord = deposit.getKeyOreBlock().getLocation();
+        double dx = coord.getX() + 0.5 - x;
+        double dy = coord.getY() + 0.5 - y;
+        double dz = coord.getZ() + 0.5 - z;
+        double distance = dx * dx + dy * dy + dz * dz;
+        if (distance < nearestDistance)
+        {
+          nearest = i + 1;
+          nearestDistance = distance;
+        }
+      }
+    }
+    tpIndex(nearest);
+  } // tpNearest
+
   // --------------------------------------------------------------------------
   /**
    * Show stone:diamond ratios for the overall mining session (all diamond ore
    * deposits) as well as time periods where diamonds are particularly close
    * together in time.
+   *
+   * Only deposits in the time window set by "/w edits since|before" are
+   * considered.
    */
   public void showRatios()
   {
-    // If ServerTime doesn't have a stored time difference for this server,
-    // do a query to find that out.
+    // If ServerTime has neither stored nor estimated a time difference for
+    // this server, do a query to find that out.
     ServerTime.instance.queryServerTime(false);
-    TypedOreDB diamonds = getDB(BlockTypeRegistry.instance.getBlockTypeById(56));
+    ArrayList<OreDeposit> deposits = getDepositsInTimeWindow(getDB(BlockTypeRegistry.instance.getBlockTypeById(56)));
 
     // Show the overall ratio for all mining.
-    if (diamonds.getOreDepositCount() != 0)
+    if (!deposits.isEmpty())
     {
-      showRatio(diamonds.getOreDeposits().first(),
-        diamonds.getOreDeposits().last());
+      OreDeposit firstDeposit = deposits.get(0);
+      OreDeposit lastDeposit = deposits.get(deposits.size() - 1);
+      showRatio(firstDeposit, lastDeposit);
+      showLowestRatio(deposits);
+
       // Find time periods where there are 3 more more deposits in a 15 minute
       // period.
       int count = 0;
       OreDeposit first = null;
       OreDeposit last = null;
       long lastTime = 0;
-      for (OreDeposit deposit : diamonds.getOreDeposits())
+      for (OreDeposit deposit : deposits)
       {
         long depositTime = deposit.getKeyOreBlock().getEdit().time;
 
@@ -287,10 +416,10 @@ public class OreDB
           // If the next deposit is more than 7 minutes after the previous, or
           // if this is the last of the ore deposits, then our run of
           // consecutive deposits is over.
-          if (Math.abs(depositTime - lastTime) > 7 * 60 * 1000
-              || deposit == diamonds.getOreDeposits().last())
+          if (Math.abs(depositTime - lastTime) > SESSION_GAP_MILLIS
+              || deposit == lastDeposit)
           {
-            if (deposit == diamonds.getOreDeposits().last())
+            if (deposit == lastDeposit)
             {
               last = deposit;
             }
@@ -299,7 +428,7 @@ public class OreDB
             // No point in calculating the ratio for ALL deposits here, since we
             // do that anyway.
             if (count >= 3
-                && (first != diamonds.getOreDeposits().first() || last != diamonds.getOreDeposits().last()))
+                && (first != firstDeposit || last != lastDeposit))
             {
               showRatio(first, last);
             }
@@ -318,35 +447,74 @@ public class OreDB
     } // if there are deposits
     else
     {
-      Chat.localOutput("There are no diamond ore deposits.");
+      Chat.localOutput(isTimeWindowSet()
+        ? "There are no diamond ore deposits in the time window."
+        : "There are no diamond ore deposits.");
     }
   } // showRatios
 
   // --------------------------------------------------------------------------
   /**
-   * Automatically run "/w pre" to show the tunnels leading up to a configured
-   * maximum number of diamond deposits.
+   * List the tunnels dug by a player, longest first, with the number of ore
+   * blocks mined on and off the axis of each tunnel.
+   *
+   * Only tunnels dug at least partly within the time window set by "/w edits
+   * since|before" are listed.
+   *
+   * @param edits the player's edits.
    */
-  public void showTunnels()
+  public void showTunnels(PlayerEditSet edits)
   {
-    // TODO: This won't work without a way of queueing up commands over a long
-    // period of time and waiting for each to complete.
-    // // Show at most the configured maximum number of tunnels.
-    // TypedOreDB diamonds =
-    // getDB(BlockTypeRegistry.instance.getBlockTypeById(56));
-    // int count = 0;
-    // for (OreDeposit deposit : diamonds.getOreDeposits())
-    // {
-    // Controller.instance.selectBlockEdit(deposit.getKeyOreBlock().getEdit());
-    // Controller.instance.queryPreviousEdits();
-    //
-    // ++count;
-    // // TODO: Replace magic number with configuration setting.
-    // if (count > 10)
-    // {
-    // break;
-    // }
-    // } // for
+    ArrayList<TunnelDetector.Tunnel> tunnels = new ArrayList<TunnelDetector.Tunnel>();
+    for (TunnelDetector.Tunnel tunnel : edits.getTunnels(this))
+    {
+      if (tunnel.endTime >= _since && tunnel.startTime < _before)
+      {
+        tunnels.add(tunnel);
+      }
+    }
+    if (tunnels.isEmpty())
+    {
+      Chat.localOutput(String.format(Locale.US, "%s dug no tunnels.", edits.getPlayer()));
+      return;
+    }
+
+    int blocks = 0;
+    int onAxis = 0;
+    int offAxis = 0;
+    for (TunnelDetector.Tunnel tunnel : tunnels)
+    {
+      blocks += tunnel.blocks;
+      onAxis += tunnel.onAxisOre;
+      offAxis += tunnel.offAxisOre;
+    }
+    Chat.localOutput(String.format(Locale.US,
+      "%s dug %d tunnels (%d blocks); ore on axis: %d, off axis: %d (%.0f%%).",
+      edits.getPlayer(), tunnels.size(), blocks, onAxis, offAxis,
+      (onAxis + offAxis == 0) ? 0.0 : 100.0 * offAxis / (onAxis + offAxis)));
+
+    Collections.sort(tunnels, new Comparator<TunnelDetector.Tunnel>()
+    {
+      @Override
+      public int compare(TunnelDetector.Tunnel t1, TunnelDetector.Tunnel t2)
+      {
+        return t2.getLength() - t1.getLength();
+      }
+    });
+    int count = Math.min(tunnels.size(), MAX_LISTED_TUNNELS);
+    for (int i = 0; i < count; ++i)
+    {
+      TunnelDetector.Tunnel tunnel = tunnels.get(i);
+      Chat.localOutput(String.format(Locale.US,
+        "  %s %d %s from (%d, %d, %d), ore on/off axis: %d/%d",
+        TimeStamp.formatMonthDayTime(tunnel.startTime), tunnel.getLength(),
+        tunnel.getDirection(), tunnel.startX, tunnel.startY, tunnel.startZ,
+        tunnel.onAxisOre, tunnel.offAxisOre));
+    }
+    if (tunnels.size() > count)
+    {
+      Chat.localOutput(String.format(Locale.US, "  ... and %d shorter tunnels.", tunnels.size() - count));
+    }
   } // showTunnels
 
   // --------------------------------------------------------------------------
@@ -412,9 +580,15 @@ public class OreDB
 
   // --------------------------------------------------------------------------
   /**
-   * Issue a LogBlock query for the time period 7 minutes before the specified
-   * first {@link OreDeposit} to the start of the next minute after the last
-   * {@link OreDeposit}.
+   * Show the stone:diamond ratio for the time period 7 minutes before the
+   * specified first {@link OreDeposit} to the start of the next minute after
+   * the last {@link OreDeposit}.
+   *
+   * The ratio is computed locally for the parts of that period in which all of
+   * the player's stone and diamond ore destructions are known to be loaded
+   * (see {@link #addCoverage(String, long, long)}). For each remaining part, a
+   * LogBlock query is issued and the result is reported by
+   * {@link watson.analysis.RatioAnalysis}.
    *
    * @param first the first deposit.
    * @param last the last deposit.
@@ -443,17 +617,169 @@ public class OreDB
     //
     // Assume that the player is the same for all diamonds in the period.
     String player = first.getKeyOreBlock().getEdit().player;
-    String sinceTime = TimeStamp.formatQueryTime(startTime.getTimeInMillis());
-    String beforeTime = TimeStamp.formatQueryTime(endTime.getTimeInMillis());
+    long start = startTime.getTimeInMillis();
+    long end = endTime.getTimeInMillis();
+    EditTimeIndex index = getTimeIndex(first);
+    long gapStart = start;
+    if (index != null)
+    {
+      for (long[] covered : getCoverage(player).getCovered(start, end))
+      {
+        // Leave slivers of coverage to the server query for the gap around them.
+        if (covered[1] - covered[0] >= MIN_LOCAL_RATIO_MILLIS)
+        {
+          if (gapStart < covered[0])
+          {
+            queryRatio(player, gapStart, covered[0]);
+          }
+          int stone = index.getStoneCount(covered[0], covered[1]);
+          int diamonds = index.getDiamondCount(covered[0], covered[1]);
+          Chat.localOutput(String.format(Locale.US, "Between %s and %s:",
+            TimeStamp.formatQueryTime(covered[0]), TimeStamp.formatQueryTime(covered[1])));
+          Chat.localOutput(RatioAnalysis.formatRatio(stone, diamonds));
+          gapStart = covered[1];
+        }
+      }
+    }
+    if (gapStart < end)
+    {
+      queryRatio(player, gapStart, end);
+    }
+  } // showRatio
 
+  // --------------------------------------------------------------------------
+  /**
+   * Issue a LogBlock query for the stone and diamond ore destroyed by a player
+   * in the time range [since,before), whose result is reported by
+   * {@link watson.analysis.RatioAnalysis}.
+   *
+   * @param player the player.
+   * @param since the start time, inclusive.
+   * @param before the end time, exclusive.
+   */
+  protected void queryRatio(String player, long since, long before)
+  {
     // The player name is at most 16 characters. As such, this query will be 96
     // characters long and will NOT result in a kick for being >100 characters.
     String query = String.format(Locale.US,
-      "/lb player %s since %s before %s sum b block 1 56", player, sinceTime,
-      beforeTime);
+      "/lb player %s since %s before %s sum b block 1 56", player,
+      TimeStamp.formatQueryTime(since), TimeStamp.formatQueryTime(before));
     Log.debug(query);
     Controller.instance.serverChat(query);
-  } // showRatio
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Show the lowest stone:diamond ratio in any 7 minute period ending at a
+   * diamond ore deposit, considering only the periods in which all of the
+   * player's stone and diamond ore destructions are known to be loaded.
+   *
+   * Each period is counted in constant time by the player's
+   * {@link EditTimeIndex}, so this is linear in the number of deposits.
+   *
+   * @param deposits the diamond ore deposits, in time order.
+   */
+  protected void showLowestRatio(ArrayList<OreDeposit> deposits)
+  {
+    OreDeposit first = deposits.get(0);
+    EditTimeIndex index = getTimeIndex(first);
+    if (deposits.size() < 2 || index == null)
+    {
+      return;
+    }
+
+    TimeCoverage coverage = getCoverage(first.getKeyOreBlock().getEdit().player);
+    int lowestStone = 0;
+    int lowestDiamonds = 0;
+    long lowestEnd = 0;
+    for (OreDeposit deposit : deposits)
+    {
+      // Include the last edit of the deposit in the period.
+      long end = deposit.getLatestEdit().time + 1;
+      if (!coverage.covers(end - SESSION_GAP_MILLIS, end))
+      {
+        continue;
+      }
+      int stone = index.getStoneCount(end - SESSION_GAP_MILLIS, end);
+      int count = index.getDiamondCount(end - SESSION_GAP_MILLIS, end);
+      if (stone > 0 && count > 0
+          && (lowestDiamonds == 0 || stone * (long) lowestDiamonds < lowestStone * (long) count))
+      {
+        lowestStone = stone;
+        lowestDiamonds = count;
+        lowestEnd = end;
+      }
+    }
+
+    if (lowestDiamonds != 0)
+    {
+      Chat.localOutput(String.format(Locale.US, "Lowest ratio in 7 minutes, between %s and %s:",
+        TimeStamp.formatQueryTime(lowestEnd - SESSION_GAP_MILLIS),
+        TimeStamp.formatQueryTime(lowestEnd)));
+      Chat.localOutput(RatioAnalysis.formatRatio(lowestStone, lowestDiamonds));
+    }
+  } // showLowestRatio
+
+  // --------------------------------------------------------------------------
+  /**
+   * Limit the analyses of ore deposits and tunnels to the time range
+   * [since,before).
+   *
+   * @param since the start time, inclusive, or Long.MIN_VALUE for no limit.
+   * @param before the end time, exclusive, or Long.MAX_VALUE for no limit.
+   */
+  public void setTimeWindow(long since, long before)
+  {
+    _since = since;
+    _before = before;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the analyses are limited to a time range.
+   *
+   * @return true if the analyses are limited to a time range.
+   */
+  protected boolean isTimeWindowSet()
+  {
+    return _since != Long.MIN_VALUE || _before != Long.MAX_VALUE;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the deposits of the specified type whose key ore block was mined in
+   * the time window, in time order.
+   *
+   * @param db the deposits of one type of ore.
+   * @return the deposits in the time window.
+   */
+  protected ArrayList<OreDeposit> getDepositsInTimeWindow(TypedOreDB db)
+  {
+    ArrayList<OreDeposit> deposits = new ArrayList<OreDeposit>();
+    for (OreDeposit deposit : db.getOreDeposits())
+    {
+      long time = deposit.getKeyOreBlock().getEdit().time;
+      if (time >= _since && time < _before)
+      {
+        deposits.add(deposit);
+      }
+    }
+    return deposits;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the time index of the edits of the player who mined the specified
+   * deposit, or null if the deposit's edits are not in a {@link PlayerEditSet}.
+   *
+   * @param deposit the deposit.
+   * @return the time index, or null.
+   */
+  protected EditTimeIndex getTimeIndex(OreDeposit deposit)
+  {
+    PlayerEditSet edits = deposit.getKeyOreBlock().getEdit().playerEditSet;
+    return (edits != null) ? edits.getTimeIndex() : null;
+  }
 
   // --------------------------------------------------------------------------
   /**
@@ -590,6 +916,13 @@ public class OreDB
    */
   protected int                                  _tpIndex                   = 0;
 
+  /**
+   * The {@link OreDeposit}s that have been teleported to since the last
+   * "/w clear", so that {@link #tpNearest(double, double, double)} can skip
+   * them.
+   */
+  protected HashSet<OreDeposit>                  _visited                   = new HashSet<OreDeposit>();
+
   /**
    * To support fast iteration through all {@link OreDeposit}s, to draw labels
    * quickly, we keep a cache of them in the order they should be numbered.
@@ -618,4 +951,43 @@ public class OreDB
    * has changed since then, then the sequence must be recomputed.
    */
   protected boolean                              _lastTimeOrderedDeposits   = true;
+
+  /**
+   * The start of the time range of analysed edits (inclusive).
+   */
+  protected long                                 _since                     = Long.MIN_VALUE;
+
+  /**
+   * The end of the time range of analysed edits (exclusive).
+   */
+  protected long                                 _before                    = Long.MAX_VALUE;
+
+  /**
+   * The maximum time between diamond deposits in the same mining session, and
+   * the length of the period before a deposit in which stone is counted.
+   */
+  protected static final long                    SESSION_GAP_MILLIS         = 7 * 60 * 1000;
+
+  /**
+   * The key of the coverage of the edits of all players in
+   * {@link #addCoverage(String, long, long)}.
+   */
+  public static final String                     ALL_PLAYERS                = "*";
+
+  /**
+   * The shortest part of a period whose ratio is computed locally by
+   * {@link #showRatio(OreDeposit, OreDeposit)}.
+   */
+  protected static final long                    MIN_LOCAL_RATIO_MILLIS     = 60 * 1000;
+
+  /**
+   * The time ranges in which all stone and diamond ore destroyed by a player
+   * has been loaded, by lower case player name or ALL_PLAYERS.
+   */
+  protected HashMap<String, TimeCoverage>        _coverage                  = new HashMap<String, TimeCoverage>();
+
+  /**
+   * The maximum number of tunnels listed by {@link #showTunnels(PlayerEditSet)}.
+   */
+  protected static final int                     MAX_LISTED_TUNNELS         = 10;
 } // class OreDB
@@ -2,7 +2,9 @@ package watson.db;
 
 import java.io.PrintWriter;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TreeSet;
 
 import com.mumfrey.liteloader.gl.GL;
@@ -104,14 +106,40 @@ public class PlayerEditSet
   /**
    * Add the specified edit to the list.
    *
+   * An edit that is more recent than all of those already examined by the
+   * {@link TunnelDetector} is fed to it straight away, so that tunnels are
+   * found as results stream in. An older edit means that the tunnels must be
+   * found again from the start; that is deferred until they are next needed,
+   * since results are often listed most recent first.
+   *
    * @param edit the BlockEdit describing an edit to add.
+   * @param oreDB the OreDB that determines which blocks are ores.
+   * @return true if the edit was not already present.
    */
-  public synchronized void addBlockEdit(BlockEdit edit)
+  public synchronized boolean addBlockEdit(BlockEdit edit, OreDB oreDB)
   {
-    _edits.add(edit);
+    boolean added = _edits.add(edit);
+    if (added && _timeIndex != null)
+    {
+      _timeIndex.add(edit);
+    }
+    if (added && _tunnelDetector != null)
+    {
+      if (_lastTunnelEdit == null || _edits.comparator().compare(edit, _lastTunnelEdit) > 0)
+      {
+        _tunnelDetector.addBlockEdit(edit, oreDB.isOre(OreDB.getMergedBlockType(edit.type)));
+        _lastTunnelEdit = edit;
+      }
+      else
+      {
+        _tunnelDetector = null;
+        _lastTunnelEdit = null;
+      }
+    }
 
     // Reference container for fast visibility toggling of ore deposit labels.
     edit.playerEditSet = this;
+    return added;
   }
 
   // --------------------------------------------------------------------------
@@ -125,6 +153,79 @@ public class PlayerEditSet
     return _edits.size();
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return an index for counting this player's edits by time.
+   *
+   * The index is built when first needed and then kept up to date as edits
+   * are added.
+   *
+   * @return an index for counting this player's edits by time.
+   */
+  public synchronized EditTimeIndex getTimeIndex()
+  {
+    if (_timeIndex == null)
+    {
+      _timeIndex = new EditTimeIndex(_edits);
+    }
+    return _timeIndex;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the edits in the time range [from,to), from oldest to most recent.
+   *
+   * The returned list is a read-only view of the {@link EditTimeIndex}, found
+   * by binary search without copying any edits. It is safe to iterate without
+   * locking, and does not include edits added subsequently.
+   *
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return the edits in the time range.
+   */
+  public synchronized List<BlockEdit> edits(long from, long to)
+  {
+    return getTimeIndex().edits(from, to);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of edits in the time range [from,to).
+   *
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return the number of edits in the time range.
+   */
+  public synchronized int getBlockEditCount(long from, long to)
+  {
+    return getTimeIndex().count(from, to);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the tunnels dug by this player, from oldest to most recent.
+   *
+   * If an edit older than those already examined has been added, all edits
+   * are examined again by a new {@link TunnelDetector}, which is then kept up
+   * to date by addBlockEdit().
+   *
+   * @param oreDB the OreDB that determines which blocks are ores.
+   * @return an unmodifiable list of the tunnels.
+   */
+  public synchronized List<TunnelDetector.Tunnel> getTunnels(OreDB oreDB)
+  {
+    if (_tunnelDetector == null)
+    {
+      _tunnelDetector = new TunnelDetector();
+      for (BlockEdit edit : _edits)
+      {
+        _tunnelDetector.addBlockEdit(edit, oreDB.isOre(OreDB.getMergedBlockType(edit.type)));
+      }
+      _lastTunnelEdit = _edits.isEmpty() ? null : _edits.last();
+    }
+    return _tunnelDetector.getTunnels();
+  } // getTunnels
+
   // --------------------------------------------------------------------------
   /**
    * Set the visibility of this player's edits in the dimension to which this
@@ -152,15 +253,18 @@ public class PlayerEditSet
 
   // --------------------------------------------------------------------------
   /**
-   * Draw wireframe outlines of all blocks.
+   * Draw wireframe outlines of all blocks edited in the time range [from,to).
+   *
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
    */
-  public synchronized void drawOutlines()
+  public synchronized void drawOutlines(long from, long to)
   {
     if (isVisible())
     {
       if (Controller.instance.getDisplaySettings().isOutlineShown())
       {
-        for (BlockEdit edit : _edits)
+        for (BlockEdit edit : getEdits(from, to))
         {
           edit.drawOutline();
         }
@@ -170,14 +274,18 @@ public class PlayerEditSet
 
   // --------------------------------------------------------------------------
   /**
-   * Draw direction vectors indicating motion of the miner.
+   * Draw direction vectors indicating motion of the miner in the time range
+   * [from,to).
    *
    * @param colour the colour to draw the vectors.
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
    */
-  public synchronized void drawVectors(ARGB colour)
+  public synchronized void drawVectors(ARGB colour, long from, long to)
   {
     DisplaySettings settings = Controller.instance.getDisplaySettings();
-    if (settings.areVectorsShown() && isVisible() && !_edits.isEmpty())
+    Collection<BlockEdit> edits = getEdits(from, to);
+    if (settings.areVectorsShown() && isVisible() && !edits.isEmpty())
     {
       final Tessellator tess = Tessellator.getInstance();
       final BufferBuilder vb = tess.getBuffer();
@@ -192,7 +300,7 @@ public class PlayerEditSet
       Vec3d unitY = new Vec3d(0, 1, 0);
 
       // We only need to draw vectors if there are at least 2 edits.
-      Iterator<BlockEdit> it = _edits.iterator();
+      Iterator<BlockEdit> it = edits.iterator();
       if (it.hasNext())
       {
         BlockEdit prev = it.next();
@@ -278,6 +386,22 @@ public class PlayerEditSet
     } // if drawing
   } // drawVectors
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the edits in the time range [from,to) for drawing.
+   *
+   * The time index is updated as edits are added, so taking a view of it every
+   * frame is cheap even while query results are arriving.
+   *
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return the edits in the time range.
+   */
+  protected Collection<BlockEdit> getEdits(long from, long to)
+  {
+    return getTimeIndex().edits(from, to);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Write the edits for this player to the specified PrintWriter.
@@ -286,27 +410,55 @@ public class PlayerEditSet
    * @return the number of edits saved.
    */
   public synchronized int save(PrintWriter writer)
+  {
+    return save(writer, Long.MIN_VALUE);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write the edits for this player at or after the specified time to the
+   * specified PrintWriter.
+   *
+   * @param writer the PrintWriter.
+   * @param since the time of the oldest edit to save.
+   * @return the number of edits saved.
+   */
+  public synchronized int save(PrintWriter writer, long since)
   {
     Calendar calendar = Calendar.getInstance();
     int editCount = 0;
-    for (BlockEdit edit : _edits)
+    for (BlockEdit edit : getEdits(since, Long.MAX_VALUE))
     {
-      calendar.setTimeInMillis(edit.time);
-      int year = calendar.get(Calendar.YEAR);
-      int month = calendar.get(Calendar.MONTH) + 1;
-      int day = calendar.get(Calendar.DAY_OF_MONTH);
-      int hour = calendar.get(Calendar.HOUR_OF_DAY);
-      int minute = calendar.get(Calendar.MINUTE);
-      int second = calendar.get(Calendar.SECOND);
-      char action = edit.creation ? 'c' : 'd';
-      writer.format("%4d-%02d-%02d|%02d:%02d:%02d|%s|%c|%d|%d|%d|%d|%d\n",
-                    year, month, day, hour, minute, second, edit.player, action,
-                    edit.type.getId(), edit.type.getData(), edit.x, edit.y, edit.z);
+      write(writer, calendar, edit);
       ++editCount;
-    } // for
+    }
     return editCount;
   } // save
 
+  // --------------------------------------------------------------------------
+  /**
+   * Write one edit to the specified PrintWriter in the format read by
+   * {@link BlockEditSet#load(java.io.File)}.
+   *
+   * @param writer the PrintWriter.
+   * @param calendar a Calendar used to format the time of the edit.
+   * @param edit the edit.
+   */
+  static void write(PrintWriter writer, Calendar calendar, BlockEdit edit)
+  {
+    calendar.setTimeInMillis(edit.time);
+    int year = calendar.get(Calendar.YEAR);
+    int month = calendar.get(Calendar.MONTH) + 1;
+    int day = calendar.get(Calendar.DAY_OF_MONTH);
+    int hour = calendar.get(Calendar.HOUR_OF_DAY);
+    int minute = calendar.get(Calendar.MINUTE);
+    int second = calendar.get(Calendar.SECOND);
+    char action = edit.creation ? 'c' : 'd';
+    writer.format("%4d-%02d-%02d|%02d:%02d:%02d|%s|%c|%d|%d|%d|%d|%d\n",
+                  year, month, day, hour, minute, second, edit.player, action,
+                  edit.type.getId(), edit.type.getData(), edit.x, edit.y, edit.z);
+  } // write
+
   // --------------------------------------------------------------------------
   /**
    * The name of the player who did these edits.
@@ -319,6 +471,22 @@ public class PlayerEditSet
    */
   protected TreeSet<BlockEdit>  _edits                 = new TreeSet<BlockEdit>(new BlockEditComparator());
 
+  /**
+   * Index of the edits by time, or null if it must be rebuilt.
+   */
+  protected EditTimeIndex       _timeIndex;
+
+  /**
+   * Finds tunnels in the edits as they are added, or null if it must be
+   * recreated because an edit arrived out of time order.
+   */
+  protected TunnelDetector      _tunnelDetector        = new TunnelDetector();
+
+  /**
+   * The most recent edit examined by _tunnelDetector, or null if none.
+   */
+  protected BlockEdit           _lastTunnelEdit;
+
   /**
    * True if this player's edits are visible.
    */
@@ -0,0 +1,221 @@
+package watson.db;
+
+import java.util.Locale;
+
+// ----------------------------------------------------------------------------
+/**
+ * A selected region of the world: either a box, given by two opposite corners,
+ * or a sphere, given by its centre and radius.
+ *
+ * Instances are immutable.
+ */
+public class Region
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Return the box with the specified opposite corners, inclusive.
+   *
+   * @param x1 the x coordinate of one corner.
+   * @param y1 the y coordinate of one corner.
+   * @param z1 the z coordinate of one corner.
+   * @param x2 the x coordinate of the opposite corner.
+   * @param y2 the y coordinate of the opposite corner.
+   * @param z2 the z coordinate of the opposite corner.
+   * @return the box.
+   */
+  public static Region box(int x1, int y1, int z1, int x2, int y2, int z2)
+  {
+    return new Region(Math.min(x1, x2), Math.min(y1, y2), Math.min(z1, z2),
+      Math.max(x1, x2), Math.max(y1, y2), Math.max(z1, z2), -1);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the sphere with the specified centre and radius.
+   *
+   * A block is in the sphere if its distance from the centre, in whole blocks,
+   * is no more than the radius.
+   *
+   * @param x the x coordinate of the centre.
+   * @param y the y coordinate of the centre.
+   * @param z the z coordinate of the centre.
+   * @param radius the radius, in blocks.
+   * @return the sphere.
+   */
+  public static Region sphere(int x, int y, int z, int radius)
+  {
+    return new Region(x - radius, y - radius, z - radius,
+      x + radius, y + radius, z + radius, radius);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the region contains the specified block.
+   *
+   * @param x the x coordinate of the block.
+   * @param y the y coordinate of the block.
+   * @param z the z coordinate of the block.
+   * @return true if the region contains the specified block.
+   */
+  public boolean contains(int x, int y, int z)
+  {
+    if (x < _minX || x > _maxX || y < _minY || y > _maxY || z < _minZ || z > _maxZ)
+    {
+      return false;
+    }
+    if (_radius < 0)
+    {
+      return true;
+    }
+    long dx = x - (_minX + _radius);
+    long dy = y - (_minY + _radius);
+    long dz = z - (_minZ + _radius);
+    return dx * dx + dy * dy + dz * dz <= (long) _radius * _radius;
+  } // contains
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the minimum x coordinate of the bounding box of the region.
+   *
+   * @return the minimum x coordinate of the bounding box of the region.
+   */
+  public int getMinX()
+  {
+    return _minX;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the minimum y coordinate of the bounding box of the region.
+   *
+   * @return the minimum y coordinate of the bounding box of the region.
+   */
+  public int getMinY()
+  {
+    return _minY;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the minimum z coordinate of the bounding box of the region.
+   *
+   * @return the minimum z coordinate of the bounding box of the region.
+   */
+  public int getMinZ()
+  {
+    return _minZ;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the maximum x coordinate of the bounding box of the region.
+   *
+   * @return the maximum x coordinate of the bounding box of the region.
+   */
+  public int getMaxX()
+  {
+    return _maxX;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the maximum y coordinate of the bounding box of the region.
+   *
+   * @return the maximum y coordinate of the bounding box of the region.
+   */
+  public int getMaxY()
+  {
+    return _maxY;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the maximum z coordinate of the bounding box of the region.
+   *
+   * @return the maximum z coordinate of the bounding box of the region.
+   */
+  public int getMaxZ()
+  {
+    return _maxZ;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a description of the region for display in chat.
+   *
+   * @return a description of the region.
+   */
+  @Override
+  public String toString()
+  {
+    if (_radius < 0)
+    {
+      return String.format(Locale.US, "the box from (%d, %d, %d) to (%d, %d, %d)",
+        _minX, _minY, _minZ, _maxX, _maxY, _maxZ);
+    }
+    else
+    {
+      return String.format(Locale.US, "the sphere of radius %d around (%d, %d, %d)",
+        _radius, _minX + _radius, _minY + _radius, _minZ + _radius);
+    }
+  } // toString
+
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param minX the minimum x coordinate of the bounding box.
+   * @param minY the minimum y coordinate of the bounding box.
+   * @param minZ the minimum z coordinate of the bounding box.
+   * @param maxX the maximum x coordinate of the bounding box.
+   * @param maxY the maximum y coordinate of the bounding box.
+   * @param maxZ the maximum z coordinate of the bounding box.
+   * @param radius the radius of a sphere, or -1 for a box.
+   */
+  protected Region(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int radius)
+  {
+    _minX = minX;
+    _minY = minY;
+    _minZ = minZ;
+    _maxX = maxX;
+    _maxY = maxY;
+    _maxZ = maxZ;
+    _radius = radius;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The minimum x coordinate of the bounding box.
+   */
+  protected final int _minX;
+
+  /**
+   * The minimum y coordinate of the bounding box.
+   */
+  protected final int _minY;
+
+  /**
+   * The minimum z coordinate of the bounding box.
+   */
+  protected final int _minZ;
+
+  /**
+   * The maximum x coordinate of the bounding box.
+   */
+  protected final int _maxX;
+
+  /**
+   * The maximum y coordinate of the bounding box.
+   */
+  protected final int _maxY;
+
+  /**
+   * The maximum z coordinate of the bounding box.
+   */
+  protected final int _maxZ;
+
+  /**
+   * The radius of a sphere, or -1 for a box.
+   */
+  protected final int _radius;
+} // class Region
@@ -0,0 +1,326 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ----------------------------------------------------------------------------
+/**
+ * An index over edits by location, used to find the edits in a {@link Region}
+ * without walking all of the edits.
+ *
+ * Edits are bucketed by the 16x16 block chunk column that contains them. The
+ * keys of the occupied chunks are held in a sorted array of longs that is
+ * binary searched, and the edits of each chunk are a contiguous range of a
+ * parallel array, alongside a copy of their coordinates so that edits outside
+ * the region can be rejected without dereferencing them. A query only looks at
+ * the chunks that overlap the bounding box of the region, or, if the region
+ * spans more chunks than are occupied, at each occupied chunk in turn.
+ *
+ * Edits added after the index is built go into a list for their chunk, kept
+ * apart from the arrays, so that adding an edit costs O(1). Once the added
+ * edits outnumber those in the arrays, the arrays are rebuilt to include them,
+ * which keeps the amortised cost of adding an edit at O(log n).
+ *
+ * This class is not thread-safe; it is only used by its {@link BlockEditSet},
+ * under that object's lock.
+ */
+public class SpatialIndex
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param edits the edits to index.
+   */
+  public SpatialIndex(Collection<BlockEdit> edits)
+  {
+    build(edits.toArray(new BlockEdit[edits.size()]));
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add an edit to the index.
+   *
+   * @param edit the edit.
+   */
+  public void add(BlockEdit edit)
+  {
+    long key = getChunkKey(edit.x >> 4, edit.z >> 4);
+    ArrayList<BlockEdit> chunk = _added.get(key);
+    if (chunk == null)
+    {
+      chunk = new ArrayList<BlockEdit>();
+      _added.put(key, chunk);
+    }
+    chunk.add(edit);
+    ++_addedCount;
+
+    if (_addedCount > Math.max(_edits.length, MIN_REBUILD))
+    {
+      BlockEdit[] all = Arrays.copyOf(_edits, _edits.length + _addedCount);
+      int i = _edits.length;
+      for (ArrayList<BlockEdit> added : _added.values())
+      {
+        for (BlockEdit addedEdit : added)
+        {
+          all[i++] = addedEdit;
+        }
+      }
+      _added.clear();
+      _addedCount = 0;
+      build(all);
+    }
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Replace the arrays with an index over the specified edits.
+   *
+   * @param unsorted the edits, in any order.
+   */
+  protected void build(BlockEdit[] unsorted)
+  {
+    int count = unsorted.length;
+
+    // Find the distinct chunks, in key order.
+    long[] keys = new long[count];
+    for (int i = 0; i < count; ++i)
+    {
+      keys[i] = getChunkKey(unsorted[i].x >> 4, unsorted[i].z >> 4);
+    }
+    long[] sortedKeys = keys.clone();
+    Arrays.sort(sortedKeys);
+    int chunks = 0;
+    for (int i = 0; i < count; ++i)
+    {
+      if (i == 0 || sortedKeys[i] != sortedKeys[i - 1])
+      {
+        sortedKeys[chunks++] = sortedKeys[i];
+      }
+    }
+    _chunkKeys = Arrays.copyOf(sortedKeys, chunks);
+
+    // Count the edits in each chunk, then place them after the edits of all
+    // preceding chunks.
+    int[] chunkOfEdit = new int[count];
+    _chunkStart = new int[chunks + 1];
+    for (int i = 0; i < count; ++i)
+    {
+      chunkOfEdit[i] = Arrays.binarySearch(_chunkKeys, keys[i]);
+      ++_chunkStart[chunkOfEdit[i] + 1];
+    }
+    for (int c = 0; c < chunks; ++c)
+    {
+      _chunkStart[c + 1] += _chunkStart[c];
+    }
+    int[] next = Arrays.copyOf(_chunkStart, chunks);
+    _edits = new BlockEdit[count];
+    _coords = new int[3 * count];
+    for (int i = 0; i < count; ++i)
+    {
+      int j = next[chunkOfEdit[i]]++;
+      BlockEdit edit = unsorted[i];
+      _edits[j] = edit;
+      _coords[3 * j] = edit.x;
+      _coords[3 * j + 1] = edit.y;
+      _coords[3 * j + 2] = edit.z;
+    }
+  } // build
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of edits indexed.
+   *
+   * @return the number of edits indexed.
+   */
+  public int size()
+  {
+    return _edits.length + _addedCount;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the number of distinct chunks containing edits.
+   *
+   * @return the number of distinct chunks containing edits.
+   */
+  public int getChunkCount()
+  {
+    int count = _chunkKeys.length;
+    for (long key : _added.keySet())
+    {
+      if (Arrays.binarySearch(_chunkKeys, key) < 0)
+      {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the edits in the specified region and time range [from,to), in no
+   * particular order.
+   *
+   * @param region the region.
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return the edits.
+   */
+  public List<BlockEdit> edits(Region region, long from, long to)
+  {
+    ArrayList<BlockEdit> result = new ArrayList<BlockEdit>();
+    int minChunkX = region.getMinX() >> 4;
+    int maxChunkX = region.getMaxX() >> 4;
+    int minChunkZ = region.getMinZ() >> 4;
+    int maxChunkZ = region.getMaxZ() >> 4;
+    long regionChunks = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+    if (regionChunks <= _chunkKeys.length + _added.size())
+    {
+      for (int chunkX = minChunkX; chunkX <= maxChunkX; ++chunkX)
+      {
+        for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; ++chunkZ)
+        {
+          long key = getChunkKey(chunkX, chunkZ);
+          int c = Arrays.binarySearch(_chunkKeys, key);
+          if (c >= 0)
+          {
+            addEdits(result, c, region, from, to);
+          }
+          if (_addedCount != 0)
+          {
+            ArrayList<BlockEdit> added = _added.get(key);
+            if (added != null)
+            {
+              addEdits(result, added, region, from, to);
+            }
+          }
+        }
+      }
+    }
+    else
+    {
+      for (int c = 0; c < _chunkKeys.length; ++c)
+      {
+        int chunkX = (int) (_chunkKeys[c] >> 32);
+        int chunkZ = (int) _chunkKeys[c];
+        if (chunkX >= minChunkX && chunkX <= maxChunkX && chunkZ >= minChunkZ && chunkZ <= maxChunkZ)
+        {
+          addEdits(result, c, region, from, to);
+        }
+      }
+      for (Map.Entry<Long, ArrayList<BlockEdit>> entry : _added.entrySet())
+      {
+        int chunkX = (int) (entry.getKey() >> 32);
+        int chunkZ = (int) entry.getKey().longValue();
+        if (chunkX >= minChunkX && chunkX <= maxChunkX && chunkZ >= minChunkZ && chunkZ <= maxChunkZ)
+        {
+          addEdits(result, entry.getValue(), region, from, to);
+        }
+      }
+    }
+    return result;
+  } // edits
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add the edits of one chunk that are in the region and time range to a
+   * list.
+   *
+   * @param result the list.
+   * @param chunk the index of the chunk in _chunkKeys.
+   * @param region the region.
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   */
+  protected void addEdits(List<BlockEdit> result, int chunk, Region region, long from, long to)
+  {
+    for (int i = _chunkStart[chunk]; i < _chunkStart[chunk + 1]; ++i)
+    {
+      if (region.contains(_coords[3 * i], _coords[3 * i + 1], _coords[3 * i + 2]))
+      {
+        BlockEdit edit = _edits[i];
+        if (edit.time >= from && edit.time < to)
+        {
+          result.add(edit);
+        }
+      }
+    }
+  } // addEdits
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add the edits of a chunk, added since the arrays were built, that are in
+   * the region and time range to a list.
+   *
+   * @param result the list.
+   * @param added the edits added to the chunk.
+   * @param region the region.
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   */
+  protected void addEdits(List<BlockEdit> result, List<BlockEdit> added, Region region, long from, long to)
+  {
+    for (BlockEdit edit : added)
+    {
+      if (region.contains(edit.x, edit.y, edit.z) && edit.time >= from && edit.time < to)
+      {
+        result.add(edit);
+      }
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the key of the chunk with the specified chunk coordinates.
+   *
+   * @param chunkX the x coordinate of the chunk (block x divided by 16).
+   * @param chunkZ the z coordinate of the chunk (block z divided by 16).
+   * @return the key.
+   */
+  protected static long getChunkKey(int chunkX, int chunkZ)
+  {
+    return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The minimum number of added edits that causes the arrays to be rebuilt.
+   */
+  protected static final int                          MIN_REBUILD = 1024;
+
+  /**
+   * The keys of the chunks containing edits in the arrays, in ascending order.
+   */
+  protected long[]                                    _chunkKeys;
+
+  /**
+   * Element c is the index in _edits of the first edit in the chunk whose key
+   * is _chunkKeys[c]; the last element is the number of edits.
+   */
+  protected int[]                                     _chunkStart;
+
+  /**
+   * The edits in the arrays, grouped by chunk.
+   */
+  protected BlockEdit[]                               _edits;
+
+  /**
+   * The x, y and z coordinates of each edit in _edits, consecutively.
+   */
+  protected int[]                                     _coords;
+
+  /**
+   * Edits added since the arrays were built, by chunk key.
+   */
+  protected final HashMap<Long, ArrayList<BlockEdit>> _added      = new HashMap<Long, ArrayList<BlockEdit>>();
+
+  /**
+   * The number of edits in _added.
+   */
+  protected int                                       _addedCount;
+} // class SpatialIndex
@@ -0,0 +1,163 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// ----------------------------------------------------------------------------
+/**
+ * A set of disjoint time ranges, [start,end), used to record the periods for
+ * which a query or file is known to have supplied all of the relevant edits.
+ *
+ * Overlapping and adjoining ranges are merged as they are added.
+ */
+public class TimeCoverage
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Add the range [start,end).
+   *
+   * @param start the start time, inclusive.
+   * @param end the end time, exclusive.
+   */
+  public void add(long start, long end)
+  {
+    if (start >= end)
+    {
+      return;
+    }
+
+    // Absorb a range that starts before and reaches the new one.
+    Map.Entry<Long, Long> before = _ranges.floorEntry(start);
+    if (before != null && before.getValue() >= start)
+    {
+      start = before.getKey();
+      end = Math.max(end, before.getValue());
+    }
+
+    // Absorb the ranges that start within the new one.
+    Map.Entry<Long, Long> next = _ranges.ceilingEntry(start);
+    while (next != null && next.getKey() <= end)
+    {
+      end = Math.max(end, next.getValue());
+      _ranges.remove(next.getKey());
+      next = _ranges.ceilingEntry(start);
+    }
+    _ranges.put(start, end);
+  } // add
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add all of the ranges of another set.
+   *
+   * @param other the other set.
+   */
+  public void addAll(TimeCoverage other)
+  {
+    for (Map.Entry<Long, Long> range : other._ranges.entrySet())
+    {
+      add(range.getKey(), range.getValue());
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the whole of the range [from,to) is covered.
+   *
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return true if the whole of the range is covered.
+   */
+  public boolean covers(long from, long to)
+  {
+    Map.Entry<Long, Long> range = _ranges.floorEntry(from);
+    return range != null && range.getValue() >= to;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the parts of the range [from,to) that are covered, in time order.
+   *
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return the covered parts, each as a {start, end} pair.
+   */
+  public List<long[]> getCovered(long from, long to)
+  {
+    ArrayList<long[]> covered = new ArrayList<long[]>();
+    Long first = _ranges.floorKey(from);
+    for (Map.Entry<Long, Long> range : _ranges.tailMap((first != null) ? first : from).entrySet())
+    {
+      if (range.getKey() >= to)
+      {
+        break;
+      }
+      long start = Math.max(from, range.getKey());
+      long end = Math.min(to, range.getValue());
+      if (start < end)
+      {
+        covered.add(new long[] {start, end});
+      }
+    }
+    return covered;
+  } // getCovered
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the parts of the range [from,to) that are not covered, in time
+   * order.
+   *
+   * @param from the start time, inclusive.
+   * @param to the end time, exclusive.
+   * @return the uncovered parts, each as a {start, end} pair.
+   */
+  public List<long[]> getGaps(long from, long to)
+  {
+    ArrayList<long[]> gaps = new ArrayList<long[]>();
+    long start = from;
+    for (long[] covered : getCovered(from, to))
+    {
+      if (start < covered[0])
+      {
+        gaps.add(new long[] {start, covered[0]});
+      }
+      start = covered[1];
+    }
+    if (start < to)
+    {
+      gaps.add(new long[] {start, to});
+    }
+    return gaps;
+  } // getGaps
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the ranges, as a map from start time to end time.
+   *
+   * @return an unmodifiable view of the ranges.
+   */
+  public SortedMap<Long, Long> getRanges()
+  {
+    return Collections.unmodifiableSortedMap(_ranges);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if no range is covered.
+   *
+   * @return true if no range is covered.
+   */
+  public boolean isEmpty()
+  {
+    return _ranges.isEmpty();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Map from the start time of each range to its end time.
+   */
+  protected TreeMap<Long, Long> _ranges = new TreeMap<Long, Long>();
+} // class TimeCoverage
@@ -32,6 +32,7 @@ public class TimeStamp
     // Try assuming that the year is the same as the reference.
     _time.set(_reference.get(Calendar.YEAR), month - 1, dayOfMonth, hour,
       minute, second);
+    _time.set(Calendar.MILLISECOND, 0);
 
     // If the resulting time is more into the future than the reference, then
     // we guessed the wrong year (assuming the LogBlock retention is NOT 51
@@ -64,6 +65,7 @@ public class TimeStamp
                               int minute, int second)
   {
     _time.set(year, month - 1, dayOfMonth, hour, minute, second);
+    _time.set(Calendar.MILLISECOND, 0);
     return _time.getTimeInMillis();
   }
 
@@ -126,6 +128,28 @@ public class TimeStamp
       _time.get(Calendar.MINUTE), _time.get(Calendar.SECOND));
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Parse a time in the format of a LogBlock "since" or "before" parameter,
+   * "DD.MM.YYYY [hh:mm[:ss]]"; the inverse of {@link #formatQueryTime(long)}.
+   *
+   * @param date the date, "DD.MM.YYYY".
+   * @param time the time of day, "hh:mm[:ss]", or null for midnight.
+   * @return the time in milliseconds since epoch.
+   * @throws IllegalArgumentException if the date or time is not valid.
+   */
+  public static long parseQueryTime(String date, String time)
+  {
+    String[] dmy = date.split("\\.");
+    String[] hms = (time != null) ? time.split(":") : new String[] {"0", "0"};
+    if (dmy.length != 3 || hms.length < 2 || hms.length > 3)
+    {
+      throw new IllegalArgumentException("invalid query time: " + date + " " + time);
+    }
+    return toMillis(Integer.parseInt(dmy[2]), Integer.parseInt(dmy[1]), Integer.parseInt(dmy[0]),
+      Integer.parseInt(hms[0]), Integer.parseInt(hms[1]), (hms.length == 3) ? Integer.parseInt(hms[2]) : 0);
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Parse a date in the format [year-]month-day.
@@ -156,6 +180,94 @@ public class TimeStamp
     return ymd;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Parse a time specified as command arguments.
+   *
+   * The time can be given as a period before the current time, in the form
+   * accepted by {@link #parseDuration(String)}, or as a time of day,
+   * "hh:mm[:ss]", optionally preceded by a date argument, "[YYYY-]MM-DD". If
+   * the date is omitted, it is the date of the current time.
+   *
+   * @param args the command arguments.
+   * @param first the index of the first argument of the time.
+   * @param now the current time, in the same time zone as edit times.
+   * @return the time in milliseconds since epoch.
+   * @throws IllegalArgumentException if the arguments are not a valid time.
+   */
+  public static long parseTime(String[] args, int first, long now)
+  {
+    int count = args.length - first;
+    if (count == 1 && args[first].indexOf(':') < 0)
+    {
+      return now - parseDuration(args[first]);
+    }
+
+    int[] ymd;
+    if (count == 1)
+    {
+      _time.setTimeInMillis(now);
+      ymd = new int[] {_time.get(Calendar.YEAR), _time.get(Calendar.MONTH) + 1, _time.get(Calendar.DAY_OF_MONTH)};
+    }
+    else if (count == 2)
+    {
+      ymd = parseYMD(args[first]);
+      if (ymd[1] == 0)
+      {
+        throw new IllegalArgumentException("invalid date: " + args[first]);
+      }
+    }
+    else
+    {
+      throw new IllegalArgumentException("expected a date and time");
+    }
+
+    String[] hms = args[args.length - 1].split(":");
+    if (hms.length < 2 || hms.length > 3)
+    {
+      throw new IllegalArgumentException("invalid time: " + args[args.length - 1]);
+    }
+    int hour = Integer.parseInt(hms[0]);
+    int minute = Integer.parseInt(hms[1]);
+    int second = (hms.length == 3) ? Integer.parseInt(hms[2]) : 0;
+    return toMillis(ymd, hour, minute, second);
+  } // parseTime
+
+  // --------------------------------------------------------------------------
+  /**
+   * Parse a duration as a number followed by 's', 'm', 'h' or 'd' (seconds,
+   * minutes, hours or days). The number may be signed.
+   *
+   * @param duration the duration.
+   * @return the duration in milliseconds.
+   * @throws IllegalArgumentException if the duration is not valid.
+   */
+  public static long parseDuration(String duration)
+  {
+    String lower = duration.toLowerCase();
+    char unit = lower.isEmpty() ? ' ' : lower.charAt(lower.length() - 1);
+    long unitMillis;
+    switch (unit)
+    {
+      case 's':
+        unitMillis = 1000L;
+        break;
+      case 'm':
+        unitMillis = 60 * 1000L;
+        break;
+      case 'h':
+        unitMillis = 60 * 60 * 1000L;
+        break;
+      case 'd':
+        unitMillis = 24 * 60 * 60 * 1000L;
+        break;
+      default:
+        throw new IllegalArgumentException("invalid duration: " + duration);
+    }
+    String amount = lower.substring(0, lower.length() - 1);
+    return Long.parseLong(amount.startsWith("+") ? amount.substring(1) : amount) * unitMillis;
+  } // parseDuration
+
   // --------------------------------------------------------------------------
   /**
    * A reusable Calendar instance used to interpret any time stamps found in
@@ -0,0 +1,369 @@
+package watson.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// ----------------------------------------------------------------------------
+/**
+ * Segments one player's block destructions into tunnels: straight 1x2 or 2x2
+ * runs of blocks along the X or Z axis, as dug by branch mining.
+ *
+ * Edits are fed in time order and each edit is examined once, in constant
+ * time, so the cost of segmenting a player's edits is linear in the number of
+ * edits and new edits can be added to an existing detector.
+ *
+ * Ore mined while a tunnel is being dug is attributed to that tunnel. It is
+ * counted as "on axis" if it was exposed by the tunnel (inside the tunnel or
+ * adjacent to its walls, floor, ceiling or face) and "off axis" otherwise,
+ * i.e. when the miner left the tunnel to dig towards ore that could not be
+ * seen. A high proportion of off axis ore is characteristic of x-ray use.
+ */
+public class TunnelDetector
+{
+  // --------------------------------------------------------------------------
+  /**
+   * A tunnel found by the detector.
+   */
+  public static final class Tunnel
+  {
+    /**
+     * Constructor.
+     *
+     * @param edit the first edit in the tunnel.
+     */
+    Tunnel(BlockEdit edit)
+    {
+      startX = edit.x;
+      startY = edit.y;
+      startZ = edit.z;
+      startTime = endTime = edit.time;
+      yLow = yHigh = edit.y;
+      blocks = 1;
+    }
+
+    /**
+     * Copy constructor.
+     *
+     * @param other the tunnel to copy.
+     */
+    Tunnel(Tunnel other)
+    {
+      startX = other.startX;
+      startY = other.startY;
+      startZ = other.startZ;
+      startTime = other.startTime;
+      endTime = other.endTime;
+      blocks = other.blocks;
+      onAxisOre = other.onAxisOre;
+      offAxisOre = other.offAxisOre;
+      axis = other.axis;
+      direction = other.direction;
+      alongLow = other.alongLow;
+      alongHigh = other.alongHigh;
+      acrossLow = other.acrossLow;
+      acrossHigh = other.acrossHigh;
+      yLow = other.yLow;
+      yHigh = other.yHigh;
+    }
+
+    /**
+     * Return the length of the tunnel in blocks, along its axis.
+     *
+     * @return the length of the tunnel in blocks.
+     */
+    public int getLength()
+    {
+      return (axis == AXIS_NONE) ? 1 : alongHigh - alongLow + 1;
+    }
+
+    /**
+     * Return the compass direction in which the tunnel was dug.
+     *
+     * @return the direction: "east", "west", "south", "north" or "down".
+     */
+    public String getDirection()
+    {
+      if (axis == AXIS_X)
+      {
+        return (direction > 0) ? "east" : "west";
+      }
+      else if (axis == AXIS_Z)
+      {
+        return (direction > 0) ? "south" : "north";
+      }
+      else
+      {
+        return "down";
+      }
+    }
+
+    /**
+     * Return the position of a block along the tunnel axis.
+     */
+    int along(BlockEdit edit)
+    {
+      return (axis == AXIS_X) ? edit.x : edit.z;
+    }
+
+    /**
+     * Return the position of a block across the tunnel axis.
+     */
+    int across(BlockEdit edit)
+    {
+      return (axis == AXIS_X) ? edit.z : edit.x;
+    }
+
+    /**
+     * Coordinates of the first block.
+     */
+    public final int  startX, startY, startZ;
+
+    /**
+     * Time of the first and last edit.
+     */
+    public long       startTime, endTime;
+
+    /**
+     * Number of non-ore blocks dug in the tunnel.
+     */
+    public int        blocks;
+
+    /**
+     * Number of ore blocks mined on and off the tunnel axis.
+     */
+    public int        onAxisOre, offAxisOre;
+
+    /**
+     * AXIS_X, AXIS_Z or AXIS_NONE if not yet known.
+     */
+    int               axis = AXIS_NONE;
+
+    /**
+     * +1 or -1: the sign of the direction of digging along the axis.
+     */
+    int               direction;
+
+    /**
+     * Extent of the tunnel, along its axis, across it and vertically.
+     */
+    int               alongLow, alongHigh, acrossLow, acrossHigh, yLow, yHigh;
+  } // class Tunnel
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add the next edit, in time order.
+   *
+   * @param edit the edit; creations are ignored.
+   * @param ore true if the edit is the destruction of an ore.
+   */
+  public void addBlockEdit(BlockEdit edit, boolean ore)
+  {
+    if (edit.creation)
+    {
+      return;
+    }
+
+    if (_current != null && edit.time - _current.endTime > TUNNEL_GAP_MILLIS)
+    {
+      endTunnel();
+    }
+
+    if (ore)
+    {
+      if (_current != null)
+      {
+        if (isExposed(_current, edit))
+        {
+          ++_current.onAxisOre;
+        }
+        else
+        {
+          ++_current.offAxisOre;
+        }
+      }
+      return;
+    }
+
+    if (_current != null && extend(_current, edit))
+    {
+      _detour = 0;
+      ++_current.blocks;
+      _current.endTime = edit.time;
+    }
+    else if (_current != null && ++_detour <= MAX_DETOUR)
+    {
+      // Allow a few blocks off the tunnel, e.g. to reach ore, before deciding
+      // that the tunnel has ended.
+      _current.endTime = edit.time;
+    }
+    else
+    {
+      endTunnel();
+      _current = new Tunnel(edit);
+    }
+  } // addBlockEdit
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the tunnels found so far, including the one currently being dug,
+   * from oldest to most recent.
+   *
+   * Finished tunnels are no longer modified by the detector; the one
+   * currently being dug is copied, so that the result is not changed by
+   * subsequent calls to addBlockEdit().
+   *
+   * @return an unmodifiable list of the tunnels.
+   */
+  public List<Tunnel> getTunnels()
+  {
+    ArrayList<Tunnel> tunnels = new ArrayList<Tunnel>(_tunnels.size() + 1);
+    tunnels.addAll(_tunnels);
+    if (_current != null && _current.getLength() >= MIN_TUNNEL_LENGTH)
+    {
+      tunnels.add(new Tunnel(_current));
+    }
+    return Collections.unmodifiableList(tunnels);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Finish the current tunnel, keeping it only if it is long enough.
+   */
+  protected void endTunnel()
+  {
+    if (_current != null && _current.getLength() >= MIN_TUNNEL_LENGTH)
+    {
+      _tunnels.add(_current);
+    }
+    _current = null;
+    _detour = 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Extend the tunnel to include the specified block, if it continues the
+   * tunnel.
+   *
+   * @param tunnel the tunnel.
+   * @param edit the destroyed block.
+   * @return true if the tunnel was extended.
+   */
+  protected static boolean extend(Tunnel tunnel, BlockEdit edit)
+  {
+    int yLow = Math.min(tunnel.yLow, edit.y);
+    int yHigh = Math.max(tunnel.yHigh, edit.y);
+    if (yHigh - yLow >= MAX_HEIGHT)
+    {
+      return false;
+    }
+
+    if (tunnel.axis == AXIS_NONE)
+    {
+      // A single column of blocks, so far. The first horizontal step to an
+      // adjacent column decides the axis.
+      int dx = edit.x - tunnel.startX;
+      int dz = edit.z - tunnel.startZ;
+      if (dx == 0 && dz == 0)
+      {
+        tunnel.yLow = yLow;
+        tunnel.yHigh = yHigh;
+        return true;
+      }
+      if (Math.abs(dx) + Math.abs(dz) != 1)
+      {
+        return false;
+      }
+      tunnel.axis = (dx != 0) ? AXIS_X : AXIS_Z;
+      tunnel.direction = dx + dz;
+      tunnel.alongLow = tunnel.alongHigh = (tunnel.axis == AXIS_X) ? tunnel.startX : tunnel.startZ;
+      tunnel.acrossLow = tunnel.acrossHigh = (tunnel.axis == AXIS_X) ? tunnel.startZ : tunnel.startX;
+    }
+
+    int along = tunnel.along(edit);
+    int across = tunnel.across(edit);
+    int acrossLow = Math.min(tunnel.acrossLow, across);
+    int acrossHigh = Math.max(tunnel.acrossHigh, across);
+    if (acrossHigh - acrossLow >= MAX_WIDTH || along < tunnel.alongLow - 1 || along > tunnel.alongHigh + 1)
+    {
+      return false;
+    }
+
+    tunnel.alongLow = Math.min(tunnel.alongLow, along);
+    tunnel.alongHigh = Math.max(tunnel.alongHigh, along);
+    tunnel.acrossLow = acrossLow;
+    tunnel.acrossHigh = acrossHigh;
+    tunnel.yLow = yLow;
+    tunnel.yHigh = yHigh;
+    return true;
+  } // extend
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the specified block is inside the tunnel or touches it.
+   *
+   * @param tunnel the tunnel.
+   * @param edit the block.
+   * @return true if the block was exposed by digging the tunnel.
+   */
+  protected static boolean isExposed(Tunnel tunnel, BlockEdit edit)
+  {
+    if (edit.y < tunnel.yLow - 1 || edit.y > tunnel.yHigh + 1)
+    {
+      return false;
+    }
+    if (tunnel.axis == AXIS_NONE)
+    {
+      return Math.abs(edit.x - tunnel.startX) <= 1 && Math.abs(edit.z - tunnel.startZ) <= 1;
+    }
+    int along = tunnel.along(edit);
+    int across = tunnel.across(edit);
+    return along >= tunnel.alongLow - 1 && along <= tunnel.alongHigh + 1
+           && across >= tunnel.acrossLow - 1 && across <= tunnel.acrossHigh + 1;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Axis values of {@link Tunnel}.
+   */
+  protected static final int    AXIS_NONE         = 0;
+  protected static final int    AXIS_X            = 1;
+  protected static final int    AXIS_Z            = 2;
+
+  /**
+   * The minimum length of a run of blocks to be considered a tunnel.
+   */
+  protected static final int    MIN_TUNNEL_LENGTH = 8;
+
+  /**
+   * The maximum width and height of a tunnel.
+   */
+  protected static final int    MAX_WIDTH         = 2;
+  protected static final int    MAX_HEIGHT        = 2;
+
+  /**
+   * The number of consecutive non-ore blocks off the tunnel that end it.
+   */
+  protected static final int    MAX_DETOUR        = 6;
+
+  /**
+   * A pause in digging longer than this ends the tunnel.
+   */
+  protected static final long   TUNNEL_GAP_MILLIS = 2 * 60 * 1000;
+
+  /**
+   * Finished tunnels of at least MIN_TUNNEL_LENGTH.
+   */
+  protected ArrayList<Tunnel>   _tunnels          = new ArrayList<Tunnel>();
+
+  /**
+   * The tunnel currently being dug, which may turn out to be too short, or
+   * null.
+   */
+  protected Tunnel              _current;
+
+  /**
+   * The number of consecutive non-ore blocks dug off the current tunnel.
+   */
+  protected int                 _detour;
+} // class TunnelDetector
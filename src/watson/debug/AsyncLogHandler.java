@@ -0,0 +1,248 @@
+package watson.debug;
+
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+// ----------------------------------------------------------------------------
+/**
+ * A logging Handler that queues records in a fixed size ring buffer and
+ * publishes them to another Handler on a background thread.
+ *
+ * Logging from the client's main thread therefore costs no more than copying a
+ * reference, regardless of how slow the file system is. If records arrive
+ * faster than they can be written, the newest ones are dropped, and the number
+ * dropped is reported in the log when the writer catches up.
+ */
+public class AsyncLogHandler extends Handler
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param target the Handler that records are published to.
+   * @param capacity the maximum number of records awaiting publication.
+   */
+  public AsyncLogHandler(Handler target, int capacity)
+  {
+    _target = target;
+    _ring = new LogRecord[capacity];
+    _writer = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        writeRecords();
+      }
+    }, "Watson log writer");
+    _writer.setDaemon(true);
+    _writer.start();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the Handler that records are published to.
+   *
+   * @return the Handler that records are published to.
+   */
+  public Handler getTarget()
+  {
+    return _target;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Queue a record for publication.
+   *
+   * @see java.util.logging.Handler#publish(java.util.logging.LogRecord)
+   */
+  @Override
+  public void publish(LogRecord record)
+  {
+    if (!isLoggable(record))
+    {
+      return;
+    }
+    synchronized (_lock)
+    {
+      if (_closed || _count == _ring.length)
+      {
+        ++_dropped;
+        return;
+      }
+      _ring[(_head + _count) % _ring.length] = record;
+      if (++_count == 1)
+      {
+        _lock.notifyAll();
+      }
+    }
+  } // publish
+
+  // --------------------------------------------------------------------------
+  /**
+   * Wait until all queued records have been published, then flush the target.
+   *
+   * @see java.util.logging.Handler#flush()
+   */
+  @Override
+  public void flush()
+  {
+    synchronized (_lock)
+    {
+      while (_count != 0 || _writing)
+      {
+        if (!_writer.isAlive())
+        {
+          break;
+        }
+        try
+        {
+          _lock.wait(FLUSH_WAIT_MILLIS);
+        }
+        catch (InterruptedException ex)
+        {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    _target.flush();
+  } // flush
+
+  // --------------------------------------------------------------------------
+  /**
+   * Publish all queued records, stop the background thread and close the
+   * target.
+   *
+   * @see java.util.logging.Handler#close()
+   */
+  @Override
+  public void close()
+  {
+    flush();
+    synchronized (_lock)
+    {
+      _closed = true;
+      _lock.notifyAll();
+    }
+    _target.close();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The body of the background thread: publish records as they are queued.
+   */
+  protected void writeRecords()
+  {
+    LogRecord[] batch = new LogRecord[_ring.length];
+    for (;;)
+    {
+      int count;
+      int dropped;
+      synchronized (_lock)
+      {
+        _writing = false;
+        _lock.notifyAll();
+        while (_count == 0 && !_closed)
+        {
+          try
+          {
+            _lock.wait();
+          }
+          catch (InterruptedException ex)
+          {
+            return;
+          }
+        }
+        if (_count == 0)
+        {
+          return;
+        }
+
+        // Take the whole queue at once, so that the lock is held briefly.
+        count = _count;
+        for (int i = 0; i < count; ++i)
+        {
+          batch[i] = _ring[_head];
+          _ring[_head] = null;
+          _head = (_head + 1) % _ring.length;
+        }
+        _count = 0;
+        dropped = _dropped;
+        _dropped = 0;
+        _writing = true;
+      }
+
+      try
+      {
+        for (int i = 0; i < count; ++i)
+        {
+          _target.publish(batch[i]);
+          batch[i] = null;
+        }
+        if (dropped != 0)
+        {
+          _target.publish(new LogRecord(Level.WARNING,
+            dropped + " log messages were dropped because the log writer fell behind."));
+        }
+        _target.flush();
+      }
+      catch (RuntimeException ex)
+      {
+        reportError("error writing log", ex, ErrorManager.WRITE_FAILURE);
+      }
+    }
+  } // writeRecords
+
+  // --------------------------------------------------------------------------
+  /**
+   * The longest time flush() waits before checking that the writer is alive.
+   */
+  protected static final long FLUSH_WAIT_MILLIS = 100;
+
+  /**
+   * The Handler that records are published to.
+   */
+  protected final Handler     _target;
+
+  /**
+   * The background thread that publishes records.
+   */
+  protected final Thread      _writer;
+
+  /**
+   * Guards the ring buffer and the state flags.
+   */
+  protected final Object      _lock             = new Object();
+
+  /**
+   * The ring buffer of records awaiting publication.
+   */
+  protected final LogRecord[] _ring;
+
+  /**
+   * The index of the oldest record in _ring.
+   */
+  protected int               _head;
+
+  /**
+   * The number of records in _ring.
+   */
+  protected int               _count;
+
+  /**
+   * The number of records dropped since the writer last caught up.
+   */
+  protected int               _dropped;
+
+  /**
+   * True while the writer is publishing records taken from _ring.
+   */
+  protected boolean           _writing;
+
+  /**
+   * True once close() has been called.
+   */
+  protected boolean           _closed;
+} // class AsyncLogHandler
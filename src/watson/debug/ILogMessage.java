@@ -0,0 +1,19 @@
+package watson.debug;
+
+// ----------------------------------------------------------------------------
+/**
+ * Supplies a log message that is expensive to compute, so that it is only
+ * computed if the message will actually be logged.
+ *
+ * @see Log#debug(ILogMessage)
+ */
+public interface ILogMessage
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Return the message.
+   *
+   * @return the message.
+   */
+  public String getMessage();
+}
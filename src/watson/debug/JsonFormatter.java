@@ -0,0 +1,44 @@
+package watson.debug;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+import com.google.gson.JsonObject;
+
+// --------------------------------------------------------------------------
+/**
+ * Formats log messages as JSON objects, one per line, for analysis by tools.
+ *
+ * Each object has the properties "time" (milliseconds since the epoch),
+ * "level", "thread" (the thread ID), "message" and, if an exception was
+ * logged, "thrown" (the stack trace).
+ */
+public class JsonFormatter extends Formatter
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Format the LogRecord.
+   *
+   * @param log the record to format.
+   */
+  @Override
+  public String format(LogRecord log)
+  {
+    JsonObject json = new JsonObject();
+    json.addProperty("time", log.getMillis());
+    json.addProperty("level", log.getLevel().getName());
+    json.addProperty("thread", log.getThreadID());
+    json.addProperty("message", Log.getFormattedMessage(log));
+
+    Throwable thrown = log.getThrown();
+    if (thrown != null)
+    {
+      StringWriter stringwriter = new StringWriter();
+      thrown.printStackTrace(new PrintWriter(stringwriter));
+      json.addProperty("thrown", stringwriter.toString());
+    }
+    return json.toString() + '\n';
+  } // format
+} // class JsonFormatter
@@ -2,8 +2,11 @@ package watson.debug;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.IllegalFormatException;
+import java.util.Locale;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 import watson.Controller;
@@ -15,7 +18,13 @@ import watson.Controller;
  * 
  * Messages are logged to ".minecraft/mods/watson/log.txt". Since the vanilla
  * client now logs chat to the console, Watson no longer logs there to avoid
- * duplication.
+ * duplication. Optionally, messages are also logged as JSON objects, one per
+ * line, to ".minecraft/mods/watson/log.jsonl".
+ *
+ * Log files are written by a background thread, so that logging never blocks
+ * the caller on file I/O. Debug messages that are expensive to build should be
+ * passed as a format string and arguments, or as an {@link ILogMessage}, so
+ * that no work is done unless debug logging is enabled.
  */
 public class Log
 {
@@ -33,6 +42,49 @@ public class Log
     _logger.fine(msg);
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Log a debug message formatted by String.format() in the US locale.
+   *
+   * Formatting is deferred to the thread that writes the log, and skipped
+   * entirely if debug logging is disabled. Arguments that could change in the
+   * meantime, like collections, are converted to strings before the call
+   * returns, so that the message shows their state at the call.
+   *
+   * @param format the format string.
+   * @param args the arguments referenced by the format string.
+   */
+  public static void debug(String format, Object... args)
+  {
+    if (_logger.isLoggable(Level.FINE))
+    {
+      Object[] snapshot = new Object[args.length];
+      for (int i = 0; i < args.length; ++i)
+      {
+        Object arg = args[i];
+        snapshot[i] = isImmutable(arg) ? arg : String.valueOf(arg);
+      }
+      LogRecord record = new LogRecord(Level.FINE, format);
+      record.setParameters(snapshot);
+      record.setLoggerName(_logger.getName());
+      _logger.log(record);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Log a debug message that is only computed if debug logging is enabled.
+   *
+   * @param msg supplies the message.
+   */
+  public static void debug(ILogMessage msg)
+  {
+    if (_logger.isLoggable(Level.FINE))
+    {
+      _logger.fine(msg.getMessage());
+    }
+  }
+
   // --------------------------------------------------------------------------
   /**
    * Log a configuration message.
@@ -113,37 +165,141 @@ public class Log
 
   // --------------------------------------------------------------------------
   /**
-   * Close the log file.
+   * Enable or disable the JSON lines log file, "log.jsonl".
+   *
+   * @param enabled if true, messages are also logged as JSON objects.
+   */
+  public static synchronized void setJson(boolean enabled)
+  {
+    if (enabled && _jsonHandler == null)
+    {
+      try
+      {
+        File logFile = new File(Controller.getModDirectory(), JSON_LOG_FILE);
+        FileHandler fileHandler = new FileHandler(logFile.getAbsolutePath());
+        fileHandler.setFormatter(new JsonFormatter());
+        fileHandler.setEncoding("UTF-8");
+        _jsonHandler = new AsyncLogHandler(fileHandler, BUFFERED_RECORDS);
+        _logger.addHandler(_jsonHandler);
+      }
+      catch (IOException ex)
+      {
+        exception(Level.WARNING, "unable to open the JSON log file", ex);
+      }
+    }
+    else if (!enabled && _jsonHandler != null)
+    {
+      _logger.removeHandler(_jsonHandler);
+      _jsonHandler.close();
+      _jsonHandler = null;
+    }
+  } // setJson
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if messages are also logged as JSON objects.
+   *
+   * @return true if messages are also logged as JSON objects.
+   */
+  public static synchronized boolean isJson()
+  {
+    return _jsonHandler != null;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Write all pending messages and close the log files.
    */
-  public static void close()
+  public static synchronized void close()
   {
     if (_fileHandler != null)
     {
       _fileHandler.close();
     }
+    if (_jsonHandler != null)
+    {
+      _jsonHandler.close();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if a format argument can be formatted later on another thread
+   * with the same result: null, or an instance of an immutable type that
+   * String.format() treats specially.
+   *
+   * @param arg the argument.
+   * @return true if the argument is immutable.
+   */
+  static boolean isImmutable(Object arg)
+  {
+    return arg == null || arg instanceof String || arg instanceof Integer || arg instanceof Long
+           || arg instanceof Double || arg instanceof Float || arg instanceof Short || arg instanceof Byte
+           || arg instanceof Boolean || arg instanceof Character || arg instanceof Enum;
   }
 
+  // --------------------------------------------------------------------------
+  /**
+   * Return the message of a LogRecord, formatted with its parameters, if it
+   * has any, as for String.format().
+   *
+   * @param log the record.
+   * @return the formatted message.
+   */
+  static String getFormattedMessage(LogRecord log)
+  {
+    Object[] args = log.getParameters();
+    if (args == null || args.length == 0)
+    {
+      return log.getMessage();
+    }
+    try
+    {
+      return String.format(Locale.US, log.getMessage(), args);
+    }
+    catch (IllegalFormatException ex)
+    {
+      return log.getMessage();
+    }
+  } // getFormattedMessage
+
   // --------------------------------------------------------------------------
   /**
    * The file name of the log file relative to the Watson's ModLoader directory.
    */
-  private static final String LOG_FILE = "log.txt";
+  private static final String    LOG_FILE         = "log.txt";
+
+  /**
+   * The file name of the JSON lines log file relative to the Watson's
+   * ModLoader directory.
+   */
+  private static final String    JSON_LOG_FILE    = "log.jsonl";
+
+  /**
+   * The maximum number of records awaiting the log writer thread.
+   */
+  private static final int       BUFFERED_RECORDS = 4096;
 
   /**
    * The Logger through which all logs are issued.
    */
-  private static final Logger _logger;
+  private static final Logger    _logger;
 
   /**
    * The Handler that exports to the log file.
    */
-  private static FileHandler  _fileHandler;
+  private static AsyncLogHandler _fileHandler;
+
+  /**
+   * The Handler that exports to the JSON lines log file, or null if disabled.
+   */
+  private static AsyncLogHandler _jsonHandler;
 
   static
   {
     SimpleFormatter formatter = new SimpleFormatter();
 
-    _logger = Logger.getLogger("watson");;
+    _logger = Logger.getLogger("watson");
     _logger.setUseParentHandlers(false);
     Log.setDebug(false);
 
@@ -151,14 +307,25 @@ public class Log
     {
       Controller.createDirectories();
       File logFile = new File(Controller.getModDirectory(), LOG_FILE);
-      _fileHandler = new FileHandler(logFile.getAbsolutePath());
-      _fileHandler.setFormatter(formatter);
+      FileHandler fileHandler = new FileHandler(logFile.getAbsolutePath());
+      fileHandler.setFormatter(formatter);
+      _fileHandler = new AsyncLogHandler(fileHandler, BUFFERED_RECORDS);
       _logger.addHandler(_fileHandler);
     }
     catch (IOException e)
     {
       e.printStackTrace(System.err);
     }
+
+    // Write out messages still queued when the game exits.
+    Runtime.getRuntime().addShutdownHook(new Thread("Watson log shutdown")
+    {
+      @Override
+      public void run()
+      {
+        Log.close();
+      }
+    });
   } // static initialisation block
 } // class Log
 
@@ -26,7 +26,7 @@ public class SimpleFormatter extends Formatter
     builder.append(" [");
     builder.append(log.getLevel().getName());
     builder.append("] ");
-    builder.append(log.getMessage());
+    builder.append(Log.getFormattedMessage(log));
     builder.append('\n');
 
     Throwable thrown = log.getThrown();
@@ -0,0 +1,556 @@
+package watson.debug;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.FontRenderer;
+import watson.Configuration;
+import watson.Controller;
+import watson.chat.Chat;
+import watson.db.BlockEditSet;
+
+// ----------------------------------------------------------------------------
+/**
+ * Counters and timers that measure what Watson costs, shown by "/w stats" and
+ * in an optional HUD overlay.
+ *
+ * Measurements are only taken when the "stats" configuration setting is on.
+ * Instrumented code calls {@link #isEnabled()} (or {@link #start()}, which
+ * returns 0 when disabled) before calling System.nanoTime(), so that the cost
+ * when disabled is one boolean test.
+ */
+public class Stats
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Single instance.
+   */
+  public static final Stats  instance    = new Stats();
+
+  /**
+   * Name of the timer for drawing edit outlines.
+   */
+  public static final String OUTLINES    = "outlines";
+
+  /**
+   * Name of the timer for drawing vectors.
+   */
+  public static final String VECTORS     = "vectors";
+
+  /**
+   * Name of the timer for drawing annotations.
+   */
+  public static final String ANNOTATIONS = "annotations";
+
+  /**
+   * Name of the timer for drawing ore deposit labels.
+   */
+  public static final String LABELS      = "labels";
+
+  // --------------------------------------------------------------------------
+  /**
+   * Accumulates a series of durations.
+   */
+  public static class Timer
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Record one duration.
+     *
+     * @param nanos the duration in nanoseconds.
+     */
+    public synchronized void add(long nanos)
+    {
+      ++_count;
+      _totalNanos += nanos;
+      _maxNanos = Math.max(_maxNanos, nanos);
+      _recentNanos = (_count == 1) ? nanos : _recentNanos + (nanos - _recentNanos) * RECENT_WEIGHT;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of durations recorded.
+     *
+     * @return the number of durations recorded.
+     */
+    public synchronized long getCount()
+    {
+      return _count;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the sum of all durations, in nanoseconds.
+     *
+     * @return the sum of all durations, in nanoseconds.
+     */
+    public synchronized long getTotalNanos()
+    {
+      return _totalNanos;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the longest duration, in nanoseconds.
+     *
+     * @return the longest duration, in nanoseconds.
+     */
+    public synchronized long getMaxNanos()
+    {
+      return _maxNanos;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the mean duration, in nanoseconds.
+     *
+     * @return the mean duration, in nanoseconds, or 0 if there are none.
+     */
+    public synchronized double getMeanNanos()
+    {
+      return (_count == 0) ? 0 : (double) _totalNanos / _count;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return an exponentially weighted average of recent durations, in
+     * nanoseconds, which follows changes more closely than the mean.
+     *
+     * @return the average of recent durations, in nanoseconds.
+     */
+    public synchronized double getRecentNanos()
+    {
+      return _recentNanos;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The weight of the latest duration in the recent average.
+     */
+    protected static final double RECENT_WEIGHT = 0.05;
+
+    /**
+     * The number of durations recorded.
+     */
+    protected long                _count;
+
+    /**
+     * The sum of all durations, in nanoseconds.
+     */
+    protected long                _totalNanos;
+
+    /**
+     * The longest duration, in nanoseconds.
+     */
+    protected long                _maxNanos;
+
+    /**
+     * The exponentially weighted average of recent durations, in nanoseconds.
+     */
+    protected double              _recentNanos;
+  } // class Timer
+
+  // --------------------------------------------------------------------------
+  /**
+   * The chat processed by one kind of {@link watson.analysis.Analysis}.
+   */
+  public static class AnalysisStats
+  {
+    // ------------------------------------------------------------------------
+    /**
+     * Count a line of chat.
+     *
+     * @param matched true if it matched one of the analysis' patterns.
+     */
+    public synchronized void addLine(boolean matched)
+    {
+      ++_lines;
+      if (matched)
+      {
+        ++_matches;
+      }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the timer for matching the specified pattern, creating it if
+     * necessary.
+     *
+     * @param pattern the pattern.
+     * @return the timer.
+     */
+    public synchronized Timer getPatternTimer(Pattern pattern)
+    {
+      Timer timer = _patternTimers.get(pattern);
+      if (timer == null)
+      {
+        timer = new Timer();
+        _patternTimers.put(pattern, timer);
+      }
+      return timer;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of lines of chat processed.
+     *
+     * @return the number of lines of chat processed.
+     */
+    public synchronized long getLines()
+    {
+      return _lines;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of lines of chat that matched a pattern.
+     *
+     * @return the number of lines of chat that matched a pattern.
+     */
+    public synchronized long getMatches()
+    {
+      return _matches;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a copy of the map from pattern to timer.
+     *
+     * @return a copy of the map from pattern to timer.
+     */
+    public synchronized Map<Pattern, Timer> getPatternTimers()
+    {
+      return new LinkedHashMap<Pattern, Timer>(_patternTimers);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The number of lines of chat processed.
+     */
+    protected long                          _lines;
+
+    /**
+     * The number of lines of chat that matched a pattern.
+     */
+    protected long                          _matches;
+
+    /**
+     * Map from pattern to the time taken to match it, in the order the
+     * patterns were first tried.
+     */
+    protected LinkedHashMap<Pattern, Timer> _patternTimers = new LinkedHashMap<Pattern, Timer>();
+  } // class AnalysisStats
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if measurements should be taken.
+   *
+   * @return true if measurements should be taken.
+   */
+  public boolean isEnabled()
+  {
+    return Configuration.instance.isStats();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the start time of a measured interval.
+   *
+   * @return System.nanoTime() if measurements are enabled, or 0 if not.
+   */
+  public long start()
+  {
+    return isEnabled() ? System.nanoTime() : 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record the time elapsed since start in the named timer and return the
+   * current time, which can be used as the start of the next interval.
+   *
+   * Nothing is recorded if start is 0, i.e. measurement was disabled when the
+   * interval started.
+   *
+   * @param name the name of the timer.
+   * @param start the value returned by {@link #start()} or a previous lap().
+   * @return the current time, or 0 if nothing was recorded.
+   */
+  public long lap(String name, long start)
+  {
+    if (start == 0)
+    {
+      return 0;
+    }
+    long now = System.nanoTime();
+    getTimer(name).add(now - start);
+    return now;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the named timer, creating it if necessary.
+   *
+   * @param name the name of the timer.
+   * @return the timer.
+   */
+  public synchronized Timer getTimer(String name)
+  {
+    Timer timer = _timers.get(name);
+    if (timer == null)
+    {
+      timer = new Timer();
+      _timers.put(name, timer);
+    }
+    return timer;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the statistics of the named analysis, creating them if necessary.
+   *
+   * @param name the name of the analysis, e.g. "LbCoordsAnalysis".
+   * @return the statistics.
+   */
+  public synchronized AnalysisStats getAnalysisStats(String name)
+  {
+    AnalysisStats stats = _analyses.get(name);
+    if (stats == null)
+    {
+      stats = new AnalysisStats();
+      _analyses.put(name, stats);
+    }
+    return stats;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Record one draining of the {@link watson.SyncTaskQueue}.
+   *
+   * @param tasks the number of tasks that were queued, and run.
+   * @param start the value of System.nanoTime() before the first task ran.
+   */
+  public synchronized void recordQueueDrain(int tasks, long start)
+  {
+    _queueDrain.add(System.nanoTime() - start);
+    _queueTasks += tasks;
+    _lastQueueDepth = tasks;
+    _maxQueueDepth = Math.max(_maxQueueDepth, tasks);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Discard all measurements.
+   */
+  public synchronized void reset()
+  {
+    _timers.clear();
+    _analyses.clear();
+    _queueDrain = new Timer();
+    _queueTasks = 0;
+    _lastQueueDepth = 0;
+    _maxQueueDepth = 0;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Show or hide the HUD overlay.
+   *
+   * @param shown true if the overlay should be shown.
+   */
+  public void setHudShown(boolean shown)
+  {
+    _hudShown = shown;
+    Chat.localOutput("Statistics overlay " + (shown ? "shown." : "hidden."));
+    if (shown && !isEnabled())
+    {
+      Chat.localOutput("Statistics are not being collected. To start, use: /" +
+                       Configuration.instance.getWatsonPrefix() + " config stats on");
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if the HUD overlay is shown.
+   *
+   * @return true if the HUD overlay is shown.
+   */
+  public boolean isHudShown()
+  {
+    return _hudShown;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Show all statistics in chat.
+   */
+  public void report()
+  {
+    if (!isEnabled())
+    {
+      Chat.localOutput("Statistics are not being collected. To start, use: /" +
+                       Configuration.instance.getWatsonPrefix() + " config stats on");
+    }
+    for (String line : getSummaryLines())
+    {
+      Chat.localOutput(line);
+    }
+
+    List<Map.Entry<Pattern, Timer>> patterns = new ArrayList<Map.Entry<Pattern, Timer>>();
+    synchronized (this)
+    {
+      for (Map.Entry<String, AnalysisStats> entry : _analyses.entrySet())
+      {
+        AnalysisStats stats = entry.getValue();
+        Chat.localOutput(String.format(Locale.US, "%s: %d lines, %d matched.",
+          entry.getKey(), stats.getLines(), stats.getMatches()));
+        patterns.addAll(stats.getPatternTimers().entrySet());
+      }
+    }
+
+    // The patterns that took longest in total.
+    Collections.sort(patterns, new Comparator<Map.Entry<Pattern, Timer>>()
+    {
+      @Override
+      public int compare(Map.Entry<Pattern, Timer> a, Map.Entry<Pattern, Timer> b)
+      {
+        long aNanos = a.getValue().getTotalNanos();
+        long bNanos = b.getValue().getTotalNanos();
+        return (aNanos < bNanos) ? 1 : (aNanos > bNanos) ? -1 : 0;
+      }
+    });
+    for (int i = 0; i < Math.min(REPORTED_PATTERNS, patterns.size()); ++i)
+    {
+      Timer timer = patterns.get(i).getValue();
+      String pattern = patterns.get(i).getKey().pattern();
+      if (pattern.length() > REPORTED_PATTERN_LENGTH)
+      {
+        pattern = pattern.substring(0, REPORTED_PATTERN_LENGTH) + "...";
+      }
+      Chat.localOutput(String.format(Locale.US, "  %.1f ms total, %.2f us mean: %s",
+        timer.getTotalNanos() / 1e6, timer.getMeanNanos() / 1e3, pattern));
+    }
+  } // report
+
+  // --------------------------------------------------------------------------
+  /**
+   * Draw the HUD overlay in the top left corner of the screen, if it is shown.
+   */
+  public void drawHud()
+  {
+    if (_hudShown)
+    {
+      FontRenderer fr = Minecraft.getMinecraft().fontRenderer;
+      int y = HUD_MARGIN;
+      for (String line : getSummaryLines())
+      {
+        fr.drawStringWithShadow(line, HUD_MARGIN, y, HUD_COLOUR);
+        y += fr.FONT_HEIGHT + 1;
+      }
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return the lines of the summary shown in both the HUD and "/w stats".
+   *
+   * @return the lines of the summary.
+   */
+  protected synchronized List<String> getSummaryLines()
+  {
+    ArrayList<String> lines = new ArrayList<String>();
+    BlockEditSet edits = Controller.instance.getBlockEditSet();
+    Runtime runtime = Runtime.getRuntime();
+    lines.add(String.format(Locale.US, "Edits: %d, deposits: %d, heap: %d/%d MB",
+      edits.getBlockEditCount(), edits.getOreDB().getOreDepositCount(),
+      (runtime.totalMemory() - runtime.freeMemory()) >> 20, runtime.maxMemory() >> 20));
+
+    // Every analysis sees every line of chat.
+    long chatLines = 0;
+    long matches = 0;
+    for (AnalysisStats stats : _analyses.values())
+    {
+      chatLines = Math.max(chatLines, stats.getLines());
+      matches += stats.getMatches();
+    }
+    lines.add(String.format(Locale.US, "Chat: %d lines, %d matches", chatLines, matches));
+    lines.add(String.format(Locale.US, "Task queue: depth %d (max %d), %d tasks, drain %.2f ms (max %.2f ms)",
+      _lastQueueDepth, _maxQueueDepth, _queueTasks,
+      _queueDrain.getRecentNanos() / 1e6, _queueDrain.getMaxNanos() / 1e6));
+
+    StringBuilder frame = new StringBuilder("Frame ms:");
+    double total = 0;
+    for (String name : new String[]{OUTLINES, VECTORS, ANNOTATIONS, LABELS})
+    {
+      double ms = getTimer(name).getRecentNanos() / 1e6;
+      total += ms;
+      frame.append(String.format(Locale.US, " %s %.2f,", name, ms));
+    }
+    frame.append(String.format(Locale.US, " total %.2f", total));
+    lines.add(frame.toString());
+    return lines;
+  } // getSummaryLines
+
+  // --------------------------------------------------------------------------
+  /**
+   * The number of slowest patterns listed by "/w stats".
+   */
+  protected static final int                     REPORTED_PATTERNS       = 5;
+
+  /**
+   * The number of characters of each pattern listed by "/w stats".
+   */
+  protected static final int                     REPORTED_PATTERN_LENGTH = 40;
+
+  /**
+   * The distance of the HUD text from the top left corner of the screen.
+   */
+  protected static final int                     HUD_MARGIN              = 2;
+
+  /**
+   * The colour of the HUD text.
+   */
+  protected static final int                     HUD_COLOUR              = 0xFFFFFF;
+
+  /**
+   * Map from name to timer.
+   */
+  protected HashMap<String, Timer>               _timers                 = new HashMap<String, Timer>();
+
+  /**
+   * Map from analysis name to statistics, in the order first seen.
+   */
+  protected LinkedHashMap<String, AnalysisStats> _analyses               = new LinkedHashMap<String, AnalysisStats>();
+
+  /**
+   * The time taken to drain the SyncTaskQueue.
+   */
+  protected Timer                                _queueDrain             = new Timer();
+
+  /**
+   * The total number of tasks run from the SyncTaskQueue.
+   */
+  protected long                                 _queueTasks;
+
+  /**
+   * The number of tasks queued at the last drain of the SyncTaskQueue.
+   */
+  protected int                                  _lastQueueDepth;
+
+  /**
+   * The largest number of tasks queued at a drain of the SyncTaskQueue.
+   */
+  protected int                                  _maxQueueDepth;
+
+  /**
+   * True if the HUD overlay is shown.
+   */
+  protected boolean                              _hudShown;
+} // class Stats
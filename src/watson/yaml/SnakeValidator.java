@@ -120,6 +120,7 @@ public class SnakeValidator
   public void setRoot(ValidatorNode root)
   {
     _root = root;
+    _program = null;
   }
 
   // --------------------------------------------------------------------------
@@ -139,12 +140,22 @@ public class SnakeValidator
   /**
    * Validate the specified DOM against getRoot().
    * 
+   * The {@link ValidatorNode} tree is compiled into a {@link ValidatorProgram}
+   * the first time this method is called after setRoot(). The tree should
+   * not be modified after that.
+   * 
    * @param dom the DOM.
    * @param sink used for error reporting.
+   * @return true if the DOM is valid, once any default values have been
+   *         patched in.
    */
-  public void validate(Object dom, ValidatorMessageSink sink)
+  public synchronized boolean validate(Object dom, ValidatorMessageSink sink)
   {
-    getRoot().validate(dom, "", sink);
+    if (_program == null)
+    {
+      _program = ValidatorProgram.compile(getRoot());
+    }
+    return _program.validate(dom, sink);
   }
 
   // --------------------------------------------------------------------------
@@ -152,5 +163,10 @@ public class SnakeValidator
    * The root of the {@link ValidatorNode} tree that reflects the expected DOM
    * hierarchy.
    */
-  protected ValidatorNode _root;
+  protected ValidatorNode    _root;
+
+  /**
+   * The compiled form of _root, or null if not yet compiled.
+   */
+  protected ValidatorProgram _program;
 } // class SnakeValidator
\ No newline at end of file
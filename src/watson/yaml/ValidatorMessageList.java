@@ -0,0 +1,88 @@
+package watson.yaml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import watson.debug.Log;
+
+// ----------------------------------------------------------------------------
+/**
+ * A {@link ValidatorMessageSink} that logs each message as a warning and keeps
+ * it, so that the caller can tell whether a document had any problems.
+ */
+public class ValidatorMessageList implements ValidatorMessageSink
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Constructor.
+   *
+   * @param fileName the name of the file being validated, used as a prefix of
+   *          logged messages.
+   */
+  public ValidatorMessageList(String fileName)
+  {
+    _fileName = fileName;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * @see watson.yaml.ValidatorMessageSink#message(java.lang.String)
+   */
+  @Override
+  public synchronized void message(String text)
+  {
+    Log.warning(_fileName + ": " + text);
+    _messages.add(text);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return true if no messages have been reported.
+   *
+   * @return true if no messages have been reported.
+   */
+  public synchronized boolean isEmpty()
+  {
+    return _messages.isEmpty();
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a copy of the messages reported, in order.
+   *
+   * @return a copy of the messages reported, in order.
+   */
+  public synchronized List<String> getMessages()
+  {
+    return new ArrayList<String>(_messages);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Return a one line summary of the messages for display in chat: the first
+   * message and the number of others.
+   *
+   * @return the summary, or the empty string if there are no messages.
+   */
+  public synchronized String getSummary()
+  {
+    if (_messages.isEmpty())
+    {
+      return "";
+    }
+    String first = _messages.get(0);
+    int others = _messages.size() - 1;
+    return (others == 0) ? first : first + " (and " + others + " more; see log.txt)";
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * The name of the file being validated.
+   */
+  protected final String            _fileName;
+
+  /**
+   * The messages reported, in order.
+   */
+  protected final ArrayList<String> _messages = new ArrayList<String>();
+} // class ValidatorMessageList
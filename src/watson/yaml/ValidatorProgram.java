@@ -0,0 +1,524 @@
+package watson.yaml;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// ----------------------------------------------------------------------------
+/**
+ * A {@link ValidatorNode} tree compiled into a flat list of instructions.
+ *
+ * Each instruction describes one node of the tree; map and array instructions
+ * refer to the instructions of their children by index. Running the program
+ * has exactly the same effect on the DOM, and produces the same messages in
+ * the same order, as calling validate() on the tree, but without the virtual
+ * calls and without building the path String of every DOM node visited (paths
+ * are only formatted when there is a message to report).
+ *
+ * Arrays with at least PARALLEL_THRESHOLD elements are split into chunks that
+ * are validated in parallel in the fork/join pool. Messages from each chunk are
+ * buffered and passed on to the sink in array order once all chunks are done.
+ *
+ * Instances are immutable once compiled and can be shared between threads.
+ */
+public class ValidatorProgram
+{
+  // --------------------------------------------------------------------------
+  /**
+   * Compile the specified {@link ValidatorNode} tree.
+   *
+   * Nodes of classes other than TypeValidatorNode, MapValidatorNode and
+   * ArrayValidatorNode are called through their validate() method.
+   *
+   * @param root the root of the tree.
+   * @return the program.
+   */
+  public static ValidatorProgram compile(ValidatorNode root)
+  {
+    ValidatorProgram program = new ValidatorProgram();
+    program.compileNode(root, new IdentityHashMap<ValidatorNode, Integer>());
+    return program;
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Validate the specified DOM, patching in default values where allowed.
+   *
+   * @param dom the DOM.
+   * @param sink used for error reporting.
+   * @return true if the DOM is valid.
+   */
+  public boolean validate(Object dom, ValidatorMessageSink sink)
+  {
+    return run(0, dom, new Path(), sink);
+  }
+
+  // --------------------------------------------------------------------------
+  /**
+   * Add the instructions for a node and its descendants.
+   *
+   * @param node the node.
+   * @param compiled the index of the instruction of each node compiled so far,
+   *          so that shared subtrees are only compiled once.
+   * @return the index of the node's instruction.
+   */
+  protected int compileNode(ValidatorNode node, Map<ValidatorNode, Integer> compiled)
+  {
+    Integer existing = compiled.get(node);
+    if (existing != null)
+    {
+      return existing;
+    }
+
+    Instruction instruction = new Instruction();
+    int index = _instructions.size();
+    _instructions.add(instruction);
+    compiled.put(node, index);
+
+    instruction.optional = node.isOptional();
+    instruction.hasDefault = node.hasDefaultValue();
+    instruction.defaultValue = node.getDefaultValue();
+
+    Class<?> nodeClass = node.getClass();
+    if (nodeClass == MapValidatorNode.class)
+    {
+      MapValidatorNode map = (MapValidatorNode) node;
+      instruction.op = OP_MAP;
+      instruction.type = map._type;
+      instruction.keys = map._children.keySet().toArray(new String[map._children.size()]);
+      instruction.children = new int[instruction.keys.length];
+      for (int i = 0; i < instruction.keys.length; ++i)
+      {
+        instruction.children[i] = compileNode(map._children.get(instruction.keys[i]), compiled);
+      }
+    }
+    else if (nodeClass == ArrayValidatorNode.class)
+    {
+      ArrayValidatorNode array = (ArrayValidatorNode) node;
+      instruction.op = OP_ARRAY;
+      instruction.type = array._type;
+      instruction.minElements = array.getMinElements();
+      instruction.maxElements = array.getMaxElements();
+      instruction.child = (array.getChild() != null) ? compileNode(array.getChild(), compiled) : -1;
+    }
+    else if (nodeClass == TypeValidatorNode.class)
+    {
+      instruction.op = OP_TYPE;
+      instruction.type = ((TypeValidatorNode) node)._type;
+    }
+    else
+    {
+      instruction.op = OP_CALL;
+      instruction.node = node;
+    }
+    return index;
+  } // compileNode
+
+  // --------------------------------------------------------------------------
+  /**
+   * Run the instruction with the specified index against a DOM node.
+   *
+   * @param pc the index of the instruction.
+   * @param node the DOM node.
+   * @param path the path to the DOM node.
+   * @param sink used for error reporting.
+   * @return true if the node is valid.
+   */
+  @SuppressWarnings("unchecked")
+  protected boolean run(int pc, Object node, Path path, ValidatorMessageSink sink)
+  {
+    Instruction instruction = _instructions.get(pc);
+    if (instruction.op == OP_CALL)
+    {
+      return instruction.node.validate(node, path.toString(), sink);
+    }
+
+    if (!checkType(instruction, node, path, sink))
+    {
+      return false;
+    }
+    if (node == null)
+    {
+      return true;
+    }
+
+    if (instruction.op == OP_MAP)
+    {
+      boolean valid = true;
+      LinkedHashMap<String, Object> map = (LinkedHashMap<String, Object>) node;
+      for (int i = 0; i < instruction.keys.length; ++i)
+      {
+        String name = instruction.keys[i];
+        Instruction childInstruction = _instructions.get(instruction.children[i]);
+        Object child = map.get(name);
+        path.push(name);
+        boolean childValid = run(instruction.children[i], child, path, sink);
+        path.pop();
+        if ((!childValid || child == null) && childInstruction.hasDefault)
+        {
+          map.put(name, childInstruction.defaultValue);
+        }
+
+        // Valid if the child is valid or has a default to patch things up.
+        valid &= (childValid || childInstruction.hasDefault);
+      }
+      return valid;
+    }
+    else if (instruction.op == OP_ARRAY && instruction.child >= 0)
+    {
+      ArrayList<Object> array = (ArrayList<Object>) node;
+      if (array.size() < instruction.minElements || array.size() > instruction.maxElements)
+      {
+        sink.message(formatSizeMessage(instruction, path, array.size()));
+
+        // Let the parent try to patch the DOM.
+        return false;
+      }
+      else if (array.size() >= PARALLEL_THRESHOLD)
+      {
+        ArrayChunk task = new ArrayChunk(instruction.child, array, 0, array.size(), path);
+        boolean valid = ForkJoinTask.inForkJoinPool() ? task.invoke() : ForkJoinPool.commonPool().invoke(task);
+        task.messages.flushTo(sink);
+        return valid;
+      }
+      else
+      {
+        return runElements(instruction.child, array, 0, array.size(), path, sink);
+      }
+    }
+    return true;
+  } // run
+
+  // --------------------------------------------------------------------------
+  /**
+   * Validate a range of array elements, replacing invalid elements with the
+   * default value, if there is one.
+   *
+   * @param pc the index of the instruction that validates the elements.
+   * @param array the array.
+   * @param from the index of the first element.
+   * @param to the index after the last element.
+   * @param path the path to the array.
+   * @param sink used for error reporting.
+   * @return true if all of the elements are valid or have been replaced.
+   */
+  protected boolean runElements(int pc, ArrayList<Object> array, int from, int to,
+                                Path path, ValidatorMessageSink sink)
+  {
+    Instruction childInstruction = _instructions.get(pc);
+    boolean valid = true;
+    for (int i = from; i < to; ++i)
+    {
+      path.push(i);
+      boolean childValid = run(pc, array.get(i), path, sink);
+      path.pop();
+
+      // Valid if the child is valid or has a default to patch things up.
+      valid &= (childValid || childInstruction.hasDefault);
+      if (!childValid && childInstruction.hasDefault)
+      {
+        // Replace that element with the default value.
+        array.set(i, childInstruction.defaultValue);
+      }
+    }
+    return valid;
+  } // runElements
+
+  // --------------------------------------------------------------------------
+  /**
+   * Check that a node is present and of the expected type, or absent and
+   * optional, as in {@link TypeValidatorNode#validate(Object, String,
+   * ValidatorMessageSink)}.
+   *
+   * @param instruction the instruction.
+   * @param node the DOM node.
+   * @param path the path to the DOM node.
+   * @param sink used for error reporting.
+   * @return true if the node is valid.
+   */
+  protected static boolean checkType(Instruction instruction, Object node, Path path,
+                                     ValidatorMessageSink sink)
+  {
+    if (node == null)
+    {
+      if (!instruction.optional)
+      {
+        sink.message("missing value for mandatory field " + path);
+      }
+      return instruction.optional;
+    }
+    else if (!instruction.type.isInstance(node))
+    {
+      sink.message("for " + path + " expected " + instruction.type.getName()
+                   + " but got " + node.getClass().getName() + " (" + node
+                   + ")");
+      return false;
+    }
+    return true;
+  } // checkType
+
+  // --------------------------------------------------------------------------
+  /**
+   * Format the message for an array with the wrong number of elements, as in
+   * {@link ArrayValidatorNode#validate(Object, String, ValidatorMessageSink)}.
+   *
+   * @param instruction the array instruction.
+   * @param path the path to the array.
+   * @param size the actual number of elements.
+   * @return the message.
+   */
+  protected static String formatSizeMessage(Instruction instruction, Path path, int size)
+  {
+    StringBuilder text = new StringBuilder();
+    text.append("array ");
+    text.append(path);
+    text.append(" should have ");
+    if (instruction.minElements == instruction.maxElements)
+    {
+      text.append("exactly ");
+      text.append(instruction.minElements);
+    }
+    else
+    {
+      text.append("between ");
+      text.append(instruction.minElements);
+      text.append(" and ");
+      text.append(instruction.maxElements);
+    }
+    text.append(" elements, rather than ");
+    text.append(size);
+    return text.toString();
+  } // formatSizeMessage
+
+  // --------------------------------------------------------------------------
+  /**
+   * Validates a range of the elements of a large array, splitting it in two
+   * until the range is no bigger than CHUNK_SIZE.
+   */
+  @SuppressWarnings("serial")
+  protected final class ArrayChunk extends RecursiveTask<Boolean>
+  {
+    /**
+     * Constructor.
+     *
+     * @param pc the index of the instruction that validates the elements.
+     * @param array the array.
+     * @param from the index of the first element.
+     * @param to the index after the last element.
+     * @param path the path to the array; copied, since the caller's Path will
+     *          change while this task runs.
+     */
+    public ArrayChunk(int pc, ArrayList<Object> array, int from, int to, Path path)
+    {
+      _pc = pc;
+      _array = array;
+      _from = from;
+      _to = to;
+      _path = path.copy();
+    }
+
+    /**
+     * @see java.util.concurrent.RecursiveTask#compute()
+     */
+    @Override
+    protected Boolean compute()
+    {
+      if (_to - _from <= CHUNK_SIZE)
+      {
+        return runElements(_pc, _array, _from, _to, _path, messages);
+      }
+
+      int middle = (_from + _to) >>> 1;
+      ArrayChunk first = new ArrayChunk(_pc, _array, _from, middle, _path);
+      ArrayChunk second = new ArrayChunk(_pc, _array, middle, _to, _path);
+      second.fork();
+      boolean valid = first.compute();
+      valid &= second.join();
+
+      // Keep the messages in array order.
+      first.messages.flushTo(messages);
+      second.messages.flushTo(messages);
+      return valid;
+    }
+
+    /**
+     * Messages generated by this chunk, in order.
+     */
+    final BufferedMessageSink messages = new BufferedMessageSink();
+
+    private final int               _pc;
+    private final ArrayList<Object> _array;
+    private final int               _from;
+    private final int               _to;
+    private final Path              _path;
+  } // class ArrayChunk
+
+  // --------------------------------------------------------------------------
+  /**
+   * A ValidatorMessageSink that stores messages until they are flushed to
+   * another sink.
+   */
+  protected static final class BufferedMessageSink implements ValidatorMessageSink
+  {
+    /**
+     * @see watson.yaml.ValidatorMessageSink#message(java.lang.String)
+     */
+    @Override
+    public void message(String text)
+    {
+      _messages.add(text);
+    }
+
+    /**
+     * Pass all of the stored messages on to another sink, in order, and forget
+     * them.
+     *
+     * @param sink the other sink.
+     */
+    public void flushTo(ValidatorMessageSink sink)
+    {
+      for (String text : _messages)
+      {
+        sink.message(text);
+      }
+      _messages.clear();
+    }
+
+    private final ArrayList<String> _messages = new ArrayList<String>();
+  } // class BufferedMessageSink
+
+  // --------------------------------------------------------------------------
+  /**
+   * The path to the current DOM node, as a stack of map keys and array
+   * indices, formatted as "/key/index/..." only when needed for a message.
+   */
+  protected static final class Path
+  {
+    /**
+     * Add a map key or array index (Integer) to the end of the path.
+     *
+     * @param segment the key or index.
+     */
+    public void push(Object segment)
+    {
+      if (_depth == _segments.length)
+      {
+        Object[] segments = new Object[2 * _segments.length];
+        System.arraycopy(_segments, 0, segments, 0, _depth);
+        _segments = segments;
+      }
+      _segments[_depth++] = segment;
+    }
+
+    /**
+     * Remove the last key or index from the path.
+     */
+    public void pop()
+    {
+      _segments[--_depth] = null;
+    }
+
+    /**
+     * Return a copy of this path.
+     *
+     * @return a copy of this path.
+     */
+    public Path copy()
+    {
+      Path copy = new Path();
+      copy._segments = _segments.clone();
+      copy._depth = _depth;
+      return copy;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < _depth; ++i)
+      {
+        text.append('/').append(_segments[i]);
+      }
+      return text.toString();
+    }
+
+    private Object[] _segments = new Object[8];
+    private int      _depth;
+  } // class Path
+
+  // --------------------------------------------------------------------------
+  /**
+   * One compiled ValidatorNode.
+   */
+  protected static final class Instruction
+  {
+    int           op;
+    Class<?>      type;
+    boolean       optional;
+    boolean       hasDefault;
+    Object        defaultValue;
+
+    /**
+     * OP_MAP: the keys of the expected children and the indices of their
+     * instructions, in the order they were added.
+     */
+    String[]      keys;
+    int[]         children;
+
+    /**
+     * OP_ARRAY: the index of the element instruction (or -1) and size limits.
+     */
+    int           child;
+    int           minElements;
+    int           maxElements;
+
+    /**
+     * OP_CALL: the node to delegate to.
+     */
+    ValidatorNode node;
+  } // class Instruction
+
+  // --------------------------------------------------------------------------
+  /**
+   * Instruction opcode: check the type only (TypeValidatorNode).
+   */
+  protected static final int            OP_TYPE            = 0;
+
+  /**
+   * Instruction opcode: check the type and children (MapValidatorNode).
+   */
+  protected static final int            OP_MAP             = 1;
+
+  /**
+   * Instruction opcode: check the type, size and elements
+   * (ArrayValidatorNode).
+   */
+  protected static final int            OP_ARRAY           = 2;
+
+  /**
+   * Instruction opcode: call ValidatorNode.validate() on some other subclass.
+   */
+  protected static final int            OP_CALL            = 3;
+
+  /**
+   * Arrays with at least this many elements are validated in parallel.
+   */
+  protected static final int            PARALLEL_THRESHOLD = 256;
+
+  /**
+   * The maximum number of array elements validated by one parallel task.
+   */
+  protected static final int            CHUNK_SIZE         = 64;
+
+  /**
+   * The instructions; the root node is at index 0.
+   */
+  protected ArrayList<Instruction>      _instructions      = new ArrayList<Instruction>();
+} // class ValidatorProgram